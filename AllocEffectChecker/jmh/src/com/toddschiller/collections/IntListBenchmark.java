@@ -0,0 +1,83 @@
+package com.toddschiller.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link IntArrayList} with an <code>ArrayList&lt;Integer&gt;</code> for
+ * refilling and summing {@code size} values. Run with <code>-prof gc</code> to
+ * compare the bytes allocated per operation.
+ *
+ * @author Todd Schiller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntListBenchmark {
+
+    @Param({ "1000", "100000" })
+    int size;
+
+    private IntArrayList primitive;
+    private List<Integer> boxed;
+
+    @Setup
+    public void setUp() {
+        primitive = new IntArrayList(size);
+        boxed = new ArrayList<Integer>(size);
+        fillPrimitive();
+        fillBoxed();
+    }
+
+    @Benchmark
+    public int fillPrimitive() {
+        primitive.clear();
+        for (int i = 0; i < size; i++) {
+            primitive.add(i * 1021);
+        }
+        return primitive.size();
+    }
+
+    @Benchmark
+    public int fillBoxed() {
+        boxed.clear();
+        for (int i = 0; i < size; i++) {
+            boxed.add(i * 1021);
+        }
+        return boxed.size();
+    }
+
+    @Benchmark
+    public long sumPrimitive() {
+        long sum = 0;
+        for (int i = 0; i < primitive.size(); i++) {
+            sum += primitive.get(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long sumBoxed() {
+        long sum = 0;
+        for (int i = 0; i < boxed.size(); i++) {
+            sum += boxed.get(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,106 @@
+package com.toddschiller.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link IntIntHashMap} with a <code>HashMap&lt;Integer, Integer&gt;</code>
+ * for lookups, in-place updates, and iteration over {@code size} entries. Run
+ * with <code>-prof gc</code> to compare the bytes allocated per operation.
+ *
+ * @author Todd Schiller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntMapBenchmark {
+
+    @Param({ "1000", "100000" })
+    int size;
+
+    private int[] keys;
+    private IntIntHashMap primitive;
+    private Map<Integer, Integer> boxed;
+
+    private long total;
+    private IntIntConsumer summer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        keys = new int[size];
+        primitive = new IntIntHashMap(size);
+        boxed = new HashMap<Integer, Integer>(size * 2);
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextInt();
+            primitive.put(keys[i], i);
+            boxed.put(keys[i], i);
+        }
+        summer = (key, value) -> total += value;
+    }
+
+    @Benchmark
+    public long getPrimitive() {
+        long sum = 0;
+        for (int key : keys) {
+            sum += primitive.get(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long getBoxed() {
+        long sum = 0;
+        for (int key : keys) {
+            sum += boxed.get(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void addToPrimitive() {
+        for (int key : keys) {
+            primitive.addTo(key, 1);
+        }
+    }
+
+    @Benchmark
+    public void mergeBoxed() {
+        for (int key : keys) {
+            boxed.merge(key, 1, Integer::sum);
+        }
+    }
+
+    @Benchmark
+    public long iteratePrimitive() {
+        total = 0;
+        primitive.forEach(summer);
+        return total;
+    }
+
+    @Benchmark
+    public long iterateBoxed() {
+        long sum = 0;
+        for (Map.Entry<Integer, Integer> entry : boxed.entrySet()) {
+            sum += entry.getValue();
+        }
+        return sum;
+    }
+}
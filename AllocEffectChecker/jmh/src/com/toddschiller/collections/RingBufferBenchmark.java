@@ -0,0 +1,66 @@
+package com.toddschiller.collections;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link LongRingBuffer} with an <code>ArrayDeque&lt;Long&gt;</code> used
+ * as a bounded queue: each operation offers a value and, once the queue holds
+ * {@code capacity} values, polls the oldest. Run with <code>-prof gc</code> to
+ * compare the bytes allocated per operation.
+ *
+ * @author Todd Schiller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingBufferBenchmark {
+
+    @Param({ "1024" })
+    int capacity;
+
+    private LongRingBuffer primitive;
+    private ArrayDeque<Long> boxed;
+    private long next;
+
+    @Setup
+    public void setUp() {
+        primitive = new LongRingBuffer(capacity);
+        boxed = new ArrayDeque<Long>(capacity);
+    }
+
+    @Benchmark
+    public long offerPollPrimitive() {
+        long polled = 0;
+        if (primitive.isFull()) {
+            polled = primitive.poll();
+        }
+        primitive.offer(next++ * 1021);
+        return polled;
+    }
+
+    @Benchmark
+    public long offerPollBoxed() {
+        long polled = 0;
+        if (boxed.size() == capacity) {
+            polled = boxed.poll();
+        }
+        boxed.offer(next++ * 1021);
+        return polled;
+    }
+}
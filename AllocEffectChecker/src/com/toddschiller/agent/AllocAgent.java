@@ -0,0 +1,178 @@
+package com.toddschiller.agent;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.ProtectionDomain;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A Java agent that checks at runtime that methods annotated with
+ * {@link com.toddschiller.checker.qual.NoAlloc} do not allocate, to catch the
+ * allocations the checker cannot see, e.g., through reflection, static
+ * initializers, or unmodeled JDK methods.
+ * <p>
+ * The agent instruments each <code>@NoAlloc</code> method as its class is
+ * loaded (see {@link ProbeInjector}) and measures the bytes each invocation
+ * allocates, including the allocations of the methods it calls. Invocations
+ * that complete by throwing an exception are not measured. The results are
+ * available through the {@link AllocationMonitorMXBean} and are printed when the
+ * JVM exits.
+ * <p>
+ * Usage: <code>-javaagent:alloc-effect-checker.jar[=option,...]</code>, with the
+ * options:
+ * <ul>
+ * <li><code>sample=n</code>: measure one invocation in <code>n</code> on each
+ * thread (default 1)</li>
+ * <li><code>threshold=bytes</code>: report invocations that allocate more than
+ * <code>bytes</code> (default: the measurement error of the JVM's allocation
+ * counter, usually 0)</li>
+ * <li><code>traces=n</code>: keep up to <code>n</code> stack traces per method
+ * (default 5)</li>
+ * <li><code>report=file</code>: write the exit report to <code>file</code>
+ * instead of standard error</li>
+ * </ul>
+ * Only classes whose class loader can see the agent are instrumented; classes of
+ * the bootstrap and platform class loaders are not.
+ *
+ * @author Todd Schiller
+ */
+public final class AllocAgent {
+
+    public static final String MBEAN_NAME = "com.toddschiller.agent:type=AllocationMonitor";
+
+    private AllocAgent() {
+        // static utility class
+    }
+
+    public static void premain(String options, Instrumentation instrumentation) {
+        start(options, instrumentation);
+    }
+
+    public static void agentmain(String options, Instrumentation instrumentation) {
+        // Classes loaded before the agent started are not instrumented
+        start(options, instrumentation);
+    }
+
+    private static void start(String options, Instrumentation instrumentation) {
+        int sample = 1;
+        long threshold = -1;
+        int traces = 5;
+        String report = null;
+        if (options != null && !options.isEmpty()) {
+            for (String option : options.split(",")) {
+                int eq = option.indexOf('=');
+                String name = eq < 0 ? option : option.substring(0, eq);
+                String value = eq < 0 ? "" : option.substring(eq + 1);
+                switch (name) {
+                case "sample":
+                    sample = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "threshold":
+                    threshold = Long.parseLong(value);
+                    break;
+                case "traces":
+                    traces = Integer.parseInt(value);
+                    break;
+                case "report":
+                    report = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown allocation agent option: " + option);
+                }
+            }
+        }
+
+        AllocationMonitor monitor;
+        try {
+            monitor = new AllocationMonitor(sample, threshold, traces);
+        } catch (UnsupportedOperationException e) {
+            System.err.println("Allocation agent disabled: " + e.getMessage());
+            return;
+        }
+        String reportPath = report;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, new ObjectName(MBEAN_NAME));
+        } catch (JMException e) {
+            System.err.println("Unable to register the allocation monitor MBean: " + e.getMessage());
+        }
+
+        AllocProbe.install(monitor);
+        instrumentation.addTransformer(new Transformer(new ProbeInjector(monitor)));
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> printReport(monitor, reportPath), "alloc-agent-report"));
+    }
+
+    private static void printReport(AllocationMonitor monitor, String path) {
+        String report = monitor.getReport();
+        if (path == null) {
+            System.err.print(report);
+            return;
+        }
+        try (Writer out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            out.write(report);
+        } catch (IOException e) {
+            System.err.println("Unable to write the allocation report to " + path + ": " + e.getMessage());
+            System.err.print(report);
+        }
+    }
+
+    /**
+     * Instruments the classes whose class loader can see {@link AllocProbe}.
+     */
+    private static final class Transformer implements ClassFileTransformer {
+        private static final String AGENT_PACKAGE = AllocAgent.class.getPackage().getName().replace('.', '/') + "/";
+
+        private final ProbeInjector injector;
+
+        /** Whether each class loader resolves the probes to the agent's class. */
+        private final Map<ClassLoader, Boolean> loaders = new WeakHashMap<ClassLoader, Boolean>();
+
+        Transformer(ProbeInjector injector) {
+            this.injector = injector;
+        }
+
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            if (className == null || className.startsWith(AGENT_PACKAGE) || !seesProbe(loader)) {
+                return null;
+            }
+            try {
+                return injector.instrument(classfileBuffer);
+            } catch (Throwable t) {
+                // The JVM silently discards whatever a transformer throws, including
+                // errors such as a StackOverflowError on a deeply nested method, and
+                // loads the class unchanged
+                System.err.println("Unable to instrument " + className + ": " + t);
+                return null;
+            }
+        }
+
+        private synchronized boolean seesProbe(ClassLoader loader) {
+            if (loader == null) {
+                return false;
+            }
+            Boolean sees = loaders.get(loader);
+            if (sees == null) {
+                try {
+                    sees = Class.forName(AllocProbe.class.getName(), false, loader) == AllocProbe.class;
+                } catch (ClassNotFoundException | LinkageError e) {
+                    sees = false;
+                }
+                loaders.put(loader, sees);
+            }
+            return sees;
+        }
+    }
+}
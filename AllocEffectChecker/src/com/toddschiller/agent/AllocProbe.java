@@ -0,0 +1,165 @@
+package com.toddschiller.agent;
+
+import java.util.Arrays;
+
+/**
+ * The runtime hooks called by the code that {@link ProbeInjector} adds to
+ * {@link com.toddschiller.checker.qual.NoAlloc} methods.
+ * <p>
+ * Each thread keeps a stack of the instrumented invocations in progress with the
+ * thread's allocated byte count when each began. The bytes allocated by the
+ * probes themselves, e.g., to grow the stack or to record a stack trace, are
+ * subtracted from the invocations that enclose them, so that nested
+ * instrumented methods do not report each other's bookkeeping.
+ * <p>
+ * The probes must be public because they are called from the instrumented
+ * classes, but are not meant to be called directly.
+ *
+ * @author Todd Schiller
+ */
+public final class AllocProbe {
+
+    /** The monitor, or <code>null</code> if the agent is not running. */
+    private static volatile AllocationMonitor monitor;
+
+    private static final ThreadLocal<Invocations> INVOCATIONS = new ThreadLocal<Invocations>() {
+        @Override
+        protected Invocations initialValue() {
+            return new Invocations();
+        }
+    };
+
+    private AllocProbe() {
+        // static utility class
+    }
+
+    static void install(AllocationMonitor monitor) {
+        AllocProbe.monitor = monitor;
+    }
+
+    /**
+     * Called at the start of the instrumented method {@code method}.
+     */
+    public static void enter(int method) {
+        AllocationMonitor m = monitor;
+        if (m != null) {
+            INVOCATIONS.get().enter(method, m);
+        }
+    }
+
+    /**
+     * Called before the instrumented method {@code method} returns.
+     */
+    public static void exit(int method) {
+        AllocationMonitor m = monitor;
+        if (m != null) {
+            INVOCATIONS.get().exit(method, m);
+        }
+    }
+
+    /**
+     * Called when the instrumented method {@code method} completes by throwing an
+     * exception. The invocation is not measured.
+     */
+    public static void unwind(int method) {
+        AllocationMonitor m = monitor;
+        if (m != null) {
+            INVOCATIONS.get().unwind(method);
+        }
+    }
+
+    /**
+     * The instrumented invocations in progress on a thread.
+     */
+    private static final class Invocations {
+        /** The start of an invocation that is not measured. */
+        private static final long UNSAMPLED = Long.MIN_VALUE;
+
+        /**
+         * The maximum number of invocations to track; deeper stacks are
+         * discarded, e.g., if constructors that do not report exceptional exits
+         * keep throwing.
+         */
+        private static final int MAX_DEPTH = 4096;
+
+        private int[] methods = new int[16];
+        private long[] starts = new long[16];
+        private long[] excludedAtStart = new long[16];
+        private int depth = 0;
+
+        /** The bytes allocated by the probes on this thread. */
+        private long excluded = 0;
+
+        /** The number of invocations until the next measured one. */
+        private int untilSample = 1;
+
+        void enter(int method, AllocationMonitor monitor) {
+            if (depth == methods.length) {
+                grow(monitor);
+            }
+            methods[depth] = method;
+            if (--untilSample > 0) {
+                starts[depth++] = UNSAMPLED;
+                return;
+            }
+            untilSample = monitor.getSampleInterval();
+
+            // The allocation of the probe itself belongs to the enclosing invocations
+            long start = monitor.allocatedBytes();
+            excluded += monitor.overhead();
+            starts[depth] = start;
+            excludedAtStart[depth] = excluded;
+            depth++;
+        }
+
+        void exit(int method, AllocationMonitor monitor) {
+            int frame = find(method);
+            if (frame < 0) {
+                // e.g., the invocation began before its class was instrumented
+                return;
+            }
+            depth = frame;
+            long start = starts[frame];
+            if (start == UNSAMPLED) {
+                return;
+            }
+
+            long end = monitor.allocatedBytes();
+            monitor.record(method, end - start - (excluded - excludedAtStart[frame]) - monitor.overhead());
+            excluded += monitor.allocatedBytes() - end + monitor.overhead();
+        }
+
+        void unwind(int method) {
+            int frame = find(method);
+            if (frame >= 0) {
+                depth = frame;
+            }
+        }
+
+        /**
+         * Returns the index of the innermost invocation of {@code method}, or -1.
+         * Invocations above it completed by throwing without being unwound.
+         */
+        private int find(int method) {
+            for (int frame = depth - 1; frame >= 0; frame--) {
+                if (methods[frame] == method) {
+                    return frame;
+                }
+            }
+            return -1;
+        }
+
+        private void grow(AllocationMonitor monitor) {
+            if (depth == MAX_DEPTH) {
+                depth = 0;
+                return;
+            }
+            long before = monitor.allocatedBytes();
+            int capacity = Math.min(methods.length * 2, MAX_DEPTH);
+            methods = Arrays.copyOf(methods, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            excludedAtStart = Arrays.copyOf(excludedAtStart, capacity);
+            excluded += monitor.allocatedBytes() - before + monitor.overhead();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.toddschiller.agent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.management.ThreadMXBean;
+import com.toddschiller.checker.summary.MethodKey;
+
+/**
+ * Collects the allocations that {@link AllocProbe} measures for each
+ * instrumented method, and reports the invocations that allocate.
+ * <p>
+ * Allocations are measured with {@link ThreadMXBean#getThreadAllocatedBytes(long)},
+ * which counts the bytes allocated by a thread, including in its thread-local
+ * allocation buffer. On some JDKs the query itself allocates; the monitor
+ * measures that overhead when it starts and subtracts it. Because the overhead
+ * can change once the query is compiled, the default threshold is the variation
+ * in the overhead observed while measuring it, which is 0 on JDKs whose query
+ * does not allocate.
+ *
+ * @author Todd Schiller
+ */
+final class AllocationMonitor implements AllocationMonitorMXBean {
+
+    /** The maximum number of frames kept for each stack trace. */
+    private static final int MAX_FRAMES = 32;
+
+    /** The number of queries used to measure the overhead of the allocation counter. */
+    private static final int CALIBRATION_QUERIES = 10000;
+
+    private final ThreadMXBean threads;
+    private final int sampleInterval;
+    private final int maxStackTraces;
+    private final long overhead;
+    private final long threshold;
+
+    /** The instrumented methods, indexed by id; the first {@code count} are in use. */
+    private volatile MethodStats[] methods = new MethodStats[64];
+    private int count = 0;
+
+    /**
+     * @param sampleInterval measure one invocation in this many on each thread
+     * @param threshold the number of bytes an invocation may allocate without
+     *            being reported, or a negative number to use the measurement
+     *            error of the allocation counter
+     * @param maxStackTraces the maximum number of stack traces to keep per method
+     * @throws UnsupportedOperationException if the JVM does not measure the
+     *             allocations of each thread
+     */
+    AllocationMonitor(int sampleInterval, long threshold, int maxStackTraces) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof ThreadMXBean) || !((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("The JVM does not measure the allocations of each thread");
+        }
+        this.threads = (ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        this.sampleInterval = sampleInterval;
+        this.maxStackTraces = maxStackTraces;
+
+        // The first queries initialize the counter's implementation
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 2 * CALIBRATION_QUERIES; i++) {
+            long before = allocatedBytes();
+            long delta = allocatedBytes() - before;
+            if (i >= CALIBRATION_QUERIES) {
+                min = Math.min(min, delta);
+                max = Math.max(max, delta);
+            }
+        }
+        this.overhead = min;
+        this.threshold = threshold >= 0 ? threshold : max - min;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread.
+     */
+    long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns the number of bytes allocated by a call to {@link #allocatedBytes()}.
+     */
+    long overhead() {
+        return overhead;
+    }
+
+    /**
+     * Registers an instrumented method and returns its id.
+     *
+     * @param owner the internal name of the class declaring the method
+     */
+    synchronized int register(String owner, String name, String descriptor) {
+        MethodStats[] table = methods;
+        if (count == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[count] = new MethodStats(MethodKey.fromDescriptor(owner, name, descriptor));
+        // Publish the new entry before the instrumented class can run
+        methods = table;
+        return count++;
+    }
+
+    /**
+     * Records an invocation of the method {@code method} that allocated
+     * {@code bytes}.
+     */
+    void record(int method, long bytes) {
+        MethodStats stats = methods[method];
+        stats.calls.increment();
+        if (bytes > threshold) {
+            stats.violations.increment();
+            stats.bytes.add(bytes);
+            stats.maxBytes.accumulate(bytes);
+
+            // Sample stack traces at a decreasing rate, so that a frequent
+            // violation does not pay for one every time
+            long violations = stats.violations.sum();
+            if ((violations & (violations - 1)) == 0 && stats.stackTraceCount() < maxStackTraces) {
+                stats.addStackTrace(stackTrace());
+            }
+        }
+    }
+
+    private static String stackTrace() {
+        StringBuilder trace = new StringBuilder();
+        int frames = 0;
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            if (frame.getClassName().startsWith(AllocProbe.class.getName())
+                    || frame.getClassName().equals(AllocationMonitor.class.getName())) {
+                continue;
+            }
+            if (frames++ == MAX_FRAMES) {
+                trace.append("\t...\n");
+                break;
+            }
+            trace.append("\tat ").append(frame).append('\n');
+        }
+        return trace.toString();
+    }
+
+    @Override
+    public synchronized int getInstrumentedMethodCount() {
+        return count;
+    }
+
+    @Override
+    public long getMeasuredCallCount() {
+        long calls = 0;
+        for (MethodStats stats : snapshot()) {
+            calls += stats.calls.sum();
+        }
+        return calls;
+    }
+
+    @Override
+    public long getViolationCount() {
+        long violations = 0;
+        for (MethodStats stats : snapshot()) {
+            violations += stats.violations.sum();
+        }
+        return violations;
+    }
+
+    @Override
+    public long getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    @Override
+    public List<MethodReport> getViolatingMethods() {
+        List<MethodReport> reports = new ArrayList<MethodReport>();
+        for (MethodStats stats : snapshot()) {
+            if (stats.violations.sum() > 0) {
+                reports.add(stats.report());
+            }
+        }
+        return reports;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        List<MethodReport> violating = getViolatingMethods();
+        report.append("Measured ").append(getMeasuredCallCount()).append(" calls of ")
+                .append(getInstrumentedMethodCount()).append(" @NoAlloc methods; ").append(violating.size())
+                .append(" methods allocated more than ").append(threshold).append(" bytes\n");
+        for (MethodReport method : violating) {
+            report.append(method.getMethod()).append(": ").append(method.getViolations()).append(" of ")
+                    .append(method.getCalls()).append(" calls allocated ").append(method.getBytes())
+                    .append(" bytes (at most ").append(method.getMaxBytes()).append(" per call)\n");
+            for (String trace : method.getStackTraces()) {
+                report.append(trace);
+            }
+        }
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (MethodStats stats : snapshot()) {
+            stats.reset();
+        }
+    }
+
+    private synchronized List<MethodStats> snapshot() {
+        return Arrays.asList(methods).subList(0, count);
+    }
+
+    /**
+     * The measurements of one instrumented method.
+     */
+    private static final class MethodStats {
+        final String method;
+        final LongAdder calls = new LongAdder();
+        final LongAdder violations = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAccumulator maxBytes = new LongAccumulator(Math::max, 0);
+        private final Set<String> stackTraces = new LinkedHashSet<String>();
+
+        MethodStats(String method) {
+            this.method = method;
+        }
+
+        synchronized int stackTraceCount() {
+            return stackTraces.size();
+        }
+
+        synchronized void addStackTrace(String trace) {
+            stackTraces.add(trace);
+        }
+
+        synchronized MethodReport report() {
+            return new MethodReport(method, calls.sum(), violations.sum(), bytes.sum(), maxBytes.get(),
+                    Collections.unmodifiableList(new ArrayList<String>(stackTraces)));
+        }
+
+        synchronized void reset() {
+            calls.reset();
+            violations.reset();
+            bytes.reset();
+            maxBytes.reset();
+            stackTraces.clear();
+        }
+    }
+}
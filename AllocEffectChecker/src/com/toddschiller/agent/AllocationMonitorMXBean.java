@@ -0,0 +1,36 @@
+package com.toddschiller.agent;
+
+import java.util.List;
+
+/**
+ * The management interface of the allocation agent, registered as
+ * <code>com.toddschiller.agent:type=AllocationMonitor</code>.
+ *
+ * @author Todd Schiller
+ */
+public interface AllocationMonitorMXBean {
+
+    /** The number of {@link com.toddschiller.checker.qual.NoAlloc} methods instrumented so far. */
+    int getInstrumentedMethodCount();
+
+    /** The number of invocations that were measured. */
+    long getMeasuredCallCount();
+
+    /** The number of measured invocations that allocated more than the threshold. */
+    long getViolationCount();
+
+    /** The number of bytes that an invocation may allocate without being reported. */
+    long getThreshold();
+
+    /** One invocation in this many is measured on each thread. */
+    int getSampleInterval();
+
+    /** The methods with at least one violation. */
+    List<MethodReport> getViolatingMethods();
+
+    /** The report printed when the JVM exits. */
+    String getReport();
+
+    /** Discards the counts and stack traces collected so far. */
+    void reset();
+}
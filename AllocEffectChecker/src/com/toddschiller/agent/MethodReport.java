@@ -0,0 +1,60 @@
+package com.toddschiller.agent;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+
+/**
+ * The allocations measured for one instrumented method.
+ *
+ * @author Todd Schiller
+ */
+public final class MethodReport {
+
+    private final String method;
+    private final long calls;
+    private final long violations;
+    private final long bytes;
+    private final long maxBytes;
+    private final List<String> stackTraces;
+
+    @ConstructorProperties({ "method", "calls", "violations", "bytes", "maxBytes", "stackTraces" })
+    public MethodReport(String method, long calls, long violations, long bytes, long maxBytes,
+            List<String> stackTraces) {
+        this.method = method;
+        this.calls = calls;
+        this.violations = violations;
+        this.bytes = bytes;
+        this.maxBytes = maxBytes;
+        this.stackTraces = stackTraces;
+    }
+
+    /** The method, as <code>owner#name(parameters)</code> with erased parameter types. */
+    public String getMethod() {
+        return method;
+    }
+
+    /** The number of measured invocations. */
+    public long getCalls() {
+        return calls;
+    }
+
+    /** The number of measured invocations that allocated more than the threshold. */
+    public long getViolations() {
+        return violations;
+    }
+
+    /** The total number of bytes allocated by the violating invocations. */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /** The most bytes allocated by a single invocation. */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** A sample of the distinct stack traces of the violating invocations. */
+    public List<String> getStackTraces() {
+        return stackTraces;
+    }
+}
@@ -0,0 +1,605 @@
+package com.toddschiller.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.scanner.Bytecode;
+import com.toddschiller.scanner.ClassFileReader;
+import com.toddschiller.scanner.ConstantPool;
+
+/**
+ * Rewrites class files so that each method annotated with {@link NoAlloc}
+ * reports its invocations to {@link AllocProbe}.
+ * <p>
+ * The injector inserts a call to {@link AllocProbe#enter(int)} at the start of
+ * the method, a call to {@link AllocProbe#exit(int)} before each return
+ * instruction, and a catch-all exception handler that calls
+ * {@link AllocProbe#unwind(int)} and rethrows. The probes take the method's id
+ * as their only argument, so they need no local variables and the stack map
+ * frames of the original code stay valid; the injector only relocates the branch
+ * offsets, exception ranges, stack map frames, and line number and local
+ * variable tables. Type annotations on the code, whose offsets are not
+ * relocated, are dropped.
+ * <p>
+ * Methods whose instrumented code would exceed the limits of the class file
+ * format are left unchanged.
+ *
+ * @author Todd Schiller
+ */
+final class ProbeInjector {
+
+    private static final String NO_ALLOC = "L" + NoAlloc.class.getName().replace('.', '/') + ";";
+    private static final String PROBE = AllocProbe.class.getName().replace('.', '/');
+
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /** Stack map frame types (JVMS &sect;4.7.4). */
+    private static final int SAME_LOCALS_1_STACK_ITEM = 64;
+    private static final int SAME_LOCALS_1_STACK_ITEM_EXTENDED = 247;
+    private static final int SAME_FRAME_EXTENDED = 251;
+    private static final int FULL_FRAME = 255;
+
+    /** Verification types with an operand (JVMS &sect;4.7.4). */
+    private static final int ITEM_OBJECT = 7;
+    private static final int ITEM_UNINITIALIZED = 8;
+
+    /** The first class file version that uses stack map frames for verification. */
+    private static final int STACK_MAP_VERSION = 50;
+
+    private final AllocationMonitor monitor;
+
+    ProbeInjector(AllocationMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Returns the class file {@code bytes} with probes in its {@link NoAlloc}
+     * methods, or <code>null</code> if it has none.
+     *
+     * @throws IllegalArgumentException if {@code bytes} is not a valid class file
+     */
+    byte[] instrument(byte[] bytes) throws IOException {
+        if (bytes.length < 10 || Bytecode.readInt(bytes, 0) != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+
+        ConstantPool cp = new ConstantPool(bytes);
+        if (!containsUtf8(cp, NO_ALLOC)) {
+            return null;
+        }
+        int version = Bytecode.readUnsignedShort(bytes, 6);
+        int offset = cp.end();
+        String owner = cp.className(Bytecode.readUnsignedShort(bytes, offset + 2));
+
+        offset += 6;
+        offset += 2 + 2 * Bytecode.readUnsignedShort(bytes, offset); // interfaces
+        int fieldCount = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+        for (int i = 0; i < fieldCount; i++) {
+            offset = skipAttributes(bytes, offset + 6);
+        }
+
+        int methodsStart = offset;
+        int methodCount = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+
+        Constants constants = new Constants(cp.count());
+        ByteArrayOutputStream methods = new ByteArrayOutputStream(bytes.length);
+        DataOutputStream out = new DataOutputStream(methods);
+        out.writeShort(methodCount);
+        boolean instrumented = false;
+        for (int i = 0; i < methodCount; i++) {
+            int end = skipAttributes(bytes, offset + 6);
+            byte[] method = isNoAlloc(bytes, cp, offset) ? instrumentMethod(bytes, cp, owner, offset, version,
+                    constants) : null;
+            if (method != null) {
+                out.write(method);
+                instrumented = true;
+            } else {
+                out.write(bytes, offset, end - offset);
+            }
+            offset = end;
+        }
+
+        if (!instrumented || constants.next > 0xFFFF) {
+            return null;
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length + methods.size() + 256);
+        DataOutputStream classFile = new DataOutputStream(result);
+        classFile.write(bytes, 0, 8);
+        classFile.writeShort(constants.next);
+        classFile.write(bytes, 10, cp.end() - 10);
+        constants.entries.writeTo(classFile);
+        classFile.write(bytes, cp.end(), methodsStart - cp.end());
+        methods.writeTo(classFile);
+        classFile.write(bytes, offset, bytes.length - offset);
+        return result.toByteArray();
+    }
+
+    private static boolean containsUtf8(ConstantPool cp, String value) {
+        for (int i = 1; i < cp.count(); i++) {
+            if (cp.tag(i) == ConstantPool.UTF8 && cp.utf8(i).equals(value)) {
+                return true;
+            }
+            if (cp.tag(i) == ConstantPool.LONG || cp.tag(i) == ConstantPool.DOUBLE) {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the method at {@code offset} has code and a
+     * runtime-visible {@link NoAlloc} annotation.
+     */
+    private static boolean isNoAlloc(byte[] bytes, ConstantPool cp, int offset) {
+        boolean hasCode = false;
+        boolean noAlloc = false;
+        int attributeCount = Bytecode.readUnsignedShort(bytes, offset + 6);
+        offset += 8;
+        for (int i = 0; i < attributeCount; i++) {
+            String attribute = cp.utf8(Bytecode.readUnsignedShort(bytes, offset));
+            int start = offset + 6;
+            if (attribute.equals("Code")) {
+                hasCode = true;
+            } else if (attribute.equals("RuntimeVisibleAnnotations")) {
+                int count = Bytecode.readUnsignedShort(bytes, start);
+                int annotation = start + 2;
+                for (int j = 0; j < count; j++) {
+                    noAlloc |= cp.utf8(Bytecode.readUnsignedShort(bytes, annotation)).equals(NO_ALLOC);
+                    annotation = ClassFileReader.skipAnnotation(bytes, annotation);
+                }
+            }
+            offset = start + Bytecode.readInt(bytes, offset + 2);
+        }
+        return hasCode && noAlloc;
+    }
+
+    /**
+     * Returns the method at {@code offset} with probes in its code, or
+     * <code>null</code> if the instrumented code would be too large.
+     */
+    private byte[] instrumentMethod(byte[] bytes, ConstantPool cp, String owner, int offset, int version,
+            Constants constants) throws IOException {
+        String name = cp.utf8(Bytecode.readUnsignedShort(bytes, offset + 2));
+        String descriptor = cp.utf8(Bytecode.readUnsignedShort(bytes, offset + 4));
+        int id = monitor.register(owner, name, descriptor);
+        boolean stackMaps = version >= STACK_MAP_VERSION;
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        out.write(bytes, offset, 8);
+        int attributeCount = Bytecode.readUnsignedShort(bytes, offset + 6);
+        offset += 8;
+        for (int i = 0; i < attributeCount; i++) {
+            int nameIndex = Bytecode.readUnsignedShort(bytes, offset);
+            int length = Bytecode.readInt(bytes, offset + 2);
+            int start = offset + 6;
+            if (cp.utf8(nameIndex).equals("Code")) {
+                byte[] code = instrumentCode(bytes, cp, start, id, stackMaps, constants);
+                if (code == null) {
+                    return null;
+                }
+                out.writeShort(nameIndex);
+                out.writeInt(code.length);
+                out.write(code);
+            } else {
+                out.write(bytes, offset, 6 + length);
+            }
+            offset = start + length;
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Returns the contents of the <code>Code</code> attribute at {@code offset}
+     * with probes for the method {@code id}, or <code>null</code> if the
+     * instrumented code would be too large.
+     *
+     * @param stackMaps whether the class file version requires stack map frames
+     */
+    private static byte[] instrumentCode(byte[] bytes, ConstantPool cp, int offset, int id, boolean stackMaps,
+            Constants constants) throws IOException {
+        int maxStack = Bytecode.readUnsignedShort(bytes, offset);
+        int maxLocals = Bytecode.readUnsignedShort(bytes, offset + 2);
+        int codeLength = Bytecode.readInt(bytes, offset + 4);
+        int codeStart = offset + 8;
+        byte[] code = new byte[codeLength];
+        System.arraycopy(bytes, codeStart, code, 0, codeLength);
+
+        byte[] enter = constants.probe(id, constants.enter);
+        byte[] exit = constants.probe(id, constants.exit);
+
+        // The new offset of each instruction, including the exit probe inserted
+        // before it; branches to a return instruction run its probe
+        int[] start = new int[codeLength + 1];
+        int pc = 0;
+        int newPc = enter.length;
+        while (pc < codeLength) {
+            int opcode = code[pc] & 0xFF;
+            start[pc] = newPc;
+            if (Bytecode.isReturn(opcode)) {
+                newPc += exit.length;
+            }
+            newPc += relocatedLength(code, pc, newPc);
+            pc += Bytecode.length(code, pc);
+        }
+        start[codeLength] = newPc;
+
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream(newPc + 16);
+        DataOutputStream c = new DataOutputStream(codeBytes);
+        c.write(enter);
+        pc = 0;
+        while (pc < codeLength) {
+            int opcode = code[pc] & 0xFF;
+            int length = Bytecode.length(code, pc);
+            if (Bytecode.isReturn(opcode)) {
+                c.write(exit);
+            }
+            int at = c.size();
+            if (Bytecode.isConditionalBranch(opcode) || opcode == Bytecode.GOTO || opcode == Bytecode.JSR) {
+                int branch = start[pc + Bytecode.readShort(code, pc + 1)] - at;
+                if (branch != (short) branch) {
+                    return null;
+                }
+                c.writeByte(opcode);
+                c.writeShort(branch);
+            } else if (opcode == Bytecode.GOTO_W || opcode == Bytecode.JSR_W) {
+                c.writeByte(opcode);
+                c.writeInt(start[pc + Bytecode.readInt(code, pc + 1)] - at);
+            } else if (opcode == Bytecode.TABLESWITCH || opcode == Bytecode.LOOKUPSWITCH) {
+                c.writeByte(opcode);
+                while ((c.size() & 3) != 0) {
+                    c.writeByte(0);
+                }
+                int operands = Bytecode.switchOperands(pc);
+                c.writeInt(start[pc + Bytecode.readInt(code, operands)] - at);
+                if (opcode == Bytecode.TABLESWITCH) {
+                    int low = Bytecode.readInt(code, operands + 4);
+                    int high = Bytecode.readInt(code, operands + 8);
+                    c.writeInt(low);
+                    c.writeInt(high);
+                    for (int i = 0; i <= high - low; i++) {
+                        c.writeInt(start[pc + Bytecode.readInt(code, operands + 12 + 4 * i)] - at);
+                    }
+                } else {
+                    int pairs = Bytecode.readInt(code, operands + 4);
+                    c.writeInt(pairs);
+                    for (int i = 0; i < pairs; i++) {
+                        c.writeInt(Bytecode.readInt(code, operands + 8 + 8 * i));
+                        c.writeInt(start[pc + Bytecode.readInt(code, operands + 12 + 8 * i)] - at);
+                    }
+                }
+            } else {
+                c.write(code, pc, length);
+            }
+            pc += length;
+        }
+
+        int handlerPc = c.size();
+        c.write(constants.probe(id, constants.unwind));
+        c.writeByte(Bytecode.ATHROW);
+        if (c.size() > MAX_CODE_LENGTH) {
+            return null;
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(c.size() + 64);
+        DataOutputStream out = new DataOutputStream(result);
+        // The probes push an int, and the handler an exception and an int
+        out.writeShort(Math.max(maxStack + 1, 2));
+        out.writeShort(maxLocals);
+        out.writeInt(c.size());
+        codeBytes.writeTo(out);
+
+        int p = codeStart + codeLength;
+        int handlerCount = Bytecode.readUnsignedShort(bytes, p);
+        p += 2;
+        out.writeShort(handlerCount + 1);
+        for (int i = 0; i < handlerCount; i++) {
+            out.writeShort(start[Bytecode.readUnsignedShort(bytes, p)]);
+            out.writeShort(start[Bytecode.readUnsignedShort(bytes, p + 2)]);
+            out.writeShort(start[Bytecode.readUnsignedShort(bytes, p + 4)]);
+            out.writeShort(Bytecode.readUnsignedShort(bytes, p + 6));
+            p += 8;
+        }
+        // Last, so that the method's own handlers take precedence
+        out.writeShort(enter.length);
+        out.writeShort(handlerPc);
+        out.writeShort(handlerPc);
+        out.writeShort(0);
+
+        int attributeCount = Bytecode.readUnsignedShort(bytes, p);
+        p += 2;
+        ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+        DataOutputStream a = new DataOutputStream(attributes);
+        int written = 0;
+        boolean hasStackMap = false;
+        for (int i = 0; i < attributeCount; i++) {
+            int nameIndex = Bytecode.readUnsignedShort(bytes, p);
+            int length = Bytecode.readInt(bytes, p + 2);
+            int attribute = p + 6;
+            byte[] relocated;
+            switch (cp.utf8(nameIndex)) {
+            case "StackMapTable":
+                relocated = relocateStackMap(bytes, attribute, start, handlerPc, constants);
+                hasStackMap = true;
+                break;
+            case "LineNumberTable":
+                relocated = relocateLineNumbers(bytes, attribute, start);
+                break;
+            case "LocalVariableTable":
+            case "LocalVariableTypeTable":
+                relocated = relocateLocalVariables(bytes, attribute, start);
+                break;
+            default:
+                // e.g., type annotations, whose offsets are not relocated
+                relocated = null;
+                break;
+            }
+            if (relocated != null) {
+                a.writeShort(nameIndex);
+                a.writeInt(relocated.length);
+                a.write(relocated);
+                written++;
+            }
+            p = attribute + length;
+        }
+        if (stackMaps && !hasStackMap) {
+            byte[] stackMap = handlerFrame(handlerPc, constants);
+            a.writeShort(constants.stackMapTable);
+            a.writeInt(2 + stackMap.length);
+            a.writeShort(1);
+            a.write(stackMap);
+            written++;
+        }
+        out.writeShort(written);
+        attributes.writeTo(out);
+        return result.toByteArray();
+    }
+
+    /**
+     * Returns the length of the instruction at {@code pc} once moved to
+     * {@code newPc}, which changes the padding of switch instructions.
+     */
+    private static int relocatedLength(byte[] code, int pc, int newPc) {
+        int length = Bytecode.length(code, pc);
+        int opcode = code[pc] & 0xFF;
+        if (opcode == Bytecode.TABLESWITCH || opcode == Bytecode.LOOKUPSWITCH) {
+            return length - Bytecode.switchOperands(pc) + Bytecode.switchOperands(newPc) + pc - newPc;
+        }
+        return length;
+    }
+
+    private static byte[] relocateStackMap(byte[] bytes, int offset, int[] start, int handlerPc,
+            Constants constants) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        int count = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+        out.writeShort(count + 1);
+
+        int oldPc = -1;
+        int newPc = -1;
+        for (int i = 0; i < count; i++) {
+            int type = bytes[offset] & 0xFF;
+            int delta;
+            if (type < SAME_LOCALS_1_STACK_ITEM) {
+                delta = type;
+                offset += 1;
+            } else if (type < 128) {
+                delta = type - SAME_LOCALS_1_STACK_ITEM;
+                offset += 1;
+            } else {
+                delta = Bytecode.readUnsignedShort(bytes, offset + 1);
+                offset += 3;
+            }
+            oldPc += delta + 1;
+            int framePc = start[oldPc];
+            int newDelta = framePc - newPc - 1;
+            newPc = framePc;
+
+            if (type < SAME_LOCALS_1_STACK_ITEM) {
+                if (newDelta < SAME_LOCALS_1_STACK_ITEM) {
+                    out.writeByte(newDelta);
+                } else {
+                    out.writeByte(SAME_FRAME_EXTENDED);
+                    out.writeShort(newDelta);
+                }
+            } else if (type < 128 || type == SAME_LOCALS_1_STACK_ITEM_EXTENDED) {
+                if (newDelta < SAME_LOCALS_1_STACK_ITEM) {
+                    out.writeByte(SAME_LOCALS_1_STACK_ITEM + newDelta);
+                } else {
+                    out.writeByte(SAME_LOCALS_1_STACK_ITEM_EXTENDED);
+                    out.writeShort(newDelta);
+                }
+                offset = relocateVerificationType(bytes, offset, start, out);
+            } else if (type < SAME_LOCALS_1_STACK_ITEM_EXTENDED) {
+                throw new IllegalArgumentException("Invalid stack map frame type " + type);
+            } else if (type <= SAME_FRAME_EXTENDED) {
+                // chop and same frames
+                out.writeByte(type);
+                out.writeShort(newDelta);
+            } else if (type < FULL_FRAME) {
+                // append frames
+                out.writeByte(type);
+                out.writeShort(newDelta);
+                for (int j = 0; j < type - SAME_FRAME_EXTENDED; j++) {
+                    offset = relocateVerificationType(bytes, offset, start, out);
+                }
+            } else {
+                out.writeByte(type);
+                out.writeShort(newDelta);
+                for (int list = 0; list < 2; list++) {
+                    // locals, then stack
+                    int items = Bytecode.readUnsignedShort(bytes, offset);
+                    offset += 2;
+                    out.writeShort(items);
+                    for (int j = 0; j < items; j++) {
+                        offset = relocateVerificationType(bytes, offset, start, out);
+                    }
+                }
+            }
+        }
+
+        out.write(handlerFrame(handlerPc - newPc - 1, constants));
+        return result.toByteArray();
+    }
+
+    /**
+     * Returns the frame of the exception handler added by the injector, at
+     * {@code delta} from the previous frame: no locals, and the exception on the
+     * stack.
+     */
+    private static byte[] handlerFrame(int delta, Constants constants) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(10);
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeByte(FULL_FRAME);
+        out.writeShort(delta);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeByte(ITEM_OBJECT);
+        out.writeShort(constants.throwable);
+        return result.toByteArray();
+    }
+
+    private static int relocateVerificationType(byte[] bytes, int offset, int[] start, DataOutputStream out)
+            throws IOException {
+        int tag = bytes[offset] & 0xFF;
+        out.writeByte(tag);
+        if (tag == ITEM_OBJECT) {
+            out.writeShort(Bytecode.readUnsignedShort(bytes, offset + 1));
+            return offset + 3;
+        } else if (tag == ITEM_UNINITIALIZED) {
+            // the offset of the new instruction
+            out.writeShort(start[Bytecode.readUnsignedShort(bytes, offset + 1)]);
+            return offset + 3;
+        }
+        return offset + 1;
+    }
+
+    private static byte[] relocateLineNumbers(byte[] bytes, int offset, int[] start) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        int count = Bytecode.readUnsignedShort(bytes, offset);
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + 4 * i;
+            out.writeShort(start[Bytecode.readUnsignedShort(bytes, entry)]);
+            out.writeShort(Bytecode.readUnsignedShort(bytes, entry + 2));
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] relocateLocalVariables(byte[] bytes, int offset, int[] start) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        int count = Bytecode.readUnsignedShort(bytes, offset);
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + 10 * i;
+            int startPc = Bytecode.readUnsignedShort(bytes, entry);
+            int endPc = startPc + Bytecode.readUnsignedShort(bytes, entry + 2);
+            out.writeShort(start[startPc]);
+            out.writeShort(start[endPc] - start[startPc]);
+            out.write(bytes, entry + 4, 6);
+        }
+        return result.toByteArray();
+    }
+
+    private static int skipAttributes(byte[] bytes, int offset) {
+        int count = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset += 6 + Bytecode.readInt(bytes, offset + 2);
+        }
+        return offset;
+    }
+
+    /**
+     * The constant pool entries appended to a class file for its probes.
+     */
+    private static final class Constants {
+        final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(entries);
+
+        /** The index of the next entry, i.e., the constant pool count. */
+        int next;
+
+        final int enter;
+        final int exit;
+        final int unwind;
+        final int throwable;
+        final int stackMapTable;
+
+        /** The last id pushed with <code>ldc_w</code> and its entry. */
+        private int integerId = -1;
+        private int integerIndex;
+
+        Constants(int count) throws IOException {
+            next = count;
+            int probeClass = addClass(PROBE);
+            int descriptor = addUtf8("(I)V");
+            enter = addMethodref(probeClass, addUtf8("enter"), descriptor);
+            exit = addMethodref(probeClass, addUtf8("exit"), descriptor);
+            unwind = addMethodref(probeClass, addUtf8("unwind"), descriptor);
+            throwable = addClass("java/lang/Throwable");
+            stackMapTable = addUtf8("StackMapTable");
+        }
+
+        /**
+         * Returns the instructions that pass {@code id} to the probe method
+         * {@code methodref}; six bytes regardless of the id.
+         */
+        byte[] probe(int id, int methodref) throws IOException {
+            ByteArrayOutputStream result = new ByteArrayOutputStream(6);
+            DataOutputStream probe = new DataOutputStream(result);
+            if (id <= Short.MAX_VALUE) {
+                probe.writeByte(Bytecode.SIPUSH);
+                probe.writeShort(id);
+            } else {
+                if (integerId != id) {
+                    integerId = id;
+                    integerIndex = addInteger(id);
+                }
+                probe.writeByte(Bytecode.LDC_W);
+                probe.writeShort(integerIndex);
+            }
+            probe.writeByte(Bytecode.INVOKESTATIC);
+            probe.writeShort(methodref);
+            return result.toByteArray();
+        }
+
+        private int addUtf8(String value) throws IOException {
+            out.writeByte(ConstantPool.UTF8);
+            out.writeUTF(value);
+            return next++;
+        }
+
+        private int addClass(String internalName) throws IOException {
+            int name = addUtf8(internalName);
+            out.writeByte(ConstantPool.CLASS);
+            out.writeShort(name);
+            return next++;
+        }
+
+        private int addMethodref(int owner, int name, int descriptor) throws IOException {
+            out.writeByte(ConstantPool.NAME_AND_TYPE);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            int nameAndType = next++;
+            out.writeByte(ConstantPool.METHODREF);
+            out.writeShort(owner);
+            out.writeShort(nameAndType);
+            return next++;
+        }
+
+        private int addInteger(int value) throws IOException {
+            out.writeByte(ConstantPool.INTEGER);
+            out.writeInt(value);
+            return next++;
+        }
+    }
+}
@@ -0,0 +1,672 @@
+package com.toddschiller.batch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.toddschiller.checker.AllocEffectChecker;
+import com.toddschiller.checker.summary.EffectSummaries;
+import com.toddschiller.checker.summary.SharedEffects;
+
+/**
+ * Runs the {@link AllocEffectChecker} over many source roots, e.g., the modules
+ * of a repository, concurrently, and aggregates the results into one report.
+ * <p>
+ * The Checker Framework keeps state in static fields, such as its caches of
+ * annotations and the parsers of its stub files, so compilations in one JVM
+ * cannot run at once. The roots are instead checked by a number of worker
+ * processes, each a JVM started with the arguments and class path of the
+ * driver, which check the roots they are given one after another, each with its
+ * own <code>javac</code> task with annotation processing only. Each worker is
+ * given the next root when it finishes one, and roots with more source files are
+ * given out first, so that the largest compilations do not run last. The
+ * compilations of a worker share the loaded summaries and a
+ * {@link SharedEffects} store, so only the first compilation of a worker pays
+ * for loading the framework and the summaries. The workers share the effects
+ * they resolve through an effect cache directory, so the effects of a class that
+ * several roots see, such as a library or a module the others depend on, are
+ * resolved about once rather than once per worker. The roots are checked
+ * independently, so the largest root bounds the elapsed time, and each worker
+ * needs its own heap.
+ * <p>
+ * The options given with <code>-A</code> are passed to every task. The options
+ * that make the checker write a file at the end of a compilation, such as
+ * <code>-Aalloc.infer</code>, are rejected, since every task would write it.
+ * The workers use the cache directory given with <code>-Aalloc.cache</code>,
+ * which keeps the effects for later batches, or a temporary directory deleted
+ * at the end of the batch. Each root is its own source path, and the class
+ * path given with <code>-cp</code>, which must include the checker and defaults
+ * to the class path of the driver, is shared by all roots.
+ * <p>
+ * Usage: <code>BatchChecker [-j workers] [-cp classpath] [-o report.txt] [-Aoption]... root... | @roots.txt</code>
+ *
+ * @author Todd Schiller
+ */
+public final class BatchChecker {
+
+    /** The options that write one file per compilation. */
+    static final List<String> UNSUPPORTED_OPTIONS = Collections.unmodifiableList(Arrays.asList(
+            AllocEffectChecker.INFER_OPTION, AllocEffectChecker.STATS_OPTION, AllocEffectChecker.LOOP_REPORT_OPTION,
+            AllocEffectChecker.FIXES_OPTION, AllocEffectChecker.EXPORT_OPTION));
+
+    /**
+     * The first argument of a worker, followed by the <code>javac</code> options;
+     * the worker reads the roots to check from its standard input, one per line,
+     * and writes their results to its standard output.
+     */
+    static final String WORKER = "-worker";
+
+    /** The maximum number of errors and warnings javac reports for each root. */
+    private static final String MAX_DIAGNOSTICS = "1000000";
+
+    /** An error, warning, or note reported when checking a source root. */
+    public static final class Message {
+        final Diagnostic.Kind kind;
+        final String source;
+        final long line;
+        final String text;
+
+        Message(Diagnostic.Kind kind, String source, long line, String text) {
+            this.kind = kind;
+            this.source = source;
+            this.line = line;
+            this.text = text;
+        }
+
+        /**
+         * Returns the kind of the message; javac reports mandatory warnings, such
+         * as those of the checker, as warnings.
+         */
+        public Diagnostic.Kind getKind() {
+            return kind;
+        }
+
+        /** Returns the name of the source file, or <code>null</code> if there is none. */
+        public String getSource() {
+            return source;
+        }
+
+        public long getLineNumber() {
+            return line;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /** The outcome of checking a source root. */
+    public static final class Result {
+        final Path root;
+        final int files;
+        final List<Message> messages;
+        final long nanos;
+        final String failure;
+
+        Result(Path root, int files, List<Message> messages, long nanos, String failure) {
+            this.root = root;
+            this.files = files;
+            this.messages = messages;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        public Path getRoot() {
+            return root;
+        }
+
+        /** Returns the errors, warnings, and notes reported for the root. */
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        /**
+         * Returns the reason the root could not be checked, or <code>null</code> if
+         * it was checked.
+         */
+        public String getFailure() {
+            return failure;
+        }
+
+        int count(Diagnostic.Kind kind) {
+            int count = 0;
+            for (Message m : messages) {
+                if (m.kind == kind) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private final List<String> options;
+    private final int workers;
+
+    /** The effects the workers stored, and the lookups that reused and resolved them. */
+    private final LongAdder sharedClasses = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder sharedMisses = new LongAdder();
+
+    /**
+     * @param options the <code>javac</code> options of every root, e.g., the class
+     *            path and the <code>-A</code> options of the checker
+     * @param workers the number of worker processes, i.e., of roots checked at
+     *            once
+     */
+    public BatchChecker(List<String> options, int workers) {
+        this.options = new ArrayList<String>(options);
+        this.workers = workers;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(WORKER)) {
+            work(Arrays.asList(args).subList(1, args.length));
+            return;
+        }
+
+        List<String> options = new ArrayList<String>();
+        List<Path> roots = new ArrayList<Path>();
+        Path output = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                workers = Integer.parseInt(args[++i]);
+            } else if ((args[i].equals("-cp") || args[i].equals("-classpath")) && i + 1 < args.length) {
+                options.add("-classpath");
+                options.add(args[++i]);
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else if (args[i].startsWith("-A")) {
+                String option = args[i].substring(2);
+                String name = option.contains("=") ? option.substring(0, option.indexOf('=')) : option;
+                if (UNSUPPORTED_OPTIONS.contains(name)) {
+                    System.err.println("-A" + name + " writes one file per compilation and is not supported");
+                    System.exit(2);
+                }
+                options.add(args[i]);
+            } else if (args[i].startsWith("@")) {
+                for (String line : Files.readAllLines(Paths.get(args[i].substring(1)), StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                        roots.add(Paths.get(line.trim()));
+                    }
+                }
+            } else {
+                roots.add(Paths.get(args[i]));
+            }
+        }
+
+        if (!options.contains("-classpath")) {
+            // The checker must be on the class path of the compilations
+            options.add("-classpath");
+            options.add(System.getProperty("java.class.path"));
+        }
+        if (roots.isEmpty() || workers < 1) {
+            System.err.println("Usage: BatchChecker [-j <workers>] [-cp <classpath>] [-o <output>] [-A<option>]... "
+                    + "<root>... | @<roots file>");
+            System.exit(2);
+        }
+
+        BatchChecker batch = new BatchChecker(options, workers);
+        long start = System.nanoTime();
+        List<Result> results = batch.check(roots);
+        long elapsed = System.nanoTime() - start;
+
+        try (Writer out = output != null ? Files.newBufferedWriter(output, StandardCharsets.UTF_8)
+                : new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            batch.write(new PrintWriter(out), results, elapsed);
+        }
+
+        for (Result result : results) {
+            if (result.failure != null || result.count(Diagnostic.Kind.ERROR) > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Checks the Java files under each of {@code roots} with the worker
+     * processes, and returns the results in the order of {@code roots}.
+     */
+    public List<Result> check(final List<Path> roots) throws IOException, InterruptedException {
+        final List<Integer> sizes = new ArrayList<Integer>();
+        for (Path root : roots) {
+            sizes.add(findSources(root).size());
+        }
+
+        // Give out the largest roots first
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < roots.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(sizes.get(b), sizes.get(a));
+            }
+        });
+        final Queue<Integer> pending = new ConcurrentLinkedQueue<Integer>(order);
+        final Result[] results = new Result[roots.size()];
+
+        // The workers share the effects they resolve through a cache directory,
+        // a temporary one unless the options name one
+        final List<String> workerOptions = new ArrayList<String>(options);
+        Path cache = null;
+        if (!hasOption(options, AllocEffectChecker.CACHE_OPTION)) {
+            cache = Files.createTempDirectory("alloc-cache");
+            workerOptions.add("-A" + AllocEffectChecker.CACHE_OPTION + "=" + cache);
+        }
+
+        // Each thread feeds the roots to a worker and waits for their results
+        int count = Math.min(workers, roots.size());
+        ExecutorService pool = Executors.newFixedThreadPool(count, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "alloc-batch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < count; i++) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        feed(pending, roots, sizes, results, workerOptions);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Unable to run the workers", e.getCause());
+                }
+            }
+            return Arrays.asList(results);
+        } finally {
+            pool.shutdownNow();
+            if (cache != null) {
+                delete(cache);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if {@code options} set the checker option
+     * {@code name}.
+     */
+    private static boolean hasOption(List<String> options, String name) {
+        for (String option : options) {
+            if (option.equals("-A" + name) || option.startsWith("-A" + name + "=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the temporary cache directory {@code cache} and its files, leaving
+     * any that cannot be deleted.
+     */
+    private static void delete(Path cache) {
+        try {
+            Files.walkFileTree(cache, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Unable to delete the effect cache " + cache + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks the roots taken from {@code pending}, the indices of roots in
+     * {@code roots}, with a worker started with the <code>javac</code> options
+     * {@code workerOptions}, and stores their results in {@code results}. A
+     * worker that exits is replaced for the next root.
+     */
+    private void feed(Queue<Integer> pending, List<Path> roots, List<Integer> sizes, Result[] results,
+            List<String> workerOptions) throws InterruptedException {
+        Worker worker = null;
+        try {
+            for (Integer i = pending.poll(); i != null; i = pending.poll()) {
+                Path root = roots.get(i);
+                if (sizes.get(i) == 0) {
+                    results[i] = new Result(root, 0, Collections.<Message> emptyList(), 0, null);
+                    continue;
+                }
+                try {
+                    if (worker == null) {
+                        worker = new Worker(workerOptions);
+                    }
+                    results[i] = worker.check(root);
+                } catch (IOException e) {
+                    results[i] = new Result(root, sizes.get(i), Collections.<Message> emptyList(), 0,
+                            "the worker failed: " + e);
+                    if (worker != null) {
+                        worker.destroy();
+                        worker = null;
+                    }
+                }
+            }
+        } finally {
+            if (worker != null) {
+                worker.close();
+            }
+        }
+    }
+
+    /** A worker process, and the pipes to and from it. */
+    private final class Worker {
+        private final Process process;
+        private final Writer roots;
+        private final DataInputStream results;
+
+        Worker(List<String> options) throws IOException {
+            List<String> command = new ArrayList<String>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-classpath");
+            command.add(System.getProperty("java.class.path"));
+            command.add(BatchChecker.class.getName());
+            command.add(WORKER);
+            command.addAll(options);
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            roots = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            results = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        /**
+         * Returns the result of checking {@code root}.
+         */
+        Result check(Path root) throws IOException {
+            roots.write(root.toString());
+            roots.write('\n');
+            roots.flush();
+
+            int files = results.readInt();
+            long nanos = results.readLong();
+            String failure = readString(results);
+            int count = results.readInt();
+            List<Message> messages = new ArrayList<Message>(count);
+            for (int i = 0; i < count; i++) {
+                Diagnostic.Kind kind = Diagnostic.Kind.valueOf(readString(results));
+                String source = readString(results);
+                long line = results.readLong();
+                messages.add(new Message(kind, source, line, readString(results)));
+            }
+            sharedClasses.add(results.readInt());
+            sharedHits.add(results.readLong());
+            sharedMisses.add(results.readLong());
+            return new Result(root, files, messages, nanos, failure);
+        }
+
+        /** Waits for the worker to exit once it has checked its roots. */
+        void close() throws InterruptedException {
+            try {
+                roots.close();
+            } catch (IOException e) {
+                // The worker has already exited
+            }
+            process.waitFor();
+        }
+
+        void destroy() {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Checks the roots read from the standard input with the <code>javac</code>
+     * options {@code options}, one after another, and writes their results to the
+     * standard output.
+     */
+    private static void work(List<String> options) throws IOException {
+        // The standard output carries the results; anything else goes to the standard error
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err);
+
+        String summaryPaths = null;
+        for (String option : options) {
+            if (option.startsWith("-A" + AllocEffectChecker.SUMMARIES_OPTION + "=")) {
+                summaryPaths = option.substring(AllocEffectChecker.SUMMARIES_OPTION.length() + 3);
+            }
+        }
+        EffectSummaries summaries = EffectSummaries.load(summaryPaths);
+        SharedEffects effects = new SharedEffects();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            Path root = Paths.get(line);
+            int classes = effects.size();
+            long hits = effects.getHits();
+            long misses = effects.getMisses();
+
+            Result result;
+            try {
+                result = check(root, findSources(root), options, summaries, effects);
+            } catch (IOException | RuntimeException e) {
+                result = new Result(root, 0, Collections.<Message> emptyList(), 0, String.valueOf(e));
+            }
+
+            out.writeInt(result.files);
+            out.writeLong(result.nanos);
+            writeString(out, result.failure);
+            out.writeInt(result.messages.size());
+            for (Message m : result.messages) {
+                writeString(out, m.kind.name());
+                writeString(out, m.source);
+                out.writeLong(m.line);
+                writeString(out, m.text);
+            }
+            out.writeInt(effects.size() - classes);
+            out.writeLong(effects.getHits() - hits);
+            out.writeLong(effects.getMisses() - misses);
+            out.flush();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the Java files under {@code root}, sorted.
+     */
+    private static List<File> findSources(Path root) throws IOException {
+        final List<File> files = new ArrayList<File>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.getFileName().toString().endsWith(".java")) {
+                    files.add(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Checks {@code files}, the Java files under {@code root}, with a new
+     * <code>javac</code> task with the options {@code options}, sharing
+     * {@code summaries} and {@code effects} with the other tasks of the worker.
+     */
+    private static Result check(Path root, List<File> files, List<String> options, EffectSummaries summaries,
+            SharedEffects effects) throws IOException {
+        long start = System.nanoTime();
+        if (files.isEmpty()) {
+            return new Result(root, 0, Collections.<Message> emptyList(), 0, null);
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.getDefault(),
+                StandardCharsets.UTF_8)) {
+            List<String> taskOptions = new ArrayList<String>(options);
+            taskOptions.addAll(Arrays.asList("-proc:only", "-sourcepath", root.toString(), "-Xmaxerrs",
+                    MAX_DIAGNOSTICS, "-Xmaxwarns", MAX_DIAGNOSTICS));
+
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, taskOptions, null,
+                    fileManager.getJavaFileObjectsFromFiles(files));
+            AllocEffectChecker checker = new AllocEffectChecker();
+            checker.share(summaries, effects);
+            task.setProcessors(Collections.singletonList(checker));
+            task.call();
+        }
+
+        List<Message> messages = new ArrayList<Message>();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            Diagnostic.Kind kind = d.getKind() == Diagnostic.Kind.MANDATORY_WARNING ? Diagnostic.Kind.WARNING
+                    : d.getKind();
+            messages.add(new Message(kind, d.getSource() != null ? d.getSource().getName() : null,
+                    d.getLineNumber(), d.getMessage(Locale.getDefault())));
+        }
+        return new Result(root, files.size(), messages, System.nanoTime() - start, null);
+    }
+
+    /**
+     * Writes the totals, the results of each root, slowest first, and the errors
+     * and warnings of each root to {@code out}; {@code elapsed} is the time the
+     * batch took in nanoseconds.
+     */
+    public void write(PrintWriter out, List<Result> results, long elapsed) {
+        int files = 0;
+        int errors = 0;
+        int warnings = 0;
+        long busy = 0;
+        for (Result result : results) {
+            files += result.files;
+            errors += result.count(Diagnostic.Kind.ERROR);
+            warnings += result.count(Diagnostic.Kind.WARNING);
+            busy += result.nanos;
+        }
+
+        out.printf("Checked %d source roots, %d files, with %d workers in %s%n", results.size(), files, workers,
+                seconds(elapsed));
+        out.printf("%s of compilation, %.1f times the elapsed time%n", seconds(busy),
+                elapsed > 0 ? (double) busy / elapsed : 0.0);
+        out.printf("Shared the effects of %d classes in the workers' memory: %d lookups reused them, %d did not%n",
+                sharedClasses.sum(), sharedHits.sum(), sharedMisses.sum());
+        out.printf("%d errors, %d warnings%n%n", errors, warnings);
+
+        List<Result> slowest = new ArrayList<Result>(results);
+        Collections.sort(slowest, new Comparator<Result>() {
+            @Override
+            public int compare(Result a, Result b) {
+                return Long.compare(b.nanos, a.nanos);
+            }
+        });
+        out.println("Source roots, slowest first");
+        for (Result result : slowest) {
+            if (result.failure != null) {
+                out.printf("  %10s  %6d files  failed: %s  %s%n", "", result.files, result.failure, result.root);
+            } else {
+                out.printf("  %10s  %6d files  %5d errors  %5d warnings  %s%n", seconds(result.nanos), result.files,
+                        result.count(Diagnostic.Kind.ERROR), result.count(Diagnostic.Kind.WARNING), result.root);
+            }
+        }
+
+        for (Result result : results) {
+            if (result.messages.isEmpty()) {
+                continue;
+            }
+            out.println();
+            out.println(result.root);
+            List<Message> sorted = new ArrayList<Message>(result.messages);
+            Collections.sort(sorted, new Comparator<Message>() {
+                @Override
+                public int compare(Message a, Message b) {
+                    int byFile = source(a).compareTo(source(b));
+                    return byFile != 0 ? byFile : Long.compare(a.line, b.line);
+                }
+            });
+            for (Message m : sorted) {
+                String location = m.source != null ? m.source + ":" + m.line + ": " : "";
+                out.printf("%s%s: %s%n", location, m.kind.toString().toLowerCase(Locale.ROOT), m.text);
+            }
+        }
+        out.flush();
+    }
+
+    private static String source(Message m) {
+        return m.source != null ? m.source : "";
+    }
+
+    private static String seconds(long nanos) {
+        return String.format("%.1f s", nanos / 1e9);
+    }
+}
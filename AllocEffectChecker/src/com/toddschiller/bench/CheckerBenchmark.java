@@ -0,0 +1,349 @@
+package com.toddschiller.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.sun.source.util.JavacTask;
+import com.toddschiller.checker.AllocEffectChecker;
+
+/**
+ * Measures the cost of the allocation checker by compiling a
+ * {@link SyntheticProject} in-process with and without it.
+ * <p>
+ * Each run compiles the whole project with the system Java compiler and
+ * reports, per compiler phase (see {@link PhaseListener}), the wall time and the
+ * bytes allocated by the compiling thread, and, per run, the peak heap: the sum
+ * of the peak usage of the heap memory pools, which are reset after a garbage
+ * collection before the run. Runs without and with the checker alternate, the
+ * first <code>-warmup</code> runs of each are discarded, and the medians of the
+ * remaining <code>-runs</code> are reported. The checker's own work shows up in
+ * the {@value PhaseListener#CHECK} phase; with <code>-csv</code>, the medians
+ * are appended to a file so that the cost can be tracked across versions of the
+ * checker. Arguments after <code>--</code> are passed to the compiler in both
+ * configurations, e.g., <code>-Alint=inference</code>.
+ * <p>
+ * Usage:
+ * <code>CheckerBenchmark [-classes n] [-depth n] [-fanout n] [-methods n] [-calls n] [-seed n] [-runs n] [-warmup n] [-csv file] [-- javac-option...]</code>
+ *
+ * @author Todd Schiller
+ */
+public final class CheckerBenchmark {
+
+    private static final String BASELINE = "javac";
+    private static final String CHECKER = "checker";
+    private static final String TOTAL = "total";
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final SyntheticProject project;
+    private final List<String> compilerOptions;
+    private final JavaCompiler compiler;
+
+    /** The measurements of each configuration, per phase, one per run. */
+    private final Map<String, Map<String, List<long[]>>> samples =
+            new LinkedHashMap<String, Map<String, List<long[]>>>();
+
+    public CheckerBenchmark(SyntheticProject project, List<String> compilerOptions) {
+        this.project = project;
+        this.compilerOptions = compilerOptions;
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No system Java compiler; run the benchmark with a JDK");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int classes = 1000;
+        int depth = 4;
+        int fanOut = 2;
+        int methods = 8;
+        int calls = 3;
+        long seed = 0;
+        int runs = 5;
+        int warmup = 2;
+        Path csv = null;
+        List<String> compilerOptions = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--")) {
+                compilerOptions.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            } else if (args[i].equals("-csv") && i + 1 < args.length) {
+                csv = Paths.get(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].startsWith("-") && i + 1 < args.length) {
+                int value = Integer.parseInt(args[++i]);
+                if (args[i - 1].equals("-classes")) {
+                    classes = value;
+                } else if (args[i - 1].equals("-depth")) {
+                    depth = value;
+                } else if (args[i - 1].equals("-fanout")) {
+                    fanOut = value;
+                } else if (args[i - 1].equals("-methods")) {
+                    methods = value;
+                } else if (args[i - 1].equals("-calls")) {
+                    calls = value;
+                } else if (args[i - 1].equals("-runs")) {
+                    runs = value;
+                } else if (args[i - 1].equals("-warmup")) {
+                    warmup = value;
+                } else {
+                    usage();
+                }
+            } else {
+                usage();
+            }
+        }
+
+        SyntheticProject project = new SyntheticProject(classes, depth, fanOut, methods, calls, seed);
+        CheckerBenchmark benchmark = new CheckerBenchmark(project, compilerOptions);
+        benchmark.run(warmup, runs);
+        benchmark.report(System.out);
+        if (csv != null) {
+            benchmark.appendCsv(csv);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: CheckerBenchmark [-classes <n>] [-depth <n>] [-fanout <n>] [-methods <n>] "
+                + "[-calls <n>] [-seed <n>] [-runs <n>] [-warmup <n>] [-csv <file>] [-- <javac option>...]");
+        System.exit(2);
+    }
+
+    /**
+     * Generates the project in a temporary directory and compiles it
+     * {@code warmup + runs} times with and without the checker, keeping the
+     * measurements of the last {@code runs}.
+     */
+    public void run(int warmup, int runs) throws IOException {
+        Path directory = Files.createTempDirectory("alloc-bench");
+        try {
+            List<Path> sources = project.generate(directory.resolve("src"));
+            for (int i = 0; i < warmup + runs; i++) {
+                for (String configuration : Arrays.asList(BASELINE, CHECKER)) {
+                    Map<String, long[]> measured = compile(sources, directory.resolve(configuration),
+                            configuration.equals(CHECKER));
+                    if (i >= warmup) {
+                        record(configuration, measured);
+                    }
+                }
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Compiles {@code sources} to {@code output} and returns the time, allocated
+     * bytes, and largest observed heap of each phase.
+     */
+    private Map<String, long[]> compile(List<Path> sources, Path output, boolean check) throws IOException {
+        Files.createDirectories(output);
+
+        List<String> options = new ArrayList<String>();
+        options.addAll(Arrays.asList("-d", output.toString(), "-cp", System.getProperty("java.class.path")));
+        if (!check) {
+            options.add("-proc:none");
+        }
+        options.addAll(compilerOptions);
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        try {
+            JavacTask task = (JavacTask) compiler.getTask(null, files, diagnostics, options, null,
+                    files.getJavaFileObjectsFromFiles(toFiles(sources)));
+            if (check) {
+                // Loading the checker from the benchmark's class path lets the
+                // warmup runs warm it up
+                task.setProcessors(Collections.singletonList(new AllocEffectChecker()));
+            }
+            PhaseListener listener = new PhaseListener();
+            listener.register(task);
+
+            List<MemoryPoolMXBean> pools = heapPools();
+            System.gc();
+            for (MemoryPoolMXBean pool : pools) {
+                pool.resetPeakUsage();
+            }
+
+            long start = System.nanoTime();
+            listener.start();
+            boolean success = task.call();
+            listener.stop();
+            long nanos = System.nanoTime() - start;
+
+            if (!success) {
+                for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+                    System.err.println(d);
+                }
+                throw new IllegalStateException("The synthetic project did not compile"
+                        + (check ? " with the checker" : ""));
+            }
+
+            Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+            long allocated = 0;
+            for (Map.Entry<String, PhaseListener.Phase> e : listener.phases().entrySet()) {
+                PhaseListener.Phase phase = e.getValue();
+                result.put(e.getKey(), new long[] { phase.nanos, phase.allocatedBytes, phase.maxHeapBytes });
+                allocated += phase.allocatedBytes;
+            }
+            long peak = 0;
+            for (MemoryPoolMXBean pool : pools) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            result.put(TOTAL, new long[] { nanos, allocated, peak });
+            return result;
+        } finally {
+            files.close();
+        }
+    }
+
+    private void record(String configuration, Map<String, long[]> measured) {
+        Map<String, List<long[]>> phases = samples.get(configuration);
+        if (phases == null) {
+            phases = new LinkedHashMap<String, List<long[]>>();
+            samples.put(configuration, phases);
+        }
+        for (Map.Entry<String, long[]> e : measured.entrySet()) {
+            List<long[]> values = phases.get(e.getKey());
+            if (values == null) {
+                values = new ArrayList<long[]>();
+                phases.put(e.getKey(), values);
+            }
+            values.add(e.getValue());
+        }
+    }
+
+    /**
+     * Returns the phases measured in any configuration, with the total last.
+     */
+    private Set<String> phases() {
+        Set<String> phases = new LinkedHashSet<String>();
+        for (Map<String, List<long[]>> measured : samples.values()) {
+            phases.addAll(measured.keySet());
+        }
+        phases.remove(TOTAL);
+        phases.add(TOTAL);
+        return phases;
+    }
+
+    /**
+     * Returns the median of the measurement {@code index} of {@code phase}, or
+     * zero if the phase did not run in {@code configuration}.
+     */
+    private long median(String configuration, String phase, int index) {
+        Map<String, List<long[]>> phases = samples.get(configuration);
+        List<long[]> values = phases == null ? null : phases.get(phase);
+        if (values == null || values.isEmpty()) {
+            return 0;
+        }
+        long[] sorted = new long[values.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = values.get(i)[index];
+        }
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Prints the median time, allocation, and heap of each phase with and
+     * without the checker; the heap of the total is the peak heap.
+     */
+    public void report(PrintStream out) {
+        out.println("Synthetic project: " + project.describe());
+        out.printf("%-24s %10s %10s %16s %16s %15s %15s%n", "phase", "javac ms", "checker ms", "javac alloc MB",
+                "checker alloc MB", "javac heap MB", "checker heap MB");
+        for (String phase : phases()) {
+            out.printf("%-24s %10.1f %10.1f %16.1f %16.1f %15.1f %15.1f%n", phase,
+                    median(BASELINE, phase, 0) / 1e6, median(CHECKER, phase, 0) / 1e6,
+                    median(BASELINE, phase, 1) / MB, median(CHECKER, phase, 1) / MB,
+                    median(BASELINE, phase, 2) / MB, median(CHECKER, phase, 2) / MB);
+        }
+    }
+
+    /**
+     * Appends a line per configuration and phase to the CSV file {@code file},
+     * writing a header first if the file is new.
+     */
+    public void appendCsv(Path file) throws IOException {
+        boolean header = !Files.exists(file);
+        long timestamp = System.currentTimeMillis();
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            if (header) {
+                out.write("timestamp,classes,depth,fanOut,methods,calls,seed,configuration,phase,"
+                        + "millis,allocatedBytes,heapBytes\n");
+            }
+            for (String configuration : samples.keySet()) {
+                for (String phase : phases()) {
+                    out.write(String.format("%d,%d,%d,%d,%d,%d,%d,%s,%s,%.3f,%d,%d%n", timestamp, project.classes,
+                            project.depth, project.fanOut, project.methods, project.calls, project.seed,
+                            configuration, phase, median(configuration, phase, 0) / 1e6,
+                            median(configuration, phase, 1), median(configuration, phase, 2)));
+                }
+            }
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    private static List<java.io.File> toFiles(List<Path> paths) {
+        List<java.io.File> files = new ArrayList<java.io.File>();
+        for (Path path : paths) {
+            files.add(path.toFile());
+        }
+        return files;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
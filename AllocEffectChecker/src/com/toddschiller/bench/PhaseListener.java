@@ -0,0 +1,166 @@
+package com.toddschiller.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+/**
+ * Attributes the wall time and allocations of a compilation to its phases.
+ * <p>
+ * Time between two events is charged to the innermost phase that is running,
+ * so the parsing and entering done in annotation processing rounds is not also
+ * counted as annotation processing. Type checkers run in a task listener when
+ * the <code>ANALYZE</code> phase of a class finishes, which the checker adds
+ * when it is initialized. This listener is added before the compilation task is
+ * called, so it is notified before the checker, and it adds a second listener,
+ * notified after the checker, when the first class is analyzed; the time
+ * between the two is charged to the {@value #CHECK} phase. The compiler then
+ * desugars the class before generating it without any event, so the time from
+ * the second listener to the next event is charged to the {@value #DESUGAR}
+ * phase. Allocations are the bytes allocated by the compiling thread, and a
+ * phase's heap is the largest used heap observed at its events.
+ *
+ * @author Todd Schiller
+ */
+final class PhaseListener implements TaskListener {
+
+    /** The pseudo-phase in which type checkers run. */
+    static final String CHECK = "check";
+
+    /** The pseudo-phase between type checking a class and generating it. */
+    static final String DESUGAR = "desugar";
+
+    /** The pseudo-phase for time outside of any phase. */
+    static final String OTHER = "other";
+
+    /** Totals for one phase. */
+    static final class Phase {
+        long nanos;
+        long allocatedBytes;
+        long maxHeapBytes;
+    }
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final Runtime runtime = Runtime.getRuntime();
+    private final long thread = Thread.currentThread().getId();
+
+    private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+
+    /** The running phases, innermost last. */
+    private final List<String> running = new ArrayList<String>();
+    /** The pseudo-phase that is running, or <code>null</code>. */
+    private String pseudoPhase = null;
+
+    private JavacTask task;
+    private boolean checkEndAdded = false;
+
+    private long lastNanos;
+    private long lastAllocated;
+
+    PhaseListener() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("The JVM does not support measuring allocations per thread");
+        }
+        this.threads = (com.sun.management.ThreadMXBean) bean;
+        this.threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Adds this listener to {@code task}; call before calling the task.
+     */
+    void register(JavacTask task) {
+        this.task = task;
+        task.addTaskListener(this);
+    }
+
+    /**
+     * Starts measuring; events before this call are not attributed.
+     */
+    void start() {
+        lastNanos = System.nanoTime();
+        lastAllocated = threads.getThreadAllocatedBytes(thread);
+    }
+
+    /**
+     * Charges the time since the last event to the current phase; call after the
+     * compilation completes.
+     */
+    void stop() {
+        charge();
+    }
+
+    @Override
+    public void started(TaskEvent e) {
+        charge();
+        pseudoPhase = null;
+        running.add(name(e.getKind()));
+
+        if (e.getKind() == TaskEvent.Kind.ANALYZE && !checkEndAdded) {
+            // Type checkers have been initialized and have added their listeners
+            checkEndAdded = true;
+            task.addTaskListener(new TaskListener() {
+                @Override
+                public void started(TaskEvent e) {
+                }
+
+                @Override
+                public void finished(TaskEvent e) {
+                    if (e.getKind() == TaskEvent.Kind.ANALYZE) {
+                        charge();
+                        pseudoPhase = DESUGAR;
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void finished(TaskEvent e) {
+        charge();
+        int index = running.lastIndexOf(name(e.getKind()));
+        if (index >= 0) {
+            running.remove(index);
+        }
+        pseudoPhase = e.getKind() == TaskEvent.Kind.ANALYZE ? CHECK : null;
+    }
+
+    /**
+     * Returns the totals per phase, in the order the phases first ran.
+     */
+    Map<String, Phase> phases() {
+        return phases;
+    }
+
+    private void charge() {
+        long nanos = System.nanoTime();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+
+        String current = pseudoPhase != null ? pseudoPhase
+                : (running.isEmpty() ? OTHER : running.get(running.size() - 1));
+        Phase phase = phases.get(current);
+        if (phase == null) {
+            phase = new Phase();
+            phases.put(current, phase);
+        }
+        phase.nanos += nanos - lastNanos;
+        phase.allocatedBytes += allocated - lastAllocated;
+        phase.maxHeapBytes = Math.max(phase.maxHeapBytes, heap);
+
+        lastNanos = nanos;
+        lastAllocated = allocated;
+    }
+
+    private static String name(TaskEvent.Kind kind) {
+        return kind.name().toLowerCase();
+    }
+}
@@ -0,0 +1,233 @@
+package com.toddschiller.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.toddschiller.checker.qual.NoAlloc;
+
+/**
+ * Generates a synthetic project whose size and shape stress the checker's
+ * override resolution and call checking.
+ * <p>
+ * The project has {@link #classes} classes, arranged in inheritance chains of
+ * {@link #depth} classes, and one interface per four classes. Each class
+ * implements {@link #fanOut} interfaces chosen at random and declares (and so
+ * overrides, below the root of its chain) the same {@link #methods} methods.
+ * Each method body makes {@link #calls} calls through fields typed with other
+ * classes and interfaces. Methods with an even index are {@link NoAlloc} and
+ * only call other methods with an even index; the others allocate. Half of the
+ * overrides of <code>@NoAlloc</code> methods are not annotated and inherit
+ * their effect, so the generated project type-checks without errors. The
+ * project only depends on the checker's annotations and is the same for the
+ * same parameters and seed.
+ *
+ * @author Todd Schiller
+ */
+public final class SyntheticProject {
+
+    /** The root package of the generated sources. */
+    static final String PACKAGE = "synth";
+
+    private static final int CLASSES_PER_PACKAGE = 100;
+    private static final int CLASSES_PER_INTERFACE = 4;
+    private static final int INTERFACE_METHODS = 2;
+    private static final int CLASS_FIELDS = 4;
+    private static final int INTERFACE_FIELDS = 2;
+
+    public final int classes;
+    public final int depth;
+    public final int fanOut;
+    public final int methods;
+    public final int calls;
+    public final long seed;
+
+    /**
+     * @param classes the number of classes
+     * @param depth the number of classes in each inheritance chain
+     * @param fanOut the number of interfaces each class implements
+     * @param methods the number of methods each class declares
+     * @param calls the number of calls in each method body
+     * @param seed the seed for choosing interfaces and call targets
+     */
+    public SyntheticProject(int classes, int depth, int fanOut, int methods, int calls, long seed) {
+        if (classes < 1 || depth < 1 || fanOut < 0 || methods < 1 || calls < 0) {
+            throw new IllegalArgumentException("Invalid synthetic project shape: "
+                    + describe(classes, depth, fanOut, methods, calls));
+        }
+        this.classes = classes;
+        this.depth = depth;
+        this.fanOut = Math.min(fanOut, interfaceCount(classes));
+        this.methods = methods;
+        this.calls = calls;
+        this.seed = seed;
+    }
+
+    private static int interfaceCount(int classes) {
+        return Math.max(1, classes / CLASSES_PER_INTERFACE);
+    }
+
+    /**
+     * Writes the sources of the project to {@code directory} and returns the
+     * written files.
+     */
+    public List<Path> generate(Path directory) throws IOException {
+        Random random = new Random(seed);
+        List<Path> files = new ArrayList<Path>();
+
+        int interfaces = interfaceCount(classes);
+        for (int i = 0; i < interfaces; i++) {
+            files.add(write(directory, interfaceName(i), interfaceSource(i)));
+        }
+        for (int c = 0; c < classes; c++) {
+            files.add(write(directory, className(c), classSource(c, interfaces, random)));
+        }
+        return files;
+    }
+
+    /**
+     * Returns a description of the project's shape, e.g., for reports.
+     */
+    public String describe() {
+        return describe(classes, depth, fanOut, methods, calls);
+    }
+
+    private static String describe(int classes, int depth, int fanOut, int methods, int calls) {
+        return String.format("classes=%d depth=%d fanOut=%d methods=%d calls=%d", classes, depth, fanOut, methods,
+                calls);
+    }
+
+    private static String interfaceName(int i) {
+        return PACKAGE + ".api.I" + i;
+    }
+
+    private static String className(int c) {
+        return PACKAGE + ".p" + (c / CLASSES_PER_PACKAGE) + ".C" + c;
+    }
+
+    private static String interfaceMethod(int i, int j) {
+        return "m" + i + "_" + j;
+    }
+
+    private String interfaceSource(int i) {
+        StringBuilder s = header(interfaceName(i));
+        s.append("public interface I").append(i).append(" {\n");
+        for (int j = 0; j < INTERFACE_METHODS; j++) {
+            s.append('\n');
+            if (j % 2 == 0) {
+                s.append("    @NoAlloc\n");
+            }
+            s.append("    int ").append(interfaceMethod(i, j)).append("(int x);\n");
+        }
+        s.append("}\n");
+        return s.toString();
+    }
+
+    private String classSource(int c, int interfaces, Random random) {
+        boolean root = c % depth == 0;
+
+        List<Integer> implemented = new ArrayList<Integer>();
+        while (implemented.size() < fanOut) {
+            int i = random.nextInt(interfaces);
+            if (!implemented.contains(i)) {
+                implemented.add(i);
+            }
+        }
+
+        StringBuilder s = header(className(c));
+        s.append("public class C").append(c);
+        if (!root) {
+            s.append(" extends ").append(className(c - 1));
+        }
+        for (int k = 0; k < implemented.size(); k++) {
+            s.append(k == 0 ? " implements " : ", ").append(interfaceName(implemented.get(k)));
+        }
+        s.append(" {\n\n");
+
+        // The fields through which the methods call other classes
+        int[] classFields = new int[CLASS_FIELDS];
+        for (int f = 0; f < classFields.length; f++) {
+            classFields[f] = random.nextInt(classes);
+            s.append("    private ").append(className(classFields[f])).append(" c").append(f).append(";\n");
+        }
+        int[] interfaceFields = new int[INTERFACE_FIELDS];
+        for (int f = 0; f < interfaceFields.length; f++) {
+            interfaceFields[f] = random.nextInt(interfaces);
+            s.append("    private ").append(interfaceName(interfaceFields[f])).append(" i").append(f).append(";\n");
+        }
+
+        for (int j = 0; j < methods; j++) {
+            method(s, "f" + j, j % 2 == 0, !root, classFields, interfaceFields, random);
+        }
+        for (int i : implemented) {
+            for (int j = 0; j < INTERFACE_METHODS; j++) {
+                method(s, interfaceMethod(i, j), j % 2 == 0, true, classFields, interfaceFields, random);
+            }
+        }
+        s.append("}\n");
+        return s.toString();
+    }
+
+    /**
+     * Appends a method to {@code s}. A {@code noAlloc} method that
+     * {@code overrides} another is only annotated half of the time.
+     */
+    private void method(StringBuilder s, String name, boolean noAlloc, boolean overrides, int[] classFields,
+            int[] interfaceFields, Random random) {
+        s.append('\n');
+        if (noAlloc && (!overrides || random.nextBoolean())) {
+            s.append("    @NoAlloc\n");
+        }
+        s.append("    public int ").append(name).append("(int x) {\n");
+        s.append("        int r = x;\n");
+        for (int k = 0; k < calls; k++) {
+            s.append("        r += ");
+            if (random.nextBoolean()) {
+                int f = random.nextInt(classFields.length);
+                s.append('c').append(f).append(".f").append(callee(methods, noAlloc, random));
+            } else {
+                int f = random.nextInt(interfaceFields.length);
+                s.append('i').append(f).append('.')
+                        .append(interfaceMethod(interfaceFields[f], callee(INTERFACE_METHODS, noAlloc, random)));
+            }
+            s.append("(r);\n");
+        }
+        if (!noAlloc) {
+            s.append("        r += new int[r & 7].length;\n");
+        }
+        s.append("        return r;\n");
+        s.append("    }\n");
+    }
+
+    /**
+     * Returns the index of a method to call among {@code count} methods; a
+     * {@code noAlloc} caller only calls methods with an even index.
+     */
+    private static int callee(int count, boolean noAlloc, Random random) {
+        if (!noAlloc) {
+            return random.nextInt(count);
+        }
+        return 2 * random.nextInt((count + 1) / 2);
+    }
+
+    private static StringBuilder header(String name) {
+        StringBuilder s = new StringBuilder();
+        s.append("package ").append(name.substring(0, name.lastIndexOf('.'))).append(";\n\n");
+        s.append("import ").append(NoAlloc.class.getName()).append(";\n\n");
+        return s;
+    }
+
+    private static Path write(Path directory, String name, String contents) throws IOException {
+        Path file = directory.resolve(name.replace('.', '/') + ".java");
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(contents);
+        }
+        return file;
+    }
+}
@@ -1,12 +1,53 @@
 package com.toddschiller.checker;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.framework.qual.TypeQualifiers;
+import org.checkerframework.framework.source.Result;
 import org.checkerframework.framework.source.SupportedLintOptions;
 
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+
+import com.toddschiller.checker.infer.InferenceGraph;
+import com.toddschiller.checker.infer.SccSolver;
 import com.toddschiller.checker.qual.EffectType;
 import com.toddschiller.checker.qual.MayAlloc;
 import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoAllocRoot;
+import com.toddschiller.checker.qual.Preinitialized;
+import com.toddschiller.checker.qual.Startup;
+import com.toddschiller.checker.reach.ReachabilityGraph;
+import com.toddschiller.checker.summary.EffectSummaries;
+import com.toddschiller.checker.summary.EffectSummaryWriter;
+import com.toddschiller.checker.summary.MethodKey;
+import com.toddschiller.checker.summary.SharedEffects;
+import com.toddschiller.checker.summary.SummaryCompiler;
 
 /**
  * A checker that enforces that allocations may not occur in areas marked as
@@ -21,13 +62,482 @@ import com.toddschiller.checker.qual.NoAlloc;
  * the type annotation exists because the Checker Framework expects to see a type annotation
  * on each type.
  * <p>
- * If we wanted to to support effect polymorphism like the GUI effect
- * checker does, {@link org.checkerframework.checker.guieffect.GuiEffectChecker}, we need to track
- * the expression types with type annotations, e.g., <tt>MayAllocType</tt> and <tt>NoAllocType</tt>.
+ * Unlike the GUI effect checker, {@link org.checkerframework.checker.guieffect.GuiEffectChecker},
+ * the checker does not track expression types for effect polymorphism. Instead, the visitor
+ * reads the effect annotations on the declared types of variables of interface type, e.g.,
+ * <code>@NoAlloc IntConsumer</code>, and gives a call to a {@link com.toddschiller.checker.qual.PolyAlloc}
+ * method the effects of the callbacks passed to it.
+ * <p>
+ * Methods without an effect annotation take their effect from the bundled model of
+ * the JDK and from the summary files given with <code>-Aalloc.summaries</code>; see
+ * {@link com.toddschiller.checker.summary.EffectSummaries}.
+ * <p>
+ * With <code>-Aalloc.infer=file</code>, the checker also infers the effects of the
+ * unannotated methods in the compiled sources: it builds their call graph while
+ * visiting each compilation unit, solves it once all units have been processed
+ * (see {@link SccSolver}), and writes the methods inferred to be {@link NoAlloc}
+ * or {@link NoAllocAfterWarmup} to a summary file for later runs to pass with <code>-Aalloc.summaries</code>.
+ * <p>
+ * Touching a class with a static initializer runs the initializer, which
+ * allocates the first time, so it requires {@link NoAllocAfterWarmup}, unless the
+ * class is {@link Preinitialized}. Once all units have been processed, the
+ * checker verifies that each <code>@Preinitialized</code> class in the sources is
+ * initialized by a {@link Startup} method; see {@link StartupAnalysis}.
+ * <p>
+ * A call through an interface type is checked against the effect of the
+ * interface method. Once all units have been processed, the checker also reports
+ * the calls that may dispatch to an implementation in the sources that the
+ * effect of the interface method does not cover, such as one inherited from a
+ * superclass; see {@link DispatchAnalysis}.
+ * <p>
+ * With <code>-Alint=reachability</code>, the checker proves that the methods
+ * reachable from {@link NoAllocRoot} methods do not allocate, whether or not they
+ * are annotated: it records the allocations in the bodies of the methods without
+ * an effect of their own, and the calls between them, and reports each
+ * allocation reachable from a root, with the call chain that reaches it, once all
+ * units have been processed; see {@link ReachabilityGraph}. This mode cannot be
+ * combined with inference.
+ * <p>
+ * With <code>-Aalloc.stats=file</code>, the checker counts its work and the
+ * violations it reports, and writes them to a JSON file at the end of the
+ * compilation; see {@link CheckerStatistics}.
+ * <p>
+ * With <code>-Alint=loopAlloc</code>, the checker also collects the allocations
+ * and allocating calls in loops in all methods, including unannotated ones, and
+ * reports them ranked by loop nesting depth at the end of the compilation, as a
+ * note or in the file given with <code>-Aalloc.loopReport</code>; see
+ * {@link LoopAllocations}.
+ * <p>
+ * With <code>-Aalloc.fixes=file</code>, the checker also suggests fixes for the
+ * common allocations it reports, such as hoisting a fixed-size array into a
+ * field, and writes them to the file as a patch at the end of the compilation;
+ * see {@link FixSuggester}.
+ * <p>
+ * With <code>-Aalloc.export=file</code>, the checker writes the resolved effect of
+ * each method in the compiled sources, including <code>MayAlloc</code>, to the
+ * file in the textual summary format, for tools that compare the effects with
+ * the program's behavior, e.g., {@link com.toddschiller.profile.JfrImporter}.
  * 
  * @author Todd Schiller
  */
-@SupportedLintOptions({ "debugSpew" })
+@SupportedLintOptions({ "debugSpew", "coldPath", "reachability", "loopAlloc" })
+@SupportedOptions({ AllocEffectChecker.SUMMARIES_OPTION, AllocEffectChecker.INFER_OPTION,
+        AllocEffectChecker.CACHE_OPTION, AllocEffectChecker.STATS_OPTION, AllocEffectChecker.LOOP_REPORT_OPTION,
+        AllocEffectChecker.FIXES_OPTION, AllocEffectChecker.EXPORT_OPTION })
 @TypeQualifiers({ EffectType.class })
 public class AllocEffectChecker extends BaseTypeChecker {
-}
\ No newline at end of file
+
+    /**
+     * The option listing additional summary files, separated by the platform path
+     * separator.
+     */
+    public static final String SUMMARIES_OPTION = "alloc.summaries";
+
+    /**
+     * The option giving the summary file to write the inferred effects to. A
+     * textual copy is written next to it, with the suffix <code>.txt</code>.
+     */
+    public static final String INFER_OPTION = "alloc.infer";
+
+    /**
+     * The option giving a directory in which to persist resolved method effects
+     * between compilations; see {@link com.toddschiller.checker.summary.EffectCache}.
+     */
+    public static final String CACHE_OPTION = "alloc.cache";
+
+    /**
+     * The option giving the JSON file to write the checker's statistics to.
+     */
+    public static final String STATS_OPTION = "alloc.stats";
+
+    /**
+     * The option giving the file to write the allocations in loops to with
+     * <code>-Alint=loopAlloc</code>, instead of printing them.
+     */
+    public static final String LOOP_REPORT_OPTION = "alloc.loopReport";
+
+    /**
+     * The option giving the file to write the suggested fixes to, as a unified
+     * diff.
+     */
+    public static final String FIXES_OPTION = "alloc.fixes";
+
+    /**
+     * The option giving the file to write the resolved effects of the methods in
+     * the compiled sources to, in the textual summary format.
+     */
+    public static final String EXPORT_OPTION = "alloc.export";
+
+    /** The call graph of the methods being inferred; <code>null</code> unless inferring. */
+    private InferenceGraph inference;
+
+    /**
+     * The qualified names of the top-level classes of the compilation units being
+     * compiled that have yet to be analyzed.
+     */
+    private final Set<String> unanalyzed = new HashSet<String>();
+
+    /**
+     * The call graph of the methods reachable from roots; <code>null</code> unless
+     * checking reachability.
+     */
+    private ReachabilityGraph reachability;
+
+    /** The classes initialized by the startup methods. */
+    private final StartupAnalysis startup = new StartupAnalysis();
+
+    /** The implementations of interface methods and the calls through interfaces. */
+    private final DispatchAnalysis dispatch = new DispatchAnalysis();
+
+    /** The statistics being collected; <code>null</code> unless collecting them. */
+    private CheckerStatistics statistics;
+
+    /** The allocations in loops; <code>null</code> unless collecting them. */
+    private LoopAllocations loops;
+
+    /** The suggested fixes; <code>null</code> unless suggesting them. */
+    private SuggestedFixes fixes;
+
+    /** The resolved effects of the visited methods; <code>null</code> unless exporting them. */
+    private Map<String, Effect> exported;
+
+    /**
+     * The summaries and resolved effects shared with the other compilations in the
+     * process; <code>null</code> unless set with {@link #share}.
+     */
+    private EffectSummaries sharedSummaries;
+    private SharedEffects sharedEffects;
+
+    @Override
+    public void initChecker() {
+        // The visitor and the type factory are created by super.initChecker(), and
+        // take the state they share with the checker when they are created
+        if (getOption(INFER_OPTION) != null) {
+            inference = new InferenceGraph();
+        }
+        if (getLintOption("reachability", false)) {
+            if (inference != null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Reachability from @NoAllocRoot methods is not checked while inferring effects");
+            } else {
+                reachability = new ReachabilityGraph();
+            }
+        }
+        if (getOption(STATS_OPTION) != null) {
+            statistics = new CheckerStatistics();
+        }
+        if (getLintOption("loopAlloc", false)) {
+            loops = new LoopAllocations();
+        }
+        if (getOption(FIXES_OPTION) != null) {
+            fixes = new SuggestedFixes();
+        }
+        if (getOption(EXPORT_OPTION) != null) {
+            exported = new TreeMap<String, Effect>();
+        }
+        super.initChecker();
+    }
+
+    /**
+     * Registers a listener that runs the checks that need all compilation units
+     * once the last class of the compilation units being compiled has been
+     * analyzed, i.e., the top-level classes entered by the compiler, which are the
+     * classes the framework passes to {@link #typeProcess}. The listener is
+     * registered after that of the framework, so it hears of each class after the
+     * class has been processed.
+     */
+    @Override
+    protected void setProcessingEnvironment(ProcessingEnvironment env) {
+        super.setProcessingEnvironment(env);
+        JavacTask.instance(env).addTaskListener(new TaskListener() {
+            @Override
+            public void started(TaskEvent e) {
+            }
+
+            @Override
+            public void finished(TaskEvent e) {
+                if (e.getKind() == TaskEvent.Kind.ENTER) {
+                    ExpressionTree packageName = e.getCompilationUnit().getPackageName();
+                    for (Tree decl : e.getCompilationUnit().getTypeDecls()) {
+                        if (decl instanceof ClassTree) {
+                            String name = ((ClassTree) decl).getSimpleName().toString();
+                            unanalyzed.add(packageName == null ? name : packageName + "." + name);
+                        }
+                    }
+                } else if (e.getKind() == TaskEvent.Kind.ANALYZE && e.getTypeElement() != null
+                        && unanalyzed.remove(e.getTypeElement().getQualifiedName().toString())
+                        && unanalyzed.isEmpty()) {
+                    finishCompilation();
+                }
+            }
+        });
+    }
+
+    /**
+     * Shares {@code summaries} and the resolved effects in {@code effects} with the
+     * other compilations in the process that use them, instead of loading the
+     * summaries and resolving the effects of the classes they all see again; see
+     * {@link com.toddschiller.batch.BatchChecker}. Must be called before the
+     * checker is initialized.
+     */
+    public void share(EffectSummaries summaries, SharedEffects effects) {
+        this.sharedSummaries = summaries;
+        this.sharedEffects = effects;
+    }
+
+    /**
+     * Returns the summaries shared with other compilations, or <code>null</code>
+     * if the checker loads its own.
+     */
+    EffectSummaries getSharedSummaries() {
+        return sharedSummaries;
+    }
+
+    /**
+     * Returns the resolved effects shared with other compilations, or
+     * <code>null</code> if they are not shared.
+     */
+    SharedEffects getSharedEffects() {
+        return sharedEffects;
+    }
+
+    /**
+     * Returns the call graph of the methods whose effects are being inferred, or
+     * <code>null</code> if the checker is not inferring effects.
+     */
+    public InferenceGraph getInferenceGraph() {
+        return inference;
+    }
+
+    /**
+     * Returns the call graph of the methods reachable from {@link NoAllocRoot}
+     * methods, or <code>null</code> if the checker is not checking reachability.
+     */
+    public ReachabilityGraph getReachabilityGraph() {
+        return reachability;
+    }
+
+    StartupAnalysis getStartupAnalysis() {
+        return startup;
+    }
+
+    DispatchAnalysis getDispatchAnalysis() {
+        return dispatch;
+    }
+
+    /**
+     * Returns the allocations in loops, or <code>null</code> if the checker is not
+     * collecting them.
+     */
+    LoopAllocations getLoopAllocations() {
+        return loops;
+    }
+
+    /**
+     * Returns the suggested fixes, or <code>null</code> if the checker is not
+     * suggesting fixes.
+     */
+    SuggestedFixes getSuggestedFixes() {
+        return fixes;
+    }
+
+    /**
+     * Returns the resolved effects of the visited methods by {@link MethodKey}, or
+     * <code>null</code> if the checker is not exporting them.
+     */
+    Map<String, Effect> getExportedEffects() {
+        return exported;
+    }
+
+    /**
+     * Returns the statistics being collected, or <code>null</code> if the checker
+     * is not collecting statistics.
+     */
+    public CheckerStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public void typeProcess(TypeElement e, TreePath p) {
+        if (statistics == null) {
+            super.typeProcess(e, p);
+            return;
+        }
+
+        statistics.startClass(e.getQualifiedName().toString(),
+                processingEnv.getElementUtils().getPackageOf(e).getQualifiedName().toString(),
+                p.getCompilationUnit().getSourceFile().getName());
+        try {
+            super.typeProcess(e, p);
+        } finally {
+            statistics.finishClass();
+        }
+    }
+
+    /**
+     * Counts the violations reported for the statistics. The framework only
+     * prints the results that are not suppressed with {@link SuppressWarnings},
+     * so suppressed violations are not counted.
+     */
+    @Override
+    public void message(Diagnostic.Kind kind, Object source, String msgKey, Object... args) {
+        if (statistics != null && kind != Diagnostic.Kind.NOTE && CheckerStatistics.isViolation(msgKey)) {
+            String packageName = null;
+            if (source instanceof Element) {
+                packageName = processingEnv.getElementUtils().getPackageOf((Element) source).getQualifiedName()
+                        .toString();
+            }
+            statistics.violation(msgKey, packageName);
+        }
+        super.message(kind, source, msgKey, args);
+    }
+
+    /**
+     * Runs the checks that need all compilation units and writes the requested
+     * files, once the last class has been processed.
+     * <p>
+     * The framework only calls {@link #typeProcessingOver} if no errors were
+     * reported, and only for the first compilation in a process, so the checker
+     * listens for the last class itself; see {@link #setProcessingEnvironment}.
+     * Otherwise, the results would be lost whenever the checker reports an
+     * allocation as an error.
+     */
+    private void finishCompilation() {
+        if (reachability != null) {
+            reportReachableAllocations();
+        }
+        for (TypeElement type : startup.findUninitialized()) {
+            report(Result.failure("preinitialized.not.initialized", type), type);
+        }
+        for (DispatchAnalysis.Violation v : dispatch.findViolations(processingEnv.getTypeUtils())) {
+            report(Result.failure("dispatch.invalid.alloc", name(v.target), v.location, name(v.implementation),
+                    v.type.getSimpleName(), v.effect, v.callerEffect), v.caller);
+        }
+        if (inference != null) {
+            Path output = Paths.get(getOption(INFER_OPTION));
+            try {
+                writeInferredEffects(output);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to write inferred allocation effects to " + output + ": " + e.getMessage());
+            }
+        }
+        if (loops != null) {
+            reportLoopAllocations();
+        }
+        if (fixes != null) {
+            writeSuggestedFixes();
+        }
+        if (exported != null) {
+            Path output = Paths.get(getOption(EXPORT_OPTION));
+            try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                SummaryCompiler.format(exported, out);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to write allocation effects to " + output + ": " + e.getMessage());
+            }
+        }
+        if (statistics != null) {
+            Path output = Paths.get(getOption(STATS_OPTION));
+            try {
+                statistics.write(output);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to write allocation checker statistics to " + output + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the name of {@code method} for messages, e.g.,
+     * <code>Foo.bar(int)</code>.
+     */
+    private static String name(ExecutableElement method) {
+        return method.getEnclosingElement().getSimpleName() + "." + method;
+    }
+
+    /**
+     * Reports each allocation reachable from a root on the root, with the call
+     * chain from the root to the allocation.
+     */
+    private void reportReachableAllocations() {
+        for (ReachabilityGraph.Violation v : reachability.findViolations()) {
+            StringBuilder chain = new StringBuilder();
+            List<String> calls = v.chain;
+            for (int i = 1; i < calls.size(); i++) {
+                chain.append("\n    ").append(calls.get(i));
+            }
+            chain.append("\n    ").append(v.allocation);
+            if (v.location != null) {
+                chain.append(" at ").append(v.location);
+            }
+            report(Result.failure("root.invalid.alloc", calls.get(0), chain), v.root);
+        }
+    }
+
+    /**
+     * Writes the allocations in loops to the file given with
+     * <code>-Aalloc.loopReport</code>, or prints them as a note.
+     */
+    private void reportLoopAllocations() {
+        String file = getOption(LOOP_REPORT_OPTION);
+        if (file == null) {
+            StringWriter report = new StringWriter();
+            try {
+                loops.write(report);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, report.toString());
+            return;
+        }
+
+        Path output = Paths.get(file);
+        try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            loops.write(out);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write allocations in loops to " + output + ": " + e.getMessage());
+        }
+    }
+
+    private void writeSuggestedFixes() {
+        Path output = Paths.get(getOption(FIXES_OPTION));
+        try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            fixes.write(out);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write suggested fixes to " + output + ": " + e.getMessage());
+            return;
+        }
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "Wrote " + fixes.size() + " suggested fixes to " + output);
+    }
+
+    private void writeInferredEffects(Path output) throws IOException {
+        long start = System.nanoTime();
+        Map<String, Effect> effects = SccSolver.solve(inference, Runtime.getRuntime().availableProcessors());
+
+        // Only record methods that do not always allocate; MayAlloc is the default
+        Map<String, Effect> noAlloc = new TreeMap<String, Effect>();
+        for (Map.Entry<String, Effect> e : effects.entrySet()) {
+            if (!e.getValue().mayAlloc()) {
+                noAlloc.put(e.getKey(), e.getValue());
+            }
+        }
+
+        EffectSummaryWriter writer = new EffectSummaryWriter();
+        for (Map.Entry<String, Effect> e : noAlloc.entrySet()) {
+            writer.put(e.getKey(), e.getValue());
+        }
+        writer.write(output);
+        try (Writer text = Files.newBufferedWriter(Paths.get(output + ".txt"), StandardCharsets.UTF_8)) {
+            SummaryCompiler.format(noAlloc, text);
+        }
+
+        if (getLintOption("debugSpew", false)) {
+            System.err.println("Inferred " + noAlloc.size() + " of " + effects.size() + " methods not to allocate in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+}
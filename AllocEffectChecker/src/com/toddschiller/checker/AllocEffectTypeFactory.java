@@ -1,13 +1,31 @@
 package com.toddschiller.checker;
 
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
 
 import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 import org.checkerframework.common.basetype.BaseTypeChecker;
@@ -15,11 +33,25 @@ import org.checkerframework.framework.source.Result;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
 import org.checkerframework.framework.type.ListTreeAnnotator;
 import org.checkerframework.framework.type.TreeAnnotator;
+import org.checkerframework.javacutil.TreeUtils;
 
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
 import com.toddschiller.checker.qual.EffectType;
 import com.toddschiller.checker.qual.MayAlloc;
 import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoHeapAlloc;
+import com.toddschiller.checker.qual.OffHeapAllocator;
+import com.toddschiller.checker.qual.PolyAlloc;
+import com.toddschiller.checker.qual.PoolAcquire;
+import com.toddschiller.checker.qual.Preinitialized;
+import com.toddschiller.checker.summary.EffectCache;
+import com.toddschiller.checker.summary.EffectSummaries;
+import com.toddschiller.checker.summary.MethodKey;
+import com.toddschiller.checker.summary.SharedEffects;
 
 /**
  * A type factory that introduces the allocation type qualifiers
@@ -32,14 +64,83 @@ public class AllocEffectTypeFactory extends BaseAnnotatedTypeFactory {
 
     protected final boolean debugSpew;
 
+    /**
+     * The resolved effect of each method seen during this compilation; a method's
+     * effect depends only on its declaration and its supertypes, so it never changes
+     * once computed.
+     */
+    private final Map<ExecutableElement, Effect> declaredEffects = new HashMap<ExecutableElement, Effect>();
+
+    /**
+     * The methods declared by each type, bucketed by name and arity, so that
+     * override lookups only compare against plausible candidates.
+     */
+    private final Map<TypeElement, OverrideIndex> overrideIndexes = new HashMap<TypeElement, OverrideIndex>();
+
+    /**
+     * The single abstract method of each functional interface that a lambda has
+     * been converted to; <code>null</code> if the type is not a functional interface.
+     */
+    private final Map<TypeElement, ExecutableElement> functionalMethods = new HashMap<TypeElement, ExecutableElement>();
+
+    /**
+     * The effects of library methods, consulted for methods without an effect
+     * annotation.
+     */
+    private final EffectSummaries summaries;
+
+    /** Whether the effects of unannotated source methods are being inferred. */
+    private final boolean inferring;
+
+    /** Whether each method's effect is inferred; only used when inferring. */
+    private final Map<ExecutableElement, Boolean> inferredMethods = new HashMap<ExecutableElement, Boolean>();
+
+    /**
+     * The resolved effects persisted from previous compilations, or shared with the
+     * other compilations in the process, or <code>null</code> if there is no cache.
+     */
+    private EffectCache cache;
+
+    /** The types whose methods' effects have been resolved through the cache. */
+    private final Set<TypeElement> cachedTypes = new HashSet<TypeElement>();
+
+    /** Whether initializing each type may allocate. */
+    private final Map<TypeElement, Boolean> allocatingInitializers = new HashMap<TypeElement, Boolean>();
+
+    /** The statistics being collected, or <code>null</code>. */
+    private final CheckerStatistics statistics;
+
     public AllocEffectTypeFactory(BaseTypeChecker checker, boolean spew) {
         // use true for flow inference
         super(checker, false);
 
         debugSpew = spew;
+        summaries = loadSummaries(checker);
+        inferring = checker.getOption(AllocEffectChecker.INFER_OPTION) != null;
+        statistics = ((AllocEffectChecker) checker).getStatistics();
+
+        // Inference resolves source methods differently, so it does not use the cache
+        String cacheDir = checker.getOption(AllocEffectChecker.CACHE_OPTION);
+        SharedEffects shared = ((AllocEffectChecker) checker).getSharedEffects();
+        if ((cacheDir != null || shared != null) && !inferring) {
+            cache = new EffectCache(cacheDir != null ? Paths.get(cacheDir) : null, shared,
+                    summaries.getFingerprint(), elements, types);
+        }
         this.postInit();
     }
 
+    private static EffectSummaries loadSummaries(BaseTypeChecker checker) {
+        EffectSummaries shared = ((AllocEffectChecker) checker).getSharedSummaries();
+        if (shared != null) {
+            return shared;
+        }
+        try {
+            return EffectSummaries.load(checker.getOption(AllocEffectChecker.SUMMARIES_OPTION));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to load allocation effect summaries: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     protected TreeAnnotator createTreeAnnotator() {
         return new ListTreeAnnotator(super.createTreeAnnotator(), new AllocEffectsTreeAnnotator());
@@ -54,28 +155,355 @@ public class AllocEffectTypeFactory extends BaseAnnotatedTypeFactory {
             TypeElement overriderClass = (TypeElement) overrider.getEnclosingElement();
             TypeElement elem = (TypeElement) ((DeclaredType) parentType).asElement();
 
-            for (Element e : elem.getEnclosedElements()) {
-                if (e.getKind() == ElementKind.METHOD || e.getKind() == ElementKind.CONSTRUCTOR) {
-                    ExecutableElement ex = (ExecutableElement) e;
-                    boolean overrides = elements.overrides(overrider, ex, overriderClass);
-                    if (overrides) {
-                        return ex;
-                    }
+            for (ExecutableElement ex : getOverrideIndex(elem).candidates(overrider)) {
+                if (statistics != null) {
+                    statistics.overrideCompared();
+                }
+                boolean overrides = elements.overrides(overrider, ex, overriderClass);
+                if (overrides) {
+                    return ex;
                 }
             }
         }
         return null;
     }
 
+    private OverrideIndex getOverrideIndex(TypeElement type) {
+        OverrideIndex index = overrideIndexes.get(type);
+        if (index == null) {
+            index = new OverrideIndex(type);
+            overrideIndexes.put(type, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the single abstract method of the functional interface
+     * {@code functionalType}, or <code>null</code> if it cannot be determined.
+     */
+    public ExecutableElement findFunctionalMethod(TypeMirror functionalType) {
+        if (functionalType == null || functionalType.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+
+        TypeElement type = (TypeElement) ((DeclaredType) functionalType).asElement();
+        if (functionalMethods.containsKey(type)) {
+            return functionalMethods.get(type);
+        }
+
+        ExecutableElement result = null;
+        for (Element member : elements.getAllMembers(type)) {
+            if (member.getKind() == ElementKind.METHOD && member.getModifiers().contains(Modifier.ABSTRACT)
+                    && !isObjectMethod((ExecutableElement) member, type)) {
+                result = (ExecutableElement) member;
+                break;
+            }
+        }
+        functionalMethods.put(type, result);
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code method} redeclares a public method of
+     * {@link Object}, e.g., {@link java.util.Comparator#equals}, which does not
+     * count towards the abstract methods of a functional interface.
+     */
+    private boolean isObjectMethod(ExecutableElement method, TypeElement type) {
+        TypeElement object = elements.getTypeElement("java.lang.Object");
+        for (Element e : object.getEnclosedElements()) {
+            if (e.getKind() == ElementKind.METHOD && elements.overrides(method, (ExecutableElement) e, type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public Effect getDeclaredEffect(ExecutableElement methodElt) {
-        AnnotationMirror targetNoAlloc = getDeclAnnotation(methodElt, NoAlloc.class);
-        AnnotationMirror targetMayAlloc = getDeclAnnotation(methodElt, MayAlloc.class);
+        if (statistics != null) {
+            statistics.effectLookedUp();
+        }
+        Effect effect = declaredEffects.get(methodElt);
+        if (effect == null) {
+            if (cache != null && methodElt.getEnclosingElement() instanceof TypeElement) {
+                TypeElement owner = (TypeElement) methodElt.getEnclosingElement();
+                if (cachedTypes.add(owner)) {
+                    resolveThroughCache(owner);
+                    effect = declaredEffects.get(methodElt);
+                }
+            }
+            if (effect == null) {
+                effect = computeDeclaredEffect(methodElt);
+                declaredEffects.put(methodElt, effect);
+            }
+        }
+        return effect;
+    }
 
-        if (targetNoAlloc != null) {
-            return new Effect(NoAlloc.class);
-        } else if (targetMayAlloc != null) {
+    /**
+     * Resolves the effects of all methods declared by {@code type}, loading them
+     * from the cache if its entry is current and replacing the entry otherwise.
+     */
+    private void resolveThroughCache(TypeElement type) {
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        methods.addAll(ElementFilter.methodsIn(type.getEnclosedElements()));
+        methods.addAll(ElementFilter.constructorsIn(type.getEnclosedElements()));
+
+        try {
+            Map<String, Effect> cached = cache.load(type);
+            if (cached != null) {
+                for (ExecutableElement method : methods) {
+                    Effect effect = cached.get(MethodKey.of(method, elements, types));
+                    if (effect != null) {
+                        declaredEffects.put(method, effect);
+                    }
+                }
+                return;
+            }
+
+            Map<String, Effect> computed = new HashMap<String, Effect>(methods.size() * 2);
+            for (ExecutableElement method : methods) {
+                Effect effect = computeDeclaredEffect(method);
+                declaredEffects.put(method, effect);
+                computed.put(MethodKey.of(method, elements, types), effect);
+            }
+            cache.store(type, computed);
+        } catch (IOException e) {
+            // The cache only saves work, so continue without it
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Disabling the allocation effect cache: " + e.getMessage());
+            cache = null;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the effect of {@code methodElt} is being
+     * inferred: when inferring, these are the concrete methods in the compiled
+     * sources that have no effect annotation and do not inherit a more
+     * restrictive effect than {@link MayAlloc}.
+     */
+    public boolean isInferred(ExecutableElement methodElt) {
+        if (!inferring) {
+            return false;
+        }
+        Boolean inferred = inferredMethods.get(methodElt);
+        if (inferred == null) {
+            inferred = isSourceMethod(methodElt) && !methodElt.getModifiers().contains(Modifier.ABSTRACT)
+                    && !methodElt.getModifiers().contains(Modifier.NATIVE)
+                    && getExplicitEffect(methodElt) == null
+                    && getDeclaredEffect(methodElt).mayAlloc();
+            inferredMethods.put(methodElt, inferred);
+        }
+        return inferred;
+    }
+
+    /**
+     * Returns <code>true</code> if calls to {@code methodElt} are followed when
+     * checking reachability from {@link com.toddschiller.checker.qual.NoAllocRoot}
+     * methods instead of being checked against its effect: these are the
+     * non-native methods in the compiled sources whose effect permits
+     * allocations.
+     */
+    public boolean isTraced(ExecutableElement methodElt) {
+        return isSourceMethod(methodElt) && !methodElt.getModifiers().contains(Modifier.NATIVE)
+                && getDeclaredEffect(methodElt).mayAlloc();
+    }
+
+    private boolean isSourceMethod(ExecutableElement methodElt) {
+        return trees.getTree(methodElt) != null;
+    }
+
+    /**
+     * Returns the effect {@code methodElt} is annotated with, or <code>null</code>
+     * if it has no effect annotation. If the method has several, which is an
+     * error, the most restrictive is returned.
+     */
+    public Effect getExplicitEffect(ExecutableElement methodElt) {
+        for (Class<? extends Annotation> annotation : Effect.ANNOTATIONS) {
+            if (getDeclAnnotation(methodElt, annotation) != null) {
+                return new Effect(annotation);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the effect of calling {@code methodElt}: its declared effect, except
+     * that an {@link OffHeapAllocator} method only allocates off the heap, and
+     * acquiring an object from a {@link PoolAcquire} method only allocates during
+     * warmup.
+     */
+    public Effect getCallEffect(ExecutableElement methodElt) {
+        Effect effect = getDeclaredEffect(methodElt);
+        if (isOffHeapAllocator(methodElt)) {
+            effect = bound(effect, new Effect(NoHeapAlloc.class));
+        }
+        if (isPoolAcquire(methodElt)) {
+            effect = bound(effect, new Effect(NoAllocAfterWarmup.class));
+        }
+        return effect;
+    }
+
+    /**
+     * Returns {@code effect}, or {@code bound} if {@code effect} is not a
+     * subeffect of it. Unlike the greatest lower bound, bounding
+     * {@link NoHeapAlloc} by {@link NoAllocAfterWarmup} does not yield
+     * {@link com.toddschiller.checker.qual.NoAlloc}.
+     */
+    private static Effect bound(Effect effect, Effect bound) {
+        return effect.isSubeffectOf(bound) ? effect : bound;
+    }
+
+    public boolean isPolyAlloc(ExecutableElement methodElt) {
+        return getDeclAnnotation(methodElt, PolyAlloc.class) != null;
+    }
+
+    /**
+     * Returns the effect that the type of the variable {@code variable} is
+     * annotated with, e.g., <code>NoAlloc</code> for a parameter declared as
+     * <code>@NoAlloc IntConsumer action</code>, or <code>null</code> if its type
+     * has no effect annotation.
+     */
+    public Effect getTypeEffect(Element variable) {
+        for (AnnotationMirror annotation : variable.asType().getAnnotationMirrors()) {
+            Element annotationType = annotation.getAnnotationType().asElement();
+            for (Class<? extends Annotation> effect : Effect.ANNOTATIONS) {
+                if (((TypeElement) annotationType).getQualifiedName().contentEquals(effect.getCanonicalName())) {
+                    return new Effect(effect);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code param} is a polymorphic parameter of a
+     * {@link PolyAlloc} method: a parameter of interface type whose type has no
+     * effect annotation.
+     */
+    public boolean isPolymorphicParameter(Element param) {
+        if (param.getKind() != ElementKind.PARAMETER || !(param.getEnclosingElement() instanceof ExecutableElement)
+                || !isPolyAlloc((ExecutableElement) param.getEnclosingElement())) {
+            return false;
+        }
+        TypeMirror type = param.asType();
+        return type.getKind() == TypeKind.DECLARED
+                && ((DeclaredType) type).asElement().getKind() == ElementKind.INTERFACE && getTypeEffect(param) == null;
+    }
+
+    /**
+     * Returns the effect of invoking the abstract methods of the interface
+     * {@code interfaceType} on a value of type {@code valueType}: the least upper
+     * bound of the call effects of the methods that implement them in
+     * {@code valueType}. Returns <code>null</code> if {@code interfaceType} has no
+     * abstract methods, and {@link MayAlloc} if either type is not a class or
+     * interface type, e.g., a type variable.
+     */
+    public Effect getImplementationEffect(TypeMirror valueType, TypeMirror interfaceType) {
+        if (valueType.getKind() != TypeKind.DECLARED || interfaceType.getKind() != TypeKind.DECLARED) {
             return new Effect(MayAlloc.class);
         }
+        TypeElement valueElt = (TypeElement) ((DeclaredType) valueType).asElement();
+        TypeElement interfaceElt = (TypeElement) ((DeclaredType) interfaceType).asElement();
+
+        Effect result = null;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(interfaceElt))) {
+            if (method.getModifiers().contains(Modifier.ABSTRACT) && !isObjectMethod(method, interfaceElt)) {
+                Effect effect = getCallEffect(findImplementation(valueElt, method));
+                result = (result == null ? effect : Effect.max(result, effect));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most specific method of {@code type} that is or overrides
+     * {@code method}, or {@code method} if there is none.
+     */
+    private ExecutableElement findImplementation(TypeElement type, ExecutableElement method) {
+        ExecutableElement result = method;
+        for (ExecutableElement candidate : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (candidate.getSimpleName().equals(method.getSimpleName())
+                    && elements.overrides(candidate, result, type)) {
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    public boolean isOffHeapAllocator(ExecutableElement methodElt) {
+        return getDeclAnnotation(methodElt, OffHeapAllocator.class) != null;
+    }
+
+    public boolean isPoolAcquire(ExecutableElement methodElt) {
+        return getDeclAnnotation(methodElt, PoolAcquire.class) != null;
+    }
+
+    public boolean isPreinitialized(TypeElement type) {
+        return getDeclAnnotation(type, Preinitialized.class) != null;
+    }
+
+    /**
+     * Returns <code>true</code> if initializing {@code type} may allocate: it or a
+     * superclass is in the compiled sources and has a static initializer block,
+     * enum constants, or a static field whose initializer is neither a constant
+     * nor <code>null</code>. Classes that are not compiled from source are assumed
+     * to be initialized when the program starts.
+     */
+    public boolean hasAllocatingInitializer(TypeElement type) {
+        Boolean result = allocatingInitializers.get(type);
+        if (result == null) {
+            TypeMirror superclass = type.getSuperclass();
+            result = hasOwnAllocatingInitializer(type) || (superclass.getKind() == TypeKind.DECLARED
+                    && hasAllocatingInitializer((TypeElement) ((DeclaredType) superclass).asElement()));
+            allocatingInitializers.put(type, result);
+        }
+        return result;
+    }
+
+    private boolean hasOwnAllocatingInitializer(TypeElement type) {
+        Tree tree = trees.getTree(type);
+        if (!(tree instanceof ClassTree)) {
+            return false;
+        } else if (type.getKind() == ElementKind.ENUM) {
+            // The constants and the array returned by values() are allocated
+            return true;
+        }
+
+        for (Tree member : ((ClassTree) tree).getMembers()) {
+            if (member.getKind() == Tree.Kind.BLOCK && ((BlockTree) member).isStatic()) {
+                return true;
+            } else if (member.getKind() == Tree.Kind.VARIABLE) {
+                VariableTree variable = (VariableTree) member;
+                VariableElement field = TreeUtils.elementFromDeclaration(variable);
+                if (field.getModifiers().contains(Modifier.STATIC) && variable.getInitializer() != null
+                        && field.getConstantValue() == null
+                        && variable.getInitializer().getKind() != Tree.Kind.NULL_LITERAL) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Effect computeDeclaredEffect(ExecutableElement methodElt) {
+        if (statistics != null) {
+            statistics.effectResolved();
+        }
+        Effect explicit = getExplicitEffect(methodElt);
+        if (explicit != null) {
+            return explicit;
+        } else if (isPolyAlloc(methodElt)) {
+            // The body of a polymorphic method may not allocate by default
+            return new Effect(NoAlloc.class);
+        }
+
+        // When inferring, a summary entry for a source method may be stale
+        if (!inferring || !isSourceMethod(methodElt)) {
+            Effect summarized = summaries.lookup(MethodKey.of(methodElt, elements, types));
+            if (summarized != null) {
+                return summarized;
+            }
+        }
 
         TypeElement targetClassElt = (TypeElement) methodElt.getEnclosingElement();
 
@@ -84,6 +512,62 @@ public class AllocEffectTypeFactory extends BaseAnnotatedTypeFactory {
         return (r != null ? Effect.min(r.min, r.max) : new Effect(MayAlloc.class));
     }
 
+    /**
+     * Returns the methods that {@code overrider} overrides in its superclasses and
+     * direct superinterfaces.
+     */
+    public Set<ExecutableElement> findOverriddenMethods(ExecutableElement overrider) {
+        TypeElement declaringType = (TypeElement) overrider.getEnclosingElement();
+        Set<ExecutableElement> result = new LinkedHashSet<ExecutableElement>();
+
+        int depth = 0;
+        TypeMirror superclass = declaringType.getSuperclass();
+        while (superclass != null && superclass.getKind() != TypeKind.NONE) {
+            ExecutableElement overridden = findJavaOverride(overrider, superclass);
+            if (overridden != null) {
+                result.add(overridden);
+            }
+            superclass = ((TypeElement) ((DeclaredType) superclass).asElement()).getSuperclass();
+            depth++;
+        }
+
+        List<AnnotatedTypeMirror.AnnotatedDeclaredType> direct = fromElement(declaringType).directSuperTypes();
+        for (AnnotatedTypeMirror.AnnotatedDeclaredType ty : direct) {
+            ExecutableElement overridden = findJavaOverride(overrider, ty.getUnderlyingType());
+            if (overridden != null) {
+                result.add(overridden);
+            }
+        }
+        if (statistics != null) {
+            statistics.hierarchyWalked(depth + direct.size(), depth);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the methods that {@code overrider} overrides in all of its
+     * supertypes, including the superinterfaces of its superinterfaces.
+     */
+    public Set<ExecutableElement> findAllOverriddenMethods(ExecutableElement overrider) {
+        TypeElement declaringType = (TypeElement) overrider.getEnclosingElement();
+        Set<ExecutableElement> result = new LinkedHashSet<ExecutableElement>();
+
+        Set<Element> visited = new HashSet<Element>();
+        Deque<TypeMirror> pending = new ArrayDeque<TypeMirror>(types.directSupertypes(declaringType.asType()));
+        while (!pending.isEmpty()) {
+            TypeMirror supertype = pending.remove();
+            if (supertype.getKind() != TypeKind.DECLARED || !visited.add(((DeclaredType) supertype).asElement())) {
+                continue;
+            }
+            ExecutableElement overridden = findJavaOverride(overrider, supertype);
+            if (overridden != null) {
+                result.add(overridden);
+            }
+            pending.addAll(types.directSupertypes(supertype));
+        }
+        return result;
+    }
+
     public Effect.EffectRange findInheritedEffectRange(TypeElement declaringType, ExecutableElement overridingMethod) {
         // Only the visitMethod call should pass true for warnings
         return findInheritedEffectRange(declaringType, overridingMethod, false, null);
@@ -93,69 +577,65 @@ public class AllocEffectTypeFactory extends BaseAnnotatedTypeFactory {
             boolean issueConflictWarning, Tree errorNode) {
 
         assert (declaringType != null);
-        ExecutableElement alloc_override = null;
-        ExecutableElement safe_override = null;
 
-        // Whether the overriding method is declared with MayAlloc
-        boolean isAlloc = getDeclAnnotation(overridingMethod, MayAlloc.class) != null
-                && getDeclAnnotation(overridingMethod, NoAlloc.class) == null;
+        // The bounds of the effects of the overridden methods, and the methods
+        // that last lowered and raised them
+        ExecutableElement minOverride = null;
+        ExecutableElement maxOverride = null;
+        Effect min = null;
+        Effect max = null;
 
+        // The effect the overriding method is declared with, if any
+        Effect declared = getExplicitEffect(overridingMethod);
+
+        List<TypeMirror> supertypes = new ArrayList<TypeMirror>();
         TypeMirror superclass = declaringType.getSuperclass();
         while (superclass != null && superclass.getKind() != TypeKind.NONE) {
-            ExecutableElement overrides = findJavaOverride(overridingMethod, superclass);
-            if (overrides != null) {
-                Effect eff = getDeclaredEffect(overrides);
-                assert (eff != null);
-                if (eff.noAlloc()) {
-                    // found a no_alloc override
-                    safe_override = overrides;
-                    if (isAlloc && issueConflictWarning)
-                        checker.report(Result.failure("override.effect.invalid", overridingMethod, declaringType,
-                                safe_override, superclass), errorNode);
-                } else if (eff.mayAlloc()) {
-                    // found an may_alloc override
-                    alloc_override = overrides;
-                } else {
-                    assert false;
-                }
-            }
+            supertypes.add(superclass);
             DeclaredType decl = (DeclaredType) superclass;
             superclass = ((TypeElement) decl.asElement()).getSuperclass();
         }
-
+        int depth = supertypes.size();
         AnnotatedTypeMirror.AnnotatedDeclaredType annoDecl = fromElement(declaringType);
         for (AnnotatedTypeMirror.AnnotatedDeclaredType ty : annoDecl.directSuperTypes()) {
-            ExecutableElement overrides = findJavaOverride(overridingMethod, ty.getUnderlyingType());
-            if (overrides != null) {
-                Effect eff = getDeclaredEffect(overrides);
-                if (eff.noAlloc()) {
-                    // found a no_alloc override
-                    safe_override = overrides;
-                    if (isAlloc && issueConflictWarning)
-                        checker.report(Result.failure("override.effect.invalid", overridingMethod, declaringType,
-                                safe_override, ty), errorNode);
-                } else if (eff.noAlloc()) {
-                    // found a may_alloc override
-                    alloc_override = overrides;
-                } else {
-                    assert false;
-                }
+            supertypes.add(ty.getUnderlyingType());
+        }
+        if (statistics != null) {
+            statistics.hierarchyWalked(supertypes.size(), depth);
+        }
+
+        for (TypeMirror supertype : supertypes) {
+            ExecutableElement overrides = findJavaOverride(overridingMethod, supertype);
+            if (overrides == null) {
+                continue;
+            }
+            Effect eff = getDeclaredEffect(overrides);
+            assert (eff != null);
+
+            // An override may not have a less restrictive effect than the method it overrides
+            if (declared != null && !declared.isSubeffectOf(eff) && issueConflictWarning) {
+                checker.report(Result.failure("override.effect.invalid", overridingMethod, declaringType,
+                        overrides, supertype), errorNode);
+            }
+
+            if (min == null || !min.isSubeffectOf(eff)) {
+                min = (min == null ? eff : Effect.min(min, eff));
+                minOverride = overrides;
+            }
+            if (max == null || !eff.isSubeffectOf(max)) {
+                max = (max == null ? eff : Effect.max(max, eff));
+                maxOverride = overrides;
             }
         }
 
-        if (alloc_override != null && safe_override != null && issueConflictWarning) {
+        if (min != null && !min.equals(max) && issueConflictWarning) {
             // There may be more than two parent methods, but for now it's
             // enough to know there are at least 2 in conflict
             checker.report(Result.warning("override.effect.warning.inheritance", overridingMethod, declaringType,
-                    alloc_override.toString(), alloc_override.getEnclosingElement().asType().toString(),
-                    safe_override.toString(), safe_override.getEnclosingElement().asType().toString()), errorNode);
+                    maxOverride.toString(), maxOverride.getEnclosingElement().asType().toString(),
+                    minOverride.toString(), minOverride.getEnclosingElement().asType().toString()), errorNode);
         }
 
-        Effect min = (safe_override != null ? new Effect(NoAlloc.class) : (alloc_override != null ? new Effect(
-                MayAlloc.class) : null));
-        Effect max = (alloc_override != null ? new Effect(MayAlloc.class) : (safe_override != null ? new Effect(
-                NoAlloc.class) : null));
-
         if (debugSpew){
             System.err.println("Found " + declaringType + "." + overridingMethod + " to have inheritance pair (" + min
                     + "," + max + ")");
@@ -168,6 +648,40 @@ public class AllocEffectTypeFactory extends BaseAnnotatedTypeFactory {
         }
     }
 
+    /**
+     * The methods declared directly by a type, bucketed by name and number of
+     * parameters. Only methods in the same bucket can be overridden by a given
+     * method, so {@link javax.lang.model.util.Elements#overrides} is only consulted for those.
+     */
+    private static final class OverrideIndex {
+        private final Map<String, List<ExecutableElement>> buckets = new HashMap<String, List<ExecutableElement>>();
+
+        OverrideIndex(TypeElement type) {
+            for (Element e : type.getEnclosedElements()) {
+                // Constructors are never overridden
+                if (e.getKind() == ElementKind.METHOD) {
+                    ExecutableElement ex = (ExecutableElement) e;
+                    String key = key(ex);
+                    List<ExecutableElement> bucket = buckets.get(key);
+                    if (bucket == null) {
+                        bucket = new ArrayList<ExecutableElement>(1);
+                        buckets.put(key, bucket);
+                    }
+                    bucket.add(ex);
+                }
+            }
+        }
+
+        List<ExecutableElement> candidates(ExecutableElement overrider) {
+            List<ExecutableElement> bucket = buckets.get(key(overrider));
+            return bucket != null ? bucket : Collections.<ExecutableElement> emptyList();
+        }
+
+        private static String key(ExecutableElement method) {
+            return method.getSimpleName() + "/" + method.getParameters().size();
+        }
+    }
+
     private class AllocEffectsTreeAnnotator extends TreeAnnotator {
         // We don't need to annotate the tree with type annotations because the EffectType
         // is the default annotation.
@@ -1,22 +1,68 @@
 package com.toddschiller.checker;
 
-import javax.lang.model.element.AnnotationMirror;
+import java.lang.annotation.Annotation;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
 import org.checkerframework.framework.source.Result;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclaredType;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.javacutil.InternalUtils;
 import org.checkerframework.javacutil.TreeUtils;
+import org.checkerframework.javacutil.TypesUtils;
 
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ReturnTree;
 import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.toddschiller.checker.infer.InferenceGraph;
+import com.toddschiller.checker.qual.ColdPath;
 import com.toddschiller.checker.qual.MayAlloc;
 import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoAllocRoot;
+import com.toddschiller.checker.qual.PolyAlloc;
+import com.toddschiller.checker.qual.Preinitialized;
+import com.toddschiller.checker.qual.Startup;
+import com.toddschiller.checker.reach.ReachabilityGraph;
+import com.toddschiller.checker.summary.MethodKey;
 
 /**
  * Enforce that no memory allocations are performed in methods marked
@@ -31,10 +77,74 @@ public final class AllocEffectVisitor extends BaseTypeVisitor<AllocEffectTypeFac
 
     private final boolean debugSpew;
 
+    /** Whether allocations on paths that always throw are allowed. */
+    private final boolean coldPathLint;
+
+    /**
+     * The allocations in loops, collected in all methods, or <code>null</code>
+     * unless running with <code>-Alint=loopAlloc</code>.
+     */
+    private final LoopAllocations loops;
+
+    /**
+     * Suggests fixes for the reported allocations, or <code>null</code> unless
+     * running with <code>-Aalloc.fixes</code>.
+     */
+    private final FixSuggester fixes;
+
+    /**
+     * The resolved effects of the visited methods, or <code>null</code> unless
+     * running with <code>-Aalloc.export</code>.
+     */
+    private final Map<String, Effect> exported;
+
+    private final ColdPathAnalysis coldPaths = new ColdPathAnalysis();
+
+    /** The length at which source code in allocation descriptions is cut off. */
+    private static final int MAX_SOURCE_LENGTH = 60;
+
+    /**
+     * The methods enclosing the current tree, innermost first. The effect of a
+     * method is resolved once when visitation enters it instead of once for every
+     * call site in its body.
+     */
+    private final Deque<Caller> callers = new ArrayDeque<Caller>();
+
+    /**
+     * The call graph of the methods whose effects are inferred, or
+     * <code>null</code> if the checker is not inferring effects.
+     */
+    private final InferenceGraph inference;
+
+    /**
+     * The call graph of the methods reachable from {@link NoAllocRoot} methods, or
+     * <code>null</code> if the checker is not checking reachability.
+     */
+    private final ReachabilityGraph reachability;
+
+    /** The classes initialized by each method, to verify {@link Preinitialized} classes. */
+    private final StartupAnalysis startup;
+
+    /** The implementations of interface methods and the calls through interfaces. */
+    private final DispatchAnalysis dispatch;
+
+    /** The statistics being collected, or <code>null</code>. */
+    private final CheckerStatistics statistics;
+
     public AllocEffectVisitor(BaseTypeChecker checker) {
         super(checker);
 
         debugSpew = checker.getLintOption("debugSpew", false);
+        coldPathLint = checker.getLintOption("coldPath", false);
+        inference = ((AllocEffectChecker) checker).getInferenceGraph();
+        reachability = ((AllocEffectChecker) checker).getReachabilityGraph();
+        startup = ((AllocEffectChecker) checker).getStartupAnalysis();
+        dispatch = ((AllocEffectChecker) checker).getDispatchAnalysis();
+        statistics = ((AllocEffectChecker) checker).getStatistics();
+        loops = ((AllocEffectChecker) checker).getLoopAllocations();
+        SuggestedFixes suggested = ((AllocEffectChecker) checker).getSuggestedFixes();
+        fixes = suggested != null ? new FixSuggester(suggested, positions, types, elements) : null;
+        exported = ((AllocEffectChecker) checker).getExportedEffects();
 
         if (debugSpew){
             System.err.println("Running AllocEffectChecker");
@@ -62,72 +172,937 @@ public final class AllocEffectVisitor extends BaseTypeVisitor<AllocEffectTypeFac
     }
 
     /**
-     * Emit an error if {@code targerEffect} is a supertype of {@code callerEffect}.
+     * Emit an error if {@code targetEffect} is not a subeffect of {@code callerEffect}.
+     * If the effect of the enclosing method is being inferred, record
+     * {@code targetEffect} as a lower bound of its effect instead; if the
+     * enclosing method is traced for reachability, record an allocation site.
      */
     private void checkEffect(Effect callerEffect, Effect targetEffect, Tree node) {
         if (debugSpew) {
             System.err.println("Caller effect: " + callerEffect + " Target effect: " + targetEffect);
         }
+        recordLoopAllocation(node, targetEffect, "call.invalid.alloc");
+
+        String inferredKey = getInferredCallerKey();
+        if (inferredKey == null && targetEffect.isSubeffectOf(callerEffect)) {
+            return;
+        }
+        targetEffect = lowerForWarmup(targetEffect);
+        if ((inferredKey == null && targetEffect.isSubeffectOf(callerEffect)) || isColdPath()) {
+            return;
+        }
 
-        if (targetEffect.compareTo(callerEffect) > 0) {
-            // The target effect is a supertype of the effect of the enclosing method
+        if (inferredKey != null) {
+            inference.require(inferredKey, targetEffect);
+        } else if (getTracedCallerKey() != null) {
+            recordAllocation(node, targetEffect, "call.invalid.alloc");
+        } else {
+            // The target effect is not a subeffect of the effect of the enclosing method
             checker.report(Result.failure("call.invalid.alloc", targetEffect, callerEffect), node);
+            if (fixes != null) {
+                fixes.suggest(node, "call.invalid.alloc", getCurrentPath());
+            }
         }
     }
 
+    /**
+     * Emit the error {@code messageKey} if the effect of the enclosing method does
+     * not permit allocations, or allocations during warmup if the allocation
+     * lazily initializes a field. The effect of the enclosing method is appended
+     * to {@code args} as the last message argument.
+     */
+    private void checkAllocation(Tree node, String messageKey, Object... args) {
+        checkAllocation(node, new Effect(MayAlloc.class), messageKey, args);
+    }
+
+    /**
+     * Emit the error {@code messageKey} if the effect of the enclosing method does
+     * not permit an allocation that requires {@code effect}.
+     */
+    private void checkAllocation(Tree node, Effect effect, String messageKey, Object... args) {
+        Effect callerEffect = getCallerEffect();
+
+        if (debugSpew) {
+            System.err.println("Caller effect: " + callerEffect + " Implicit allocation: " + messageKey);
+        }
+        recordLoopAllocation(node, effect, messageKey);
+
+        String inferredKey = getInferredCallerKey();
+        if (inferredKey == null && effect.isSubeffectOf(callerEffect)) {
+            return;
+        }
+        Effect allocationEffect = lowerForWarmup(effect);
+        if ((inferredKey == null && allocationEffect.isSubeffectOf(callerEffect)) || isColdPath()) {
+            return;
+        }
+
+        if (inferredKey != null) {
+            inference.require(inferredKey, allocationEffect);
+        } else if (getTracedCallerKey() != null) {
+            recordAllocation(node, allocationEffect, messageKey);
+        } else {
+            Object[] msgArgs = Arrays.copyOf(args, args.length + 1);
+            msgArgs[args.length] = callerEffect;
+            checker.report(Result.failure(messageKey, msgArgs), node);
+            if (fixes != null) {
+                fixes.suggest(node, messageKey, getCurrentPath());
+            }
+        }
+    }
+
+    /**
+     * Returns the effect of the method enclosing the current tree. Code outside of
+     * any method, e.g., field initializers, is not limited.
+     */
+    private Effect getCallerEffect() {
+        Caller caller = callers.peek();
+        return caller != null ? caller.effect : new Effect(MayAlloc.class);
+    }
+
+    /**
+     * Returns the {@link MethodKey} of the method enclosing the current tree if its
+     * effect is being inferred, and <code>null</code> otherwise.
+     */
+    private String getInferredCallerKey() {
+        Caller caller = callers.peek();
+        return caller != null ? caller.inferredKey : null;
+    }
+
+    /**
+     * Returns the method declaration enclosing the current tree, or
+     * <code>null</code> if the tree is not in a method.
+     */
+    private ExecutableElement getCurrentDeclaration() {
+        Caller caller = callers.peek();
+        return caller != null ? caller.declaration : null;
+    }
+
+    /**
+     * Checks accessing the static member {@code member} (or the constructor) of a
+     * class, which initializes the class if it has not been initialized yet. The
+     * initializer allocates once, so it requires {@link NoAllocAfterWarmup}.
+     */
+    private void checkClassInitialization(Tree node, Element member) {
+        if (!(member.getEnclosingElement() instanceof TypeElement)) {
+            return;
+        }
+        TypeElement type = (TypeElement) member.getEnclosingElement();
+
+        ExecutableElement declaration = getCurrentDeclaration();
+        if (declaration != null) {
+            startup.addInitialization(declaration, type);
+        }
+
+        if (isAllocationRestricted() && member.getKind() != ElementKind.CONSTRUCTOR && !isInitialized(type)
+                && !atypeFactory.isPreinitialized(type) && atypeFactory.hasAllocatingInitializer(type)) {
+            checkAllocation(node, new Effect(NoAllocAfterWarmup.class), "clinit.invalid.alloc", type);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if {@code type} has been initialized when the
+     * current tree runs: it is the class declaring the enclosing method or one of
+     * its superclasses.
+     */
+    private boolean isInitialized(TypeElement type) {
+        ExecutableElement declaration = getCurrentDeclaration();
+        if (declaration == null) {
+            return false;
+        }
+        TypeMirror t = declaration.getEnclosingElement().asType();
+        while (t.getKind() == TypeKind.DECLARED) {
+            TypeElement current = (TypeElement) ((DeclaredType) t).asElement();
+            if (current.equals(type)) {
+                return true;
+            }
+            t = current.getSuperclass();
+        }
+        return false;
+    }
+
+    /**
+     * Checks a reference to {@code element} if it is a static field that is not a
+     * constant, which initializes its class.
+     */
+    private void checkStaticField(Tree node, Element element) {
+        if (element != null && element.getKind() == ElementKind.FIELD
+                && element.getModifiers().contains(Modifier.STATIC)
+                && ((VariableElement) element).getConstantValue() == null) {
+            checkClassInitialization(node, element);
+        }
+    }
+
+    /**
+     * Records the class that a call to {@code Class.forName} with a literal name,
+     * or to {@code MethodHandles.Lookup.ensureInitialized} with a class literal,
+     * initializes.
+     */
+    private void recordReflectiveInitialization(ExecutableElement targetElt, MethodInvocationTree node) {
+        ExecutableElement declaration = getCurrentDeclaration();
+        if (declaration == null || node.getArguments().isEmpty()) {
+            return;
+        }
+
+        String owner = ((TypeElement) targetElt.getEnclosingElement()).getQualifiedName().toString();
+        String name = targetElt.getSimpleName().toString();
+        ExpressionTree arg = node.getArguments().get(0);
+        Element initialized = null;
+        if (owner.equals("java.lang.Class") && name.equals("forName")
+                && arg.getKind() == Tree.Kind.STRING_LITERAL) {
+            // Approximates the binary name of a nested class by its canonical name
+            initialized = elements.getTypeElement(((String) ((LiteralTree) arg).getValue()).replace('$', '.'));
+        } else if (owner.equals("java.lang.invoke.MethodHandles.Lookup") && name.equals("ensureInitialized")
+                && arg.getKind() == Tree.Kind.MEMBER_SELECT
+                && ((MemberSelectTree) arg).getIdentifier().contentEquals("class")) {
+            initialized = TreeUtils.elementFromUse(((MemberSelectTree) arg).getExpression());
+        }
+        if (initialized instanceof TypeElement) {
+            startup.addInitialization(declaration, (TypeElement) initialized);
+        }
+    }
+
+    /**
+     * Returns the {@link MethodKey} of the method enclosing the current tree if it
+     * is traced for reachability from {@link NoAllocRoot} methods, and
+     * <code>null</code> otherwise.
+     */
+    private String getTracedCallerKey() {
+        Caller caller = callers.peek();
+        return caller != null ? caller.tracedKey : null;
+    }
+
+    /**
+     * Records the allocation {@code node}, reported with {@code messageKey} in
+     * methods limited by their own effect, as a site of the traced enclosing
+     * method that requires {@code effect}.
+     */
+    private void recordAllocation(Tree node, Effect effect, String messageKey) {
+        reachability.addAllocation(getTracedCallerKey(), effect, describe(node, effect, messageKey), location(node));
+    }
+
+    /**
+     * Returns the description of the allocation {@code node}, which requires
+     * {@code effect} and is reported with {@code messageKey}.
+     */
+    private static String describe(Tree node, Effect effect, String messageKey) {
+        String source = node.toString().replaceAll("\\s+", " ");
+        if (source.length() > MAX_SOURCE_LENGTH) {
+            source = source.substring(0, MAX_SOURCE_LENGTH) + "...";
+        }
+        return String.format("%s requires %s (%s)", source, effect, messageKey);
+    }
+
+    /**
+     * With <code>-Alint=loopAlloc</code>, records the allocation {@code node},
+     * which requires {@code effect}, if it allocates on every iteration of a loop.
+     */
+    private void recordLoopAllocation(Tree node, Effect effect, String messageKey) {
+        if (loops == null || !lowerForWarmup(effect).mayAlloc()) {
+            return;
+        }
+        int depth = loopDepth(getCurrentPath());
+        if (depth > 0 && !isColdPath()) {
+            loops.add(depth, currentMethodName(), describe(node, effect, messageKey), location(node));
+        }
+    }
+
+    /**
+     * Returns the name of the method enclosing the current tree for reports, or
+     * the initializer of the enclosing class if there is none.
+     */
+    private String currentMethodName() {
+        ExecutableElement declaration = getCurrentDeclaration();
+        return declaration != null ? name(declaration)
+                : TreeUtils.enclosingClass(getCurrentPath()).getSimpleName() + " initializer";
+    }
+
+    /**
+     * Returns the number of loops enclosing the tree at {@code path} in its method:
+     * the loops whose body, condition, or update it is in, and the stream
+     * operations it is a lambda argument of.
+     */
+    private int loopDepth(TreePath path) {
+        int depth = 0;
+        Tree child = path.getLeaf();
+        for (TreePath parent = path.getParentPath(); parent != null; parent = parent.getParentPath()) {
+            Tree leaf = parent.getLeaf();
+            switch (leaf.getKind()) {
+            case WHILE_LOOP:
+            case DO_WHILE_LOOP:
+                depth++;
+                break;
+            case FOR_LOOP:
+                if (!((ForLoopTree) leaf).getInitializer().contains(child)) {
+                    depth++;
+                }
+                break;
+            case ENHANCED_FOR_LOOP:
+                // The iterated expression is only evaluated once
+                if (((EnhancedForLoopTree) leaf).getExpression() != child) {
+                    depth++;
+                }
+                break;
+            case LAMBDA_EXPRESSION:
+                if (!isStreamOperand(parent)) {
+                    // The lambda does not necessarily run where it is created
+                    return depth;
+                }
+                depth++;
+                break;
+            case METHOD:
+            case CLASS:
+                return depth;
+            default:
+                break;
+            }
+            child = leaf;
+        }
+        return depth;
+    }
+
+    /**
+     * Returns <code>true</code> if the tree at {@code path} is an argument of a
+     * <code>java.util.stream</code> operation, which may invoke it once per element.
+     */
+    private boolean isStreamOperand(TreePath path) {
+        Tree operand = path.getLeaf();
+        TreePath parent = path.getParentPath();
+        while (parent.getLeaf().getKind() == Tree.Kind.PARENTHESIZED) {
+            operand = parent.getLeaf();
+            parent = parent.getParentPath();
+        }
+        if (parent.getLeaf().getKind() != Tree.Kind.METHOD_INVOCATION
+                || !((MethodInvocationTree) parent.getLeaf()).getArguments().contains(operand)) {
+            return false;
+        }
+        ExecutableElement target = TreeUtils.elementFromUse((MethodInvocationTree) parent.getLeaf());
+        return elements.getPackageOf(target).getQualifiedName().contentEquals("java.util.stream");
+    }
+
+    /**
+     * Returns the location of {@code node} for call chains, e.g.,
+     * <code>Foo.java:12</code>.
+     */
+    private String location(Tree node) {
+        CompilationUnitTree unit = getCurrentPath().getCompilationUnit();
+        String file = unit.getSourceFile().getName();
+        file = file.substring(Math.max(file.lastIndexOf('/'), file.lastIndexOf('\\')) + 1);
+        return file + ":" + unit.getLineMap().getLineNumber(positions.getStartPosition(unit, node));
+    }
+
+    /**
+     * Returns the name of {@code method} for call chains, e.g.,
+     * <code>Foo.bar(int)</code>.
+     */
+    private static String name(ExecutableElement method) {
+        return method.getEnclosingElement().getSimpleName() + "." + method;
+    }
+
+    /**
+     * Returns {@code effect}, or {@link NoAllocAfterWarmup} if {@code effect} is
+     * not a subeffect of it and the current tree lazily initializes a field, which
+     * only allocates during warmup.
+     */
+    private Effect lowerForWarmup(Effect effect) {
+        Effect warmup = new Effect(NoAllocAfterWarmup.class);
+        if (!effect.isSubeffectOf(warmup) && WarmupAnalysis.isLazyInitialization(getCurrentPath())) {
+            return warmup;
+        }
+        return effect;
+    }
+
+    /**
+     * Returns <code>true</code> if the current tree is exempt from the effect of
+     * the enclosing method: it is part of a call to a {@link ColdPath} method, or,
+     * with <code>-Alint=coldPath</code>, every path from it throws an exception.
+     */
+    private boolean isColdPath() {
+        for (TreePath path = getCurrentPath(); path != null; path = path.getParentPath()) {
+            Tree leaf = path.getLeaf();
+            if (leaf.getKind() == Tree.Kind.METHOD_INVOCATION) {
+                ExecutableElement target = TreeUtils.elementFromUse((MethodInvocationTree) leaf);
+                if (atypeFactory.getDeclAnnotation(target, ColdPath.class) != null) {
+                    return true;
+                }
+            } else if (leaf.getKind() == Tree.Kind.METHOD || leaf.getKind() == Tree.Kind.LAMBDA_EXPRESSION
+                    || leaf.getKind() == Tree.Kind.CLASS) {
+                break;
+            }
+        }
+
+        return coldPathLint && coldPaths.isCold(getCurrentPath());
+    }
+
+    /**
+     * Returns <code>true</code> if the current tree may not allocate, or, with
+     * <code>-Alint=loopAlloc</code>, is in a loop. Used to skip the implicit
+     * allocation checks in unrestricted code.
+     */
+    private boolean isAllocationRestricted() {
+        return !getCallerEffect().mayAlloc() || (loops != null && loopDepth(getCurrentPath()) > 0);
+    }
+
+    /**
+     * Emit an error if converting {@code expr} to {@code target} boxes the value
+     * into a newly allocated object.
+     */
+    private void checkBoxing(ExpressionTree expr, TypeMirror target) {
+        if (isAllocationRestricted() && ImplicitAllocations.isAllocatingBoxing(expr, target)) {
+            TypeMirror source = InternalUtils.typeOf(expr);
+            checkAllocation(expr, "boxing.invalid.alloc", source, ImplicitAllocations.boxName(source, types));
+        }
+    }
+
+    /**
+     * Emit errors for the implicit varargs array and the boxing conversions
+     * performed when passing {@code args} to {@code method}.
+     */
+    private void checkArguments(ExecutableElement method, List<? extends ExpressionTree> args, Tree node) {
+        if (!isAllocationRestricted()) {
+            return;
+        }
+
+        boolean varargs = ImplicitAllocations.isVarargsCall(method, args, types);
+        if (varargs) {
+            checkAllocation(node, "varargs.invalid.alloc", method);
+        }
+
+        for (int i = 0; i < args.size(); i++) {
+            checkBoxing(args.get(i), ImplicitAllocations.parameterType(method, i, varargs, types));
+        }
+    }
+
+    /**
+     * Returns the method whose body the current tree is in: either the enclosing
+     * method or, for the body of a lambda, the functional interface method the
+     * lambda implements. Returns <code>null</code> if there is no such method.
+     */
+    private ExecutableElement enclosingFunction() {
+        for (TreePath path = getCurrentPath(); path != null; path = path.getParentPath()) {
+            Tree leaf = path.getLeaf();
+            if (leaf.getKind() == Tree.Kind.METHOD) {
+                return TreeUtils.elementFromDeclaration((MethodTree) leaf);
+            } else if (leaf.getKind() == Tree.Kind.LAMBDA_EXPRESSION) {
+                return atypeFactory.findFunctionalMethod(InternalUtils.typeOf(leaf));
+            } else if (leaf.getKind() == Tree.Kind.CLASS) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     @Override
     public Void visitMethodInvocation(MethodInvocationTree node, Void p) {
-        MethodTree callerTree = TreeUtils.enclosingMethod(getCurrentPath());
-
         if (debugSpew) {
-            System.err.println("For invocation " + node + " in " + callerTree.getName());
+            System.err.println("For invocation " + node);
         }
-       
-        ExecutableElement callerElt = TreeUtils.elementFromDeclaration(callerTree);
-        Effect callerEffect = atypeFactory.getDeclaredEffect(callerElt);
-       
+
+        Effect callerEffect = getCallerEffect();
+
         ExecutableElement targetElt = TreeUtils.elementFromUse(node);
-        Effect targetEffect = atypeFactory.getDeclaredEffect(targetElt);
 
-        checkEffect(callerEffect, targetEffect, node);
+        ExecutableElement declaration = getCurrentDeclaration();
+        if (declaration != null) {
+            startup.addCall(declaration, targetElt);
+            recordReflectiveInitialization(targetElt, node);
+        }
+        if (targetElt.getModifiers().contains(Modifier.STATIC)) {
+            checkClassInitialization(node, targetElt);
+        }
+
+        Element receiver = receiverVariable(node);
+        if (ImplicitAllocations.isReflectiveInvocation(targetElt)) {
+            // The target is unknown, and the invocation allocates even if it does not
+            checkAllocation(node, "reflection.invalid.alloc", targetElt);
+        } else if (ImplicitAllocations.isExactInvocation(targetElt)) {
+            // The handle has exactly the type of the call site, so invoking it passes
+            // the arguments as is; the effect of its target is trusted
+        } else if (receiver != null && targetElt.getModifiers().contains(Modifier.ABSTRACT)
+                && (isPolymorphicParameter(receiver) || atypeFactory.getTypeEffect(receiver) != null)) {
+            // Invoking a polymorphic parameter is accounted for by the callers of the
+            // enclosing method; a variable whose type is annotated has that effect
+            if (!isPolymorphicParameter(receiver)) {
+                checkEffect(callerEffect, atypeFactory.getTypeEffect(receiver), node);
+            }
+        } else {
+            checkCall(targetElt, node);
+            recordInterfaceCall(targetElt, node);
+        }
+        if (!ImplicitAllocations.isSignaturePolymorphic(targetElt)) {
+            checkArguments(targetElt, node.getArguments(), node);
+        }
+        checkInterfaceArguments(targetElt, node.getArguments());
 
         return super.visitMethodInvocation(node, p);
     }
 
+    /**
+     * Checks a call to {@code targetElt} at {@code node} against the effect of the
+     * enclosing method, or records it if the effect of either method is being
+     * inferred or the enclosing method is traced for reachability.
+     */
+    private void checkCall(ExecutableElement targetElt, Tree node) {
+        if (atypeFactory.isInferred(targetElt) && !atypeFactory.isPoolAcquire(targetElt)) {
+            // The target's effect is not known until all compilation units have been
+            // visited; calls from annotated methods are checked by a later run that
+            // reads the inferred summary
+            String inferredKey = getInferredCallerKey();
+            if (inferredKey != null) {
+                inference.addCall(inferredKey, MethodKey.of(targetElt, elements, types));
+            }
+        } else if (getTracedCallerKey() != null && atypeFactory.isTraced(targetElt)
+                && !atypeFactory.isPoolAcquire(targetElt)) {
+            // The call is followed when searching from the roots; virtual calls are
+            // followed to the overrides of the target
+            reachability.addCall(getTracedCallerKey(), MethodKey.of(targetElt, elements, types),
+                    "calls " + name(targetElt) + " at " + location(node));
+        } else {
+            Effect targetEffect = atypeFactory.getCallEffect(targetElt);
+            checkEffect(getCallerEffect(), targetEffect, node);
+        }
+    }
+
+    /**
+     * Records the call {@code node} of the interface method {@code targetElt}, if
+     * the effect of the enclosing method limits it and permits that of
+     * {@code targetElt}, to check it against the implementations that the effect
+     * of {@code targetElt} does not cover once all classes have been visited.
+     */
+    private void recordInterfaceCall(ExecutableElement targetElt, MethodInvocationTree node) {
+        ExecutableElement declaration = getCurrentDeclaration();
+        Effect callerEffect = getCallerEffect();
+        if (declaration == null || getInferredCallerKey() != null || getTracedCallerKey() != null
+                || callerEffect.mayAlloc() || targetElt.getEnclosingElement().getKind() != ElementKind.INTERFACE
+                || targetElt.getModifiers().contains(Modifier.STATIC) || atypeFactory.isPolyAlloc(targetElt)
+                || !atypeFactory.getCallEffect(targetElt).isSubeffectOf(callerEffect) || isColdPath()) {
+            return;
+        }
+
+        ExpressionTree receiverTree = TreeUtils.getReceiverTree(node);
+        if (receiverTree != null && isSuper(receiverTree)) {
+            // Invoking Interface.super.m() does not dispatch
+            return;
+        }
+        TypeMirror receiverType = receiverTree != null ? types.erasure(InternalUtils.typeOf(receiverTree))
+                : TreeUtils.elementFromDeclaration(TreeUtils.enclosingClass(getCurrentPath())).asType();
+        TypeElement receiver = receiverType.getKind() == TypeKind.DECLARED
+                ? (TypeElement) ((DeclaredType) receiverType).asElement()
+                : (TypeElement) targetElt.getEnclosingElement();
+        dispatch.addCall(declaration, callerEffect, targetElt, receiver, location(node));
+    }
+
+    /**
+     * Returns <code>true</code> if {@code expr} is <code>super</code> or
+     * <code>Type.super</code>.
+     */
+    private static boolean isSuper(ExpressionTree expr) {
+        expr = TreeUtils.skipParens(expr);
+        if (expr.getKind() == Tree.Kind.IDENTIFIER) {
+            return ((IdentifierTree) expr).getName().contentEquals("super");
+        }
+        return expr.getKind() == Tree.Kind.MEMBER_SELECT
+                && ((MemberSelectTree) expr).getIdentifier().contentEquals("super");
+    }
+
+    /**
+     * Returns the variable that the receiver of {@code node} names, or
+     * <code>null</code> if the receiver is not a variable.
+     */
+    private static Element receiverVariable(MethodInvocationTree node) {
+        ExpressionTree receiver = TreeUtils.getReceiverTree(node);
+        return receiver != null ? variable(receiver) : null;
+    }
+
+    /**
+     * Returns the variable that {@code expr} names, or <code>null</code> if it is
+     * not a reference to a variable.
+     */
+    private static Element variable(ExpressionTree expr) {
+        expr = TreeUtils.skipParens(expr);
+        if (expr.getKind() != Tree.Kind.IDENTIFIER && expr.getKind() != Tree.Kind.MEMBER_SELECT) {
+            return null;
+        }
+        Element element = TreeUtils.elementFromUse(expr);
+        return element instanceof VariableElement ? element : null;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code element} is a polymorphic parameter of
+     * the {@link PolyAlloc} method whose body the current tree is in.
+     */
+    private boolean isPolymorphicParameter(Element element) {
+        Caller caller = callers.peek();
+        return caller != null && caller.polymorphic && caller.declaration.getParameters().contains(element)
+                && atypeFactory.isPolymorphicParameter(element);
+    }
+
+    /**
+     * Checks the arguments {@code args} passed to the parameters of
+     * {@code method} that are polymorphic, or whose types are annotated with an
+     * effect.
+     */
+    private void checkInterfaceArguments(ExecutableElement method, List<? extends ExpressionTree> args) {
+        boolean polymorphic = atypeFactory.isPolyAlloc(method);
+        List<? extends VariableElement> params = method.getParameters();
+        for (int i = 0; i < args.size() && i < params.size(); i++) {
+            if (polymorphic && atypeFactory.isPolymorphicParameter(params.get(i))) {
+                checkPolymorphicArgument(args.get(i), params.get(i));
+            } else {
+                checkEffectTypedValue(args.get(i), params.get(i));
+            }
+        }
+    }
+
+    /**
+     * Checks the argument {@code arg} passed to the polymorphic parameter
+     * {@code param} of a {@link PolyAlloc} method, whose abstract methods the call
+     * may invoke.
+     */
+    private void checkPolymorphicArgument(ExpressionTree arg, VariableElement param) {
+        arg = TreeUtils.skipParens(arg);
+        if (arg.getKind() == Tree.Kind.LAMBDA_EXPRESSION || arg.getKind() == Tree.Kind.NULL_LITERAL) {
+            // The body of a lambda is checked as part of the enclosing method
+            return;
+        } else if (arg.getKind() == Tree.Kind.MEMBER_REFERENCE) {
+            Element referenced = InternalUtils.symbol(arg);
+            if (referenced != null && referenced.getKind() == ElementKind.CONSTRUCTOR) {
+                checkEffect(getCallerEffect(), new Effect(MayAlloc.class), arg);
+            } else if (referenced instanceof ExecutableElement) {
+                checkCall((ExecutableElement) referenced, arg);
+            }
+            return;
+        }
+
+        Element variable = variable(arg);
+        if (variable != null && isPolymorphicParameter(variable)) {
+            // Accounted for by the callers of the enclosing method
+            return;
+        }
+        Effect effect = getValueEffect(arg, param.asType());
+        if (effect != null) {
+            checkEffect(getCallerEffect(), effect, arg);
+        }
+    }
+
+    /**
+     * Emit an error if {@code value}, converted to the type of {@code target}, may
+     * have a less restrictive effect than the type of {@code target} is annotated
+     * with. Lambdas are checked against the effect when their bodies are visited.
+     */
+    private void checkEffectTypedValue(ExpressionTree value, Element target) {
+        Effect limit = atypeFactory.getTypeEffect(target);
+        if (limit == null) {
+            return;
+        }
+
+        value = TreeUtils.skipParens(value);
+        Effect effect;
+        if (value.getKind() == Tree.Kind.LAMBDA_EXPRESSION || value.getKind() == Tree.Kind.NULL_LITERAL) {
+            return;
+        } else if (value.getKind() == Tree.Kind.MEMBER_REFERENCE) {
+            Element referenced = InternalUtils.symbol(value);
+            if (!(referenced instanceof ExecutableElement)
+                    || atypeFactory.isInferred((ExecutableElement) referenced)) {
+                // The effect of an inferred method is checked by a later run
+                return;
+            }
+            effect = referenced.getKind() == ElementKind.CONSTRUCTOR ? new Effect(MayAlloc.class)
+                    : atypeFactory.getCallEffect((ExecutableElement) referenced);
+        } else {
+            effect = getValueEffect(value, target.asType());
+        }
+
+        if (effect != null && !effect.isSubeffectOf(limit)) {
+            checker.report(Result.failure("effect.type.invalid", value, effect, target, limit), value);
+        }
+    }
+
+    /**
+     * Returns the effect of invoking the abstract methods of {@code type} on the
+     * value of {@code expr}: the effect its type is annotated with if it names a
+     * variable, and otherwise the effects of the implementing methods of its
+     * static type.
+     */
+    private Effect getValueEffect(ExpressionTree expr, TypeMirror type) {
+        Element variable = variable(expr);
+        if (variable != null && atypeFactory.getTypeEffect(variable) != null) {
+            return atypeFactory.getTypeEffect(variable);
+        }
+        return atypeFactory.getImplementationEffect(InternalUtils.typeOf(expr), type);
+    }
+
+    /**
+     * Returns the variable or parameter that the lambda at {@code path} is
+     * converted to: the variable it initializes or is assigned to, or the
+     * parameter it is passed to. Returns <code>null</code> if there is none.
+     */
+    private static Element findLambdaTarget(TreePath path) {
+        Tree lambda = path.getLeaf();
+        TreePath parentPath = path.getParentPath();
+        while (parentPath.getLeaf().getKind() == Tree.Kind.PARENTHESIZED) {
+            lambda = parentPath.getLeaf();
+            parentPath = parentPath.getParentPath();
+        }
+
+        Tree parent = parentPath.getLeaf();
+        switch (parent.getKind()) {
+        case VARIABLE:
+            return ((VariableTree) parent).getInitializer() == lambda
+                    ? TreeUtils.elementFromDeclaration((VariableTree) parent) : null;
+        case ASSIGNMENT:
+            return ((AssignmentTree) parent).getExpression() == lambda
+                    ? TreeUtils.elementFromUse(((AssignmentTree) parent).getVariable()) : null;
+        case METHOD_INVOCATION:
+            return parameter(TreeUtils.elementFromUse((MethodInvocationTree) parent),
+                    ((MethodInvocationTree) parent).getArguments().indexOf(lambda));
+        case NEW_CLASS:
+            return parameter(TreeUtils.elementFromUse((NewClassTree) parent),
+                    ((NewClassTree) parent).getArguments().indexOf(lambda));
+        default:
+            return null;
+        }
+    }
+
+    private static Element parameter(ExecutableElement method, int index) {
+        return index >= 0 && index < method.getParameters().size() ? method.getParameters().get(index) : null;
+    }
+
     @Override
-    public Void visitNewArray(NewArrayTree node, Void p) {
-        MethodTree callerTree = TreeUtils.enclosingMethod(getCurrentPath());
-      
+    public Void visitNewClass(NewClassTree node, Void p) {
         if (debugSpew) {
-            System.err.println("For new array " + node + " in " + callerTree.getName());
+            System.err.println("For constructor " + node);
         }
 
-        ExecutableElement callerElt = TreeUtils.elementFromDeclaration(callerTree);
-        Effect callerEffect = atypeFactory.getDeclaredEffect(callerElt);
+        // The allocation is checked below; this only records the initialization
+        checkClassInitialization(node, TreeUtils.elementFromUse(node));
 
-        Effect targetEffect = new Effect(MayAlloc.class);
+        if (node.getClassBody() != null) {
+            checkAllocation(node, "anonymous.class.invalid.alloc");
+        } else {
+            Effect callerEffect = getCallerEffect();
 
-        checkEffect(callerEffect, targetEffect, node);
+            Effect targetEffect = new Effect(MayAlloc.class);
 
-        return super.visitNewArray(node, p);
+            checkEffect(callerEffect, targetEffect, node);
+        }
+        checkArguments(TreeUtils.elementFromUse(node), node.getArguments(), node);
+        checkInterfaceArguments(TreeUtils.elementFromUse(node), node.getArguments());
+
+        return super.visitNewClass(node, p);
+    }
+
+    @Override
+    public Void visitLambdaExpression(LambdaExpressionTree node, Void p) {
+        if (debugSpew) {
+            System.err.println("For lambda " + node);
+        }
+
+        if (isAllocationRestricted()) {
+            String capture = CaptureAnalysis.findCapture(node);
+            if (capture != null) {
+                checkAllocation(node, "lambda.invalid.alloc", capture);
+            }
+        }
+
+        // The body runs when the functional interface method is invoked, so it is
+        // limited by the effect of that method instead of the enclosing method,
+        // unless the lambda is converted to a type annotated with an effect or
+        // passed to a polymorphic parameter
+        ExecutableElement functionalElt = atypeFactory.findFunctionalMethod(InternalUtils.typeOf(node));
+        Element target = findLambdaTarget(getCurrentPath());
+        Effect targetEffect = target != null ? atypeFactory.getTypeEffect(target) : null;
+        if (target != null && atypeFactory.isPolymorphicParameter(target)) {
+            // The body runs during the call, so it is checked as part of the caller
+            Caller caller = callers.peek();
+            callers.push(caller != null ? caller : new Caller(null, new Effect(MayAlloc.class), null, null, false));
+        } else if (targetEffect != null) {
+            callers.push(new Caller(getCurrentDeclaration(), targetEffect, null, null, false));
+        } else if (reachability != null && functionalElt != null && atypeFactory.isTraced(functionalElt)) {
+            // The lambda is an implementation of the functional interface method
+            CompilationUnitTree unit = getCurrentPath().getCompilationUnit();
+            String key = MethodKey.of(functionalElt, elements, types) + "$lambda@"
+                    + unit.getSourceFile().getName() + ":" + positions.getStartPosition(unit, node);
+            reachability.declare(key, "lambda at " + location(node));
+            reachability.addCall(MethodKey.of(functionalElt, elements, types), key,
+                    "may dispatch to the lambda at " + location(node));
+            callers.push(new Caller(getCurrentDeclaration(), new Effect(NoAlloc.class), null, key, false));
+        } else {
+            callers.push(new Caller(getCurrentDeclaration(), functionalElt != null
+                    ? atypeFactory.getDeclaredEffect(functionalElt) : new Effect(MayAlloc.class), null, null, false));
+        }
+        try {
+            if (functionalElt != null && node.getBodyKind() == LambdaExpressionTree.BodyKind.EXPRESSION) {
+                checkBoxing((ExpressionTree) node.getBody(), functionalElt.getReturnType());
+            }
+            return super.visitLambdaExpression(node, p);
+        } finally {
+            callers.pop();
+        }
+    }
+
+    @Override
+    public Void visitMemberReference(MemberReferenceTree node, Void p) {
+        if (debugSpew) {
+            System.err.println("For method reference " + node);
+        }
+
+        if (isAllocationRestricted() && CaptureAnalysis.isBound(node)) {
+            checkAllocation(node, "member.reference.invalid.alloc", node);
+        }
+        if (reachability != null) {
+            recordMemberReference(node);
+        }
+        if (loops != null && isStreamOperand(getCurrentPath())) {
+            recordStreamReference(node);
+        }
+        return super.visitMemberReference(node, p);
+    }
+
+    /**
+     * Records the method reference {@code node}, passed to a stream operation, as
+     * an allocation in a loop if the referenced method allocates: the operation may
+     * invoke it once per element.
+     */
+    private void recordStreamReference(MemberReferenceTree node) {
+        Element referenced = InternalUtils.symbol(node);
+        if (!(referenced instanceof ExecutableElement) || isColdPath()) {
+            return;
+        }
+        Effect effect = referenced.getKind() == ElementKind.CONSTRUCTOR ? new Effect(MayAlloc.class)
+                : atypeFactory.getCallEffect((ExecutableElement) referenced);
+        if (effect.mayAlloc()) {
+            loops.add(loopDepth(getCurrentPath()) + 1, currentMethodName(),
+                    describe(node, effect, "call.invalid.alloc"), location(node));
+        }
+    }
+
+    /**
+     * Records that the functional interface method implemented by {@code node}
+     * may dispatch to the referenced method, if the functional interface method is
+     * traced for reachability.
+     */
+    private void recordMemberReference(MemberReferenceTree node) {
+        ExecutableElement functionalElt = atypeFactory.findFunctionalMethod(InternalUtils.typeOf(node));
+        Element referenced = InternalUtils.symbol(node);
+        if (functionalElt == null || !atypeFactory.isTraced(functionalElt)
+                || !(referenced instanceof ExecutableElement)) {
+            return;
+        }
+
+        String functionalKey = MethodKey.of(functionalElt, elements, types);
+        ExecutableElement referencedElt = (ExecutableElement) referenced;
+        if (referencedElt.getKind() == ElementKind.CONSTRUCTOR) {
+            reachability.addAllocation(functionalKey, new Effect(MayAlloc.class),
+                    node + " allocates a new instance", location(node));
+        } else if (atypeFactory.isTraced(referencedElt)) {
+            reachability.addCall(functionalKey, MethodKey.of(referencedElt, elements, types),
+                    "may dispatch to " + name(referencedElt) + " through " + node + " at " + location(node));
+        } else {
+            Effect effect = atypeFactory.getCallEffect(referencedElt);
+            if (!effect.noAlloc()) {
+                reachability.addAllocation(functionalKey, effect,
+                        String.format("%s requires %s (call.invalid.alloc)", node, effect), location(node));
+            }
+        }
+    }
+
+    @Override
+    public Void visitVariable(VariableTree node, Void p) {
+        if (node.getInitializer() != null) {
+            checkBoxing(node.getInitializer(), TreeUtils.elementFromDeclaration(node).asType());
+            checkEffectTypedValue(node.getInitializer(), TreeUtils.elementFromDeclaration(node));
+        }
+        return super.visitVariable(node, p);
     }
 
     @Override
-    protected boolean checkConstructorInvocation(AnnotatedDeclaredType dt, AnnotatedExecutableType constructor, Tree src) {
-        MethodTree callerTree = TreeUtils.enclosingMethod(getCurrentPath());
-        
+    public Void visitAssignment(AssignmentTree node, Void p) {
+        checkBoxing(node.getExpression(), InternalUtils.typeOf(node.getVariable()));
+        Element variable = TreeUtils.elementFromUse(node.getVariable());
+        if (variable != null) {
+            checkEffectTypedValue(node.getExpression(), variable);
+        }
+        return super.visitAssignment(node, p);
+    }
+
+    @Override
+    public Void visitReturn(ReturnTree node, Void p) {
+        ExecutableElement method = enclosingFunction();
+        if (node.getExpression() != null && method != null) {
+            checkBoxing(node.getExpression(), method.getReturnType());
+        }
+        return super.visitReturn(node, p);
+    }
+
+    @Override
+    public Void visitTypeCast(TypeCastTree node, Void p) {
+        checkBoxing(node.getExpression(), InternalUtils.typeOf(node.getType()));
+        return super.visitTypeCast(node, p);
+    }
+
+    @Override
+    public Void visitUnary(UnaryTree node, Void p) {
+        switch (node.getKind()) {
+        case PREFIX_INCREMENT:
+        case PREFIX_DECREMENT:
+        case POSTFIX_INCREMENT:
+        case POSTFIX_DECREMENT:
+            // Incrementing a boxed variable unboxes, increments, and boxes the result
+            TypeMirror type = InternalUtils.typeOf(node.getExpression());
+            if (TypesUtils.isBoxedPrimitive(type)) {
+                checkAllocation(node, "boxing.invalid.alloc", types.unboxedType(type), type);
+            }
+            break;
+        default:
+            break;
+        }
+        return super.visitUnary(node, p);
+    }
+
+    @Override
+    public Void visitCompoundAssignment(CompoundAssignmentTree node, Void p) {
+        TypeMirror type = InternalUtils.typeOf(node.getVariable());
+        if (TypesUtils.isString(type) && node.getKind() == Tree.Kind.PLUS_ASSIGNMENT) {
+            checkAllocation(node, "string.concat.invalid.alloc");
+        } else if (TypesUtils.isBoxedPrimitive(type)) {
+            checkAllocation(node, "boxing.invalid.alloc", types.unboxedType(type), type);
+        }
+        return super.visitCompoundAssignment(node, p);
+    }
+
+    @Override
+    public Void visitBinary(BinaryTree node, Void p) {
+        // Report a chain of concatenations a + b + c once, at the outermost operator
+        Tree parent = getCurrentPath().getParentPath().getLeaf();
+        boolean nested = parent instanceof BinaryTree && ImplicitAllocations.isAllocatingConcatenation((BinaryTree) parent);
+
+        if (!nested && ImplicitAllocations.isAllocatingConcatenation(node)) {
+            checkAllocation(node, "string.concat.invalid.alloc");
+        }
+        return super.visitBinary(node, p);
+    }
+
+    @Override
+    public Void visitEnhancedForLoop(EnhancedForLoopTree node, Void p) {
+        if (ImplicitAllocations.isIteratorLoop(node.getExpression())) {
+            checkAllocation(node.getExpression(), "iterator.invalid.alloc", InternalUtils.typeOf(node.getExpression()));
+        }
+        return super.visitEnhancedForLoop(node, p);
+    }
+
+    @Override
+    public Void visitNewArray(NewArrayTree node, Void p) {
         if (debugSpew) {
-            System.err.println("For constructor " + src + " in " + callerTree.getName());
+            System.err.println("For new array " + node);
         }
 
-        ExecutableElement callerElt = TreeUtils.elementFromDeclaration(callerTree);
-        Effect callerEffect = atypeFactory.getDeclaredEffect(callerElt);
+        Effect callerEffect = getCallerEffect();
 
         Effect targetEffect = new Effect(MayAlloc.class);
-        
-        checkEffect(callerEffect, targetEffect, src);
 
-        return super.checkConstructorInvocation(dt, constructor, src);
+        checkEffect(callerEffect, targetEffect, node);
+
+        return super.visitNewArray(node, p);
     }
 
     @Override
@@ -137,11 +1112,18 @@ public final class AllocEffectVisitor extends BaseTypeVisitor<AllocEffectTypeFac
         if (debugSpew){
             System.err.println("\nVisiting method " + methElt);
         }
+        if (statistics != null) {
+            statistics.methodVisited();
+        }
             
-        AnnotationMirror mayAlloc = atypeFactory.getDeclAnnotation(methElt, MayAlloc.class);
-        AnnotationMirror noAlloc = atypeFactory.getDeclAnnotation(methElt, NoAlloc.class);
+        int effectAnnotations = 0;
+        for (Class<? extends Annotation> annotation : Effect.ANNOTATIONS) {
+            if (atypeFactory.getDeclAnnotation(methElt, annotation) != null) {
+                effectAnnotations++;
+            }
+        }
 
-        if (mayAlloc != null && noAlloc != null) {
+        if (effectAnnotations > 1) {
             checker.report(Result.failure("annotations.conflicts"), node);
         }
 
@@ -149,12 +1131,220 @@ public final class AllocEffectVisitor extends BaseTypeVisitor<AllocEffectTypeFac
         Effect.EffectRange range = atypeFactory.findInheritedEffectRange(((TypeElement) methElt.getEnclosingElement()),
                 methElt, true, node);
 
-        if (mayAlloc == null && noAlloc == null) {
+        if (effectAnnotations == 0) {
             // implicitly annotate the method with the LUB of the effects of the
             // methods it overrides
             atypeFactory.fromElement(methElt).addAnnotation(atypeFactory.getDeclaredEffect(methElt).getAnnotation());
         }
 
-        return super.visitMethod(node, p);
+        Caller caller;
+        if (atypeFactory.isInferred(methElt)) {
+            // Check the body as if the method were NoAlloc, recording what it
+            // requires instead of reporting it
+            String key = MethodKey.of(methElt, elements, types);
+            inference.declare(key);
+            caller = new Caller(methElt, new Effect(NoAlloc.class), key, null, false);
+        } else if (reachability != null && atypeFactory.isTraced(methElt)) {
+            // Record the allocations in the body instead of reporting them; they are
+            // only errors if the method is reachable from a root
+            String key = MethodKey.of(methElt, elements, types);
+            reachability.declare(key, name(methElt));
+            caller = new Caller(methElt, new Effect(NoAlloc.class), null, key, false);
+            recordDispatch(methElt, node, key);
+        } else {
+            caller = new Caller(methElt, atypeFactory.getDeclaredEffect(methElt), null, null,
+                    atypeFactory.isPolyAlloc(methElt));
+        }
+        if (inference != null) {
+            recordOverrides(methElt, caller);
+        }
+
+        if (exported != null) {
+            exported.put(MethodKey.of(methElt, elements, types), atypeFactory.getDeclaredEffect(methElt));
+        }
+
+        if (atypeFactory.getDeclAnnotation(methElt, Startup.class) != null) {
+            startup.addStartupMethod(methElt);
+        }
+
+        NoAllocRoot root = methElt.getAnnotation(NoAllocRoot.class);
+        if (root != null && caller.tracedKey != null) {
+            // A root limited by its own effect is checked like any other method
+            reachability.addRoot(caller.tracedKey,
+                    new Effect(root.afterWarmup() ? NoAllocAfterWarmup.class : NoAlloc.class), methElt);
+        }
+
+        if (callers.isEmpty()) {
+            // Only the trees of the current top-level method are queried again
+            coldPaths.clear();
+        }
+
+        callers.push(caller);
+        try {
+            return super.visitMethod(node, p);
+        } finally {
+            callers.pop();
+        }
+    }
+
+    /**
+     * Records that a virtual call to a method overridden by {@code methElt} may
+     * dispatch to {@code methElt}, so its effect includes that of {@code methElt}.
+     */
+    private void recordOverrides(ExecutableElement methElt, Caller caller) {
+        for (ExecutableElement overridden : atypeFactory.findOverriddenMethods(methElt)) {
+            if (atypeFactory.isInferred(overridden)) {
+                String overriddenKey = MethodKey.of(overridden, elements, types);
+                if (caller.inferredKey != null) {
+                    inference.addCall(overriddenKey, caller.inferredKey);
+                } else {
+                    inference.require(overriddenKey, caller.effect);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that a virtual call to a traced method overridden by the traced
+     * method {@code methElt} may dispatch to {@code methElt}.
+     */
+    private void recordDispatch(ExecutableElement methElt, MethodTree node, String key) {
+        for (ExecutableElement overridden : atypeFactory.findAllOverriddenMethods(methElt)) {
+            if (atypeFactory.isTraced(overridden)) {
+                reachability.addCall(MethodKey.of(overridden, elements, types), key,
+                        "may dispatch to " + name(methElt) + " at " + location(node));
+            }
+        }
+    }
+
+    @Override
+    public Void visitClass(ClassTree node, Void p) {
+        TypeElement classElt = TreeUtils.elementFromDeclaration(node);
+        if (atypeFactory.isPreinitialized(classElt)) {
+            startup.addPreinitialized(classElt);
+        }
+        if ((classElt.getKind() == ElementKind.CLASS || classElt.getKind() == ElementKind.ENUM)
+                && !classElt.getModifiers().contains(Modifier.ABSTRACT)) {
+            recordImplementations(classElt);
+        }
+        return super.visitClass(node, p);
+    }
+
+    /**
+     * Records the implementations by the concrete class {@code classElt} of the
+     * interface methods that limit their effect, if the effect of the
+     * implementation is not a subeffect of that of the interface method, e.g.,
+     * because {@code classElt} inherits it from a superclass that does not
+     * implement the interface.
+     */
+    private void recordImplementations(TypeElement classElt) {
+        Set<TypeElement> visited = new HashSet<TypeElement>();
+        Deque<TypeMirror> pending = new ArrayDeque<TypeMirror>(types.directSupertypes(classElt.asType()));
+        while (!pending.isEmpty()) {
+            TypeMirror supertype = pending.remove();
+            if (supertype.getKind() != TypeKind.DECLARED
+                    || !visited.add((TypeElement) ((DeclaredType) supertype).asElement())) {
+                continue;
+            }
+            pending.addAll(types.directSupertypes(supertype));
+            TypeElement type = (TypeElement) ((DeclaredType) supertype).asElement();
+            if (type.getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (method.getModifiers().contains(Modifier.STATIC) || atypeFactory.isPolyAlloc(method)) {
+                    continue;
+                }
+                Effect effect = atypeFactory.getDeclaredEffect(method);
+                if (effect.mayAlloc()) {
+                    continue;
+                }
+                ExecutableElement implementation = findImplementation(classElt, method);
+                if (implementation != null) {
+                    Effect implementationEffect = atypeFactory.getCallEffect(implementation);
+                    if (!implementationEffect.isSubeffectOf(effect)) {
+                        dispatch.addImplementation(method, classElt, implementation, implementationEffect);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the method of {@code classElt} or one of its superclasses that
+     * implements the interface method {@code method} for {@code classElt}, or
+     * <code>null</code> if it is a default method.
+     */
+    private ExecutableElement findImplementation(TypeElement classElt, ExecutableElement method) {
+        for (TypeElement type = classElt; type != null; type = superclass(type)) {
+            for (ExecutableElement candidate : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (candidate.getSimpleName().equals(method.getSimpleName())
+                        && !candidate.getModifiers().contains(Modifier.ABSTRACT)
+                        && elements.overrides(candidate, method, classElt)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the superclass of {@code type}, or <code>null</code> if it has none.
+     */
+    private static TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement()
+                : null;
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree node, Void p) {
+        checkStaticField(node, TreeUtils.elementFromUse(node));
+        return super.visitMemberSelect(node, p);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree node, Void p) {
+        checkStaticField(node, TreeUtils.elementFromUse(node));
+        return super.visitIdentifier(node, p);
+    }
+
+    /**
+     * A method enclosing the current tree.
+     */
+    private static final class Caller {
+        /**
+         * The method declaration; for a lambda, the method declaration enclosing
+         * the lambda.
+         */
+        final ExecutableElement declaration;
+
+        /** The effect that limits the method's body. */
+        final Effect effect;
+
+        /** The method's {@link MethodKey} if its effect is being inferred; otherwise <code>null</code>. */
+        final String inferredKey;
+
+        /**
+         * The method's key in the {@link ReachabilityGraph} if it is traced for
+         * reachability; otherwise <code>null</code>.
+         */
+        final String tracedKey;
+
+        /**
+         * Whether the method is a {@link PolyAlloc} method, whose body may invoke
+         * the abstract methods of its polymorphic parameters.
+         */
+        final boolean polymorphic;
+
+        Caller(ExecutableElement declaration, Effect effect, String inferredKey, String tracedKey,
+                boolean polymorphic) {
+            this.declaration = declaration;
+            this.effect = effect;
+            this.inferredKey = inferredKey;
+            this.tracedKey = tracedKey;
+            this.polymorphic = polymorphic;
+        }
     }
 }
@@ -0,0 +1,154 @@
+package com.toddschiller.checker;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+
+import org.checkerframework.javacutil.InternalUtils;
+import org.checkerframework.javacutil.TreeUtils;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberReferenceTree.ReferenceMode;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * Determines whether evaluating a lambda expression or method reference
+ * allocates. The JVM links a non-capturing lambda or unbound method reference to
+ * a single shared instance, whereas each evaluation of a capturing lambda or a
+ * bound method reference (<code>obj::method</code>) allocates a new instance
+ * holding the captured values.
+ *
+ * @author Todd Schiller
+ */
+final class CaptureAnalysis {
+
+    private CaptureAnalysis() {
+        // static utility class
+    }
+
+    /**
+     * Returns a description of a value captured by {@code lambda}, or
+     * <code>null</code> if the lambda does not capture any values.
+     */
+    static String findCapture(LambdaExpressionTree lambda) {
+        CaptureScanner scanner = new CaptureScanner();
+        scanner.scan(lambda, null);
+        return scanner.capture;
+    }
+
+    /**
+     * Returns <code>true</code> if evaluating {@code ref} binds a receiver or an
+     * enclosing instance, and therefore allocates.
+     */
+    static boolean isBound(MemberReferenceTree ref) {
+        if (ref.getMode() == ReferenceMode.NEW) {
+            // Instantiating an inner class requires the enclosing instance
+            Element elt = InternalUtils.symbol(ref.getQualifierExpression());
+            return elt instanceof TypeElement && isInnerClass((TypeElement) elt);
+        }
+
+        // Type::method refers to a static method or takes the receiver as its first
+        // argument; expr::method, this::method, and super::method bind a receiver
+        Element qualifier = InternalUtils.symbol(ref.getQualifierExpression());
+        return !(qualifier instanceof TypeElement);
+    }
+
+    private static boolean isInnerClass(TypeElement type) {
+        return type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)
+                && type.getKind() == ElementKind.CLASS;
+    }
+
+    /**
+     * Scans the body of a lambda for references to local variables, parameters,
+     * or the enclosing instance that are declared outside of the lambda.
+     */
+    private static final class CaptureScanner extends TreeScanner<Void, Void> {
+
+        /** The variables and classes declared inside the lambda. */
+        private final Set<Element> declared = new HashSet<Element>();
+
+        /** The number of class bodies inside the lambda enclosing the current tree. */
+        private int classDepth = 0;
+
+        private String capture = null;
+
+        @Override
+        public Void scan(Tree tree, Void p) {
+            // Stop at the first capture
+            return capture == null ? super.scan(tree, p) : null;
+        }
+
+        @Override
+        public Void visitVariable(VariableTree node, Void p) {
+            declared.add(TreeUtils.elementFromDeclaration(node));
+            return super.visitVariable(node, p);
+        }
+
+        @Override
+        public Void visitClass(ClassTree node, Void p) {
+            declared.add(TreeUtils.elementFromDeclaration(node));
+            classDepth++;
+            try {
+                return super.visitClass(node, p);
+            } finally {
+                classDepth--;
+            }
+        }
+
+        @Override
+        public Void visitNewClass(NewClassTree node, Void p) {
+            TypeElement type = (TypeElement) InternalUtils.symbol(node.getIdentifier());
+            if (type != null && node.getEnclosingExpression() == null && isInnerClass(type) && !declared.contains(type)
+                    && classDepth == 0) {
+                // new Inner() implicitly passes this as the enclosing instance
+                capture = "this";
+            }
+            return super.visitNewClass(node, p);
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree node, Void p) {
+            String name = node.getName().toString();
+            Element elt = InternalUtils.symbol(node);
+
+            if (name.equals("this") || name.equals("super")) {
+                if (classDepth == 0) {
+                    capture = name;
+                }
+            } else if (elt != null && !declared.contains(elt)) {
+                switch (elt.getKind()) {
+                case LOCAL_VARIABLE:
+                case PARAMETER:
+                case EXCEPTION_PARAMETER:
+                case RESOURCE_VARIABLE:
+                    // Constant variables are inlined instead of captured
+                    if (((VariableElement) elt).getConstantValue() == null) {
+                        capture = name;
+                    }
+                    break;
+                case FIELD:
+                case METHOD:
+                    // An unqualified instance member of an enclosing class implicitly uses this
+                    if (classDepth == 0 && !elt.getModifiers().contains(Modifier.STATIC)) {
+                        capture = "this";
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+            return super.visitIdentifier(node, p);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.toddschiller.checker;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the work the checker does and the violations it reports, in total and
+ * per checked class, for <code>-Aalloc.stats=file</code>.
+ * <p>
+ * The counters are the methods visited, the effect lookups and the lookups that
+ * had to resolve the effect (the others were answered from memory or the
+ * cache), the walks of type hierarchies to find overridden methods with the
+ * supertypes they visited and the deepest superclass chain, and the
+ * comparisons of a method with a candidate it may override. At the end of the
+ * compilation, the statistics are written as a JSON object with the totals,
+ * the violations per message key and per package, and the classes ordered from
+ * the slowest to check. Only the allocations the checker reports, with keys
+ * ending in <code>.invalid.alloc</code>, are counted as violations; the
+ * violations in the default package are counted under
+ * {@value #DEFAULT_PACKAGE}.
+ *
+ * @author Todd Schiller
+ */
+public final class CheckerStatistics {
+
+    /** The name under which the violations in the default package are counted. */
+    static final String DEFAULT_PACKAGE = "(default package)";
+
+    private final Counters totals = new Counters();
+
+    private final Map<String, Long> violationsByKey = new TreeMap<String, Long>();
+    private final Map<String, Long> violationsByPackage = new TreeMap<String, Long>();
+
+    private final List<ClassStatistics> classes = new ArrayList<ClassStatistics>();
+
+    /** The class being checked, or <code>null</code> between classes. */
+    private ClassStatistics current;
+
+    private long supertypesWalked;
+    private long maxHierarchyDepth;
+
+    /** Counts that are reported both in total and per class. */
+    private static class Counters {
+        long nanos;
+        long methodsVisited;
+        long effectLookups;
+        long effectResolutions;
+        long hierarchyWalks;
+        long overrideComparisons;
+        long violations;
+
+        void add(Counters other) {
+            nanos += other.nanos;
+            methodsVisited += other.methodsVisited;
+            effectLookups += other.effectLookups;
+            effectResolutions += other.effectResolutions;
+            hierarchyWalks += other.hierarchyWalks;
+            overrideComparisons += other.overrideComparisons;
+            violations += other.violations;
+        }
+    }
+
+    private static final class ClassStatistics extends Counters {
+        final String name;
+        final String packageName;
+        final String file;
+
+        ClassStatistics(String name, String packageName, String file) {
+            this.name = name;
+            this.packageName = packageName;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Starts counting for the top-level class {@code name}, declared in
+     * {@code file}.
+     *
+     * @param packageName the class's package; empty for the default package
+     */
+    void startClass(String name, String packageName, String file) {
+        current = new ClassStatistics(name, packageName, file);
+        current.nanos = System.nanoTime();
+    }
+
+    /**
+     * Stops counting for the class passed to {@link #startClass}.
+     */
+    void finishClass() {
+        current.nanos = System.nanoTime() - current.nanos;
+        totals.add(current);
+        classes.add(current);
+        current = null;
+    }
+
+    /**
+     * Returns the counters of the class being checked; work done outside of any
+     * class, e.g., when resolving effects for inference, is only counted in the
+     * totals.
+     */
+    private Counters counters() {
+        return current != null ? current : totals;
+    }
+
+    void methodVisited() {
+        counters().methodsVisited++;
+    }
+
+    void effectLookedUp() {
+        counters().effectLookups++;
+    }
+
+    void effectResolved() {
+        counters().effectResolutions++;
+    }
+
+    /**
+     * Records a walk of a type hierarchy that visited {@code supertypes} types,
+     * {@code depth} of them superclasses.
+     */
+    void hierarchyWalked(int supertypes, int depth) {
+        counters().hierarchyWalks++;
+        supertypesWalked += supertypes;
+        maxHierarchyDepth = Math.max(maxHierarchyDepth, depth);
+    }
+
+    void overrideCompared() {
+        counters().overrideComparisons++;
+    }
+
+    /**
+     * Returns whether a diagnostic with the message key {@code key} reports an
+     * allocation, as opposed to, e.g., a conflict between annotations or a
+     * warning from the framework.
+     */
+    static boolean isViolation(String key) {
+        return key.endsWith(".invalid.alloc");
+    }
+
+    /**
+     * Records a reported violation with the message key {@code key} in the
+     * package {@code packageName}, or, if it is <code>null</code>, in the package
+     * of the class being checked.
+     */
+    void violation(String key, String packageName) {
+        counters().violations++;
+        increment(violationsByKey, key);
+        if (packageName == null) {
+            packageName = current != null ? current.packageName : "";
+        }
+        increment(violationsByPackage, packageName.isEmpty() ? DEFAULT_PACKAGE : packageName);
+    }
+
+    private static void increment(Map<String, Long> counts, String key) {
+        Long count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Writes the statistics to {@code output} as JSON.
+     */
+    void write(Path output) throws IOException {
+        List<ClassStatistics> sorted = new ArrayList<ClassStatistics>(classes);
+        Collections.sort(sorted, new Comparator<ClassStatistics>() {
+            @Override
+            public int compare(ClassStatistics a, ClassStatistics b) {
+                return Long.compare(b.nanos, a.nanos);
+            }
+        });
+
+        try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            out.write("{\n  \"totals\": {\"classes\": " + classes.size() + ", ");
+            counters(out, totals);
+            out.write(", \"supertypesWalked\": " + supertypesWalked + ", \"maxHierarchyDepth\": " + maxHierarchyDepth
+                    + "},\n");
+            out.write("  \"violationsByKey\": ");
+            counts(out, violationsByKey);
+            out.write(",\n  \"violationsByPackage\": ");
+            counts(out, violationsByPackage);
+            out.write(",\n  \"classes\": [");
+            for (int i = 0; i < sorted.size(); i++) {
+                ClassStatistics c = sorted.get(i);
+                out.write(i == 0 ? "\n" : ",\n");
+                out.write("    {\"name\": " + quote(c.name) + ", \"package\": " + quote(c.packageName) + ", \"file\": "
+                        + quote(c.file) + ", ");
+                counters(out, c);
+                out.write("}");
+            }
+            out.write("\n  ]\n}\n");
+        }
+    }
+
+    private static void counters(Writer out, Counters c) throws IOException {
+        out.write(String.format(Locale.ROOT, "\"millis\": %.3f, \"methodsVisited\": %d, \"effectLookups\": %d, "
+                + "\"effectResolutions\": %d, \"hierarchyWalks\": %d, \"overrideComparisons\": %d, "
+                + "\"violations\": %d", c.nanos / 1e6, c.methodsVisited, c.effectLookups, c.effectResolutions,
+                c.hierarchyWalks, c.overrideComparisons, c.violations));
+    }
+
+    private static void counts(Writer out, Map<String, Long> counts) throws IOException {
+        out.write("{");
+        boolean first = true;
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            out.write((first ? "" : ", ") + quote(e.getKey()) + ": " + e.getValue());
+            first = false;
+        }
+        out.write("}");
+    }
+
+    private static String quote(String value) {
+        StringBuilder s = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                s.append('\\').append(c);
+            } else if (c < 0x20) {
+                s.append(String.format("\\u%04x", (int) c));
+            } else {
+                s.append(c);
+            }
+        }
+        return s.append('"').toString();
+    }
+}
@@ -0,0 +1,379 @@
+package com.toddschiller.checker;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Name;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.BreakTree;
+import com.sun.source.tree.CaseTree;
+import com.sun.source.tree.CatchTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ContinueTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IfTree;
+import com.sun.source.tree.LabeledStatementTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.SwitchTree;
+import com.sun.source.tree.SynchronizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TryTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * Determines whether a tree is on a cold path: a path that always ends by
+ * throwing an exception out of the enclosing method, e.g., the construction of
+ * the exception and its message in
+ * <code>if (x &lt; 0) throw new IllegalArgumentException("negative: " + x);</code>.
+ * <p>
+ * The analysis is a conservative, syntactic approximation of the control flow:
+ * a tree is cold if, from the statement containing it, control must reach a
+ * statement that always throws without passing a <code>return</code>,
+ * <code>break</code>, or <code>continue</code> that may leave the sequence. The
+ * exception must also escape the method: a tree inside a <code>try</code> block
+ * is only cold if every <code>catch</code> clause of the <code>try</code> itself
+ * always throws, e.g., to wrap the exception. Loops are assumed to terminate.
+ *
+ * @author Todd Schiller
+ */
+final class ColdPathAnalysis {
+
+    /** Whether each statement always completes by throwing an exception. */
+    private final Map<Tree, Boolean> mustThrow = new IdentityHashMap<Tree, Boolean>();
+
+    /**
+     * Whether each statement may complete with a <code>return</code>,
+     * <code>break</code>, or <code>continue</code> that leaves the statement.
+     */
+    private final Map<Tree, Boolean> mayEscape = new IdentityHashMap<Tree, Boolean>();
+
+    /**
+     * Discards the results computed for previously visited methods.
+     */
+    void clear() {
+        mustThrow.clear();
+        mayEscape.clear();
+    }
+
+    /**
+     * Returns <code>true</code> if every path from the leaf of {@code path}
+     * throws an exception out of the enclosing method or lambda.
+     */
+    boolean isCold(TreePath path) {
+        if (mayBeCaught(path)) {
+            return false;
+        }
+
+        for (TreePath p = path; p.getParentPath() != null; p = p.getParentPath()) {
+            Tree leaf = p.getLeaf();
+            if (isBoundary(leaf)) {
+                return false;
+            }
+
+            if (!(leaf instanceof StatementTree)) {
+                // e.g., the condition of an if statement
+                continue;
+            }
+
+            for (StatementTree statement : statementsFrom((StatementTree) leaf, p.getParentPath())) {
+                if (mustThrow(statement)) {
+                    return true;
+                } else if (mayEscape(statement)) {
+                    return false;
+                }
+            }
+            // The sequence completes normally, so continue with the enclosing one
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if an exception thrown at the leaf of
+     * {@code path} may be caught by a <code>catch</code> clause that does not
+     * rethrow.
+     */
+    private boolean mayBeCaught(TreePath path) {
+        for (TreePath p = path; p.getParentPath() != null; p = p.getParentPath()) {
+            Tree leaf = p.getLeaf();
+            if (isBoundary(leaf)) {
+                return false;
+            }
+
+            Tree parent = p.getParentPath().getLeaf();
+            if (parent.getKind() == Tree.Kind.TRY && ((TryTree) parent).getFinallyBlock() != leaf) {
+                TryTree tryTree = (TryTree) parent;
+                boolean inCatch = false;
+                for (CatchTree c : tryTree.getCatches()) {
+                    inCatch |= c == leaf;
+                }
+                if (!inCatch) {
+                    for (CatchTree c : tryTree.getCatches()) {
+                        if (!mustThrow(c.getBlock())) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBoundary(Tree tree) {
+        switch (tree.getKind()) {
+        case METHOD:
+        case LAMBDA_EXPRESSION:
+        case CLASS:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns the statements that run after {@code statement}, a child of the
+     * leaf of {@code parentPath}, starting with {@code statement} itself, until
+     * control leaves the parent.
+     */
+    private static List<StatementTree> statementsFrom(StatementTree statement, TreePath parentPath) {
+        Tree parent = parentPath.getLeaf();
+        List<StatementTree> result = new ArrayList<StatementTree>();
+        if (parent.getKind() == Tree.Kind.BLOCK) {
+            List<? extends StatementTree> statements = ((BlockTree) parent).getStatements();
+            result.addAll(statements.subList(indexOf(statements, statement), statements.size()));
+        } else if (parent.getKind() == Tree.Kind.CASE) {
+            List<? extends StatementTree> statements = ((CaseTree) parent).getStatements();
+            result.addAll(statements.subList(indexOf(statements, statement), statements.size()));
+            result.addAll(fallthrough((SwitchTree) parentPath.getParentPath().getLeaf(), (CaseTree) parent));
+        } else {
+            // e.g., a branch of an if statement or the body of a loop
+            result.add(statement);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the statements that run after the statements of {@code c} when they
+     * complete normally: the statements of the following cases.
+     */
+    private static List<StatementTree> fallthrough(SwitchTree switchTree, CaseTree c) {
+        List<StatementTree> result = new ArrayList<StatementTree>();
+        boolean after = false;
+        for (CaseTree other : switchTree.getCases()) {
+            if (after) {
+                result.addAll(other.getStatements());
+            }
+            after |= other == c;
+        }
+        return result;
+    }
+
+    private static int indexOf(List<? extends StatementTree> statements, Tree statement) {
+        for (int i = 0; i < statements.size(); i++) {
+            if (statements.get(i) == statement) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Statement is not in the sequence: " + statement);
+    }
+
+    /**
+     * Returns <code>true</code> if {@code statement} always completes by
+     * throwing an exception.
+     */
+    private boolean mustThrow(StatementTree statement) {
+        Boolean result = mustThrow.get(statement);
+        if (result == null) {
+            result = computeMustThrow(statement);
+            mustThrow.put(statement, result);
+        }
+        return result;
+    }
+
+    private boolean computeMustThrow(StatementTree statement) {
+        switch (statement.getKind()) {
+        case THROW:
+            return true;
+        case BLOCK:
+            return mustThrow(((BlockTree) statement).getStatements());
+        case IF: {
+            IfTree ifTree = (IfTree) statement;
+            return ifTree.getElseStatement() != null && mustThrow(ifTree.getThenStatement())
+                    && mustThrow(ifTree.getElseStatement());
+        }
+        case TRY: {
+            TryTree tryTree = (TryTree) statement;
+            if (tryTree.getFinallyBlock() != null && mustThrow(tryTree.getFinallyBlock())) {
+                return true;
+            }
+            if (!mustThrow(tryTree.getBlock())) {
+                return false;
+            }
+            for (CatchTree c : tryTree.getCatches()) {
+                if (!mustThrow(c.getBlock())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        case SYNCHRONIZED:
+            return mustThrow(((SynchronizedTree) statement).getBlock());
+        case LABELED_STATEMENT:
+            return mustThrow(((LabeledStatementTree) statement).getStatement());
+        case SWITCH: {
+            // Cases without statements fall through to the next case
+            boolean hasDefault = false;
+            boolean lastHasStatements = false;
+            for (CaseTree c : ((SwitchTree) statement).getCases()) {
+                // getExpression() is deprecated on newer JDKs in favor of
+                // getExpressions(), which Java 8 does not have
+                @SuppressWarnings("deprecation")
+                boolean isDefault = c.getExpression() == null;
+                hasDefault |= isDefault;
+                lastHasStatements = !c.getStatements().isEmpty();
+                if (lastHasStatements && !mustThrow(c.getStatements())) {
+                    return false;
+                }
+            }
+            return hasDefault && lastHasStatements;
+        }
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the sequence {@code statements} always
+     * completes by throwing an exception.
+     */
+    private boolean mustThrow(List<? extends StatementTree> statements) {
+        for (StatementTree statement : statements) {
+            if (mustThrow(statement)) {
+                return true;
+            } else if (mayEscape(statement)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean mayEscape(StatementTree statement) {
+        Boolean result = mayEscape.get(statement);
+        if (result == null) {
+            result = Boolean.TRUE.equals(new EscapeScanner().scan(statement, null));
+            mayEscape.put(statement, result);
+        }
+        return result;
+    }
+
+    /**
+     * Finds a <code>return</code>, <code>break</code>, or <code>continue</code>
+     * that transfers control out of the scanned statement.
+     */
+    private static final class EscapeScanner extends TreeScanner<Boolean, Void> {
+        private int loopDepth = 0;
+        private int switchDepth = 0;
+        private final Set<Name> labels = new HashSet<Name>();
+
+        @Override
+        public Boolean reduce(Boolean r1, Boolean r2) {
+            return Boolean.TRUE.equals(r1) || Boolean.TRUE.equals(r2);
+        }
+
+        @Override
+        public Boolean visitReturn(ReturnTree node, Void p) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitBreak(BreakTree node, Void p) {
+            return node.getLabel() == null ? loopDepth + switchDepth == 0 : !labels.contains(node.getLabel());
+        }
+
+        @Override
+        public Boolean visitContinue(ContinueTree node, Void p) {
+            return node.getLabel() == null ? loopDepth == 0 : !labels.contains(node.getLabel());
+        }
+
+        @Override
+        public Boolean visitLabeledStatement(LabeledStatementTree node, Void p) {
+            labels.add(node.getLabel());
+            try {
+                return super.visitLabeledStatement(node, p);
+            } finally {
+                labels.remove(node.getLabel());
+            }
+        }
+
+        @Override
+        public Boolean visitSwitch(SwitchTree node, Void p) {
+            switchDepth++;
+            try {
+                return super.visitSwitch(node, p);
+            } finally {
+                switchDepth--;
+            }
+        }
+
+        @Override
+        public Boolean visitWhileLoop(WhileLoopTree node, Void p) {
+            loopDepth++;
+            try {
+                return super.visitWhileLoop(node, p);
+            } finally {
+                loopDepth--;
+            }
+        }
+
+        @Override
+        public Boolean visitDoWhileLoop(DoWhileLoopTree node, Void p) {
+            loopDepth++;
+            try {
+                return super.visitDoWhileLoop(node, p);
+            } finally {
+                loopDepth--;
+            }
+        }
+
+        @Override
+        public Boolean visitForLoop(ForLoopTree node, Void p) {
+            loopDepth++;
+            try {
+                return super.visitForLoop(node, p);
+            } finally {
+                loopDepth--;
+            }
+        }
+
+        @Override
+        public Boolean visitEnhancedForLoop(EnhancedForLoopTree node, Void p) {
+            loopDepth++;
+            try {
+                return super.visitEnhancedForLoop(node, p);
+            } finally {
+                loopDepth--;
+            }
+        }
+
+        @Override
+        public Boolean visitClass(ClassTree node, Void p) {
+            // Control cannot leave a method through a nested class
+            return false;
+        }
+
+        @Override
+        public Boolean visitLambdaExpression(LambdaExpressionTree node, Void p) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.toddschiller.checker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Types;
+
+/**
+ * Determines which calls through interface types in methods limited by their
+ * effect may dispatch to an implementation whose effect exceeds that of the
+ * interface method.
+ * <p>
+ * A call is checked against the effect of the method it names, which an
+ * implementation overriding it in source must respect. An implementation that a
+ * class inherits from a superclass that does not implement the interface, or
+ * that is declared in a class file, is not checked against the interface
+ * method, so a call through the interface would silently trust it.
+ * <p>
+ * While visiting each concrete class, the checker records such implementations
+ * of the interface methods that limit their effect; while visiting each method,
+ * it records the calls of interface methods that its effect permits. Once all
+ * compilation units have been visited, a call may dispatch to each recorded
+ * implementation by a subtype of the type of its receiver. Only the classes in
+ * the compiled sources are known; implementations elsewhere are still trusted.
+ *
+ * @author Todd Schiller
+ */
+final class DispatchAnalysis {
+
+    /** An implementation of an interface method that exceeds its effect. */
+    private static final class Implementation {
+        final TypeElement type;
+        final ExecutableElement method;
+        final Effect effect;
+
+        Implementation(TypeElement type, ExecutableElement method, Effect effect) {
+            this.type = type;
+            this.method = method;
+            this.effect = effect;
+        }
+    }
+
+    /** A call of an interface method from a method limited by its effect. */
+    private static final class Call {
+        final ExecutableElement caller;
+        final Effect callerEffect;
+        final ExecutableElement target;
+        final TypeElement receiver;
+        final String location;
+
+        Call(ExecutableElement caller, Effect callerEffect, ExecutableElement target, TypeElement receiver,
+                String location) {
+            this.caller = caller;
+            this.callerEffect = callerEffect;
+            this.target = target;
+            this.receiver = receiver;
+            this.location = location;
+        }
+    }
+
+    /** A call that may dispatch to an implementation its caller does not permit. */
+    static final class Violation {
+        /** The method containing the call. */
+        final ExecutableElement caller;
+        final Effect callerEffect;
+
+        /** The interface method called. */
+        final ExecutableElement target;
+
+        /** The location of the call, e.g., <code>Foo.java:12</code>. */
+        final String location;
+
+        /** The implementation and the class that inherits it. */
+        final ExecutableElement implementation;
+        final TypeElement type;
+        final Effect effect;
+
+        Violation(Call call, Implementation implementation) {
+            this.caller = call.caller;
+            this.callerEffect = call.callerEffect;
+            this.target = call.target;
+            this.location = call.location;
+            this.implementation = implementation.method;
+            this.type = implementation.type;
+            this.effect = implementation.effect;
+        }
+    }
+
+    private final Map<ExecutableElement, List<Implementation>> implementations =
+            new HashMap<ExecutableElement, List<Implementation>>();
+
+    private final List<Call> calls = new ArrayList<Call>();
+
+    /**
+     * Records that the concrete class {@code type} implements the interface method
+     * {@code method} with {@code implementation}, whose effect {@code effect} is
+     * not a subeffect of that of {@code method}.
+     */
+    void addImplementation(ExecutableElement method, TypeElement type, ExecutableElement implementation,
+            Effect effect) {
+        List<Implementation> existing = implementations.get(method);
+        if (existing == null) {
+            existing = new ArrayList<Implementation>(2);
+            implementations.put(method, existing);
+        }
+        existing.add(new Implementation(type, implementation, effect));
+    }
+
+    /**
+     * Records that {@code caller}, limited to {@code callerEffect}, calls the
+     * interface method {@code target} on a receiver of type {@code receiver} at
+     * {@code location}.
+     */
+    void addCall(ExecutableElement caller, Effect callerEffect, ExecutableElement target, TypeElement receiver,
+            String location) {
+        calls.add(new Call(caller, callerEffect, target, receiver, location));
+    }
+
+    /**
+     * Returns the calls that may dispatch to an implementation whose effect is not
+     * a subeffect of the effect of the caller, once for each implementing method.
+     */
+    List<Violation> findViolations(Types types) {
+        List<Violation> violations = new ArrayList<Violation>();
+        for (Call call : calls) {
+            List<Implementation> candidates = implementations.get(call.target);
+            if (candidates == null) {
+                continue;
+            }
+            Set<ExecutableElement> reported = new HashSet<ExecutableElement>();
+            for (Implementation candidate : candidates) {
+                if (!candidate.effect.isSubeffectOf(call.callerEffect)
+                        && types.isSubtype(types.erasure(candidate.type.asType()),
+                                types.erasure(call.receiver.asType()))
+                        && reported.add(candidate.method)) {
+                    violations.add(new Violation(call, candidate));
+                }
+            }
+        }
+        return violations;
+    }
+}
@@ -1,25 +1,42 @@
 package com.toddschiller.checker;
 
 import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import com.toddschiller.checker.qual.MayAlloc;
 import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoHeapAlloc;
 
 /**
- * Represents an allocation effect with the relationship
- * <code>NoAlloc &lt;: MayAlloc</code>.
+ * Represents an allocation effect. The effects form a diamond:
+ * <code>NoAlloc &lt;: NoAllocAfterWarmup &lt;: MayAlloc</code> and
+ * <code>NoAlloc &lt;: NoHeapAlloc &lt;: MayAlloc</code>, where
+ * <code>NoAllocAfterWarmup</code> and <code>NoHeapAlloc</code> are unrelated: the
+ * former may allocate on the heap during warmup, the latter may allocate off the
+ * heap at any time.
  * <p>
  * Adapted from the GUI effect type checker's
  * {@link org.checkerframework.checker.guieffect.Effect}.
  * 
  * @author Todd Schiller
  */
-public final class Effect implements Comparable<Effect> {
+public final class Effect {
+
+    /**
+     * The effect annotations; each comes before the effects that are less
+     * restrictive than it.
+     */
+    public static final List<Class<? extends Annotation>> ANNOTATIONS = Collections
+            .unmodifiableList(Arrays.<Class<? extends Annotation>> asList(NoAlloc.class, NoAllocAfterWarmup.class,
+                    NoHeapAlloc.class, MayAlloc.class));
 
     private final Class<? extends Annotation> clazz;
 
     public Effect(Class<? extends Annotation> clazz) {
-        assert (clazz.equals(NoAlloc.class) || clazz.equals(MayAlloc.class));
+        assert (ANNOTATIONS.contains(clazz));
         this.clazz = clazz;
     }
 
@@ -31,6 +48,14 @@ public final class Effect implements Comparable<Effect> {
         return clazz.equals(NoAlloc.class);
     }
 
+    public boolean noAllocAfterWarmup() {
+        return clazz.equals(NoAllocAfterWarmup.class);
+    }
+
+    public boolean noHeapAlloc() {
+        return clazz.equals(NoHeapAlloc.class);
+    }
+
     public Class<? extends Annotation> getAnnotation() {
         return clazz;
     }
@@ -49,22 +74,43 @@ public final class Effect implements Comparable<Effect> {
         return other instanceof Effect && this.equals((Effect) other);
     }
 
-    public static Effect min(Effect l, Effect r) {
-        return l.compareTo(r) <= 0 ? l : r;
+    @Override
+    public int hashCode() {
+        return clazz.hashCode();
     }
 
-    @Override
-    public int compareTo(Effect other) {
+    /**
+     * Returns <code>true</code> if this effect is at least as restrictive as
+     * {@code other}, i.e., code with the effect {@code other} may call a method
+     * with this effect.
+     */
+    public boolean isSubeffectOf(Effect other) {
         assert (other != null);
+        return this.equals(other) || noAlloc() || other.mayAlloc();
+    }
+
+    /**
+     * Returns the greatest lower bound of {@code l} and {@code r}.
+     */
+    public static Effect min(Effect l, Effect r) {
+        if (l.isSubeffectOf(r)) {
+            return l;
+        } else if (r.isSubeffectOf(l)) {
+            return r;
+        }
+        return new Effect(NoAlloc.class);
+    }
 
-        // MayAlloc is the upper-bound
-        if (this.mayAlloc() == other.mayAlloc()) {
-            return 0;
-        } else if (this.mayAlloc()) {
-            return 1;
-        } else {
-            return -1;
+    /**
+     * Returns the least upper bound of {@code l} and {@code r}.
+     */
+    public static Effect max(Effect l, Effect r) {
+        if (l.isSubeffectOf(r)) {
+            return r;
+        } else if (r.isSubeffectOf(l)) {
+            return l;
         }
+        return new Effect(MayAlloc.class);
     }
 
     public static final class EffectRange {
@@ -0,0 +1,504 @@
+package com.toddschiller.checker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
+
+import org.checkerframework.javacutil.InternalUtils;
+import org.checkerframework.javacutil.TreeUtils;
+import org.checkerframework.javacutil.TypesUtils;
+
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * Suggests fixes for the common allocations the checker reports, with
+ * <code>-Aalloc.fixes=file</code>:
+ * <ul>
+ * <li>a fixed-size array, <code>new int[3]</code>, is hoisted into a final field
+ * of the enclosing class that is allocated once;</li>
+ * <li>a call that boxes primitives for <code>Objects.hashCode</code>,
+ * <code>Objects.equals</code>, <code>Objects.toString</code>, or
+ * <code>Objects.hash</code> is replaced with the primitive equivalent, e.g.,
+ * <code>Integer.hashCode(x)</code>;</li>
+ * <li>a string concatenation passed as the message of an SLF4J or Log4j 2 logger
+ * becomes a parameterized message, <code>log.debug("x={}", x)</code>, and one
+ * passed to a <code>java.util.logging</code> logger becomes a message supplier,
+ * <code>log.fine(() -&gt; "x=" + x)</code>, so the message is only built if it is
+ * logged.</li>
+ * </ul>
+ * Fixes are only suggested for allocations reported as errors, not for those in
+ * methods whose effects are inferred or traced. A hoisted array is shared by all
+ * calls of its method and keeps its contents between them, so the fixes must be
+ * reviewed before they are applied.
+ *
+ * @author Todd Schiller
+ */
+final class FixSuggester {
+
+    /** The SLF4J and Log4j 2 loggers, whose messages take <code>{}</code> placeholders. */
+    private static final List<String> PARAMETERIZED_LOGGERS = Arrays.asList("org.slf4j.Logger",
+            "org.apache.logging.log4j.Logger");
+
+    private static final Set<String> PARAMETERIZED_LOG_METHODS = new HashSet<String>(Arrays.asList("trace", "debug",
+            "info", "warn", "error", "fatal", "log"));
+
+    /** The <code>java.util.logging</code> methods with a <code>Supplier&lt;String&gt;</code> overload. */
+    private static final Set<String> SUPPLIER_LOG_METHODS = new HashSet<String>(Arrays.asList("severe", "warning",
+            "info", "config", "fine", "finer", "finest", "log"));
+
+    private final SuggestedFixes fixes;
+    private final SourcePositions positions;
+    private final Types types;
+    private final Elements elements;
+
+    /** The names of the fields added to each class. */
+    private final Map<TypeElement, Set<String>> addedFields = new HashMap<TypeElement, Set<String>>();
+
+    /** The source file whose contents are cached, and its contents. */
+    private JavaFileObject cachedFile;
+    private String cachedContent;
+
+    FixSuggester(SuggestedFixes fixes, SourcePositions positions, Types types, Elements elements) {
+        this.fixes = fixes;
+        this.positions = positions;
+        this.types = types;
+        this.elements = elements;
+    }
+
+    /**
+     * Suggests a fix for the allocation {@code node}, reported with
+     * {@code messageKey} while visiting {@code path}, if it follows a known
+     * pattern.
+     */
+    void suggest(Tree node, String messageKey, TreePath path) {
+        String content = content(path.getCompilationUnit());
+        if (content == null) {
+            return;
+        }
+
+        Tree leaf = path.getLeaf();
+        if (messageKey.equals("call.invalid.alloc") && node.getKind() == Tree.Kind.NEW_ARRAY && leaf == node) {
+            hoistArray(path, content);
+        } else if (messageKey.equals("boxing.invalid.alloc") && leaf instanceof MethodInvocationTree
+                && ((MethodInvocationTree) leaf).getArguments().contains(node)) {
+            replaceBoxingCall((MethodInvocationTree) leaf, path, content);
+        } else if (messageKey.equals("varargs.invalid.alloc") && leaf == node && node instanceof MethodInvocationTree) {
+            replaceBoxingCall((MethodInvocationTree) node, path, content);
+        } else if (messageKey.equals("string.concat.invalid.alloc") && leaf == node && node instanceof BinaryTree) {
+            TreePath parent = path.getParentPath();
+            if (parent != null && parent.getLeaf() instanceof MethodInvocationTree) {
+                deferLogMessage((BinaryTree) node, (MethodInvocationTree) parent.getLeaf(), path, content);
+            }
+        }
+    }
+
+    /**
+     * Hoists the array created at {@code path}, whose dimensions are constants,
+     * into a final field declared before the enclosing method.
+     */
+    private void hoistArray(TreePath path, String content) {
+        NewArrayTree array = (NewArrayTree) path.getLeaf();
+        if (array.getType() == null || array.getInitializers() != null || array.getDimensions().isEmpty()) {
+            return;
+        }
+        for (ExpressionTree dimension : array.getDimensions()) {
+            if (!isFieldConstant(dimension)) {
+                return;
+            }
+        }
+
+        MethodTree method = TreeUtils.enclosingMethod(path);
+        ClassTree clazz = TreeUtils.enclosingClass(path);
+        if (method == null || clazz == null || !clazz.getMembers().contains(method)) {
+            return;
+        }
+        TypeElement classElt = TreeUtils.elementFromDeclaration(clazz);
+        boolean isStatic = method.getModifiers().getFlags().contains(Modifier.STATIC);
+        if (classElt.getKind().isInterface() || (isStatic && !permitsStaticFields(classElt))) {
+            return;
+        }
+
+        StringBuilder type = new StringBuilder(source(array.getType(), path, content));
+        for (int i = 0; i < array.getDimensions().size(); i++) {
+            type.append("[]");
+        }
+        String methodName = method.getName().toString();
+        String name = fieldName(classElt, methodName.equals("<init>") ? "scratch" : methodName + "Scratch");
+
+        // Declare the field before the method, and before its doc comment
+        CompilationUnitTree unit = path.getCompilationUnit();
+        int methodStart = (int) positions.getStartPosition(unit, method);
+        int lineStart = content.lastIndexOf('\n', methodStart - 1) + 1;
+        String indent = content.substring(lineStart, methodStart);
+        if (!indent.trim().isEmpty()) {
+            return;
+        }
+        while (lineStart > 0) {
+            int previous = content.lastIndexOf('\n', lineStart - 2) + 1;
+            String line = content.substring(previous, lineStart).trim();
+            if (!(line.startsWith("*") || line.startsWith("/*") || line.startsWith("//"))) {
+                break;
+            }
+            lineStart = previous;
+        }
+
+        String newline = content.contains("\r\n") ? "\r\n" : "\n";
+        String declaration = indent + "private " + (isStatic ? "static " : "") + "final " + type + " " + name + " = "
+                + source(array, path, content) + ";" + newline + newline;
+        if (fixes.add(unit.getSourceFile(), new SuggestedFixes.Edit(lineStart, lineStart, declaration),
+                replace(array, name, path))) {
+            addedFields.get(classElt).add(name);
+        }
+    }
+
+    /**
+     * Replaces a call to an <code>Objects</code> method that boxes its primitive
+     * arguments with the primitive equivalent.
+     */
+    private void replaceBoxingCall(MethodInvocationTree call, TreePath path, String content) {
+        ExecutableElement method = TreeUtils.elementFromUse(call);
+        TypeElement owner = (TypeElement) method.getEnclosingElement();
+        if (!owner.getQualifiedName().contentEquals("java.util.Objects")) {
+            return;
+        }
+
+        List<? extends ExpressionTree> args = call.getArguments();
+        String qualifier = call.getMethodSelect() instanceof MemberSelectTree
+                ? source(((MemberSelectTree) call.getMethodSelect()).getExpression(), path, content)
+                : "java.util.Objects";
+        String name = method.getSimpleName().toString();
+        String replacement = null;
+        if (name.equals("hashCode") && args.size() == 1 && isPrimitive(args.get(0))) {
+            replacement = hashCode(args.get(0), qualifier, path, content);
+        } else if (name.equals("toString") && args.size() == 1 && isPrimitive(args.get(0))) {
+            replacement = "String.valueOf(" + source(args.get(0), path, content) + ")";
+        } else if (name.equals("equals") && args.size() == 2 && isPrimitive(args.get(0))
+                && InternalUtils.typeOf(args.get(0)).getKind() == InternalUtils.typeOf(args.get(1)).getKind()) {
+            // Equal boxes have the same kind and value; Double.equals compares bits
+            TypeKind kind = InternalUtils.typeOf(args.get(0)).getKind();
+            String left = source(args.get(0), path, content);
+            String right = source(args.get(1), path, content);
+            replacement = kind == TypeKind.DOUBLE || kind == TypeKind.FLOAT
+                    ? "(" + boxName(args.get(0)) + ".compare(" + left + ", " + right + ") == 0)"
+                    : "(" + left + " == " + right + ")";
+        } else if (name.equals("hash") && ImplicitAllocations.isVarargsCall(method, args, types)) {
+            // Arrays.hashCode: result = 31 * result + hashCode(element), from 1
+            replacement = "1";
+            for (int i = 0; i < args.size(); i++) {
+                String hash = hashCode(args.get(i), qualifier, path, content);
+                replacement = i == 0 ? "31 + " + hash : "31 * (" + replacement + ") + " + hash;
+            }
+            replacement = args.isEmpty() ? replacement : "(" + replacement + ")";
+        }
+
+        if (replacement != null) {
+            fixes.add(path.getCompilationUnit().getSourceFile(), replace(call, replacement, path));
+        }
+    }
+
+    /**
+     * Returns an expression for the hash code of {@code arg} that does not box it.
+     */
+    private String hashCode(ExpressionTree arg, String objects, TreePath path, String content) {
+        String source = source(arg, path, content);
+        return isPrimitive(arg) ? boxName(arg) + ".hashCode(" + source + ")" : objects + ".hashCode(" + source + ")";
+    }
+
+    /**
+     * Replaces the message {@code concat} of the logging call {@code call} with a
+     * parameterized message or a message supplier.
+     */
+    private void deferLogMessage(BinaryTree concat, MethodInvocationTree call, TreePath path, String content) {
+        List<? extends ExpressionTree> args = call.getArguments();
+        if (args.isEmpty() || args.get(args.size() - 1) != concat) {
+            return;
+        }
+        ExecutableElement method = TreeUtils.elementFromUse(call);
+        List<? extends VariableElement> params = method.getParameters();
+        if (params.size() != args.size() || !TypesUtils.isString(params.get(params.size() - 1).asType())) {
+            return;
+        }
+
+        String name = method.getSimpleName().toString();
+        TypeMirror owner = method.getEnclosingElement().asType();
+        String replacement = null;
+        if (PARAMETERIZED_LOG_METHODS.contains(name) && isSubtypeOf(owner, PARAMETERIZED_LOGGERS)) {
+            replacement = parameterize(concat, path, content);
+        } else if (SUPPLIER_LOG_METHODS.contains(name) && isSubtypeOf(owner, Arrays.asList("java.util.logging.Logger"))
+                && (args.size() == 1 || (name.equals("log") && args.size() == 2)) && capturesOnlyFinals(concat, path)) {
+            replacement = "() -> " + source(concat, path, content);
+        }
+
+        if (replacement != null) {
+            fixes.add(path.getCompilationUnit().getSourceFile(), replace(concat, replacement, path));
+        }
+    }
+
+    /**
+     * Returns the concatenation {@code concat} as a message with a
+     * <code>{}</code> placeholder for each operand that is not a literal, followed
+     * by those operands, or <code>null</code> if it cannot be expressed that way.
+     */
+    private String parameterize(BinaryTree concat, TreePath path, String content) {
+        List<ExpressionTree> operands = new ArrayList<ExpressionTree>();
+        flattenConcatenation(concat, operands);
+
+        StringBuilder message = new StringBuilder();
+        StringBuilder arguments = new StringBuilder();
+        for (ExpressionTree operand : operands) {
+            if (operand instanceof LiteralTree) {
+                String value = String.valueOf(((LiteralTree) operand).getValue());
+                if (value.contains("{}") || value.endsWith("\\")) {
+                    // The literal would be read as a placeholder or an escape
+                    return null;
+                }
+                message.append(value);
+            } else if (InternalUtils.typeOf(operand).getKind() == TypeKind.ARRAY) {
+                // Loggers format arrays by their elements, unlike concatenation
+                return null;
+            } else {
+                message.append("{}");
+                arguments.append(", ").append(source(operand, path, content));
+            }
+        }
+        return quote(message.toString()) + arguments;
+    }
+
+    /**
+     * Adds the operands of the string concatenation {@code tree}, from left to
+     * right, to {@code operands}.
+     */
+    private static void flattenConcatenation(ExpressionTree tree, List<ExpressionTree> operands) {
+        ExpressionTree expr = TreeUtils.skipParens(tree);
+        if (expr.getKind() == Tree.Kind.PLUS && TreeUtils.isStringConcatenation(expr)) {
+            flattenConcatenation(((BinaryTree) expr).getLeftOperand(), operands);
+            flattenConcatenation(((BinaryTree) expr).getRightOperand(), operands);
+        } else {
+            operands.add(expr);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the local variables {@code tree} refers to are
+     * never reassigned in the enclosing method, so a lambda can capture them.
+     */
+    private static boolean capturesOnlyFinals(Tree tree, TreePath path) {
+        final Set<Element> locals = new HashSet<Element>();
+        new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitIdentifier(IdentifierTree node, Void p) {
+                Element elt = TreeUtils.elementFromUse(node);
+                if (elt != null && isLocal(elt)) {
+                    locals.add(elt);
+                }
+                return null;
+            }
+        }.scan(tree, null);
+
+        MethodTree method = TreeUtils.enclosingMethod(path);
+        if (locals.isEmpty() || method == null) {
+            return method != null;
+        }
+
+        final boolean[] reassigned = { false };
+        new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitAssignment(AssignmentTree node, Void p) {
+                check(node.getVariable());
+                return super.visitAssignment(node, p);
+            }
+
+            @Override
+            public Void visitCompoundAssignment(CompoundAssignmentTree node, Void p) {
+                check(node.getVariable());
+                return super.visitCompoundAssignment(node, p);
+            }
+
+            @Override
+            public Void visitUnary(UnaryTree node, Void p) {
+                switch (node.getKind()) {
+                case PREFIX_INCREMENT:
+                case PREFIX_DECREMENT:
+                case POSTFIX_INCREMENT:
+                case POSTFIX_DECREMENT:
+                    check(node.getExpression());
+                    break;
+                default:
+                    break;
+                }
+                return super.visitUnary(node, p);
+            }
+
+            private void check(ExpressionTree variable) {
+                if (variable instanceof IdentifierTree && locals.contains(TreeUtils.elementFromUse(variable))) {
+                    reassigned[0] = true;
+                }
+            }
+        }.scan(method.getBody(), null);
+        return !reassigned[0];
+    }
+
+    private static boolean isLocal(Element elt) {
+        ElementKind kind = elt.getKind();
+        return kind == ElementKind.LOCAL_VARIABLE || kind == ElementKind.PARAMETER
+                || kind == ElementKind.EXCEPTION_PARAMETER || kind == ElementKind.RESOURCE_VARIABLE;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code expr} is a constant that can be referred
+     * to from a field initializer: a literal or a constant field.
+     */
+    private static boolean isFieldConstant(ExpressionTree expr) {
+        ExpressionTree e = TreeUtils.skipParens(expr);
+        if (e instanceof IdentifierTree || e instanceof MemberSelectTree) {
+            Element elt = TreeUtils.elementFromUse(e);
+            return elt != null && elt.getKind() == ElementKind.FIELD && ImplicitAllocations.constantValue(e) != null;
+        }
+        return ImplicitAllocations.constantValue(e) != null;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code type} may declare static fields: before
+     * Java 16, inner, local, and anonymous classes may not.
+     */
+    private static boolean permitsStaticFields(TypeElement type) {
+        return type.getNestingKind() == NestingKind.TOP_LEVEL
+                || (type.getNestingKind() == NestingKind.MEMBER && type.getModifiers().contains(Modifier.STATIC));
+    }
+
+    /**
+     * Returns {@code base}, or {@code base} with a numeric suffix, whichever is
+     * first not the name of a member of {@code type}, and reserves it.
+     */
+    private String fieldName(TypeElement type, String base) {
+        Set<String> added = addedFields.get(type);
+        if (added == null) {
+            added = new HashSet<String>();
+            addedFields.put(type, added);
+        }
+        Set<String> taken = new HashSet<String>(added);
+        for (Element member : type.getEnclosedElements()) {
+            taken.add(member.getSimpleName().toString());
+        }
+
+        String name = base;
+        for (int i = 2; taken.contains(name); i++) {
+            name = base + i;
+        }
+        return name;
+    }
+
+    private boolean isSubtypeOf(TypeMirror type, List<String> supertypes) {
+        for (String name : supertypes) {
+            TypeElement supertype = elements.getTypeElement(name);
+            if (supertype != null && types.isSubtype(types.erasure(type), types.erasure(supertype.asType()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPrimitive(ExpressionTree expr) {
+        return InternalUtils.typeOf(expr).getKind().isPrimitive();
+    }
+
+    private String boxName(ExpressionTree expr) {
+        return ImplicitAllocations.boxName(InternalUtils.typeOf(expr), types);
+    }
+
+    /**
+     * Returns {@code value} as a Java string literal.
+     */
+    private static String quote(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+                result.append("\\\"");
+                break;
+            case '\\':
+                result.append("\\\\");
+                break;
+            case '\n':
+                result.append("\\n");
+                break;
+            case '\r':
+                result.append("\\r");
+                break;
+            case '\t':
+                result.append("\\t");
+                break;
+            default:
+                if (c < 0x20 || c == 0x7f) {
+                    result.append(String.format("\\u%04x", (int) c));
+                } else {
+                    result.append(c);
+                }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    private SuggestedFixes.Edit replace(Tree tree, String replacement, TreePath path) {
+        CompilationUnitTree unit = path.getCompilationUnit();
+        return new SuggestedFixes.Edit((int) positions.getStartPosition(unit, tree),
+                (int) positions.getEndPosition(unit, tree), replacement);
+    }
+
+    private String source(Tree tree, TreePath path, String content) {
+        CompilationUnitTree unit = path.getCompilationUnit();
+        return content.substring((int) positions.getStartPosition(unit, tree),
+                (int) positions.getEndPosition(unit, tree));
+    }
+
+    /**
+     * Returns the contents of the source file of {@code unit}, or
+     * <code>null</code> if it cannot be read.
+     */
+    private String content(CompilationUnitTree unit) {
+        JavaFileObject file = unit.getSourceFile();
+        if (file != cachedFile) {
+            try {
+                cachedContent = file.getCharContent(true).toString();
+            } catch (IOException e) {
+                cachedContent = null;
+            }
+            cachedFile = file;
+        }
+        return cachedContent;
+    }
+}
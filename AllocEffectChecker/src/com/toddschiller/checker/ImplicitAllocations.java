@@ -0,0 +1,226 @@
+package com.toddschiller.checker;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+import org.checkerframework.javacutil.InternalUtils;
+import org.checkerframework.javacutil.TreeUtils;
+
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.UnaryTree;
+
+/**
+ * Recognizes the allocations the compiler introduces without a <code>new</code>
+ * expression in the source: boxing conversions, string concatenation, varargs
+ * arrays, the iterators of enhanced for loops, and the argument arrays and boxes
+ * of reflective invocations.
+ *
+ * @author Todd Schiller
+ */
+final class ImplicitAllocations {
+
+    /**
+     * The reflective invocation APIs, as <code>class#method</code>: they box
+     * primitive arguments and results, copy or spread argument arrays, and may
+     * allocate to resolve or adapt their target, whatever their summaries say.
+     */
+    private static final Set<String> REFLECTIVE_INVOCATIONS = new HashSet<String>(Arrays.asList(
+            "java.lang.reflect.Method#invoke", "java.lang.reflect.Constructor#newInstance",
+            "java.lang.Class#newInstance", "java.lang.reflect.Field#get", "java.lang.reflect.Array#get",
+            "java.lang.invoke.MethodHandle#invoke", "java.lang.invoke.MethodHandle#invokeWithArguments"));
+
+    private ImplicitAllocations() {
+        // static utility class
+    }
+
+    /**
+     * Returns <code>true</code> if converting {@code expr} to {@code target} is a
+     * boxing conversion that may allocate. Boxing does not allocate when the
+     * result comes from the caches the JLS (&sect;5.1.7) requires, i.e., for all
+     * <code>boolean</code> and <code>byte</code> values, and for constant
+     * <code>char</code>, <code>short</code>, <code>int</code>, and
+     * <code>long</code> values in the cached range.
+     * <p>
+     * A <code>void</code> target, e.g., the return type of the functional interface
+     * method implemented by the expression lambda <code>x -&gt; sum += x</code>,
+     * discards the value instead of converting it.
+     */
+    static boolean isAllocatingBoxing(ExpressionTree expr, TypeMirror target) {
+        TypeMirror source = InternalUtils.typeOf(expr);
+        if (source == null || target == null || !source.getKind().isPrimitive() || target.getKind().isPrimitive()
+                || target.getKind() == TypeKind.VOID || target.getKind() == TypeKind.ERROR) {
+            return false;
+        }
+
+        switch (source.getKind()) {
+        case BOOLEAN:
+        case BYTE:
+            return false;
+        case CHAR:
+        case SHORT:
+        case INT:
+        case LONG:
+            Object value = constantValue(expr);
+            if (value instanceof Character) {
+                return ((Character) value).charValue() > 127;
+            } else if (value instanceof Number) {
+                long v = ((Number) value).longValue();
+                return v < -128 || v > 127;
+            }
+            return true;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Returns the value of {@code expr} if it is a literal, a negated literal, or a
+     * reference to a constant variable; <code>null</code> otherwise.
+     */
+    static Object constantValue(ExpressionTree expr) {
+        expr = TreeUtils.skipParens(expr);
+        switch (expr.getKind()) {
+        case INT_LITERAL:
+        case LONG_LITERAL:
+        case CHAR_LITERAL:
+            return ((LiteralTree) expr).getValue();
+        case UNARY_MINUS:
+            Object value = constantValue(((UnaryTree) expr).getExpression());
+            return value instanceof Number ? Long.valueOf(-((Number) value).longValue()) : null;
+        case IDENTIFIER:
+        case MEMBER_SELECT:
+            Element elt = TreeUtils.elementFromUse(expr);
+            return elt instanceof VariableElement ? ((VariableElement) elt).getConstantValue() : null;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if {@code tree} is a string concatenation that is
+     * not a compile-time constant, and therefore builds a new string at runtime.
+     */
+    static boolean isAllocatingConcatenation(ExpressionTree tree) {
+        return tree.getKind() == Tree.Kind.PLUS && TreeUtils.isStringConcatenation(tree)
+                && !TreeUtils.isCompileTimeString(tree);
+    }
+
+    /**
+     * Returns <code>true</code> if the invocation of {@code method} with
+     * {@code args} passes its trailing arguments in an implicitly created array.
+     */
+    static boolean isVarargsCall(ExecutableElement method, List<? extends ExpressionTree> args, Types types) {
+        if (!method.isVarArgs()) {
+            return false;
+        }
+
+        int arity = method.getParameters().size();
+        if (args.size() != arity) {
+            return true;
+        }
+
+        // A single trailing argument is passed as is if it is already an array
+        TypeMirror last = InternalUtils.typeOf(args.get(arity - 1));
+        TypeMirror param = method.getParameters().get(arity - 1).asType();
+        return !(last.getKind() == TypeKind.NULL || types.isAssignable(types.erasure(last), types.erasure(param)));
+    }
+
+    /**
+     * Returns the type that the argument at {@code index} is converted to when
+     * invoking {@code method}, taking an implicit varargs array into account.
+     */
+    static TypeMirror parameterType(ExecutableElement method, int index, boolean varargs, Types types) {
+        List<? extends VariableElement> params = method.getParameters();
+        if (varargs && index >= params.size() - 1) {
+            TypeMirror array = params.get(params.size() - 1).asType();
+            return ((ArrayType) types.erasure(array)).getComponentType();
+        }
+        return params.get(index).asType();
+    }
+
+    /**
+     * Returns <code>true</code> if an enhanced for loop over {@code iterated}
+     * obtains an {@link java.util.Iterator}, as opposed to indexing an array.
+     */
+    static boolean isIteratorLoop(ExpressionTree iterated) {
+        TypeMirror type = InternalUtils.typeOf(iterated);
+        return type != null && type.getKind() != TypeKind.ARRAY;
+    }
+
+    /**
+     * Returns the name of the box class that a value of the primitive type
+     * {@code primitive} is converted to, for use in messages.
+     */
+    static String boxName(TypeMirror primitive, Types types) {
+        return types.boxedClass((PrimitiveType) primitive).getSimpleName().toString();
+    }
+
+    /**
+     * Returns <code>true</code> if {@code method} invokes a method, or reads a
+     * value, reflectively, which allocates even if the target does not.
+     */
+    static boolean isReflectiveInvocation(ExecutableElement method) {
+        Element owner = method.getEnclosingElement();
+        return owner instanceof TypeElement && REFLECTIVE_INVOCATIONS
+                .contains(((TypeElement) owner).getQualifiedName() + "#" + method.getSimpleName());
+    }
+
+    /**
+     * Returns <code>true</code> if {@code method} is signature polymorphic
+     * (JLS &sect;15.12.3): the compiler passes its arguments with the types at the
+     * call site, without a varargs array or boxing.
+     * <p>
+     * At a call site, javac gives such a method a symbol synthesized for the types
+     * of the arguments, which is neither native nor varargs and carries no
+     * annotations, so the method is identified by its owner and its name: the
+     * owner must declare a native method of that name whose only parameter is
+     * variable arity.
+     */
+    static boolean isSignaturePolymorphic(ExecutableElement method) {
+        Element owner = method.getEnclosingElement();
+        if (!(owner instanceof TypeElement)) {
+            return false;
+        }
+        Name name = ((TypeElement) owner).getQualifiedName();
+        if (!name.contentEquals("java.lang.invoke.MethodHandle") && !name.contentEquals("java.lang.invoke.VarHandle")) {
+            return false;
+        }
+        for (Element member : owner.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.METHOD && member.getSimpleName().equals(method.getSimpleName())) {
+                ExecutableElement declared = (ExecutableElement) member;
+                if (declared.isVarArgs() && declared.getParameters().size() == 1
+                        && declared.getModifiers().contains(Modifier.NATIVE)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code method} is
+     * <code>MethodHandle.invokeExact</code>, which only succeeds if the type at the
+     * call site is exactly that of the handle, so it neither boxes nor adapts the
+     * arguments.
+     */
+    static boolean isExactInvocation(ExecutableElement method) {
+        return isSignaturePolymorphic(method) && method.getSimpleName().contentEquals("invokeExact");
+    }
+}
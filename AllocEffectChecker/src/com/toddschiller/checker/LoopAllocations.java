@@ -0,0 +1,78 @@
+package com.toddschiller.checker;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The allocations and allocating calls in loops, collected with
+ * <code>-Alint=loopAlloc</code> in all methods, whatever their effect.
+ * <p>
+ * An allocation is in a loop if it is in the body, condition, or update of a
+ * <code>for</code>, <code>while</code>, or <code>do</code> loop, or in a lambda or
+ * method reference passed to a <code>java.util.stream</code> operation, which runs
+ * once per element. Its depth is the number of such loops enclosing it in its
+ * method. The report lists the allocations from the most deeply nested, the
+ * likeliest candidates for hoisting out of their loops.
+ *
+ * @author Todd Schiller
+ */
+final class LoopAllocations {
+
+    private final List<Site> sites = new ArrayList<Site>();
+
+    /**
+     * Records an allocation nested {@code depth} loops deep in {@code method}.
+     *
+     * @param description the description of the allocation
+     * @param location the source location of the allocation, e.g., <code>Foo.java:12</code>
+     */
+    void add(int depth, String method, String description, String location) {
+        sites.add(new Site(depth, method, description, location));
+    }
+
+    /**
+     * Writes the report to {@code out}: one line per allocation, the most deeply
+     * nested first, and in the order they were visited otherwise.
+     */
+    void write(Writer out) throws IOException {
+        List<Site> sorted = new ArrayList<Site>(sites);
+        Collections.sort(sorted, new Comparator<Site>() {
+            @Override
+            public int compare(Site a, Site b) {
+                return Integer.compare(b.depth, a.depth);
+            }
+        });
+
+        Set<String> methods = new HashSet<String>();
+        for (Site site : sites) {
+            methods.add(site.method);
+        }
+
+        String newline = System.lineSeparator();
+        out.write(sites.size() + " allocations in loops in " + methods.size() + " methods, deepest first" + newline);
+        for (Site site : sorted) {
+            out.write(String.format("%3d  %s  %s: %s", site.depth, site.location, site.method, site.description)
+                    + newline);
+        }
+    }
+
+    private static final class Site {
+        final int depth;
+        final String method;
+        final String description;
+        final String location;
+
+        Site(int depth, String method, String description, String location) {
+            this.depth = depth;
+            this.method = method;
+            this.description = description;
+            this.location = location;
+        }
+    }
+}
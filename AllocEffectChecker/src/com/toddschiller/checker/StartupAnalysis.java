@@ -0,0 +1,126 @@
+package com.toddschiller.checker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+import com.toddschiller.checker.qual.Preinitialized;
+import com.toddschiller.checker.qual.Startup;
+
+/**
+ * Determines which {@link Preinitialized} classes in the compiled sources are
+ * not initialized by a {@link Startup} method.
+ * <p>
+ * While visiting each method, the checker records the methods it calls and the
+ * classes it initializes: the classes whose static members it accesses or that
+ * it instantiates, and the classes it names to <code>Class.forName</code> or
+ * <code>MethodHandles.Lookup.ensureInitialized</code>. Once all compilation units
+ * have been visited, a class is initialized at startup if a method reachable
+ * from a <code>@Startup</code> method initializes it or one of its subclasses.
+ * Calls are followed to the methods they name, not to overrides.
+ *
+ * @author Todd Schiller
+ */
+final class StartupAnalysis {
+
+    private final Set<TypeElement> preinitialized = new LinkedHashSet<TypeElement>();
+    private final List<ExecutableElement> startupMethods = new ArrayList<ExecutableElement>();
+
+    /** The methods each method calls and the classes it initializes. */
+    private final Map<ExecutableElement, Set<Element>> edges = new HashMap<ExecutableElement, Set<Element>>();
+
+    void addPreinitialized(TypeElement type) {
+        preinitialized.add(type);
+    }
+
+    void addStartupMethod(ExecutableElement method) {
+        startupMethods.add(method);
+    }
+
+    /**
+     * Records that {@code method} calls {@code callee}.
+     */
+    void addCall(ExecutableElement method, ExecutableElement callee) {
+        edges(method).add(callee);
+    }
+
+    /**
+     * Records that {@code method} initializes {@code type}.
+     */
+    void addInitialization(ExecutableElement method, TypeElement type) {
+        edges(method).add(type);
+    }
+
+    private Set<Element> edges(ExecutableElement method) {
+        Set<Element> result = edges.get(method);
+        if (result == null) {
+            result = new HashSet<Element>(4);
+            edges.put(method, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@link Preinitialized} classes that no method reachable from a
+     * {@link Startup} method initializes.
+     */
+    List<TypeElement> findUninitialized() {
+        if (preinitialized.isEmpty()) {
+            return new ArrayList<TypeElement>();
+        }
+
+        Set<TypeElement> initialized = new HashSet<TypeElement>();
+        Set<ExecutableElement> visited = new HashSet<ExecutableElement>(startupMethods);
+        Deque<ExecutableElement> pending = new ArrayDeque<ExecutableElement>(startupMethods);
+        while (!pending.isEmpty()) {
+            Set<Element> targets = edges.get(pending.remove());
+            if (targets == null) {
+                continue;
+            }
+            for (Element target : targets) {
+                if (target instanceof ExecutableElement) {
+                    if (visited.add((ExecutableElement) target)) {
+                        pending.add((ExecutableElement) target);
+                    }
+                } else {
+                    addWithSuperclasses((TypeElement) target, initialized);
+                }
+            }
+        }
+
+        List<TypeElement> uninitialized = new ArrayList<TypeElement>();
+        for (TypeElement type : preinitialized) {
+            if (!initialized.contains(type)) {
+                uninitialized.add(type);
+            }
+        }
+        return uninitialized;
+    }
+
+    /**
+     * Adds {@code type} and its superclasses, which are initialized before it, to
+     * {@code initialized}.
+     */
+    private static void addWithSuperclasses(TypeElement type, Set<TypeElement> initialized) {
+        while (initialized.add(type)) {
+            TypeMirror superclass = type.getSuperclass();
+            if (superclass.getKind() != TypeKind.DECLARED) {
+                return;
+            }
+            type = (TypeElement) ((DeclaredType) superclass).asElement();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.toddschiller.checker;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * The fixes suggested for allocations reported in the compiled sources, for
+ * <code>-Aalloc.fixes=file</code>; see {@link FixSuggester}.
+ * <p>
+ * Each fix is a set of edits of a source file that is applied as a whole; a fix
+ * whose edits overlap those of an earlier fix is dropped. At the end of the
+ * compilation, the fixes are written as a unified diff relative to the working
+ * directory, which <code>git apply</code> and <code>patch -p1</code> accept.
+ *
+ * @author Todd Schiller
+ */
+final class SuggestedFixes {
+
+    /** The number of unchanged lines around each change. */
+    private static final int CONTEXT = 3;
+
+    /** The edits of each file, in the order the files were checked. */
+    private final Map<JavaFileObject, List<Edit>> files = new LinkedHashMap<JavaFileObject, List<Edit>>();
+
+    private int count;
+
+    /**
+     * Replaces the characters from {@code start} (inclusive) to {@code end}
+     * (exclusive) with {@code text}; an insertion if they are equal.
+     */
+    static final class Edit {
+        final int start;
+        final int end;
+        final String text;
+
+        Edit(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        boolean overlaps(Edit other) {
+            if (start == end || other.start == other.end) {
+                // An insertion only conflicts with a replacement around it
+                return (start < other.start && other.start < end) || (other.start < start && start < other.end);
+            }
+            return start < other.end && other.start < end;
+        }
+    }
+
+    /**
+     * Adds the fix consisting of {@code edits} of {@code file}, unless it
+     * overlaps a fix that has already been added.
+     *
+     * @return <code>true</code> if the fix was added
+     */
+    boolean add(JavaFileObject file, Edit... edits) {
+        List<Edit> existing = files.get(file);
+        if (existing == null) {
+            existing = new ArrayList<Edit>();
+            files.put(file, existing);
+        }
+        for (Edit edit : edits) {
+            for (Edit other : existing) {
+                if (edit.overlaps(other)) {
+                    return false;
+                }
+            }
+        }
+        existing.addAll(Arrays.asList(edits));
+        count++;
+        return true;
+    }
+
+    /**
+     * Returns the number of fixes.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Writes the fixes to {@code out} as a unified diff.
+     */
+    void write(Writer out) throws IOException {
+        Path workingDirectory = Paths.get("").toAbsolutePath();
+        for (Map.Entry<JavaFileObject, List<Edit>> file : files.entrySet()) {
+            if (file.getValue().isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(file.getKey().toUri());
+            String name = path.startsWith(workingDirectory)
+                    ? workingDirectory.relativize(path).toString().replace('\\', '/') : null;
+            out.write((name != null ? "--- a/" + name : "--- " + path) + "\n");
+            out.write((name != null ? "+++ b/" + name : "+++ " + path) + "\n");
+            writeHunks(file.getKey().getCharContent(true).toString(), file.getValue(), out);
+        }
+    }
+
+    /**
+     * A change of the consecutive lines <code>first..last</code> of a file, or an
+     * insertion before line <code>first</code> if <code>last &lt; first</code>.
+     */
+    private static final class Change {
+        final int first;
+        int last;
+        final List<Edit> edits = new ArrayList<Edit>();
+
+        Change(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    private static void writeHunks(String content, List<Edit> edits, Writer out) throws IOException {
+        List<String> lines = splitLines(content);
+        int[] lineStarts = new int[lines.size() + 1];
+        for (int i = 0; i < lines.size(); i++) {
+            lineStarts[i + 1] = lineStarts[i] + lines.get(i).length();
+        }
+
+        List<Edit> sorted = new ArrayList<Edit>(edits);
+        Collections.sort(sorted, new Comparator<Edit>() {
+            @Override
+            public int compare(Edit a, Edit b) {
+                return Integer.compare(a.start, b.start);
+            }
+        });
+
+        // Group the edits by the lines they change
+        List<Change> changes = new ArrayList<Change>();
+        for (Edit edit : sorted) {
+            int first = lineOf(lineStarts, edit.start);
+            int last = (edit.start == edit.end && edit.start == lineStarts[first]) ? first - 1
+                    : lineOf(lineStarts, Math.max(edit.start, edit.end - 1));
+            Change previous = changes.isEmpty() ? null : changes.get(changes.size() - 1);
+            if (previous != null && first <= previous.last) {
+                previous.last = Math.max(previous.last, last);
+                previous.edits.add(edit);
+            } else {
+                Change change = new Change(first, last);
+                change.edits.add(edit);
+                changes.add(change);
+            }
+        }
+
+        // Changes whose context overlaps form one hunk
+        int delta = 0;
+        for (int i = 0; i < changes.size();) {
+            int j = i + 1;
+            while (j < changes.size() && changes.get(j).first - changes.get(j - 1).last - 1 <= 2 * CONTEXT) {
+                j++;
+            }
+
+            int from = Math.max(0, changes.get(i).first - CONTEXT);
+            int to = Math.min(lines.size() - 1, changes.get(j - 1).last + CONTEXT);
+            StringBuilder body = new StringBuilder();
+            int oldLength = 0;
+            int newLength = 0;
+            int line = from;
+            for (Change change : changes.subList(i, j)) {
+                for (; line < change.first; line++) {
+                    appendLine(body, ' ', lines.get(line), line == lines.size() - 1);
+                    oldLength++;
+                    newLength++;
+                }
+                for (; line <= change.last; line++) {
+                    appendLine(body, '-', lines.get(line), line == lines.size() - 1);
+                    oldLength++;
+                }
+                List<String> replacement = splitLines(apply(content, lineStarts[change.first],
+                        lineStarts[Math.max(change.first, change.last + 1)], change.edits));
+                for (int k = 0; k < replacement.size(); k++) {
+                    boolean endOfFile = change.last == lines.size() - 1 && k == replacement.size() - 1;
+                    appendLine(body, '+', replacement.get(k), endOfFile);
+                    newLength++;
+                }
+            }
+            for (; line <= to; line++) {
+                appendLine(body, ' ', lines.get(line), line == lines.size() - 1);
+                oldLength++;
+                newLength++;
+            }
+
+            int oldStart = oldLength == 0 ? from : from + 1;
+            int newStart = newLength == 0 ? from + delta : from + delta + 1;
+            out.write("@@ -" + oldStart + "," + oldLength + " +" + newStart + "," + newLength + " @@\n");
+            out.write(body.toString());
+            delta += newLength - oldLength;
+            i = j;
+        }
+    }
+
+    /**
+     * Returns the characters of {@code content} from {@code start} to {@code end}
+     * with {@code edits}, which are within them and sorted, applied.
+     */
+    private static String apply(String content, int start, int end, List<Edit> edits) {
+        StringBuilder result = new StringBuilder();
+        int position = start;
+        for (Edit edit : edits) {
+            result.append(content, position, edit.start).append(edit.text);
+            position = edit.end;
+        }
+        return result.append(content, position, end).toString();
+    }
+
+    private static void appendLine(StringBuilder body, char prefix, String line, boolean endOfFile) {
+        body.append(prefix);
+        if (line.endsWith("\n")) {
+            body.append(line);
+        } else {
+            body.append(line).append('\n');
+            if (endOfFile) {
+                body.append("\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /**
+     * Splits {@code text} into lines, each with its line terminator.
+     */
+    private static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the index of the line containing the character at {@code offset}.
+     */
+    private static int lineOf(int[] lineStarts, int offset) {
+        int index = Arrays.binarySearch(lineStarts, offset);
+        int line = index >= 0 ? index : -index - 2;
+        return Math.min(line, lineStarts.length - 2);
+    }
+}
@@ -0,0 +1,122 @@
+package com.toddschiller.checker;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+
+import org.checkerframework.javacutil.InternalUtils;
+import org.checkerframework.javacutil.TreeUtils;
+
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IfTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+
+/**
+ * Recognizes allocations that only happen while a program warms up, i.e., the
+ * lazy initialization of a field:
+ *
+ * <pre>
+ * if (buffer == null) {
+ *     buffer = new byte[SIZE];
+ * }
+ * </pre>
+ *
+ * Once the field has been assigned, the guard fails and the allocation does not
+ * happen again. The guard and the assignment must refer to the same field of the
+ * same object: an instance field of <code>this</code>, or a static field. The
+ * analysis does not check that the field is never reset to <code>null</code>.
+ *
+ * @author Todd Schiller
+ */
+final class WarmupAnalysis {
+
+    private WarmupAnalysis() {
+        // static utility class
+    }
+
+    /**
+     * Returns <code>true</code> if the leaf of {@code path} is part of the value
+     * assigned to a field by a lazy initialization, i.e., an assignment
+     * <code>f = ...</code> in the then branch of an <code>if</code> statement
+     * whose condition requires <code>f == null</code>.
+     */
+    static boolean isLazyInitialization(TreePath path) {
+        ExpressionTree field = null;
+        Tree child = null;
+        for (TreePath p = path; p != null; p = p.getParentPath()) {
+            Tree leaf = p.getLeaf();
+            switch (leaf.getKind()) {
+            case METHOD:
+            case LAMBDA_EXPRESSION:
+            case CLASS:
+                return false;
+            case ASSIGNMENT:
+                AssignmentTree assignment = (AssignmentTree) leaf;
+                if (field == null && child == assignment.getExpression()) {
+                    ExpressionTree variable = TreeUtils.skipParens(assignment.getVariable());
+                    Element element = TreeUtils.elementFromUse(variable);
+                    if (element != null && element.getKind() == ElementKind.FIELD
+                            && (element.getModifiers().contains(Modifier.STATIC) || TreeUtils.isSelfAccess(variable))) {
+                        field = variable;
+                    }
+                }
+                break;
+            case IF:
+                IfTree ifTree = (IfTree) leaf;
+                if (field != null && child == ifTree.getThenStatement()
+                        && requiresNull(ifTree.getCondition(), field)) {
+                    return true;
+                }
+                break;
+            default:
+                break;
+            }
+            child = leaf;
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code condition} can only be true when
+     * {@code field} is <code>null</code>: it is <code>field == null</code> or a
+     * conjunction including it.
+     */
+    private static boolean requiresNull(ExpressionTree condition, ExpressionTree field) {
+        ExpressionTree expr = TreeUtils.skipParens(condition);
+        switch (expr.getKind()) {
+        case CONDITIONAL_AND: {
+            BinaryTree and = (BinaryTree) expr;
+            return requiresNull(and.getLeftOperand(), field) || requiresNull(and.getRightOperand(), field);
+        }
+        case EQUAL_TO: {
+            BinaryTree eq = (BinaryTree) expr;
+            ExpressionTree left = TreeUtils.skipParens(eq.getLeftOperand());
+            ExpressionTree right = TreeUtils.skipParens(eq.getRightOperand());
+            return (isNull(right) && refersTo(left, field)) || (isNull(left) && refersTo(right, field));
+        }
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isNull(ExpressionTree expr) {
+        return expr.getKind() == Tree.Kind.NULL_LITERAL;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code expr} refers to the same variable as
+     * {@code field}, an instance field of <code>this</code> or a static field:
+     * the receiver of an instance field must also be <code>this</code>.
+     */
+    private static boolean refersTo(ExpressionTree expr, ExpressionTree field) {
+        if (expr.getKind() != Tree.Kind.IDENTIFIER && expr.getKind() != Tree.Kind.MEMBER_SELECT) {
+            return false;
+        }
+        Element element = InternalUtils.symbol(expr);
+        return element != null && element.equals(InternalUtils.symbol(field))
+                && (element.getModifiers().contains(Modifier.STATIC) || TreeUtils.isSelfAccess(expr));
+    }
+}
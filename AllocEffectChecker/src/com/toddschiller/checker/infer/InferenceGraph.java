@@ -0,0 +1,95 @@
+package com.toddschiller.checker.infer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.toddschiller.checker.Effect;
+import com.toddschiller.checker.qual.NoAlloc;
+
+/**
+ * The call graph of the methods whose effects are inferred, built while the
+ * checker visits each compilation unit. Methods are identified by their
+ * {@link com.toddschiller.checker.summary.MethodKey}.
+ * <p>
+ * Each method has a local effect, the least upper bound of the allocations in
+ * its body and the effects of the methods with known effects that it calls, and
+ * an edge to each inferred method it depends on: the methods it calls, and the
+ * overrides that a virtual call to it may dispatch to. The effect of a method is
+ * the least upper bound of its local effect and the effects of its dependencies;
+ * see {@link SccSolver}.
+ *
+ * @author Todd Schiller
+ */
+public final class InferenceGraph {
+
+    private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+
+    /**
+     * Records that the body of the method {@code key} has been visited. Methods
+     * that are called but never declared, e.g., because their compilation unit
+     * was not processed, are assumed to allocate.
+     */
+    public void declare(String key) {
+        node(key).declared = true;
+    }
+
+    /**
+     * Records that the method {@code key} has at least the effect {@code effect}.
+     */
+    public void require(String key, Effect effect) {
+        Node node = node(key);
+        node.local = Effect.max(node.local, effect);
+    }
+
+    /**
+     * Records that the effect of the method {@code caller} includes the effect of
+     * the method {@code callee}.
+     */
+    public void addCall(String caller, String callee) {
+        if (!caller.equals(callee)) {
+            node(caller).callees.add(node(callee));
+        }
+    }
+
+    /**
+     * Returns the number of methods in the graph.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    Collection<Node> nodes() {
+        return Collections.unmodifiableCollection(nodes.values());
+    }
+
+    private Node node(String key) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = new Node(key, nodes.size());
+            nodes.put(key, node);
+        }
+        return node;
+    }
+
+    static final class Node {
+        final String key;
+        final int id;
+        final List<Node> callees = new ArrayList<Node>(2);
+        Effect local = new Effect(NoAlloc.class);
+        boolean declared;
+
+        Node(String key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            return key;
+        }
+    }
+}
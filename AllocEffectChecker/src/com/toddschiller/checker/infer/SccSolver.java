@@ -0,0 +1,309 @@
+package com.toddschiller.checker.infer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.toddschiller.checker.Effect;
+import com.toddschiller.checker.infer.InferenceGraph.Node;
+import com.toddschiller.checker.qual.MayAlloc;
+
+/**
+ * Solves an {@link InferenceGraph} for the least effect of each method.
+ * <p>
+ * Mutually recursive methods must have the same effect, so the solver first
+ * collapses the strongly connected components of the graph with Tarjan's
+ * algorithm. The effect of a component is then the least upper bound of the local
+ * effects of its methods and the effects of the components it calls, which is
+ * computed bottom-up over the acyclic graph of components. A component becomes
+ * ready once all of its callees are solved; ready components are independent of
+ * each other and are solved in parallel on a fork-join pool.
+ *
+ * @author Todd Schiller
+ */
+public final class SccSolver {
+
+    /** Below this many components, scheduling tasks costs more than it saves. */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private final int[][] callees;
+    private final Effect[] local;
+
+    /** The component of each node. */
+    private final int[] component;
+
+    /** The number of components; components are numbered callees first. */
+    private int componentCount;
+
+    private SccSolver(List<Node> nodes) {
+        int n = nodes.size();
+        callees = new int[n][];
+        local = new Effect[n];
+        component = new int[n];
+        for (Node node : nodes) {
+            int[] edges = new int[node.callees.size()];
+            for (int i = 0; i < edges.length; i++) {
+                edges[i] = node.callees.get(i).id;
+            }
+            callees[node.id] = edges;
+            // A method whose body was not seen may allocate
+            local[node.id] = node.declared ? node.local : new Effect(MayAlloc.class);
+        }
+    }
+
+    /**
+     * Returns the inferred effect of each method declared in {@code graph}, keyed
+     * by {@link com.toddschiller.checker.summary.MethodKey}.
+     *
+     * @param parallelism the number of threads to use
+     */
+    public static Map<String, Effect> solve(InferenceGraph graph, int parallelism) {
+        List<Node> nodes = new ArrayList<Node>(graph.nodes());
+        SccSolver solver = new SccSolver(nodes);
+        solver.findComponents();
+        Effect[] effects = solver.solveComponents(parallelism);
+
+        Map<String, Effect> result = new HashMap<String, Effect>(nodes.size() * 2);
+        for (Node node : nodes) {
+            if (node.declared) {
+                result.put(node.key, effects[solver.component[node.id]]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Numbers the strongly connected components with an iterative version of
+     * Tarjan's algorithm, so that deep call chains do not overflow the stack.
+     * Tarjan's algorithm completes a component only after every component it can
+     * reach, so the components are numbered in reverse topological order.
+     */
+    private void findComponents() {
+        int n = callees.length;
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+
+        int[] stack = new int[n];
+        int stackSize = 0;
+
+        // The call stack of the depth-first search: a node and its next edge
+        int[] searchNode = new int[n];
+        int[] searchEdge = new int[n];
+
+        int nextIndex = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+
+            int depth = 0;
+            searchNode[0] = root;
+            searchEdge[0] = 0;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = searchNode[depth];
+                if (searchEdge[depth] < callees[v].length) {
+                    int w = callees[v][searchEdge[depth]++];
+                    if (index[w] < 0) {
+                        index[w] = lowLink[w] = nextIndex++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        depth++;
+                        searchNode[depth] = w;
+                        searchEdge[depth] = 0;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                    continue;
+                }
+
+                // All edges of v are explored
+                if (lowLink[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        component[w] = componentCount;
+                    } while (w != v);
+                    componentCount++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = searchNode[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the effect of each component.
+     */
+    private Effect[] solveComponents(int parallelism) {
+        Effect[] effects = new Effect[componentCount];
+        for (int v = 0; v < callees.length; v++) {
+            int c = component[v];
+            effects[c] = effects[c] == null ? local[v] : Effect.max(effects[c], local[v]);
+        }
+
+        int[][] componentCallees = componentCallees();
+        if (parallelism <= 1 || componentCount < PARALLEL_THRESHOLD) {
+            // The numbering puts every component after the components it calls
+            for (int c = 0; c < componentCount; c++) {
+                for (int d : componentCallees[c]) {
+                    effects[c] = Effect.max(effects[c], effects[d]);
+                }
+            }
+            return effects;
+        }
+
+        new ParallelSolve(effects, componentCallees).run(parallelism);
+        return effects;
+    }
+
+    /**
+     * Returns the distinct components called by each component.
+     */
+    private int[][] componentCallees() {
+        // The nodes of each component
+        int[] start = new int[componentCount + 1];
+        for (int v = 0; v < callees.length; v++) {
+            start[component[v] + 1]++;
+        }
+        for (int c = 0; c < componentCount; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] members = new int[callees.length];
+        int[] fill = Arrays.copyOf(start, componentCount);
+        for (int v = 0; v < callees.length; v++) {
+            members[fill[component[v]]++] = v;
+        }
+
+        int[][] result = new int[componentCount][];
+        // The component each callee component was last seen from, to skip duplicates
+        int[] seenFrom = new int[componentCount];
+        Arrays.fill(seenFrom, -1);
+        int[] buffer = new int[componentCount];
+        for (int c = 0; c < componentCount; c++) {
+            int size = 0;
+            for (int i = start[c]; i < start[c + 1]; i++) {
+                for (int w : callees[members[i]]) {
+                    int d = component[w];
+                    if (d != c && seenFrom[d] != c) {
+                        seenFrom[d] = c;
+                        buffer[size++] = d;
+                    }
+                }
+            }
+            result[c] = Arrays.copyOf(buffer, size);
+        }
+        return result;
+    }
+
+    /**
+     * Solves the components on a fork-join pool. Each component has a count of
+     * its unsolved callees; solving a component decrements the count of each of
+     * its callers, and forks a task for each caller whose count reaches zero.
+     */
+    private static final class ParallelSolve {
+        private final Effect[] effects;
+        private final int[][] componentCallees;
+        private final int[][] componentCallers;
+        private final AtomicIntegerArray pending;
+        private final CountDownLatch done;
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        ParallelSolve(Effect[] effects, int[][] componentCallees) {
+            this.effects = effects;
+            this.componentCallees = componentCallees;
+            this.pending = new AtomicIntegerArray(effects.length);
+            this.done = new CountDownLatch(effects.length);
+
+            int[] callerCounts = new int[effects.length];
+            for (int c = 0; c < effects.length; c++) {
+                pending.set(c, componentCallees[c].length);
+                for (int d : componentCallees[c]) {
+                    callerCounts[d]++;
+                }
+            }
+            componentCallers = new int[effects.length][];
+            for (int d = 0; d < effects.length; d++) {
+                componentCallers[d] = new int[callerCounts[d]];
+            }
+            for (int c = 0; c < effects.length; c++) {
+                for (int d : componentCallees[c]) {
+                    componentCallers[d][--callerCounts[d]] = c;
+                }
+            }
+        }
+
+        void run(int parallelism) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (int c = 0; c < effects.length; c++) {
+                    if (componentCallees[c].length == 0) {
+                        pool.execute(new SolveTask(c));
+                    }
+                }
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while inferring allocation effects", e);
+            } finally {
+                pool.shutdownNow();
+            }
+
+            if (failure.get() != null) {
+                throw new IllegalStateException("Unable to infer allocation effects", failure.get());
+            }
+        }
+
+        private final class SolveTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int c;
+
+            SolveTask(int c) {
+                this.c = c;
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    // The callees were solved before their counts reached zero,
+                    // and the atomic decrement publishes their effects
+                    Effect effect = effects[c];
+                    for (int d : componentCallees[c]) {
+                        effect = Effect.max(effect, effects[d]);
+                    }
+                    effects[c] = effect;
+
+                    for (int caller : componentCallers[c]) {
+                        if (pending.decrementAndGet(caller) == 0) {
+                            new SolveTask(caller).fork();
+                        }
+                    }
+                    done.countDown();
+                } catch (Throwable t) {
+                    // Release the waiting thread; the remaining components are never solved
+                    failure.compareAndSet(null, t);
+                    while (done.getCount() > 0) {
+                        done.countDown();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the method only runs on rare paths, e.g., to report an error,
+ * so calls to it, including the evaluation of their arguments, are not checked
+ * for allocations. The method's own body is checked against its effect as usual.
+ * 
+ * @author Todd Schiller
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ColdPath {
+}
@@ -14,9 +14,10 @@ import org.checkerframework.framework.qual.TypeQualifier;
 import com.sun.source.tree.Tree;
 
 /**
- * A type annotation to be picked up by the Checker Framework. If we wanted to
- * support effect polymorphism, we'd need type annotations for each effect,
- * e.g., <tt>NoAllocType</tt> and <tt>MayAllocType</tt>.
+ * A type annotation to be picked up by the Checker Framework. The effect
+ * annotations on the types of variables, which {@link PolyAlloc} relies on, are
+ * read from the variables' declarations instead of being tracked as type
+ * qualifiers.
  * 
  * @author Todd Schiller
  */
@@ -11,7 +11,7 @@ import java.lang.annotation.Target;
  * 
  * @author Todd Schiller
  */
-@Target(ElementType.METHOD)
+@Target({ ElementType.METHOD, ElementType.TYPE_USE })
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 public @interface MayAlloc {
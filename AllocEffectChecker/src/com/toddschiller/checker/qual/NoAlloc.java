@@ -8,10 +8,16 @@ import java.lang.annotation.Target;
 
 /**
  * Indicates that the method does not allocate memory.
+ * <p>
+ * Like the other effect annotations, it may also annotate the type of a variable
+ * of interface type, e.g., <code>@NoAlloc IntConsumer action</code>: the
+ * interface's abstract methods may be invoked on the variable in
+ * <code>NoAlloc</code> code, and only values whose implementations do not
+ * allocate may be assigned to it. See {@link PolyAlloc}.
  * 
  * @author Todd Schiller
  */
-@Target(ElementType.METHOD)
+@Target({ ElementType.METHOD, ElementType.TYPE_USE })
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 public @interface NoAlloc {
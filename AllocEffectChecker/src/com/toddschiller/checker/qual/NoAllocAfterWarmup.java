@@ -0,0 +1,23 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the method does not allocate memory once it has warmed up: it
+ * may only allocate to lazily initialize a field, i.e., in the body of an
+ * <code>if (field == null)</code> statement that assigns the field, or by calling
+ * {@link PoolAcquire} methods.
+ * <p>
+ * The effects are ordered <code>NoAlloc &lt;: NoAllocAfterWarmup &lt;: MayAlloc</code>.
+ * 
+ * @author Todd Schiller
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE_USE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface NoAllocAfterWarmup {
+}
@@ -0,0 +1,28 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the method is an entry point of a hot path, e.g., the message
+ * handler of an event loop. With <code>-Alint=reachability</code>, the checker
+ * proves that no method reachable from it allocates, without requiring those
+ * methods to be annotated; see
+ * {@link com.toddschiller.checker.reach.ReachabilityGraph}.
+ *
+ * @author Todd Schiller
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface NoAllocRoot {
+
+    /**
+     * Whether the reachable methods may allocate during warmup, as permitted by
+     * {@link NoAllocAfterWarmup}.
+     */
+    boolean afterWarmup() default false;
+}
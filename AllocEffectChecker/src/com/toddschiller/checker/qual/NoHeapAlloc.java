@@ -0,0 +1,23 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the method does not allocate memory on the heap: it may only
+ * allocate memory off the heap, by calling {@link OffHeapAllocator} methods or
+ * other <code>NoHeapAlloc</code> methods.
+ * <p>
+ * The effects are ordered <code>NoAlloc &lt;: NoHeapAlloc &lt;: MayAlloc</code>;
+ * <code>NoHeapAlloc</code> and {@link NoAllocAfterWarmup} are unrelated.
+ *
+ * @author Todd Schiller
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE_USE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface NoHeapAlloc {
+}
@@ -0,0 +1,21 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the method allocates memory off the heap, e.g., a wrapper of
+ * <code>ByteBuffer.allocateDirect</code> or an arena allocator. Calls to the
+ * method are permitted in {@link NoHeapAlloc} code, regardless of the method's
+ * own effect.
+ *
+ * @author Todd Schiller
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface OffHeapAllocator {
+}
@@ -0,0 +1,35 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the effect of the method depends on the callbacks passed to it,
+ * e.g., an internal iterator such as <code>forEach(int[] values, IntConsumer action)</code>.
+ * <p>
+ * The polymorphic parameters of the method are its parameters of interface type
+ * whose type has no effect annotation. The body of the method is checked
+ * against its effect annotation, {@link NoAlloc} if it has none, except that it
+ * may invoke the abstract methods of its polymorphic parameters. A call to the
+ * method has the least upper bound of that effect and the effects of the
+ * arguments passed to its polymorphic parameters, so a call is
+ * <code>NoAlloc</code> exactly when the callbacks passed to it are:
+ * <ul>
+ * <li>the body of a lambda is checked as part of the calling method</li>
+ * <li>a method reference has the effect of the referenced method</li>
+ * <li>a variable whose type is annotated with an effect, e.g.,
+ * <code>@NoAlloc IntConsumer</code>, has that effect</li>
+ * <li>any other value has the effects of the methods of its class that
+ * implement the interface</li>
+ * </ul>
+ *
+ * @author Todd Schiller
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PolyAlloc {
+}
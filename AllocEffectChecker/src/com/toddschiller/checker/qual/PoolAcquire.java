@@ -0,0 +1,20 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the method acquires an object from a pool, allocating only
+ * while the pool grows to its working size. Calls to the method are permitted in
+ * {@link NoAllocAfterWarmup} code, regardless of the method's own effect.
+ * 
+ * @author Todd Schiller
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PoolAcquire {
+}
@@ -0,0 +1,20 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the class is initialized when the program starts, so touching
+ * it from {@link NoAlloc} code does not run its static initializer. The checker
+ * verifies that a {@link Startup} method initializes the class.
+ * 
+ * @author Todd Schiller
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Preinitialized {
+}
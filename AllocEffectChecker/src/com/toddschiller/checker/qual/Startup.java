@@ -0,0 +1,20 @@
+package com.toddschiller.checker.qual;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the method runs when the program starts, before any latency
+ * sensitive code. The classes it initializes, directly or through the methods it
+ * calls, may be declared {@link Preinitialized}.
+ * 
+ * @author Todd Schiller
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Startup {
+}
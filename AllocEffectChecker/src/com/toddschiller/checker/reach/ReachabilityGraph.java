@@ -0,0 +1,226 @@
+package com.toddschiller.checker.reach;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Element;
+
+import com.toddschiller.checker.Effect;
+
+/**
+ * The call graph of the methods reachable from {@link com.toddschiller.checker.qual.NoAllocRoot}
+ * methods, built while the checker visits each compilation unit. Methods are
+ * identified by their {@link com.toddschiller.checker.summary.MethodKey}.
+ * <p>
+ * The graph contains the methods in the compiled sources that are not limited
+ * by an effect of their own, i.e., whose effect is {@link com.toddschiller.checker.qual.MayAlloc}.
+ * Each method has its allocation sites, with the effect each requires, and an
+ * edge to each method of the graph it calls. A virtual call is resolved by class
+ * hierarchy analysis: a method has an edge to each method in the compiled
+ * sources that overrides it, and to each lambda that implements it. Calls to
+ * methods with another effect are not edges; they are allocation sites if the
+ * effect permits allocations.
+ * <p>
+ * Once all compilation units have been visited, {@link #findViolations()}
+ * searches the graph breadth-first from each root, so each violation is
+ * reported with a shortest call chain from the root to the allocation site.
+ *
+ * @author Todd Schiller
+ */
+public final class ReachabilityGraph {
+
+    private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+    private final List<Root> roots = new ArrayList<Root>();
+
+    /**
+     * Records that the body of the method {@code key} has been visited. Methods
+     * that are called but never declared, e.g., because their compilation unit
+     * was not processed, are reported as violations when they are reachable.
+     *
+     * @param name the name of the method in call chains
+     */
+    public void declare(String key, String name) {
+        Node node = node(key);
+        node.declared = true;
+        node.name = name;
+    }
+
+    /**
+     * Records that the method {@code key} is a root whose reachable methods may
+     * have at most the effect {@code bound}; violations are reported on
+     * {@code element}.
+     */
+    public void addRoot(String key, Effect bound, Element element) {
+        roots.add(new Root(node(key), bound, element));
+    }
+
+    /**
+     * Records an allocation site in the body of the method {@code key}.
+     *
+     * @param effect the least effect that permits the allocation
+     * @param description the description of the allocation
+     * @param location the source location of the allocation, e.g., <code>Foo.java:12</code>
+     */
+    public void addAllocation(String key, Effect effect, String description, String location) {
+        node(key).allocations.add(new Allocation(effect, description, location));
+    }
+
+    /**
+     * Records that the method {@code caller} may call the method {@code callee}.
+     * Only the first call from a method to another is kept.
+     *
+     * @param description the description of the call in call chains, e.g.,
+     *            <code>calls Foo.bar() at Foo.java:12</code>
+     */
+    public void addCall(String caller, String callee, String description) {
+        if (!caller.equals(callee)) {
+            Node from = node(caller);
+            Node to = node(callee);
+            if (!from.callees.containsKey(to)) {
+                from.callees.put(to, description);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of methods in the graph.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the allocations reachable from each root that its bound does not
+     * permit, in the order the roots were added.
+     */
+    public List<Violation> findViolations() {
+        List<Violation> violations = new ArrayList<Violation>();
+        for (Root root : roots) {
+            // The node each reached node was first reached from
+            Map<Node, Node> parents = new HashMap<Node, Node>();
+            Deque<Node> queue = new ArrayDeque<Node>();
+            parents.put(root.node, null);
+            queue.add(root.node);
+
+            while (!queue.isEmpty()) {
+                Node node = queue.remove();
+                if (!node.declared) {
+                    violations.add(new Violation(root.element, chain(node, parents),
+                            "the body of " + node.key + " was not checked", null));
+                }
+                for (Allocation allocation : node.allocations) {
+                    if (!allocation.effect.isSubeffectOf(root.bound)) {
+                        violations.add(new Violation(root.element, chain(node, parents), allocation.description,
+                                allocation.location));
+                    }
+                }
+                for (Node callee : node.callees.keySet()) {
+                    if (!parents.containsKey(callee)) {
+                        parents.put(callee, node);
+                        queue.add(callee);
+                    }
+                }
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Returns the call chain from the root to {@code node}: the name of the root,
+     * followed by the description of each call.
+     */
+    private static List<String> chain(Node node, Map<Node, Node> parents) {
+        List<String> chain = new ArrayList<String>();
+        Node parent = parents.get(node);
+        while (parent != null) {
+            chain.add(parent.callees.get(node));
+            node = parent;
+            parent = parents.get(node);
+        }
+        chain.add(node.name != null ? node.name : node.key);
+        Collections.reverse(chain);
+        return chain;
+    }
+
+    private Node node(String key) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = new Node(key);
+            nodes.put(key, node);
+        }
+        return node;
+    }
+
+    /**
+     * An allocation reachable from a root that the root's bound does not permit.
+     */
+    public static final class Violation {
+        /** The root, on which the violation is reported. */
+        public final Element root;
+
+        /** The name of the root followed by the calls leading to the allocating method. */
+        public final List<String> chain;
+
+        /** The description of the allocation. */
+        public final String allocation;
+
+        /** The location of the allocation, or <code>null</code> if it is unknown. */
+        public final String location;
+
+        Violation(Element root, List<String> chain, String allocation, String location) {
+            this.root = root;
+            this.chain = Collections.unmodifiableList(chain);
+            this.allocation = allocation;
+            this.location = location;
+        }
+    }
+
+    private static final class Root {
+        final Node node;
+        final Effect bound;
+        final Element element;
+
+        Root(Node node, Effect bound, Element element) {
+            this.node = node;
+            this.bound = bound;
+            this.element = element;
+        }
+    }
+
+    private static final class Allocation {
+        final Effect effect;
+        final String description;
+        final String location;
+
+        Allocation(Effect effect, String description, String location) {
+            this.effect = effect;
+            this.description = description;
+            this.location = location;
+        }
+    }
+
+    private static final class Node {
+        final String key;
+        String name;
+        boolean declared;
+        final List<Allocation> allocations = new ArrayList<Allocation>(1);
+
+        /** The description of the first call to each callee. */
+        final Map<Node, String> callees = new LinkedHashMap<Node, String>(4);
+
+        Node(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.toddschiller.checker.summary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import com.toddschiller.checker.Effect;
+import com.toddschiller.checker.qual.NoAlloc;
+
+/**
+ * A directory of resolved method effects that persists across compilations, with
+ * one file per class, and optionally a {@link SharedEffects} store that shares
+ * them in memory with the other compilations in the process.
+ * <p>
+ * A method's resolved effect depends on its own effect annotations, the summaries
+ * consulted, and the effects of the methods it overrides. Each file is therefore
+ * stamped with a signature of its class: a hash of the class's methods, their
+ * modifiers and effect annotations, and the signatures of its direct supertypes,
+ * so that changing an annotation in a supertype invalidates the files of all of
+ * its subtypes. The signature also includes a salt identifying the summaries in
+ * use. A file whose stamp does not match is recomputed and replaced.
+ * <p>
+ * Files are replaced atomically, so compilations may share a cache directory.
+ * Effects are looked up in the shared store before the directory, and effects
+ * loaded from the directory are added to the store.
+ *
+ * @author Todd Schiller
+ */
+public final class EffectCache {
+
+    private static final int MAGIC = 0x41454343; // "AECC"
+    private static final int VERSION = 1;
+
+    /** The package of the effect annotations, which are part of a class's signature. */
+    private static final String QUAL_PACKAGE = NoAlloc.class.getPackage().getName();
+
+    /** The cache directory, or <code>null</code> if effects are only shared in memory. */
+    private final Path directory;
+
+    /** The store shared with other compilations, or <code>null</code>. */
+    private final SharedEffects shared;
+
+    private final long salt;
+    private final Elements elements;
+    private final Types types;
+
+    /** The signature of each type seen during this compilation. */
+    private final Map<TypeElement, Long> signatures = new HashMap<TypeElement, Long>();
+
+    /**
+     * @param salt a value that changes whenever effects may be resolved
+     *            differently for the same classes, e.g., when a summary changes
+     */
+    public EffectCache(Path directory, long salt, Elements elements, Types types) {
+        this(directory, null, salt, elements, types);
+    }
+
+    /**
+     * @param directory the cache directory, or <code>null</code> to only share
+     *            effects in memory
+     * @param shared the store shared with other compilations, or
+     *            <code>null</code>
+     * @param salt a value that changes whenever effects may be resolved
+     *            differently for the same classes, e.g., when a summary changes
+     */
+    public EffectCache(Path directory, SharedEffects shared, long salt, Elements elements, Types types) {
+        this.directory = directory;
+        this.shared = shared;
+        this.salt = salt;
+        this.elements = elements;
+        this.types = types;
+    }
+
+    /**
+     * Returns the cached effects of the methods declared by {@code type}, keyed by
+     * {@link MethodKey}, or <code>null</code> if they are not cached or are stale.
+     */
+    public Map<String, Effect> load(TypeElement type) throws IOException {
+        if (shared != null) {
+            Map<String, Effect> effects = shared.get(binaryName(type), signature(type));
+            if (effects != null || directory == null) {
+                return effects;
+            }
+        }
+
+        try (InputStream stream = Files.newInputStream(file(type))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != signature(type)) {
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, Effect> effects = new HashMap<String, Effect>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                effects.put(key, EffectSummary.decode(in.readByte()));
+            }
+            if (shared != null) {
+                shared.put(binaryName(type), signature(type), effects);
+            }
+            return effects;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the cached effects of the methods declared by {@code type}.
+     */
+    public void store(TypeElement type, Map<String, Effect> effects) throws IOException {
+        if (shared != null) {
+            shared.put(binaryName(type), signature(type), effects);
+        }
+        if (directory == null) {
+            return;
+        }
+
+        Files.createDirectories(directory);
+        Path target = file(type);
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(signature(type));
+                out.writeInt(effects.size());
+                for (Map.Entry<String, Effect> e : effects.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeByte(EffectSummary.encode(e.getValue()));
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path file(TypeElement type) {
+        return directory.resolve(binaryName(type) + ".effects");
+    }
+
+    private String binaryName(TypeElement type) {
+        return elements.getBinaryName(type).toString();
+    }
+
+    /**
+     * Returns the signature of {@code type}, which changes if the effect resolved
+     * for any of its methods may change.
+     */
+    long signature(TypeElement type) {
+        Long signature = signatures.get(type);
+        if (signature != null) {
+            return signature;
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append(salt).append(' ').append(elements.getBinaryName(type)).append('\n');
+        for (TypeMirror supertype : types.directSupertypes(type.asType())) {
+            if (supertype.getKind() == TypeKind.DECLARED) {
+                TypeElement superElt = (TypeElement) ((DeclaredType) supertype).asElement();
+                text.append("extends ").append(signature(superElt)).append('\n');
+            }
+        }
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.METHOD || member.getKind() == ElementKind.CONSTRUCTOR) {
+                ExecutableElement method = (ExecutableElement) member;
+                text.append(MethodKey.of(method, elements, types));
+                for (Modifier modifier : method.getModifiers()) {
+                    text.append(' ').append(modifier);
+                }
+                for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+                    TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+                    if (elements.getPackageOf(annotationType).getQualifiedName().contentEquals(QUAL_PACKAGE)) {
+                        text.append(" @").append(annotationType.getSimpleName());
+                    }
+                }
+                text.append('\n');
+            }
+        }
+
+        long result = EffectSummary.hash(text.toString().getBytes(StandardCharsets.UTF_8));
+        signatures.put(type, result);
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package com.toddschiller.checker.summary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.toddschiller.checker.Effect;
+
+/**
+ * The summaries consulted for methods without an effect annotation: the summaries
+ * given with the <code>-Aalloc.summaries</code> option, followed by the bundled
+ * model of the JDK. The first summary that includes a method determines its
+ * effect, so project summaries may override the JDK model.
+ *
+ * @author Todd Schiller
+ */
+public final class EffectSummaries {
+
+    /** The class path resource, relative to this class, holding the JDK model. */
+    public static final String JDK_MODEL = "jdk.summary";
+
+    private final List<EffectSummary> summaries;
+
+    public EffectSummaries(List<EffectSummary> summaries) {
+        this.summaries = Collections.unmodifiableList(new ArrayList<EffectSummary>(summaries));
+    }
+
+    /**
+     * Loads the summary files listed in {@code paths}, separated by
+     * {@link java.io.File#pathSeparator}, followed by the bundled JDK model.
+     *
+     * @param paths the summary files, or <code>null</code> for none
+     */
+    public static EffectSummaries load(String paths) throws IOException {
+        List<EffectSummary> summaries = new ArrayList<EffectSummary>();
+        if (paths != null && !paths.trim().isEmpty()) {
+            for (Path path : EffectSummary.splitPaths(paths)) {
+                summaries.add(EffectSummary.open(path));
+            }
+        }
+        summaries.add(EffectSummary.openResource(JDK_MODEL));
+        return new EffectSummaries(summaries);
+    }
+
+    /**
+     * Returns the effect recorded for the method with the {@link MethodKey}
+     * {@code key}, or <code>null</code> if no summary includes the method.
+     */
+    public Effect lookup(String key) {
+        for (EffectSummary summary : summaries) {
+            Effect effect = summary.lookup(key);
+            if (effect != null) {
+                return effect;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a value that changes when any of the summaries, or their order,
+     * may have changed.
+     */
+    public long getFingerprint() {
+        long fingerprint = 17;
+        for (EffectSummary summary : summaries) {
+            fingerprint = 31 * fingerprint + summary.getFingerprint();
+        }
+        return fingerprint;
+    }
+
+    public List<EffectSummary> getSummaries() {
+        return summaries;
+    }
+}
@@ -0,0 +1,272 @@
+package com.toddschiller.checker.summary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.toddschiller.checker.Effect;
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoHeapAlloc;
+
+/**
+ * A read-only table of method effects in the precompiled binary format written by
+ * {@link EffectSummaryWriter}. The file is memory-mapped and searched in place,
+ * so opening a summary costs the same regardless of the number of entries, and
+ * only the pages touched by lookups are read.
+ * <p>
+ * The format is big-endian:
+ *
+ * <pre>
+ * int   magic ("AESF")
+ * int   version
+ * int   entry count
+ * index: entry count * (long hash, int data offset), sorted by hash
+ * data:  entry count * (byte effect, short key length, UTF-8 key bytes)
+ * </pre>
+ *
+ * Keys are built by {@link MethodKey} and hashed with 64-bit FNV-1a.
+ * <p>
+ * Lookups only use absolute reads, so a summary may be shared between threads.
+ *
+ * @author Todd Schiller
+ */
+public final class EffectSummary {
+
+    static final int MAGIC = 0x41455346;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 12;
+    static final int INDEX_ENTRY_SIZE = 12;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final String source;
+    private final long fingerprint;
+
+    private EffectSummary(ByteBuffer buffer, String source, long fingerprint) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(source + " is not an allocation effect summary");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(source + " has unsupported summary version " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.source = source;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Memory-maps the summary file at {@code path}.
+     */
+    public static EffectSummary open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Identify the file by its metadata, so that the file is not read
+            // just to fingerprint it
+            String identity = path.toAbsolutePath() + ":" + channel.size() + ":" + Files.getLastModifiedTime(path);
+            long fingerprint = hash(identity.getBytes(StandardCharsets.UTF_8));
+
+            // The mapping remains valid after the channel is closed
+            return new EffectSummary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path.toString(),
+                    fingerprint);
+        }
+    }
+
+    /**
+     * Loads the summary packaged as the class path resource {@code name}, relative
+     * to this class. The resource is memory-mapped if it is a plain file, and read
+     * into a direct buffer if it is packaged in a jar.
+     */
+    public static EffectSummary openResource(String name) throws IOException {
+        URL url = EffectSummary.class.getResource(name);
+        if (url == null) {
+            throw new IOException("Missing summary resource " + name);
+        }
+
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return open(Paths.get(url.toURI()));
+            } catch (URISyntaxException e) {
+                // fall through and read the resource as a stream
+            }
+        }
+
+        try (InputStream in = url.openStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                bytes.write(chunk, 0, n);
+            }
+            byte[] content = bytes.toByteArray();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+            buffer.put(content);
+            buffer.flip();
+            return new EffectSummary(buffer, url.toString(), hash(content));
+        }
+    }
+
+    /**
+     * Returns the number of methods in the summary.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the location the summary was loaded from.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns a value that changes when the summary's content may have changed,
+     * e.g., to invalidate results computed from it.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the effect recorded for the method with the {@link MethodKey}
+     * {@code key}, or <code>null</code> if the summary does not include the method.
+     */
+    public Effect lookup(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+
+        // Find the first index entry with the hash
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (hashAt(mid) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        // Compare the keys of all entries with the hash
+        for (int i = lo; i < count && hashAt(i) == hash; i++) {
+            int offset = buffer.getInt(HEADER_SIZE + i * INDEX_ENTRY_SIZE + 8);
+            if (keyEquals(offset, keyBytes)) {
+                return decode(buffer.get(offset));
+            }
+        }
+        return null;
+    }
+
+    private long hashAt(int index) {
+        return buffer.getLong(HEADER_SIZE + index * INDEX_ENTRY_SIZE);
+    }
+
+    private boolean keyEquals(int offset, byte[] keyBytes) {
+        int length = buffer.getShort(offset + 1) & 0xFFFF;
+        if (length != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + 3 + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of {@code bytes}.
+     */
+    static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the byte that represents {@code effect} in a summary file.
+     */
+    static byte encode(Effect effect) {
+        if (effect.noAlloc()) {
+            return 0;
+        } else if (effect.mayAlloc()) {
+            return 1;
+        } else if (effect.noAllocAfterWarmup()) {
+            return 2;
+        } else if (effect.noHeapAlloc()) {
+            return 3;
+        } else {
+            throw new IllegalArgumentException("Unsupported effect: " + effect);
+        }
+    }
+
+    /**
+     * Returns the effect represented by {@code code} in a summary file.
+     */
+    static Effect decode(byte code) {
+        switch (code) {
+        case 0:
+            return new Effect(NoAlloc.class);
+        case 1:
+            return new Effect(MayAlloc.class);
+        case 2:
+            return new Effect(NoAllocAfterWarmup.class);
+        case 3:
+            return new Effect(NoHeapAlloc.class);
+        default:
+            throw new IllegalStateException("Corrupt summary: unknown effect code " + code);
+        }
+    }
+
+    /**
+     * Returns the effect named {@code name}, e.g., <code>NoAlloc</code>, as written
+     * in a textual summary.
+     */
+    static Effect parseEffect(String name) {
+        if (name.equals(NoAlloc.class.getSimpleName())) {
+            return new Effect(NoAlloc.class);
+        } else if (name.equals(MayAlloc.class.getSimpleName())) {
+            return new Effect(MayAlloc.class);
+        } else if (name.equals(NoAllocAfterWarmup.class.getSimpleName())) {
+            return new Effect(NoAllocAfterWarmup.class);
+        } else if (name.equals(NoHeapAlloc.class.getSimpleName())) {
+            return new Effect(NoHeapAlloc.class);
+        } else {
+            throw new IllegalArgumentException("Unknown effect: " + name);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source + " (" + count + " methods)";
+    }
+
+    /**
+     * Returns the summary files listed in {@code paths}, separated by
+     * {@link File#pathSeparator}.
+     */
+    static Path[] splitPaths(String paths) {
+        String[] parts = paths.split(File.pathSeparator);
+        Path[] result = new Path[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Paths.get(parts[i].trim());
+        }
+        return result;
+    }
+}
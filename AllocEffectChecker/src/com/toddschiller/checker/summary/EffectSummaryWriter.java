@@ -0,0 +1,105 @@
+package com.toddschiller.checker.summary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.toddschiller.checker.Effect;
+
+/**
+ * Writes method effects in the binary format read by {@link EffectSummary}.
+ *
+ * @author Todd Schiller
+ */
+public final class EffectSummaryWriter {
+
+    private final Map<String, Effect> effects = new TreeMap<String, Effect>();
+
+    /**
+     * Records {@code effect} for the method with the {@link MethodKey} {@code key},
+     * replacing any effect previously recorded for the method.
+     */
+    public void put(String key, Effect effect) {
+        effects.put(key, effect);
+    }
+
+    /**
+     * Returns the number of methods recorded.
+     */
+    public int size() {
+        return effects.size();
+    }
+
+    /**
+     * Writes the summary to the file {@code path}, replacing the file if it exists.
+     */
+    public void write(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream out = Files.newOutputStream(path)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes the summary to {@code stream}.
+     */
+    public void write(OutputStream stream) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>(effects.size());
+        for (Map.Entry<String, Effect> e : effects.entrySet()) {
+            byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+            if (key.length > 0xFFFF) {
+                throw new IOException("Method key is too long: " + e.getKey());
+            }
+            entries.add(new Entry(key, EffectSummary.encode(e.getValue())));
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry l, Entry r) {
+                return Long.compare(l.hash, r.hash);
+            }
+        });
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(EffectSummary.MAGIC);
+        out.writeInt(EffectSummary.VERSION);
+        out.writeInt(entries.size());
+
+        int offset = EffectSummary.HEADER_SIZE + entries.size() * EffectSummary.INDEX_ENTRY_SIZE;
+        for (Entry entry : entries) {
+            out.writeLong(entry.hash);
+            out.writeInt(offset);
+            offset += 3 + entry.key.length;
+        }
+        for (Entry entry : entries) {
+            out.writeByte(entry.effect);
+            out.writeShort(entry.key.length);
+            out.write(entry.key);
+        }
+        out.flush();
+    }
+
+    private static final class Entry {
+        final byte[] key;
+        final byte effect;
+        final long hash;
+
+        Entry(byte[] key, byte effect) {
+            this.key = key;
+            this.effect = effect;
+            this.hash = EffectSummary.hash(key);
+        }
+    }
+}
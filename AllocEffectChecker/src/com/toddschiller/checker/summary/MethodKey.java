@@ -0,0 +1,132 @@
+package com.toddschiller.checker.summary;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Builds the keys that identify methods in an {@link EffectSummary}. A key is the
+ * binary name of the declaring class, a <code>#</code>, the method name, and
+ * the erased parameter types, e.g., <code>java.lang.Math#max(int,int)</code>,
+ * <code>java.util.Map$Entry#setValue(java.lang.Object)</code>, or
+ * <code>java.lang.String#&lt;init&gt;(char[])</code>.
+ * <p>
+ * The same key is computed for a method seen as a source or class file element
+ * and for a method seen as a class file descriptor. Constructors of inner classes
+ * and enums are the exception: their descriptors include the synthetic
+ * parameters that javac adds.
+ *
+ * @author Todd Schiller
+ */
+public final class MethodKey {
+
+    private MethodKey() {
+        // static utility class
+    }
+
+    /**
+     * Returns the key for {@code method}.
+     */
+    public static String of(ExecutableElement method, Elements elements, Types types) {
+        TypeElement owner = (TypeElement) method.getEnclosingElement();
+
+        StringBuilder key = new StringBuilder();
+        key.append(elements.getBinaryName(owner)).append('#').append(method.getSimpleName()).append('(');
+        boolean first = true;
+        for (VariableElement param : method.getParameters()) {
+            if (!first) {
+                key.append(',');
+            }
+            appendType(key, types.erasure(param.asType()), elements);
+            first = false;
+        }
+        return key.append(')').toString();
+    }
+
+    private static void appendType(StringBuilder key, TypeMirror type, Elements elements) {
+        switch (type.getKind()) {
+        case ARRAY:
+            appendType(key, ((ArrayType) type).getComponentType(), elements);
+            key.append("[]");
+            break;
+        case DECLARED:
+            key.append(elements.getBinaryName((TypeElement) ((DeclaredType) type).asElement()));
+            break;
+        default:
+            // primitive types
+            key.append(type.toString());
+            break;
+        }
+    }
+
+    /**
+     * Returns the key for the method {@code name} with the JVM descriptor
+     * {@code descriptor} declared by the class with the internal name
+     * {@code owner}, e.g., <code>java/lang/Math</code>.
+     */
+    public static String fromDescriptor(String owner, String name, String descriptor) {
+        StringBuilder key = new StringBuilder();
+        key.append(owner.replace('/', '.')).append('#').append(name).append('(');
+
+        int i = 1; // skip '('
+        boolean first = true;
+        while (descriptor.charAt(i) != ')') {
+            if (!first) {
+                key.append(',');
+            }
+            int dims = 0;
+            while (descriptor.charAt(i) == '[') {
+                dims++;
+                i++;
+            }
+            char c = descriptor.charAt(i);
+            if (c == 'L') {
+                int end = descriptor.indexOf(';', i);
+                key.append(descriptor, i + 1, end);
+                // fix up the package separators of the type just appended
+                for (int j = key.length() - (end - i - 1); j < key.length(); j++) {
+                    if (key.charAt(j) == '/') {
+                        key.setCharAt(j, '.');
+                    }
+                }
+                i = end + 1;
+            } else {
+                key.append(primitiveName(c));
+                i++;
+            }
+            for (int d = 0; d < dims; d++) {
+                key.append("[]");
+            }
+            first = false;
+        }
+        return key.append(')').toString();
+    }
+
+    private static String primitiveName(char descriptor) {
+        switch (descriptor) {
+        case 'Z':
+            return "boolean";
+        case 'B':
+            return "byte";
+        case 'C':
+            return "char";
+        case 'S':
+            return "short";
+        case 'I':
+            return "int";
+        case 'J':
+            return "long";
+        case 'F':
+            return "float";
+        case 'D':
+            return "double";
+        default:
+            throw new IllegalArgumentException("Invalid descriptor character: " + descriptor);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.toddschiller.checker.summary;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.toddschiller.checker.Effect;
+
+/**
+ * The resolved method effects of classes, shared in memory between the
+ * compilations running in one process, e.g., by
+ * {@link com.toddschiller.batch.BatchChecker}.
+ * <p>
+ * Like the files of an {@link EffectCache}, each entry holds the effects of the
+ * methods declared by a class, keyed by {@link MethodKey}, and is stamped with the
+ * signature of the class, so that a compilation only reuses the effects if it
+ * sees the same declarations, supertypes, and summaries. Compilations look
+ * entries up by binary name, since elements are specific to a compilation.
+ * <p>
+ * The compilations of a process run one after another, since the Checker
+ * Framework keeps state in static fields. Entries are immutable once stored;
+ * separate processes share effects through the files of an
+ * {@link EffectCache} instead.
+ *
+ * @author Todd Schiller
+ */
+public final class SharedEffects {
+
+    /** The resolved effects of a class, with the signature they were resolved for. */
+    private static final class Entry {
+        final long signature;
+        final Map<String, Effect> effects;
+
+        Entry(long signature, Map<String, Effect> effects) {
+            this.signature = signature;
+            this.effects = effects;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Returns the effects of the methods declared by the class named
+     * {@code binaryName}, or <code>null</code> if they have not been stored with
+     * the signature {@code signature}. The map must not be modified.
+     */
+    public Map<String, Effect> get(String binaryName, long signature) {
+        Entry entry = entries.get(binaryName);
+        if (entry == null || entry.signature != signature) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.effects;
+    }
+
+    /**
+     * Stores the effects of the methods declared by the class named
+     * {@code binaryName}, resolved for the signature {@code signature}, replacing
+     * an entry with a different signature.
+     */
+    public void put(String binaryName, long signature, Map<String, Effect> effects) {
+        entries.put(binaryName,
+                new Entry(signature, Collections.unmodifiableMap(new HashMap<String, Effect>(effects))));
+    }
+
+    /**
+     * Returns the number of classes whose effects are stored.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found current effects.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+}
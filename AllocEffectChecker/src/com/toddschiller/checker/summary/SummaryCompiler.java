@@ -0,0 +1,154 @@
+package com.toddschiller.checker.summary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.toddschiller.checker.Effect;
+
+/**
+ * Compiles textual effect summaries into the binary format loaded by the checker.
+ * <p>
+ * A textual summary lists methods by class. A line <code>@NoAlloc</code>,
+ * <code>@NoAllocAfterWarmup</code>, <code>@NoHeapAlloc</code>, or
+ * <code>@MayAlloc</code> sets the effect of
+ * the methods that follow; an
+ * unindented line names a class by its binary name; an indented line gives the
+ * name and erased parameter types of a method of that class. Lines starting with
+ * <code>#</code> are comments:
+ *
+ * <pre>
+ * &#64;NoAlloc
+ * java.lang.Math
+ *     max(int,int)
+ * java.lang.System
+ *     arraycopy(java.lang.Object,int,java.lang.Object,int,int)
+ * </pre>
+ *
+ * Usage: <code>SummaryCompiler -o out.summary in.txt...</code>
+ *
+ * @author Todd Schiller
+ */
+public final class SummaryCompiler {
+
+    private SummaryCompiler() {
+        // static utility class
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path output = null;
+        List<Path> inputs = new ArrayList<Path>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+
+        if (output == null || inputs.isEmpty()) {
+            System.err.println("Usage: SummaryCompiler -o <output> <input>...");
+            System.exit(2);
+        }
+
+        EffectSummaryWriter writer = new EffectSummaryWriter();
+        for (Path input : inputs) {
+            try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                parse(in, input.toString(), writer);
+            }
+        }
+        writer.write(output);
+        System.out.println("Wrote " + writer.size() + " methods to " + output);
+    }
+
+    /**
+     * Parses the textual summary read from {@code in} into {@code writer}.
+     *
+     * @param source the name of the input, for error messages
+     */
+    public static void parse(BufferedReader in, String source, EffectSummaryWriter writer) throws IOException {
+        Map<String, Effect> effects = new TreeMap<String, Effect>();
+        parse(in, source, effects);
+        for (Map.Entry<String, Effect> e : effects.entrySet()) {
+            writer.put(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Parses the textual summary read from {@code in} into {@code effects}, keyed
+     * by {@link MethodKey}.
+     *
+     * @param source the name of the input, for error messages
+     */
+    public static void parse(BufferedReader in, String source, Map<String, Effect> effects) throws IOException {
+        Effect effect = null;
+        String owner = null;
+        int lineNumber = 0;
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            try {
+                if (trimmed.startsWith("@")) {
+                    effect = EffectSummary.parseEffect(trimmed.substring(1));
+                } else if (!Character.isWhitespace(line.charAt(0))) {
+                    owner = trimmed;
+                } else if (owner == null || effect == null) {
+                    throw new IllegalArgumentException("method without an enclosing class and effect");
+                } else if (!trimmed.endsWith(")") || trimmed.indexOf('(') < 0) {
+                    throw new IllegalArgumentException("expected a method signature, e.g., max(int,int)");
+                } else {
+                    effects.put(owner + "#" + trimmed.replace(" ", ""), effect);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(source + ":" + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code effects}, keyed by {@link MethodKey}, to {@code out} in the
+     * textual format, grouped by effect and class.
+     */
+    public static void format(Map<String, Effect> effects, Writer out) throws IOException {
+        // effect name -> key, so that each effect and class header is written once
+        Map<String, Map<String, Effect>> byEffect = new TreeMap<String, Map<String, Effect>>();
+        for (Map.Entry<String, Effect> e : effects.entrySet()) {
+            String name = e.getValue().toString();
+            Map<String, Effect> group = byEffect.get(name);
+            if (group == null) {
+                group = new TreeMap<String, Effect>();
+                byEffect.put(name, group);
+            }
+            group.put(e.getKey(), e.getValue());
+        }
+
+        String newline = System.lineSeparator();
+        for (Map.Entry<String, Map<String, Effect>> group : byEffect.entrySet()) {
+            out.write("@" + group.getKey() + newline);
+            String owner = null;
+            for (String key : group.getValue().keySet()) {
+                int hash = key.indexOf('#');
+                String keyOwner = key.substring(0, hash);
+                if (!keyOwner.equals(owner)) {
+                    owner = keyOwner;
+                    out.write(owner + newline);
+                }
+                out.write("    " + key.substring(hash + 1) + newline);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.toddschiller.collections;
+
+import java.util.NoSuchElementException;
+
+import com.toddschiller.checker.qual.ColdPath;
+
+/**
+ * Builds the exceptions thrown by the collections. The methods are
+ * {@link ColdPath}s, so the allocation-free operations that throw them are
+ * checked as if they did not.
+ *
+ * @author Todd Schiller
+ */
+final class Errors {
+
+    private Errors() {
+        // static utility class
+    }
+
+    @ColdPath
+    static IllegalStateException full(Object collection, long capacity) {
+        return new IllegalStateException(collection.getClass().getSimpleName() + " is full at " + capacity
+                + " elements; call ensureCapacity to grow it");
+    }
+
+    @ColdPath
+    static IndexOutOfBoundsException index(long index, long size) {
+        return new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+    }
+
+    @ColdPath
+    static NoSuchElementException empty(Object collection) {
+        return new NoSuchElementException(collection.getClass().getSimpleName() + " is empty");
+    }
+
+    @ColdPath
+    static IllegalArgumentException tooLarge(long size) {
+        return new IllegalArgumentException("Size " + size + " exceeds the maximum capacity");
+    }
+
+    @ColdPath
+    static IllegalStateException closed(Object collection) {
+        return new IllegalStateException(collection.getClass().getSimpleName() + " is closed");
+    }
+}
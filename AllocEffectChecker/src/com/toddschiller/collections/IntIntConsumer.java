@@ -0,0 +1,12 @@
+package com.toddschiller.collections;
+
+/**
+ * An action on the entries of an {@link IntIntHashMap}.
+ *
+ * @author Todd Schiller
+ */
+@FunctionalInterface
+public interface IntIntConsumer {
+
+    void accept(int key, int value);
+}
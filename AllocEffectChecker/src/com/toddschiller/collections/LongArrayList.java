@@ -0,0 +1,153 @@
+package com.toddschiller.collections;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.PolyAlloc;
+
+/**
+ * A list of <code>long</code> values backed by an array.
+ * <p>
+ * Reading, updating, adding, removing, and iterating over values never
+ * allocates. The list only grows when {@link #ensureCapacity(int)} is called:
+ * {@link #add(long)} throws an <code>IllegalStateException</code> instead of
+ * adding a value beyond the {@link #capacity()}. The list is not thread-safe.
+ *
+ * @author Todd Schiller
+ */
+public final class LongArrayList {
+
+    private long[] elements;
+    private int size;
+
+    /**
+     * Creates a list that holds {@code capacity} values without growing.
+     */
+    public LongArrayList(int capacity) {
+        elements = new long[capacity];
+    }
+
+    @NoAlloc
+    public int size() {
+        return size;
+    }
+
+    @NoAlloc
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of values the list holds without growing.
+     */
+    @NoAlloc
+    public int capacity() {
+        return elements.length;
+    }
+
+    @NoAlloc
+    public long get(int index) {
+        if (index >= size) {
+            throw Errors.index(index, size);
+        }
+        return elements[index];
+    }
+
+    /**
+     * Replaces the value at {@code index}, and returns the previous value.
+     */
+    @NoAlloc
+    public long set(int index, long value) {
+        if (index >= size) {
+            throw Errors.index(index, size);
+        }
+        long previous = elements[index];
+        elements[index] = value;
+        return previous;
+    }
+
+    /**
+     * Appends {@code value}.
+     *
+     * @throws IllegalStateException if the list is full
+     */
+    @NoAlloc
+    public void add(long value) {
+        if (size == elements.length) {
+            throw Errors.full(this, elements.length);
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Removes and returns the last value.
+     *
+     * @throws java.util.NoSuchElementException if the list is empty
+     */
+    @NoAlloc
+    public long removeLast() {
+        if (size == 0) {
+            throw Errors.empty(this);
+        }
+        return elements[--size];
+    }
+
+    /**
+     * Returns the index of the first occurrence of {@code value}, or
+     * <code>-1</code> if the list does not contain it.
+     */
+    @NoAlloc
+    public int indexOf(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @NoAlloc
+    public boolean contains(long value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * Removes all values, keeping the capacity.
+     */
+    @NoAlloc
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Performs {@code action} on each value, in order.
+     */
+    @PolyAlloc
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(elements[i]);
+        }
+    }
+
+    /**
+     * Grows the list, if necessary, so that it holds {@code capacity} values
+     * without growing again. The capacity at least doubles when it grows.
+     */
+    @MayAlloc
+    public void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            int grown = (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) elements.length * 2, capacity));
+            elements = Arrays.copyOf(elements, Math.max(grown, capacity));
+        }
+    }
+
+    /**
+     * Returns a new array of the values, in order.
+     */
+    @MayAlloc
+    public long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+}
@@ -0,0 +1,12 @@
+package com.toddschiller.collections;
+
+/**
+ * An action on the entries of a {@link LongLongHashMap}.
+ *
+ * @author Todd Schiller
+ */
+@FunctionalInterface
+public interface LongLongConsumer {
+
+    void accept(long key, long value);
+}
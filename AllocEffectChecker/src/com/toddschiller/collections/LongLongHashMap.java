@@ -0,0 +1,310 @@
+package com.toddschiller.collections;
+
+import java.util.Arrays;
+
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.PolyAlloc;
+
+/**
+ * A map from <code>long</code> keys to <code>long</code> values that stores its
+ * entries in two arrays, with open addressing and linear probing.
+ * <p>
+ * Reading, updating, removing, and iterating over entries never allocates. The
+ * map only grows when {@link #ensureCapacity(int)} is called: {@link #put} and
+ * {@link #addTo} throw an <code>IllegalStateException</code> instead of adding an
+ * entry beyond the {@link #capacity()}. Removal shifts the following entries
+ * back, so that lookups never have to skip over deleted entries. Key
+ * <code>0</code> marks an empty slot, so its value is stored in a field. The
+ * map is not thread-safe.
+ *
+ * @author Todd Schiller
+ */
+public final class LongLongHashMap {
+
+    /** The fraction of the slots that may hold entries. */
+    private static final int LOAD_NUMERATOR = 3;
+    private static final int LOAD_DENOMINATOR = 4;
+
+    private static final int MIN_SLOTS = 8;
+    private static final int MAX_SLOTS = 1 << 30;
+
+    private final long missingValue;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+
+    /** The number of entries in the table, excluding key <code>0</code>. */
+    private int tableSize;
+
+    /** The number of entries the table holds without growing. */
+    private int limit;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    /**
+     * Creates a map that holds {@code expectedSize} entries without growing, and
+     * returns <code>0</code> for missing keys.
+     */
+    public LongLongHashMap(int expectedSize) {
+        this(expectedSize, 0);
+    }
+
+    /**
+     * Creates a map that holds {@code expectedSize} entries without growing, and
+     * returns {@code missingValue} for missing keys.
+     */
+    public LongLongHashMap(int expectedSize, long missingValue) {
+        this.missingValue = missingValue;
+        allocate(slotsFor(expectedSize));
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    @NoAlloc
+    public int size() {
+        return hasZeroKey ? tableSize + 1 : tableSize;
+    }
+
+    @NoAlloc
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of entries the map holds without growing.
+     */
+    @NoAlloc
+    public int capacity() {
+        return limit;
+    }
+
+    /**
+     * Returns the value returned for missing keys.
+     */
+    @NoAlloc
+    public long missingValue() {
+        return missingValue;
+    }
+
+    @NoAlloc
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : find(key) >= 0;
+    }
+
+    /**
+     * Returns the value of {@code key}, or the missing value if the map does not
+     * contain it.
+     */
+    @NoAlloc
+    public long get(long key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int index = find(key);
+        return index >= 0 ? values[index] : missingValue;
+    }
+
+    /**
+     * Sets the value of {@code key}, and returns its previous value, or the missing
+     * value if the map did not contain it.
+     *
+     * @throws IllegalStateException if the map is full and does not contain {@code key}
+     */
+    @NoAlloc
+    public long put(long key, long value) {
+        if (key == 0) {
+            long previous = hasZeroKey ? zeroValue : missingValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+
+        int index = find(key);
+        if (index >= 0) {
+            long previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        insert(~index, key, value);
+        return missingValue;
+    }
+
+    /**
+     * Adds {@code delta} to the value of {@code key}, which is the missing value if
+     * the map does not contain it, and returns the new value.
+     *
+     * @throws IllegalStateException if the map is full and does not contain {@code key}
+     */
+    @NoAlloc
+    public long addTo(long key, long delta) {
+        if (key == 0) {
+            zeroValue = (hasZeroKey ? zeroValue : missingValue) + delta;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+
+        int index = find(key);
+        if (index >= 0) {
+            return values[index] += delta;
+        }
+        insert(~index, key, missingValue + delta);
+        return missingValue + delta;
+    }
+
+    /**
+     * Removes {@code key}, and returns its value, or the missing value if the map
+     * did not contain it.
+     */
+    @NoAlloc
+    public long remove(long key) {
+        if (key == 0) {
+            long previous = hasZeroKey ? zeroValue : missingValue;
+            hasZeroKey = false;
+            return previous;
+        }
+
+        int index = find(key);
+        if (index < 0) {
+            return missingValue;
+        }
+        long previous = values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    /**
+     * Removes all entries, keeping the capacity.
+     */
+    @NoAlloc
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        tableSize = 0;
+        hasZeroKey = false;
+    }
+
+    /**
+     * Performs {@code action} on each entry, in no particular order. The map must
+     * not be modified by the action.
+     */
+    @PolyAlloc
+    public void forEach(LongLongConsumer action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Grows the map, if necessary, so that it holds {@code expectedSize} entries
+     * without growing again.
+     */
+    @MayAlloc
+    public void ensureCapacity(int expectedSize) {
+        int slots = slotsFor(expectedSize);
+        if (slots <= keys.length) {
+            return;
+        }
+
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(slots);
+        tableSize = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                insert(~find(oldKeys[i]), oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of {@code key}, which is not <code>0</code>, or the
+     * complement of the empty slot where it would be inserted.
+     */
+    @NoAlloc
+    private int find(long key) {
+        int index = mix(key) & mask;
+        while (true) {
+            long k = keys[index];
+            if (k == key) {
+                return index;
+            } else if (k == 0) {
+                return ~index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    @NoAlloc
+    private void insert(int index, long key, long value) {
+        if (tableSize >= limit) {
+            throw Errors.full(this, capacity());
+        }
+        keys[index] = key;
+        values[index] = value;
+        tableSize++;
+    }
+
+    /**
+     * Empties the slot {@code index}, moving each following entry of the probe
+     * sequence into the gap if its own slot does not come after the gap.
+     */
+    @NoAlloc
+    private void removeAt(int index) {
+        int gap = index;
+        int i = index;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = keys[i];
+            if (k == 0) {
+                break;
+            }
+            int home = mix(k) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        tableSize--;
+    }
+
+    @MayAlloc
+    private void allocate(int slots) {
+        keys = new long[slots];
+        values = new long[slots];
+        mask = slots - 1;
+        limit = slots / LOAD_DENOMINATOR * LOAD_NUMERATOR;
+    }
+
+    /**
+     * Returns the number of slots, a power of two, of a table that holds
+     * {@code expectedSize} entries.
+     */
+    @NoAlloc
+    private static int slotsFor(int expectedSize) {
+        long needed = ((long) Math.max(expectedSize, 1) * LOAD_DENOMINATOR + LOAD_NUMERATOR - 1) / LOAD_NUMERATOR;
+        if (needed > MAX_SLOTS) {
+            throw Errors.tooLarge(expectedSize);
+        }
+        return Math.max(MIN_SLOTS, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    /**
+     * Spreads the bits of {@code key}, so that keys that differ only in their high
+     * bits do not share a probe sequence.
+     */
+    @NoAlloc
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
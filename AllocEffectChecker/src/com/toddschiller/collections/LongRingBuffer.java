@@ -0,0 +1,130 @@
+package com.toddschiller.collections;
+
+import java.util.function.LongConsumer;
+
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.PolyAlloc;
+
+/**
+ * A first-in, first-out queue of <code>long</code> values with a fixed capacity,
+ * stored in a circular array.
+ * <p>
+ * No operation after construction allocates. The capacity is rounded up to a
+ * power of two, so that positions wrap with a mask. The buffer is not
+ * thread-safe.
+ *
+ * @author Todd Schiller
+ */
+public final class LongRingBuffer {
+
+    private final long[] elements;
+    private final int mask;
+
+    /** The positions of the oldest value and of the next value offered. */
+    private long head;
+    private long tail;
+
+    /**
+     * Creates a buffer that holds at least {@code capacity} values.
+     */
+    public LongRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is not between 1 and 2^30");
+        }
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        elements = new long[Math.max(1, slots)];
+        mask = elements.length - 1;
+    }
+
+    @NoAlloc
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    @NoAlloc
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    @NoAlloc
+    public boolean isFull() {
+        return tail - head == elements.length;
+    }
+
+    @NoAlloc
+    public int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * Appends {@code value} if the buffer is not full.
+     *
+     * @return <code>true</code> if the value was appended
+     */
+    @NoAlloc
+    public boolean offer(long value) {
+        if (isFull()) {
+            return false;
+        }
+        elements[(int) tail & mask] = value;
+        tail++;
+        return true;
+    }
+
+    /**
+     * Removes and returns the oldest value.
+     *
+     * @throws java.util.NoSuchElementException if the buffer is empty
+     */
+    @NoAlloc
+    public long poll() {
+        if (isEmpty()) {
+            throw Errors.empty(this);
+        }
+        long value = elements[(int) head & mask];
+        head++;
+        return value;
+    }
+
+    /**
+     * Returns the oldest value.
+     *
+     * @throws java.util.NoSuchElementException if the buffer is empty
+     */
+    @NoAlloc
+    public long peek() {
+        if (isEmpty()) {
+            throw Errors.empty(this);
+        }
+        return elements[(int) head & mask];
+    }
+
+    /**
+     * Returns the value {@code index} positions after the oldest value.
+     */
+    @NoAlloc
+    public long get(int index) {
+        if (index < 0 || index >= size()) {
+            throw Errors.index(index, size());
+        }
+        return elements[(int) (head + index) & mask];
+    }
+
+    /**
+     * Removes all values.
+     */
+    @NoAlloc
+    public void clear() {
+        head = tail;
+    }
+
+    /**
+     * Performs {@code action} on each value, from the oldest.
+     */
+    @PolyAlloc
+    public void forEach(LongConsumer action) {
+        for (long i = head; i < tail; i++) {
+            action.accept(elements[(int) i & mask]);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.toddschiller.collections;
+
+import java.lang.reflect.Field;
+
+import sun.misc.Unsafe;
+
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoHeapAlloc;
+
+/**
+ * An array of <code>long</code> values stored in native memory, outside of the
+ * Java heap, so that it neither adds to the work of the garbage collector nor is
+ * limited to <code>Integer.MAX_VALUE</code> elements.
+ * <p>
+ * Reading, writing, and filling the array never allocates, and resizing only
+ * allocates native memory, so {@link #resize(long)} is {@link NoHeapAlloc}. The
+ * memory is not freed by the garbage collector: {@link #close()} must be called,
+ * after which every access throws. The array is not thread-safe.
+ * <p>
+ * The memory is managed with <code>sun.misc.Unsafe</code>, whose uses javac
+ * warns about whatever the <code>@SuppressWarnings</code>; the build compiles
+ * with <code>-XDignore.symbol.file</code> to omit the warnings.
+ *
+ * @author Todd Schiller
+ */
+public final class OffHeapLongArray implements AutoCloseable {
+
+    private static final Unsafe UNSAFE = loadUnsafe();
+
+    private long address;
+    private long length;
+    private boolean closed;
+
+    /**
+     * Allocates an array of {@code length} zeros.
+     */
+    public OffHeapLongArray(long length) {
+        if (length < 0 || length > Long.MAX_VALUE / Long.BYTES) {
+            throw Errors.tooLarge(length);
+        }
+        this.address = UNSAFE.allocateMemory(Math.max(1, length) * Long.BYTES);
+        this.length = length;
+        UNSAFE.setMemory(address, length * Long.BYTES, (byte) 0);
+    }
+
+    @NoAlloc
+    public long length() {
+        return length;
+    }
+
+    @NoAlloc
+    public long get(long index) {
+        checkIndex(index);
+        return UNSAFE.getLong(address + index * Long.BYTES);
+    }
+
+    @NoAlloc
+    public void set(long index, long value) {
+        checkIndex(index);
+        UNSAFE.putLong(address + index * Long.BYTES, value);
+    }
+
+    /**
+     * Sets every element to {@code value}.
+     */
+    @NoAlloc
+    public void fill(long value) {
+        checkOpen();
+        if (value == 0) {
+            UNSAFE.setMemory(address, length * Long.BYTES, (byte) 0);
+            return;
+        }
+        for (long i = 0; i < length; i++) {
+            UNSAFE.putLong(address + i * Long.BYTES, value);
+        }
+    }
+
+    /**
+     * Changes the length of the array to {@code newLength}, keeping the elements
+     * up to the smaller length and filling the rest with zeros.
+     */
+    @NoHeapAlloc
+    public void resize(long newLength) {
+        checkOpen();
+        if (newLength < 0 || newLength > Long.MAX_VALUE / Long.BYTES) {
+            throw Errors.tooLarge(newLength);
+        }
+        address = UNSAFE.reallocateMemory(address, Math.max(1, newLength) * Long.BYTES);
+        if (newLength > length) {
+            UNSAFE.setMemory(address + length * Long.BYTES, (newLength - length) * Long.BYTES, (byte) 0);
+        }
+        length = newLength;
+    }
+
+    /**
+     * Frees the native memory. Closing an array more than once has no effect.
+     */
+    @NoAlloc
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            UNSAFE.freeMemory(address);
+            address = 0;
+            length = 0;
+        }
+    }
+
+    @NoAlloc
+    private void checkIndex(long index) {
+        checkOpen();
+        if (index < 0 || index >= length) {
+            throw Errors.index(index, length);
+        }
+    }
+
+    @NoAlloc
+    private void checkOpen() {
+        if (closed) {
+            throw Errors.closed(this);
+        }
+    }
+
+    private static Unsafe loadUnsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -1,7 +1,24 @@
 package com.toddschiller.experiments;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import com.toddschiller.checker.qual.ColdPath;
 import com.toddschiller.checker.qual.MayAlloc;
 import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoAllocRoot;
+import com.toddschiller.checker.qual.NoHeapAlloc;
+import com.toddschiller.checker.qual.OffHeapAllocator;
+import com.toddschiller.checker.qual.PolyAlloc;
+import com.toddschiller.checker.qual.PoolAcquire;
+import com.toddschiller.checker.qual.Preinitialized;
+import com.toddschiller.checker.qual.Startup;
 
 /**
  * Demonstrates basic allocation checker functionality. See in-line comments for
@@ -67,13 +84,325 @@ public class AllocationEffects {
         
         if (y != 3 && ys.length < 0 && z != 4) {
             // Warning because new memory is allocated for the exceptions
-            // The warning is issued even though the condition will always be false
+            // The warning is issued even though the condition will always be false,
+            // unless the checker is run with -Alint=coldPath
             throw new RuntimeException("Another allocation!");
         }
       
         return x;
     }
 
+    @NoAlloc
+    public int shouldWarnImplicit(java.util.List<Integer> xs, String name) {
+        int y = 1000;
+
+        // Warning because boxing 1000 allocates a new Integer
+        Integer o = y;
+
+        // No warning because small constants are boxed from the Integer cache
+        Integer small = 3;
+
+        // Warning because the argument is boxed before being added to the list
+        xs.add(y);
+
+        // Warning because the concatenation builds a new String
+        String greeting = "Hello, " + name;
+
+        // Warning because an array is allocated for the variable arguments, even
+        // though count itself does not allocate
+        int counted = count(1, 2);
+
+        // Warning because the loop allocates an Iterator
+        int sum = 0;
+        for (int x : xs) {
+            sum += x;
+        }
+
+        return sum + o + small + greeting.length() + counted;
+    }
+
+    @NoAlloc
+    private static int count(int... values) {
+        return values.length;
+    }
+
+    @NoAlloc
+    public void shouldWarnCallbacks(final java.util.List<Integer> xs, int offset) {
+        // No warning because a non-capturing lambda is a single shared instance
+        java.util.function.IntUnaryOperator inc = x -> x + 1;
+
+        // Warning because the lambda captures offset, so each evaluation allocates
+        java.util.function.IntUnaryOperator shift = x -> x + offset;
+
+        // No warning because a static method reference does not bind a receiver
+        java.util.function.IntBinaryOperator max = Math::max;
+
+        // Warning because the method reference binds xs
+        java.util.function.Supplier<Integer> size = xs::size;
+
+        // Warning because an instance of the anonymous class is allocated
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                // No warning because Runnable.run() may allocate
+                xs.add(42);
+            }
+        };
+    }
+
+    @ColdPath
+    public static void logFailure(String message) {
+        System.err.println(message);
+    }
+
+    @NoAlloc
+    public int shouldNotWarnColdPath(int[] xs, int i) {
+        if (i < 0 || i >= xs.length) {
+            // No warning with -Alint=coldPath because the message and the exception
+            // are only built on a path that always throws
+            throw new IndexOutOfBoundsException("Index " + i + " of " + xs.length);
+        }
+
+        if (xs[i] < 0) {
+            // No warning because calls to @ColdPath methods, including their
+            // arguments, are exempt
+            logFailure("Negative value at " + i);
+            return 0;
+        }
+
+        return xs[i];
+    }
+
+    private int[] scratch;
+
+    @PoolAcquire
+    public int[] acquireScratch() {
+        // Allocates once; later calls reuse the buffer
+        if (scratch == null) {
+            scratch = new int[16];
+        }
+        return scratch;
+    }
+
+    @NoAllocAfterWarmup
+    public int shouldNotWarnWarmup(int x) {
+        // No warning because acquiring from a pool only allocates during warmup
+        int[] buffer = acquireScratch();
+        buffer[0] = x;
+        return buffer[0];
+    }
+
+    @NoAllocAfterWarmup
+    public int shouldWarnWarmup(int x) {
+        // Warning because the allocation happens on every call
+        int[] buffer = new int[16];
+        buffer[0] = x;
+        return buffer[0];
+    }
+
+    @NoAlloc
+    public int shouldWarnNoAllocWarmup(int x) {
+        // Warning because @NoAlloc methods may not allocate, even during warmup
+        return acquireScratch()[0] + x;
+    }
+
+    public interface Handler {
+        int handle(int x);
+    }
+
+    public static class SummingHandler implements Handler {
+        @Override
+        public int handle(int x) {
+            return x + 1;
+        }
+    }
+
+    public static class LoggingHandler implements Handler {
+        @Override
+        public int handle(int x) {
+            // Warning with -Alint=reachability, reported on onMessage with the call
+            // chain onMessage -> dispatch -> LoggingHandler.handle
+            return ("handled " + x).length();
+        }
+    }
+
+    private Handler handler = new SummingHandler();
+
+    private int dispatch(int x) {
+        return handler.handle(x);
+    }
+
+    @NoAllocRoot
+    public int onMessage(int x) {
+        // With -Alint=reachability, the unannotated methods reachable from here are
+        // checked; the call to Handler.handle may dispatch to either implementation
+        return dispatch(x);
+    }
+
+    public static class Tables {
+        // The static initializer allocates the table the first time Tables is used
+        public static final int[] SQUARES = new int[256];
+    }
+
+    @Preinitialized
+    public static class StartupTables {
+        public static final int[] CUBES = new int[256];
+    }
+
+    @Preinitialized
+    public static class ForgottenTables {
+        // Error because no @Startup method initializes the class
+        public static final int[] TABLE = new int[256];
+    }
+
+    @Startup
+    public static void initialize() {
+        // Initializes StartupTables before any latency sensitive code runs
+        StartupTables.CUBES[0] = 0;
+    }
+
+    @NoAlloc
+    public int shouldWarnStaticInitializer(int x) {
+        // Warning because the first access runs the static initializer of Tables
+        return Tables.SQUARES[x & 0xff];
+    }
+
+    @NoAlloc
+    public int shouldNotWarnPreinitialized(int x) {
+        // No warning because StartupTables is initialized at startup
+        return StartupTables.CUBES[x & 0xff];
+    }
+
+    @NoAllocAfterWarmup
+    public int shouldNotWarnStaticInitializerWarmup(int x) {
+        // No warning because the static initializer only runs once
+        return Tables.SQUARES[x & 0xff];
+    }
+
+    @OffHeapAllocator
+    public static ByteBuffer allocateFrame(int size) {
+        // The buffer's contents are allocated outside of the heap
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    @NoHeapAlloc
+    public int shouldNotWarnOffHeap(int size) {
+        // No warning because @NoHeapAlloc methods may allocate off the heap
+        return allocateFrame(size).capacity();
+    }
+
+    @NoHeapAlloc
+    public int shouldWarnNoHeapAlloc(int size) {
+        // Warning because the array is allocated on the heap
+        return new byte[size].length;
+    }
+
+    @NoAlloc
+    public int shouldWarnNoAllocOffHeap(int size) {
+        // Warning because @NoAlloc methods may not allocate off the heap either
+        return allocateFrame(size).capacity();
+    }
+
+    @PolyAlloc
+    public static void forEach(int[] values, IntConsumer action) {
+        for (int i = 0; i < values.length; i++) {
+            // No warning because the callers of forEach account for the action
+            action.accept(values[i]);
+        }
+    }
+
+    private static int sum;
+
+    @NoAlloc
+    public static void add(int x) {
+        sum += x;
+    }
+
+    @NoAlloc
+    public void shouldNotWarnPolymorphic(int[] values) {
+        // No warning because neither the lambda nor add allocates
+        forEach(values, x -> sum += x);
+        forEach(values, AllocationEffects::add);
+    }
+
+    @NoAlloc
+    public void shouldWarnPolymorphic(int[] values) {
+        // Warning because the lambda, which runs during the call, allocates
+        forEach(values, x -> System.out.println("value " + x));
+    }
+
+    private @NoAlloc IntConsumer sink = AllocationEffects::add;
+
+    // Error because println is not @NoAlloc
+    private @NoAlloc IntConsumer printer = System.out::println;
+
+    @NoAlloc
+    public void shouldNotWarnEffectType(int x) {
+        // No warning because sink may only hold allocation-free consumers
+        sink.accept(x);
+    }
+
+    public int loopAllocations(int[][] rows) {
+        int total = 0;
+        for (int[] row : rows) {
+            for (int x : row) {
+                // Reported at depth 2 with -Alint=loopAlloc, although the method may allocate
+                total += String.valueOf(x).length();
+            }
+        }
+        return total;
+    }
+
+    @NoAlloc
+    public int shouldWarnWithFixes(int id, long time) {
+        // Warnings for the array, for calling Objects.hash, which may allocate, and
+        // for boxing id and time; with -Aalloc.fixes, the array is hoisted into a
+        // field and the call becomes (31 * (31 + Integer.hashCode(id)) + Long.hashCode(time))
+        int[] digits = new int[3];
+        return digits.length + Objects.hash(id, time);
+    }
+
+    private static final MethodHandle LENGTH = lengthHandle();
+
+    private static MethodHandle lengthHandle() {
+        try {
+            return MethodHandles.lookup().findVirtual(String.class, "length", MethodType.methodType(int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @NoAlloc
+    public int shouldWarnReflection(Method method, String s) throws Throwable {
+        // No warning because invokeExact passes its arguments as they are
+        int length = (int) LENGTH.invokeExact(s);
+        // Warning because Method.invoke boxes the result, and allocates an array
+        // for its variable arguments
+        return length + (Integer) method.invoke(s);
+    }
+
+    public interface Sizer {
+        @NoAlloc
+        int size(Object x);
+    }
+
+    public static class ToStringSizer {
+        public int size(Object x) {
+            return x.toString().length();
+        }
+    }
+
+    public static class InheritingSizer extends ToStringSizer implements Sizer {
+        // Inherits an allocating implementation of Sizer.size
+    }
+
+    @NoAlloc
+    public int shouldWarnDispatch(Sizer sizer, Object x) {
+        // Warning, reported on this method, because the call may dispatch to
+        // ToStringSizer.size through InheritingSizer
+        return sizer.size(x);
+    }
+
     public static void main(String[] args) {
         // NOP
     }
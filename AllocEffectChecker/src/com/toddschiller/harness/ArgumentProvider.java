@@ -0,0 +1,32 @@
+package com.toddschiller.harness;
+
+import java.lang.reflect.Method;
+
+/**
+ * Supplies the receiver and arguments with which a generated benchmark calls a
+ * {@link com.toddschiller.checker.qual.NoAlloc} method.
+ * <p>
+ * Providers are called once per benchmark trial, before measurement starts, so
+ * they may allocate freely. An implementation must have a public no-argument
+ * constructor; pass its class name to {@link HarnessGenerator} with
+ * <code>-p</code>. Providers are consulted in order, followed by
+ * {@link DefaultArgumentProvider}.
+ *
+ * @author Todd Schiller
+ */
+public interface ArgumentProvider {
+
+    /**
+     * Returns the arguments to pass to {@code method}, or <code>null</code> if
+     * this provider does not handle the method.
+     */
+    Object[] arguments(Method method) throws Exception;
+
+    /**
+     * Returns the object on which to call the instance method {@code method}, or
+     * <code>null</code> if this provider does not handle the method.
+     */
+    default Object receiver(Method method) throws Exception {
+        return null;
+    }
+}
@@ -0,0 +1,88 @@
+package com.toddschiller.harness;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The receiver and arguments of one benchmarked method, resolved through the
+ * {@link ArgumentProvider}s. Generated benchmarks create one in their setup
+ * method and copy its values to typed fields, so that the measured call does
+ * not box or use reflection.
+ *
+ * @author Todd Schiller
+ */
+public final class Arguments {
+
+    private final Object receiver;
+    private final Object[] arguments;
+
+    private Arguments(Object receiver, Object[] arguments) {
+        this.receiver = receiver;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Resolves the arguments of the method {@code name} declared by
+     * {@code owner}.
+     *
+     * @param providers the class names of the providers to consult before
+     *            {@link DefaultArgumentProvider}, separated by commas
+     * @throws IllegalStateException if no provider handles the method
+     */
+    public static Arguments of(String providers, Class<?> owner, String name, Class<?>... parameterTypes)
+            throws Exception {
+        Method method = owner.getDeclaredMethod(name, parameterTypes);
+        method.setAccessible(true);
+
+        List<ArgumentProvider> chain = new ArrayList<ArgumentProvider>();
+        for (String provider : providers.split(",")) {
+            if (!provider.trim().isEmpty()) {
+                chain.add((ArgumentProvider) Class.forName(provider.trim()).getConstructor().newInstance());
+            }
+        }
+        chain.add(new DefaultArgumentProvider());
+
+        Object[] arguments = null;
+        for (ArgumentProvider provider : chain) {
+            arguments = provider.arguments(method);
+            if (arguments != null) {
+                break;
+            }
+        }
+        if (arguments == null) {
+            throw new IllegalStateException("No argument provider handles " + method);
+        }
+
+        Object receiver = null;
+        if (!Modifier.isStatic(method.getModifiers())) {
+            for (ArgumentProvider provider : chain) {
+                receiver = provider.receiver(method);
+                if (receiver != null) {
+                    break;
+                }
+            }
+            if (receiver == null) {
+                throw new IllegalStateException("No argument provider creates a receiver for " + method);
+            }
+        }
+        return new Arguments(receiver, arguments);
+    }
+
+    /**
+     * Returns the object on which to call the method, or <code>null</code> if it
+     * is static.
+     */
+    public Object receiver() {
+        return receiver;
+    }
+
+    /**
+     * Returns the argument for parameter {@code index}; primitive arguments are
+     * boxed.
+     */
+    public Object get(int index) {
+        return arguments[index];
+    }
+}
@@ -0,0 +1,77 @@
+package com.toddschiller.harness;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * The provider used when no other provider handles a method: it passes zero for
+ * primitive parameters, the empty string for strings, zero-filled arrays of
+ * {@value #ARRAY_LENGTH} elements, empty mutable collections for the collection
+ * interfaces, and instances created with a no-argument constructor for other
+ * types, and calls instance methods on an instance of the declaring class
+ * created the same way.
+ *
+ * @author Todd Schiller
+ */
+public final class DefaultArgumentProvider implements ArgumentProvider {
+
+    /** The length of the arrays passed for array parameters. */
+    public static final int ARRAY_LENGTH = 16;
+
+    @Override
+    public Object[] arguments(Method method) throws Exception {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] arguments = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            arguments[i] = create(types[i]);
+            if (arguments[i] == null) {
+                return null;
+            }
+        }
+        return arguments;
+    }
+
+    @Override
+    public Object receiver(Method method) throws Exception {
+        return create(method.getDeclaringClass());
+    }
+
+    /**
+     * Returns a default value of {@code type}, or <code>null</code> if there is
+     * none.
+     */
+    private static Object create(Class<?> type) throws Exception {
+        if (type.isPrimitive()) {
+            // Array.get converts the element to its wrapper
+            return Array.get(Array.newInstance(type, 1), 0);
+        } else if (type == String.class) {
+            return "";
+        } else if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), ARRAY_LENGTH);
+        } else if (type == Object.class) {
+            return new Object();
+        } else if (type.isAssignableFrom(ArrayList.class)) {
+            // e.g., List, Collection, or Iterable
+            return new ArrayList<Object>();
+        } else if (type.isAssignableFrom(HashSet.class)) {
+            return new HashSet<Object>();
+        } else if (type.isAssignableFrom(HashMap.class)) {
+            return new HashMap<Object, Object>();
+        } else if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.toddschiller.harness;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.summary.EffectSummaries;
+import com.toddschiller.scanner.AllocScanner;
+import com.toddschiller.scanner.ClassInfo;
+import com.toddschiller.scanner.MethodInfo;
+
+/**
+ * Generates a JMH benchmark module that calls each {@link NoAlloc} method of a
+ * compiled project and fails if any of them allocates.
+ * <p>
+ * For each class with <code>@NoAlloc</code> methods, the generator writes a
+ * benchmark class in the same package, so that package-private methods can be
+ * called, with one benchmark per method. The receiver and arguments come from
+ * the {@link ArgumentProvider}s given with <code>-p</code>; the benchmark stores
+ * them in typed fields of its state, so the measured call neither boxes nor uses
+ * reflection. The generated <code>noalloc.NoAllocCheck</code> runs the
+ * benchmarks with JMH's GC profiler and exits with status 1 if the
+ * <code>gc.alloc.rate.norm</code> of any benchmark exceeds the tolerance (by
+ * default {@value #DEFAULT_TOLERANCE} bytes per operation, to absorb the
+ * allocations of JMH's own infrastructure amortized over many operations).
+ * Because the benchmarks run after warmup, allocations that escape analysis
+ * removes are not reported.
+ * <p>
+ * The module's <code>pom.xml</code> depends on JMH and on the artifacts given
+ * with <code>-d</code>, which must include the project under test and the
+ * allocation checker, which contains {@link Arguments}. Private methods,
+ * methods of anonymous and local classes, and synthetic methods are skipped.
+ * <p>
+ * Usage:
+ * <code>HarnessGenerator -o dir [-p provider]... [-d group:artifact:version]... jar-or-dir...</code>
+ *
+ * @author Todd Schiller
+ */
+public final class HarnessGenerator {
+
+    static final String DEFAULT_TOLERANCE = "0.01";
+
+    private static final String BENCHMARK_SUFFIX = "_NoAllocBenchmark";
+    private static final String JMH_VERSION = "1.37";
+
+    /** Access flags that {@link java.lang.reflect.Modifier} does not define. */
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private final List<String> providers;
+
+    public HarnessGenerator(List<String> providers) {
+        this.providers = providers;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = null;
+        List<String> providers = new ArrayList<String>();
+        List<String> dependencies = new ArrayList<String>();
+        List<Path> inputs = new ArrayList<Path>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else if (args[i].equals("-p") && i + 1 < args.length) {
+                providers.add(args[++i]);
+            } else if (args[i].equals("-d") && i + 1 < args.length) {
+                dependencies.add(args[++i]);
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+
+        if (output == null || inputs.isEmpty()) {
+            System.err.println("Usage: HarnessGenerator -o <dir> [-p <provider>]... [-d <group:artifact:version>]... "
+                    + "<jar or directory>...");
+            System.exit(2);
+        }
+
+        AllocScanner scanner = new AllocScanner(false, EffectSummaries.load(null));
+        scanner.scan(inputs, Runtime.getRuntime().availableProcessors());
+
+        HarnessGenerator generator = new HarnessGenerator(providers);
+        int count = generator.generate(scanner.getClasses(), output);
+        generator.writePom(dependencies, output.resolve("pom.xml"));
+        System.out.printf("Generated benchmarks for %d @NoAlloc methods in %s%n", count, output);
+    }
+
+    /**
+     * Writes the benchmark sources for the {@link NoAlloc} methods of
+     * {@code classes} and the runner to <code>src/main/java</code> in
+     * {@code module}, and returns the number of benchmarked methods.
+     */
+    public int generate(List<ClassInfo> classes, Path module) throws IOException {
+        Path sources = module.resolve("src").resolve("main").resolve("java");
+        List<ClassInfo> sorted = new ArrayList<ClassInfo>(classes);
+        Collections.sort(sorted, new Comparator<ClassInfo>() {
+            @Override
+            public int compare(ClassInfo a, ClassInfo b) {
+                return a.name.compareTo(b.name);
+            }
+        });
+
+        int count = 0;
+        for (ClassInfo c : sorted) {
+            List<MethodInfo> methods = new ArrayList<MethodInfo>();
+            for (MethodInfo m : c.methods) {
+                if (isBenchmarkable(m)) {
+                    methods.add(m);
+                }
+            }
+            if (methods.isEmpty() || isLocalOrAnonymous(c.name)) {
+                continue;
+            }
+
+            int slash = c.name.lastIndexOf('/');
+            String packageName = slash < 0 ? "" : c.name.substring(0, slash).replace('/', '.');
+            String className = c.name.substring(slash + 1).replace('$', '_') + BENCHMARK_SUFFIX;
+            Path file = sources.resolve(c.name.substring(0, slash + 1)).resolve(className + ".java");
+            write(file, benchmark(packageName, className, c.name, methods));
+            count += methods.size();
+        }
+
+        write(sources.resolve("noalloc").resolve("NoAllocCheck.java"), runner());
+        return count;
+    }
+
+    private static boolean isBenchmarkable(MethodInfo m) {
+        return NoAlloc.class.getSimpleName().equals(m.declaredEffect) && !m.isAbstract() && !m.isNative()
+                && !m.isPrivate() && (m.access & (ACC_BRIDGE | ACC_SYNTHETIC)) == 0 && !m.name.startsWith("<");
+    }
+
+    /**
+     * Returns <code>true</code> if the class with the internal name
+     * {@code name} is anonymous or local, i.e., a part of its binary name starts
+     * with a digit.
+     */
+    private static boolean isLocalOrAnonymous(String name) {
+        int dollar = name.indexOf('$');
+        while (dollar >= 0 && dollar + 1 < name.length()) {
+            if (Character.isDigit(name.charAt(dollar + 1))) {
+                return true;
+            }
+            dollar = name.indexOf('$', dollar + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the source of the benchmark class for the {@code methods} of the
+     * class with the internal name {@code owner}.
+     */
+    String benchmark(String packageName, String className, String owner, List<MethodInfo> methods) {
+        String ownerType = sourceName(owner);
+        String providerList = join(providers);
+
+        StringBuilder s = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            s.append("package ").append(packageName).append(";\n\n");
+        }
+        s.append("import java.util.concurrent.TimeUnit;\n\n");
+        s.append("import org.openjdk.jmh.annotations.*;\n\n");
+        s.append("import com.toddschiller.harness.Arguments;\n\n");
+        s.append("/**\n * Calls each @NoAlloc method of {@link ").append(ownerType).append("}.\n");
+        s.append(" * Generated by ").append(HarnessGenerator.class.getName()).append("; do not edit.\n */\n");
+        s.append("@BenchmarkMode(Mode.AverageTime)\n");
+        s.append("@OutputTimeUnit(TimeUnit.NANOSECONDS)\n");
+        s.append("@Warmup(iterations = 5, time = 1)\n");
+        s.append("@Measurement(iterations = 5, time = 1)\n");
+        s.append("@Fork(1)\n");
+        s.append("public class ").append(className).append(" {\n\n");
+        s.append("    private static final String PROVIDERS = \"").append(providerList).append("\";\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            MethodInfo m = methods.get(i);
+            List<String> parameters = parameterTypes(m.descriptor);
+            String returnType = returnType(m.descriptor);
+            String state = "State" + i;
+
+            s.append("\n    @State(Scope.Thread)\n");
+            s.append("    public static class ").append(state).append(" {\n");
+            if (!m.isStatic()) {
+                s.append("        ").append(ownerType).append(" receiver;\n");
+            }
+            for (int p = 0; p < parameters.size(); p++) {
+                s.append("        ").append(parameters.get(p)).append(" a").append(p).append(";\n");
+            }
+            s.append("\n        @Setup(Level.Trial)\n");
+            s.append("        public void setUp() throws Exception {\n");
+            s.append("            Arguments arguments = Arguments.of(PROVIDERS, ").append(ownerType)
+                    .append(".class, \"").append(m.name).append('"');
+            for (String p : parameters) {
+                s.append(", ").append(p).append(".class");
+            }
+            s.append(");\n");
+            if (!m.isStatic()) {
+                s.append("            receiver = (").append(ownerType).append(") arguments.receiver();\n");
+            }
+            for (int p = 0; p < parameters.size(); p++) {
+                s.append("            a").append(p).append(" = (").append(boxed(parameters.get(p)))
+                        .append(") arguments.get(").append(p).append(");\n");
+            }
+            s.append("        }\n");
+            s.append("    }\n\n");
+
+            s.append("    @Benchmark\n");
+            s.append("    public ").append(returnType).append(' ').append(m.name).append('_').append(i).append('(')
+                    .append(state).append(" state) {\n");
+            s.append("        ").append(returnType.equals("void") ? "" : "return ")
+                    .append(m.isStatic() ? ownerType : "state.receiver").append('.').append(m.name).append('(');
+            for (int p = 0; p < parameters.size(); p++) {
+                s.append(p == 0 ? "" : ", ").append("state.a").append(p);
+            }
+            s.append(");\n");
+            s.append("    }\n");
+        }
+        s.append("}\n");
+        return s.toString();
+    }
+
+    /**
+     * Returns the source of <code>noalloc.NoAllocCheck</code>, which runs the
+     * generated benchmarks and fails if any of them allocates.
+     */
+    static String runner() {
+        return "package noalloc;\n\n"
+                + "import java.util.ArrayList;\n"
+                + "import java.util.Collection;\n"
+                + "import java.util.List;\n"
+                + "import java.util.Map;\n\n"
+                + "import org.openjdk.jmh.profile.GCProfiler;\n"
+                + "import org.openjdk.jmh.results.Result;\n"
+                + "import org.openjdk.jmh.results.RunResult;\n"
+                + "import org.openjdk.jmh.runner.Runner;\n"
+                + "import org.openjdk.jmh.runner.options.CommandLineOptions;\n"
+                + "import org.openjdk.jmh.runner.options.Options;\n"
+                + "import org.openjdk.jmh.runner.options.OptionsBuilder;\n\n"
+                + "/**\n"
+                + " * Runs the generated benchmarks with the GC profiler and exits with status 1 if\n"
+                + " * any of them allocates more than -Dalloc.tolerance bytes per operation.\n"
+                + " * Other arguments are passed to JMH. Generated by "
+                + HarnessGenerator.class.getName() + "; do not edit.\n"
+                + " */\n"
+                + "public final class NoAllocCheck {\n\n"
+                + "    public static void main(String[] args) throws Exception {\n"
+                + "        double tolerance = Double.parseDouble(System.getProperty(\"alloc.tolerance\", \""
+                + DEFAULT_TOLERANCE + "\"));\n"
+                + "        Options options = new OptionsBuilder()\n"
+                + "                .parent(new CommandLineOptions(args))\n"
+                + "                .include(\".*" + BENCHMARK_SUFFIX + ".*\")\n"
+                + "                .addProfiler(GCProfiler.class)\n"
+                + "                .build();\n"
+                + "        Collection<RunResult> results = new Runner(options).run();\n\n"
+                + "        List<String> failures = new ArrayList<String>();\n"
+                + "        for (RunResult result : results) {\n"
+                + "            for (Map.Entry<String, Result> e : result.getSecondaryResults().entrySet()) {\n"
+                + "                // The key is prefixed with a middle dot before JMH 1.37\n"
+                + "                if (e.getKey().endsWith(\"gc.alloc.rate.norm\") "
+                + "&& e.getValue().getScore() > tolerance) {\n"
+                + "                    failures.add(result.getParams().getBenchmark() + \": \" + e.getValue().getScore()\n"
+                + "                            + \" B/op\");\n"
+                + "                }\n"
+                + "            }\n"
+                + "        }\n\n"
+                + "        for (String failure : failures) {\n"
+                + "            System.err.println(\"Allocates: \" + failure);\n"
+                + "        }\n"
+                + "        System.exit(failures.isEmpty() ? 0 : 1);\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    /**
+     * Writes a <code>pom.xml</code> that builds the module into an executable
+     * <code>target/benchmarks.jar</code>.
+     *
+     * @param dependencies the artifacts under test, as
+     *            <code>group:artifact:version</code>
+     */
+    public void writePom(List<String> dependencies, Path pom) throws IOException {
+        StringBuilder s = new StringBuilder();
+        s.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        s.append("<!-- Generated by ").append(HarnessGenerator.class.getName()).append(" -->\n");
+        s.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\"\n");
+        s.append("         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        s.append("         xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 ");
+        s.append("http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n");
+        s.append("  <modelVersion>4.0.0</modelVersion>\n");
+        s.append("  <groupId>noalloc</groupId>\n");
+        s.append("  <artifactId>noalloc-benchmarks</artifactId>\n");
+        s.append("  <version>1.0</version>\n");
+        s.append("  <packaging>jar</packaging>\n\n");
+        s.append("  <properties>\n");
+        s.append("    <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n");
+        s.append("    <maven.compiler.source>1.8</maven.compiler.source>\n");
+        s.append("    <maven.compiler.target>1.8</maven.compiler.target>\n");
+        s.append("    <jmh.version>").append(JMH_VERSION).append("</jmh.version>\n");
+        s.append("  </properties>\n\n");
+        s.append("  <dependencies>\n");
+        s.append(dependency("org.openjdk.jmh", "jmh-core", "${jmh.version}", null));
+        s.append(dependency("org.openjdk.jmh", "jmh-generator-annprocess", "${jmh.version}", "provided"));
+        for (String d : dependencies) {
+            String[] parts = d.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected group:artifact:version, got " + d);
+            }
+            s.append(dependency(parts[0], parts[1], parts[2], null));
+        }
+        s.append("  </dependencies>\n\n");
+        s.append("  <build>\n");
+        s.append("    <plugins>\n");
+        s.append("      <plugin>\n");
+        s.append("        <groupId>org.apache.maven.plugins</groupId>\n");
+        s.append("        <artifactId>maven-shade-plugin</artifactId>\n");
+        s.append("        <version>3.5.1</version>\n");
+        s.append("        <executions>\n");
+        s.append("          <execution>\n");
+        s.append("            <phase>package</phase>\n");
+        s.append("            <goals><goal>shade</goal></goals>\n");
+        s.append("            <configuration>\n");
+        s.append("              <finalName>benchmarks</finalName>\n");
+        s.append("              <transformers>\n");
+        s.append("                <transformer implementation=");
+        s.append("\"org.apache.maven.plugins.shade.resource.ManifestResourceTransformer\">\n");
+        s.append("                  <mainClass>noalloc.NoAllocCheck</mainClass>\n");
+        s.append("                </transformer>\n");
+        s.append("                <transformer implementation=");
+        s.append("\"org.apache.maven.plugins.shade.resource.ServicesResourceTransformer\"/>\n");
+        s.append("              </transformers>\n");
+        s.append("            </configuration>\n");
+        s.append("          </execution>\n");
+        s.append("        </executions>\n");
+        s.append("      </plugin>\n");
+        s.append("    </plugins>\n");
+        s.append("  </build>\n");
+        s.append("</project>\n");
+        write(pom, s.toString());
+    }
+
+    private static String dependency(String group, String artifact, String version, String scope) {
+        return "    <dependency>\n"
+                + "      <groupId>" + group + "</groupId>\n"
+                + "      <artifactId>" + artifact + "</artifactId>\n"
+                + "      <version>" + version + "</version>\n"
+                + (scope == null ? "" : "      <scope>" + scope + "</scope>\n")
+                + "    </dependency>\n";
+    }
+
+    private static void write(Path file, String contents) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(contents);
+        }
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder result = new StringBuilder();
+        for (String value : values) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(value);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the source name of the class with the internal name
+     * {@code internalName}, e.g., <code>java.util.Map.Entry</code>.
+     */
+    private static String sourceName(String internalName) {
+        return internalName.replace('/', '.').replace('$', '.');
+    }
+
+    /**
+     * Returns the source names of the parameter types in the method descriptor
+     * {@code descriptor}.
+     */
+    static List<String> parameterTypes(String descriptor) {
+        List<String> types = new ArrayList<String>();
+        int i = 1; // skip '('
+        while (descriptor.charAt(i) != ')') {
+            int end = typeEnd(descriptor, i);
+            types.add(sourceType(descriptor.substring(i, end)));
+            i = end;
+        }
+        return types;
+    }
+
+    private static String returnType(String descriptor) {
+        return sourceType(descriptor.substring(descriptor.indexOf(')') + 1));
+    }
+
+    private static int typeEnd(String descriptor, int start) {
+        int i = start;
+        while (descriptor.charAt(i) == '[') {
+            i++;
+        }
+        return descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+    }
+
+    private static String sourceType(String type) {
+        switch (type.charAt(0)) {
+        case '[':
+            return sourceType(type.substring(1)) + "[]";
+        case 'L':
+            return sourceName(type.substring(1, type.length() - 1));
+        case 'Z':
+            return "boolean";
+        case 'B':
+            return "byte";
+        case 'C':
+            return "char";
+        case 'S':
+            return "short";
+        case 'I':
+            return "int";
+        case 'J':
+            return "long";
+        case 'F':
+            return "float";
+        case 'D':
+            return "double";
+        case 'V':
+            return "void";
+        default:
+            throw new IllegalArgumentException("Invalid type descriptor " + type);
+        }
+    }
+
+    /**
+     * Returns the type to which a value of {@code type} is cast when unboxed from
+     * an {@link Object}.
+     */
+    private static String boxed(String type) {
+        switch (type) {
+        case "boolean":
+            return "Boolean";
+        case "byte":
+            return "Byte";
+        case "char":
+            return "Character";
+        case "short":
+            return "Short";
+        case "int":
+            return "Integer";
+        case "long":
+            return "Long";
+        case "float":
+            return "Float";
+        case "double":
+            return "Double";
+        default:
+            return type;
+        }
+    }
+}
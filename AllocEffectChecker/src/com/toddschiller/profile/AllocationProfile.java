@@ -0,0 +1,142 @@
+package com.toddschiller.profile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The allocations and execution samples of a recording, aggregated by method.
+ * <p>
+ * Both are attributed inclusively: an event counts towards every method on its
+ * stack, once per method however often it recurses, since an effect covers the
+ * methods a method calls. Methods are identified by
+ * {@link com.toddschiller.checker.summary.MethodKey}. The allocation sites, the
+ * allocated class and the allocating method, are only kept for the methods
+ * passed to the constructor, to keep the profile small.
+ *
+ * @author Todd Schiller
+ */
+public final class AllocationProfile {
+
+    /** The aggregated events of a method. */
+    public static final class MethodProfile {
+        long allocations;
+        long allocatedBytes;
+        long samples;
+        Map<String, Long> sites;
+
+        /** Returns the number of allocation events with the method on the stack. */
+        public long getAllocations() {
+            return allocations;
+        }
+
+        /** Returns the bytes allocated by those events. */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /** Returns the number of execution samples with the method on the stack. */
+        public long getSamples() {
+            return samples;
+        }
+
+        /**
+         * Returns the allocation sites below the method, e.g.,
+         * <code>byte[] at com.example.Buffer#grow(int)</code>, with the most bytes
+         * first; empty unless the sites of the method are kept.
+         */
+        public List<Map.Entry<String, Long>> getSites() {
+            List<Map.Entry<String, Long>> result = new ArrayList<Map.Entry<String, Long>>();
+            if (sites != null) {
+                result.addAll(sites.entrySet());
+            }
+            Collections.sort(result, new Comparator<Map.Entry<String, Long>>() {
+                @Override
+                public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                    return Long.compare(b.getValue(), a.getValue());
+                }
+            });
+            return result;
+        }
+    }
+
+    private static final MethodProfile EMPTY = new MethodProfile();
+
+    private final Map<String, MethodProfile> methods = new HashMap<String, MethodProfile>();
+    private final Set<String> withSites;
+
+    private long allocationEvents;
+    private long sampleEvents;
+
+    /**
+     * @param withSites the methods whose allocation sites are kept
+     */
+    public AllocationProfile(Collection<String> withSites) {
+        this.withSites = new HashSet<String>(withSites);
+    }
+
+    /**
+     * Records an allocation of {@code bytes} bytes of {@code objectClass} whose
+     * stack, innermost first, is {@code stack}.
+     */
+    public void addAllocation(List<String> stack, String objectClass, long bytes) {
+        allocationEvents++;
+        String site = stack.isEmpty() ? objectClass : objectClass + " at " + stack.get(0);
+        for (String key : new HashSet<String>(stack)) {
+            MethodProfile method = profile(key);
+            method.allocations++;
+            method.allocatedBytes += bytes;
+            if (withSites.contains(key)) {
+                if (method.sites == null) {
+                    method.sites = new HashMap<String, Long>();
+                }
+                Long previous = method.sites.get(site);
+                method.sites.put(site, previous == null ? bytes : previous + bytes);
+            }
+        }
+    }
+
+    /**
+     * Records an execution sample whose stack, innermost first, is {@code stack}.
+     */
+    public void addExecutionSample(List<String> stack) {
+        sampleEvents++;
+        for (String key : new HashSet<String>(stack)) {
+            profile(key).samples++;
+        }
+    }
+
+    /**
+     * Returns the profile of the method with the key {@code key}, which is empty
+     * if the method does not appear in the recording.
+     */
+    public MethodProfile get(String key) {
+        MethodProfile method = methods.get(key);
+        return method != null ? method : EMPTY;
+    }
+
+    /** Returns the number of allocation events recorded. */
+    public long getAllocationEvents() {
+        return allocationEvents;
+    }
+
+    /** Returns the number of execution samples recorded. */
+    public long getSampleEvents() {
+        return sampleEvents;
+    }
+
+    private MethodProfile profile(String key) {
+        MethodProfile method = methods.get(key);
+        if (method == null) {
+            method = new MethodProfile();
+            methods.put(key, method);
+        }
+        return method;
+    }
+}
@@ -0,0 +1,257 @@
+package com.toddschiller.profile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import com.toddschiller.checker.Effect;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.summary.MethodKey;
+import com.toddschiller.checker.summary.SummaryCompiler;
+
+/**
+ * Compares the allocations in Java Flight Recorder recordings with the effects
+ * the checker resolved for the methods of a project, as exported with
+ * <code>-Aalloc.export=file</code>.
+ * <p>
+ * The importer reads the <code>jdk.ObjectAllocationSample</code> events of the
+ * recordings, or, if there are none, the <code>jdk.ObjectAllocationInNewTLAB</code>
+ * and <code>jdk.ObjectAllocationOutsideTLAB</code> events, and the
+ * <code>jdk.ExecutionSample</code> events, and aggregates them by the methods on
+ * their stacks; see {@link AllocationProfile}. It then reports:
+ * <ul>
+ * <li>the methods whose effect does not permit allocation that allocated in the
+ * recording, with their largest allocation sites. Allocations during warmup,
+ * which <code>NoAllocAfterWarmup</code> permits, and allocations on cold paths
+ * cannot be told apart from violations, so each must be triaged;</li>
+ * <li>the hottest methods, by execution samples, that were never on the stack of
+ * an allocation and are not {@link NoAlloc}, the candidates for
+ * <code>@NoAlloc</code>. Allocation events are sampled, so a candidate may still
+ * allocate rarely; the checker decides.</li>
+ * </ul>
+ * Frames are matched to the exported effects by {@link MethodKey}; inlined
+ * frames are included, but stacks that JFR truncated lose their outermost
+ * methods.
+ * <p>
+ * Usage: <code>JfrImporter -e effects.txt... [-n top] [-o report.txt] recording.jfr...</code>
+ *
+ * @author Todd Schiller
+ */
+public final class JfrImporter {
+
+    static final int DEFAULT_CANDIDATES = 25;
+
+    /** The number of allocation sites listed for each method that allocated. */
+    private static final int SITES = 3;
+
+    private final Map<String, Effect> effects;
+
+    /** The sampled allocations, and the allocations of TLAB events. */
+    private final AllocationProfile sampled;
+    private final AllocationProfile tlab;
+
+    public JfrImporter(Map<String, Effect> effects) {
+        this.effects = effects;
+        List<String> restricted = new ArrayList<String>();
+        for (Map.Entry<String, Effect> e : effects.entrySet()) {
+            if (!e.getValue().mayAlloc()) {
+                restricted.add(e.getKey());
+            }
+        }
+        this.sampled = new AllocationProfile(restricted);
+        this.tlab = new AllocationProfile(restricted);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, Effect> effects = new TreeMap<String, Effect>();
+        Path output = null;
+        int candidates = DEFAULT_CANDIDATES;
+        List<Path> recordings = new ArrayList<Path>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-e") && i + 1 < args.length) {
+                Path input = Paths.get(args[++i]);
+                try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                    SummaryCompiler.parse(in, input.toString(), effects);
+                }
+            } else if (args[i].equals("-n") && i + 1 < args.length) {
+                candidates = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else {
+                recordings.add(Paths.get(args[i]));
+            }
+        }
+
+        if (effects.isEmpty() || recordings.isEmpty()) {
+            System.err.println("Usage: JfrImporter -e <effects>... [-n <top>] [-o <output>] <recording>...");
+            System.exit(2);
+        }
+
+        JfrImporter importer = new JfrImporter(effects);
+        for (Path recording : recordings) {
+            importer.read(recording);
+        }
+        if (importer.getProfile().getAllocationEvents() == 0) {
+            System.err.println("No allocation events in the recordings; enable jdk.ObjectAllocationSample, "
+                    + "or jdk.ObjectAllocationInNewTLAB and jdk.ObjectAllocationOutsideTLAB");
+        }
+
+        try (Writer out = output != null ? Files.newBufferedWriter(output, StandardCharsets.UTF_8)
+                : new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            importer.write(new PrintWriter(out), candidates);
+        }
+    }
+
+    /**
+     * Adds the allocation and execution sample events of the recording
+     * {@code path}.
+     */
+    public void read(Path path) throws IOException {
+        try (RecordingFile recording = new RecordingFile(path)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                switch (event.getEventType().getName()) {
+                case "jdk.ExecutionSample":
+                    List<String> stack = stack(event);
+                    sampled.addExecutionSample(stack);
+                    tlab.addExecutionSample(stack);
+                    break;
+                case "jdk.ObjectAllocationSample":
+                    sampled.addAllocation(stack(event), objectClass(event), event.getLong("weight"));
+                    break;
+                case "jdk.ObjectAllocationInNewTLAB":
+                    tlab.addAllocation(stack(event), objectClass(event), event.getLong("tlabSize"));
+                    break;
+                case "jdk.ObjectAllocationOutsideTLAB":
+                    tlab.addAllocation(stack(event), objectClass(event), event.getLong("allocationSize"));
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the profile of the recordings read: the sampled allocations if there
+     * are any, since the TLAB events would count the same allocations again.
+     */
+    public AllocationProfile getProfile() {
+        return sampled.getAllocationEvents() > 0 ? sampled : tlab;
+    }
+
+    /**
+     * Writes the methods that allocated despite their effect and the top
+     * {@code candidates} candidates for {@link NoAlloc} to {@code out}.
+     */
+    public void write(PrintWriter out, int candidates) {
+        final AllocationProfile profile = getProfile();
+
+        List<String> violations = new ArrayList<String>();
+        List<String> unallocating = new ArrayList<String>();
+        for (Map.Entry<String, Effect> e : effects.entrySet()) {
+            AllocationProfile.MethodProfile method = profile.get(e.getKey());
+            if (!e.getValue().mayAlloc() && method.getAllocations() > 0) {
+                violations.add(e.getKey());
+            } else if (!e.getValue().noAlloc() && method.getAllocations() == 0 && method.getSamples() > 0) {
+                unallocating.add(e.getKey());
+            }
+        }
+        Collections.sort(violations, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(profile.get(b).getAllocatedBytes(), profile.get(a).getAllocatedBytes());
+            }
+        });
+        Collections.sort(unallocating, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(profile.get(b).getSamples(), profile.get(a).getSamples());
+            }
+        });
+
+        out.printf("%d allocation events and %d execution samples%n%n", profile.getAllocationEvents(),
+                profile.getSampleEvents());
+
+        out.printf("%d methods that may not allocate allocated, most bytes first%n", violations.size());
+        for (String key : violations) {
+            AllocationProfile.MethodProfile method = profile.get(key);
+            out.printf("  %-18s %s: %d allocations, %s%n", effects.get(key), key, method.getAllocations(),
+                    bytes(method.getAllocatedBytes()));
+            List<Map.Entry<String, Long>> sites = method.getSites();
+            for (Map.Entry<String, Long> site : sites.subList(0, Math.min(SITES, sites.size()))) {
+                out.printf("      %10s  %s%n", bytes(site.getValue()), site.getKey());
+            }
+        }
+        out.println();
+
+        List<String> top = unallocating.subList(0, Math.min(candidates, unallocating.size()));
+        out.printf("%d of %d sampled methods that did not allocate, candidates for @NoAlloc, hottest first%n",
+                top.size(), unallocating.size());
+        for (String key : top) {
+            out.printf("  %8d samples  %-18s %s%n", profile.get(key).getSamples(), effects.get(key), key);
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns the keys of the Java methods on the stack of {@code event}, innermost
+     * first.
+     */
+    private static List<String> stack(RecordedEvent event) {
+        List<String> keys = new ArrayList<String>();
+        RecordedStackTrace trace = event.getStackTrace();
+        if (trace == null) {
+            return keys;
+        }
+        for (RecordedFrame frame : trace.getFrames()) {
+            RecordedMethod method = frame.getMethod();
+            if (frame.isJavaFrame() && method != null) {
+                keys.add(MethodKey.fromDescriptor(method.getType().getName(), method.getName(),
+                        method.getDescriptor()));
+            }
+        }
+        return keys;
+    }
+
+    private static String objectClass(RecordedEvent event) {
+        RecordedClass type = event.getClass("objectClass");
+        if (type == null) {
+            return "?";
+        } else if (!type.getName().startsWith("[")) {
+            return type.getName();
+        }
+        // Array classes are named by their descriptors, e.g., [I for int[]
+        String key = MethodKey.fromDescriptor("", "", "(" + type.getName() + ")V");
+        return key.substring(key.indexOf('(') + 1, key.length() - 1);
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
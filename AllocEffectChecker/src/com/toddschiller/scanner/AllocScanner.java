@@ -0,0 +1,534 @@
+package com.toddschiller.scanner;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.toddschiller.checker.Effect;
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.summary.EffectSummaries;
+import com.toddschiller.checker.summary.EffectSummaryWriter;
+import com.toddschiller.checker.summary.MethodKey;
+import com.toddschiller.scanner.MethodInfo.CallSite;
+
+/**
+ * Computes allocation summaries for libraries that are only available as class
+ * files, for use with the checker's <code>-Aalloc.summaries</code> option.
+ * <p>
+ * The scanner reads each jar or class directory on its own thread, opening jars
+ * as zip file systems. It then builds the call graph of the scanned methods,
+ * resolving virtual calls to every override in the scanned class hierarchy, and
+ * marks a method <code>@MayAlloc</code> if it allocates or can reach a method
+ * that does. Calls to methods outside of the scanned classes take their effect
+ * from the summaries given with <code>-s</code> and the bundled JDK model, and
+ * are assumed to allocate otherwise. Methods annotated with an effect keep their
+ * declared effect, and calls to them are only allocation-free if it is
+ * <code>@NoAlloc</code>.
+ * <p>
+ * Usage: <code>AllocScanner -o out.summary [-s base.summary]... [-t threads] [-strict] jar-or-dir...</code>
+ *
+ * @author Todd Schiller
+ */
+public final class AllocScanner {
+
+    private final ClassFileReader reader;
+    private final EffectSummaries baseSummaries;
+
+    /** The scanned classes by internal name; classes earlier on the class path win. */
+    private final ConcurrentMap<String, Ranked> classes = new ConcurrentHashMap<String, Ranked>();
+
+    public AllocScanner(boolean strict, EffectSummaries baseSummaries) {
+        this.reader = new ClassFileReader(strict);
+        this.baseSummaries = baseSummaries;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = null;
+        StringBuilder summaries = new StringBuilder();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean strict = false;
+        List<Path> inputs = new ArrayList<Path>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else if (args[i].equals("-s") && i + 1 < args.length) {
+                if (summaries.length() > 0) {
+                    summaries.append(java.io.File.pathSeparator);
+                }
+                summaries.append(args[++i]);
+            } else if (args[i].equals("-t") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-strict")) {
+                strict = true;
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+
+        if (output == null || inputs.isEmpty()) {
+            System.err.println("Usage: AllocScanner -o <output> [-s <summary>]... [-t <threads>] [-strict] <jar or directory>...");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        AllocScanner scanner = new AllocScanner(strict, EffectSummaries.load(summaries.toString()));
+        scanner.scan(inputs, threads);
+        Map<String, Effect> effects = scanner.computeEffects();
+
+        EffectSummaryWriter writer = new EffectSummaryWriter();
+        int noAlloc = 0;
+        for (Map.Entry<String, Effect> e : effects.entrySet()) {
+            writer.put(e.getKey(), e.getValue());
+            if (e.getValue().noAlloc()) {
+                noAlloc++;
+            }
+        }
+        writer.write(output);
+
+        System.out.printf("Scanned %d classes in %d inputs; %d of %d methods are NoAlloc (%.1f s)%n",
+                scanner.classes.size(), inputs.size(), noAlloc, effects.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Reads the classes in {@code inputs}, which are jars or directories of class
+     * files, using {@code threads} threads.
+     */
+    public void scan(List<Path> inputs, int threads) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int i = 0; i < inputs.size(); i++) {
+                final Path input = inputs.get(i);
+                final int rank = i;
+                results.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        scanInput(input, rank);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void scanInput(Path input, int rank) throws IOException {
+        if (Files.isDirectory(input)) {
+            scanTree(input, input.toString(), rank);
+        } else {
+            try (FileSystem jar = FileSystems.newFileSystem(input, (ClassLoader) null)) {
+                for (Path root : jar.getRootDirectories()) {
+                    scanTree(root, input.toString(), rank);
+                }
+            }
+        }
+    }
+
+    private void scanTree(Path root, final String source, final int rank) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                // Multi-release jars: only the base versions are scanned
+                return dir.toString().contains("META-INF/versions") ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".class") && !name.equals("module-info.class")) {
+                    try {
+                        add(new Ranked(reader.read(Files.readAllBytes(file)), rank));
+                    } catch (RuntimeException e) {
+                        System.err.println("Skipping " + source + "!" + file + ": " + e);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void add(Ranked ranked) {
+        Ranked existing = classes.putIfAbsent(ranked.info.name, ranked);
+        while (existing != null && existing.rank > ranked.rank) {
+            if (classes.replace(ranked.info.name, existing, ranked)) {
+                return;
+            }
+            existing = classes.putIfAbsent(ranked.info.name, ranked);
+        }
+    }
+
+    /**
+     * Returns the scanned classes; a class in several inputs is the one from the
+     * first input.
+     */
+    public List<ClassInfo> getClasses() {
+        List<ClassInfo> result = new ArrayList<ClassInfo>(classes.size());
+        for (Ranked ranked : classes.values()) {
+            result.add(ranked.info);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the effect of every scanned method, keyed by
+     * {@link com.toddschiller.checker.summary.MethodKey}.
+     */
+    public Map<String, Effect> computeEffects() {
+        Map<String, List<String>> subtypes = new HashMap<String, List<String>>();
+        for (Ranked ranked : classes.values()) {
+            ClassInfo c = ranked.info;
+            List<String> supers = new ArrayList<String>(c.interfaces);
+            if (c.superName != null) {
+                supers.add(c.superName);
+            }
+            for (String s : supers) {
+                List<String> list = subtypes.get(s);
+                if (list == null) {
+                    list = new ArrayList<String>();
+                    subtypes.put(s, list);
+                }
+                list.add(c.name);
+            }
+        }
+
+        // Number the methods so that the call graph can be kept in arrays
+        List<MethodInfo> all = new ArrayList<MethodInfo>();
+        for (Ranked ranked : classes.values()) {
+            for (MethodInfo m : ranked.info.methods) {
+                if (!m.name.equals("<clinit>")) {
+                    m.id = all.size();
+                    all.add(m);
+                }
+            }
+        }
+
+        // The call graph has a node for each method, and a node for each virtual
+        // call with several targets, so that the callers of a widely overridden
+        // method do not each need an edge to every override
+        CallGraph graph = new CallGraph(all.size());
+
+        // The node of each distinct call
+        Map<String, Integer> resolved = new HashMap<String, Integer>(all.size());
+        Map<String, List<ClassInfo>> subtypeClosures = new HashMap<String, List<ClassInfo>>();
+
+        for (MethodInfo m : all) {
+            if (m.declaredEffect != null) {
+                // Trust the annotation, which the checker verified; its callers
+                // are only allocation-free if it is NoAlloc
+                graph.setTrusted(m.id, !m.declaredEffect.equals(NoAlloc.class.getSimpleName()));
+                continue;
+            }
+
+            if (m.allocation != null) {
+                graph.setAllocating(m.id);
+            } else if (m.isNative() && !isNoAlloc(baseSummaries.lookup(m.key()))) {
+                graph.setAllocating(m.id);
+            } else if (m.isAbstract()) {
+                // An abstract method allocates if any implementation does
+                List<MethodInfo> overriders = findOverriders(m.owner, m.name, m.descriptor, subtypes,
+                        subtypeClosures);
+                if (overriders.isEmpty()) {
+                    graph.setAllocating(m.id);
+                }
+                for (MethodInfo o : overriders) {
+                    graph.addEdge(m.id, o.id);
+                }
+            }
+
+            for (CallSite call : m.calls) {
+                int target = resolve(call, subtypes, subtypeClosures, resolved, graph);
+                if (target == UNKNOWN) {
+                    graph.setAllocating(m.id);
+                } else if (target != NO_TARGETS) {
+                    graph.addEdge(m.id, target);
+                }
+            }
+        }
+
+        graph.propagate();
+
+        Effect noAlloc = new Effect(NoAlloc.class);
+        Effect mayAlloc = new Effect(MayAlloc.class);
+        Map<String, Effect> effects = new HashMap<String, Effect>(all.size() * 2);
+        for (MethodInfo m : all) {
+            if (m.declaredEffect != null) {
+                effects.put(m.key(), effectNamed(m.declaredEffect));
+            } else {
+                effects.put(m.key(), graph.isAllocating(m.id) ? mayAlloc : noAlloc);
+            }
+        }
+        return effects;
+    }
+
+    /**
+     * Returns the effect whose annotation has the simple name {@code name}, as
+     * read by {@link ClassFileReader}.
+     */
+    private static Effect effectNamed(String name) {
+        for (Class<? extends Annotation> annotation : Effect.ANNOTATIONS) {
+            if (annotation.getSimpleName().equals(name)) {
+                return new Effect(annotation);
+            }
+        }
+        throw new IllegalArgumentException("Unknown effect: " + name);
+    }
+
+    /** The node of a call that may invoke a method that is not known to be allocation-free. */
+    private static final int UNKNOWN = -1;
+
+    /** The node of a call whose targets are all outside of the scanned classes and allocation-free. */
+    private static final int NO_TARGETS = -2;
+
+    /**
+     * Returns the call graph node for the methods that {@code call} may invoke,
+     * {@link #UNKNOWN}, or {@link #NO_TARGETS}.
+     */
+    private int resolve(CallSite call, Map<String, List<String>> subtypes, Map<String, List<ClassInfo>> subtypeClosures,
+            Map<String, Integer> resolved, CallGraph graph) {
+        Integer cached = resolved.get(call.key);
+        if (cached != null) {
+            return cached;
+        }
+
+        int node;
+        List<MethodInfo> targets = resolveUncached(call, subtypes, subtypeClosures);
+        if (targets == null) {
+            node = UNKNOWN;
+        } else if (targets.isEmpty()) {
+            node = NO_TARGETS;
+        } else if (targets.size() == 1) {
+            node = targets.get(0).id;
+        } else {
+            node = graph.addNode();
+            for (MethodInfo target : targets) {
+                graph.addEdge(node, target.id);
+            }
+        }
+        resolved.put(call.key, node);
+        return node;
+    }
+
+    /**
+     * Returns the scanned methods that {@code call} may invoke, or
+     * <code>null</code> if it may invoke a method that was not scanned and is
+     * not known to be allocation-free.
+     */
+    private List<MethodInfo> resolveUncached(CallSite call, Map<String, List<String>> subtypes,
+            Map<String, List<ClassInfo>> subtypeClosures) {
+        List<MethodInfo> targets = new ArrayList<MethodInfo>();
+
+        MethodInfo declared = findDeclaration(call.owner, call.name, call.descriptor);
+        if (declared != null) {
+            targets.add(declared);
+        } else if (!isNoAlloc(baseSummaries.lookup(MethodKey.fromDescriptor(call.owner, call.name,
+                call.descriptor)))) {
+            return null;
+        }
+
+        if (call.isVirtual()) {
+            targets.addAll(findOverriders(call.owner, call.name, call.descriptor, subtypes, subtypeClosures));
+        }
+        return targets;
+    }
+
+    /**
+     * Returns the method that a call to {@code owner.name descriptor} resolves to
+     * in the scanned classes, searching superclasses and superinterfaces.
+     */
+    private MethodInfo findDeclaration(String owner, String name, String descriptor) {
+        Deque<String> pending = new ArrayDeque<String>();
+        Set<String> seen = new HashSet<String>();
+        pending.add(owner);
+        while (!pending.isEmpty()) {
+            String type = pending.poll();
+            if (!seen.add(type)) {
+                continue;
+            }
+            Ranked ranked = classes.get(type);
+            if (ranked == null) {
+                continue;
+            }
+            MethodInfo m = ranked.info.findMethod(name, descriptor);
+            if (m != null) {
+                return m;
+            }
+            if (ranked.info.superName != null) {
+                pending.add(ranked.info.superName);
+            }
+            pending.addAll(ranked.info.interfaces);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the concrete methods of the scanned subtypes of {@code owner} that
+     * override {@code name descriptor}.
+     */
+    private List<MethodInfo> findOverriders(String owner, String name, String descriptor,
+            Map<String, List<String>> subtypes, Map<String, List<ClassInfo>> subtypeClosures) {
+        List<MethodInfo> result = new ArrayList<MethodInfo>();
+        for (ClassInfo sub : findSubtypes(owner, subtypes, subtypeClosures)) {
+            MethodInfo m = sub.findMethod(name, descriptor);
+            if (m != null && !m.isAbstract() && !m.isStatic() && !m.isPrivate()) {
+                result.add(m);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the scanned transitive subtypes of {@code owner}, computing them
+     * once per type.
+     */
+    private List<ClassInfo> findSubtypes(String owner, Map<String, List<String>> subtypes,
+            Map<String, List<ClassInfo>> subtypeClosures) {
+        List<ClassInfo> result = subtypeClosures.get(owner);
+        if (result != null) {
+            return result;
+        }
+
+        result = new ArrayList<ClassInfo>();
+        Deque<String> pending = new ArrayDeque<String>();
+        Set<String> seen = new HashSet<String>();
+        pending.add(owner);
+        while (!pending.isEmpty()) {
+            List<String> subs = subtypes.get(pending.poll());
+            if (subs == null) {
+                continue;
+            }
+            for (String sub : subs) {
+                if (seen.add(sub)) {
+                    result.add(classes.get(sub).info);
+                    pending.add(sub);
+                }
+            }
+        }
+        subtypeClosures.put(owner, result);
+        return result;
+    }
+
+    private static boolean isNoAlloc(Effect effect) {
+        return effect != null && effect.noAlloc();
+    }
+
+    /**
+     * A call graph over integer nodes, solved by propagating allocation from
+     * callees to callers. Trusted nodes keep their effect.
+     */
+    private static final class CallGraph {
+        /** The callers of each node; the first element of each array is the number of callers. */
+        private final List<int[]> callers = new ArrayList<int[]>();
+        private final BitSet allocating = new BitSet();
+        private final BitSet trusted = new BitSet();
+
+        CallGraph(int methods) {
+            for (int i = 0; i < methods; i++) {
+                addNode();
+            }
+        }
+
+        int addNode() {
+            callers.add(null);
+            return callers.size() - 1;
+        }
+
+        void setAllocating(int node) {
+            allocating.set(node);
+        }
+
+        void setTrusted(int node, boolean allocates) {
+            trusted.set(node);
+            allocating.set(node, allocates);
+        }
+
+        boolean isAllocating(int node) {
+            return allocating.get(node);
+        }
+
+        void addEdge(int caller, int callee) {
+            if (caller == callee) {
+                return;
+            }
+            int[] list = callers.get(callee);
+            if (list == null) {
+                list = new int[4];
+                callers.set(callee, list);
+            } else if (list[0] + 1 == list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+                callers.set(callee, list);
+            }
+            list[++list[0]] = caller;
+        }
+
+        void propagate() {
+            int[] worklist = new int[callers.size()];
+            int size = 0;
+            for (int node = allocating.nextSetBit(0); node >= 0; node = allocating.nextSetBit(node + 1)) {
+                worklist[size++] = node;
+            }
+            while (size > 0) {
+                int callee = worklist[--size];
+                int[] list = callers.get(callee);
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 1; i <= list[0]; i++) {
+                    int caller = list[i];
+                    if (!trusted.get(caller) && !allocating.get(caller)) {
+                        allocating.set(caller);
+                        worklist[size++] = caller;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A scanned class and the position on the class path of the input it was
+     * read from.
+     */
+    private static final class Ranked {
+        final ClassInfo info;
+        final int rank;
+
+        Ranked(ClassInfo info, int rank) {
+            this.info = info;
+            this.rank = rank;
+        }
+    }
+}
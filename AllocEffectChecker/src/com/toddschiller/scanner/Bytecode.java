@@ -0,0 +1,165 @@
+package com.toddschiller.scanner;
+
+/**
+ * Opcodes and instruction decoding for JVM bytecode (JVMS &sect;6.5).
+ *
+ * @author Todd Schiller
+ */
+public final class Bytecode {
+
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC_W = 0x13;
+    public static final int IFEQ = 0x99;
+    public static final int IF_ACMPNE = 0xa6;
+    public static final int GOTO = 0xa7;
+    public static final int JSR = 0xa8;
+    public static final int RET = 0xa9;
+    public static final int TABLESWITCH = 0xaa;
+    public static final int LOOKUPSWITCH = 0xab;
+    public static final int IRETURN = 0xac;
+    public static final int RETURN = 0xb1;
+    public static final int INVOKEVIRTUAL = 0xb6;
+    public static final int INVOKESPECIAL = 0xb7;
+    public static final int INVOKESTATIC = 0xb8;
+    public static final int INVOKEINTERFACE = 0xb9;
+    public static final int INVOKEDYNAMIC = 0xba;
+    public static final int NEW = 0xbb;
+    public static final int NEWARRAY = 0xbc;
+    public static final int ANEWARRAY = 0xbd;
+    public static final int ATHROW = 0xbf;
+    public static final int WIDE = 0xc4;
+    public static final int MULTIANEWARRAY = 0xc5;
+    public static final int IFNULL = 0xc6;
+    public static final int IFNONNULL = 0xc7;
+    public static final int GOTO_W = 0xc8;
+    public static final int JSR_W = 0xc9;
+
+    private Bytecode() {
+        // static utility class
+    }
+
+    /**
+     * Returns the length in bytes of the instruction at {@code offset} in
+     * {@code code}, including its operands.
+     */
+    public static int length(byte[] code, int offset) {
+        int opcode = code[offset] & 0xFF;
+        switch (opcode) {
+        case TABLESWITCH: {
+            int pc = switchOperands(offset);
+            int low = readInt(code, pc + 4);
+            int high = readInt(code, pc + 8);
+            return pc - offset + 12 + 4 * (high - low + 1);
+        }
+        case LOOKUPSWITCH: {
+            int pc = switchOperands(offset);
+            int pairs = readInt(code, pc + 4);
+            return pc - offset + 8 + 8 * pairs;
+        }
+        case WIDE:
+            return (code[offset + 1] & 0xFF) == 0x84 ? 6 : 4;
+        default:
+            int length = LENGTHS[opcode];
+            if (length == 0) {
+                throw new IllegalArgumentException("Invalid opcode " + opcode + " at " + offset);
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Returns the offset of the first operand of the switch instruction at
+     * {@code offset}, after the padding that aligns it to four bytes.
+     */
+    public static int switchOperands(int offset) {
+        return (offset + 4) & ~3;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code opcode} is a conditional branch with a
+     * two-byte offset.
+     */
+    public static boolean isConditionalBranch(int opcode) {
+        return (opcode >= IFEQ && opcode <= IF_ACMPNE) || opcode == IFNULL || opcode == IFNONNULL;
+    }
+
+    /**
+     * Returns <code>true</code> if {@code opcode} returns from the method.
+     */
+    public static boolean isReturn(int opcode) {
+        return opcode >= IRETURN && opcode <= RETURN;
+    }
+
+    public static int readUnsignedShort(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    public static short readShort(byte[] b, int offset) {
+        return (short) readUnsignedShort(b, offset);
+    }
+
+    public static int readInt(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16) | ((b[offset + 2] & 0xFF) << 8)
+                | (b[offset + 3] & 0xFF);
+    }
+
+    /** The lengths of the fixed-length instructions, indexed by opcode; 0 if variable or invalid. */
+    private static final int[] LENGTHS = new int[256];
+
+    static {
+        for (int op = 0x00; op <= 0x0f; op++) {
+            LENGTHS[op] = 1; // constants
+        }
+        LENGTHS[BIPUSH] = 2;
+        LENGTHS[SIPUSH] = 3;
+        LENGTHS[0x12] = 2; // ldc
+        LENGTHS[LDC_W] = 3;
+        LENGTHS[0x14] = 3; // ldc2_w
+        for (int op = 0x15; op <= 0x19; op++) {
+            LENGTHS[op] = 2; // loads with an index
+        }
+        for (int op = 0x1a; op <= 0x35; op++) {
+            LENGTHS[op] = 1; // loads and array loads
+        }
+        for (int op = 0x36; op <= 0x3a; op++) {
+            LENGTHS[op] = 2; // stores with an index
+        }
+        for (int op = 0x3b; op <= 0x83; op++) {
+            LENGTHS[op] = 1; // stores, stack, and arithmetic
+        }
+        LENGTHS[0x84] = 3; // iinc
+        for (int op = 0x85; op <= 0x98; op++) {
+            LENGTHS[op] = 1; // conversions and comparisons
+        }
+        for (int op = IFEQ; op <= JSR; op++) {
+            LENGTHS[op] = 3; // branches
+        }
+        LENGTHS[RET] = 2;
+        for (int op = IRETURN; op <= RETURN; op++) {
+            LENGTHS[op] = 1;
+        }
+        for (int op = 0xb2; op <= 0xb5; op++) {
+            LENGTHS[op] = 3; // field access
+        }
+        LENGTHS[INVOKEVIRTUAL] = 3;
+        LENGTHS[INVOKESPECIAL] = 3;
+        LENGTHS[INVOKESTATIC] = 3;
+        LENGTHS[INVOKEINTERFACE] = 5;
+        LENGTHS[INVOKEDYNAMIC] = 5;
+        LENGTHS[NEW] = 3;
+        LENGTHS[NEWARRAY] = 2;
+        LENGTHS[ANEWARRAY] = 3;
+        LENGTHS[0xbe] = 1; // arraylength
+        LENGTHS[ATHROW] = 1;
+        LENGTHS[0xc0] = 3; // checkcast
+        LENGTHS[0xc1] = 3; // instanceof
+        LENGTHS[0xc2] = 1; // monitorenter
+        LENGTHS[0xc3] = 1; // monitorexit
+        LENGTHS[MULTIANEWARRAY] = 4;
+        LENGTHS[IFNULL] = 3;
+        LENGTHS[IFNONNULL] = 3;
+        LENGTHS[GOTO_W] = 5;
+        LENGTHS[JSR_W] = 5;
+    }
+}
@@ -0,0 +1,446 @@
+package com.toddschiller.scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoHeapAlloc;
+import com.toddschiller.scanner.MethodInfo.CallSite;
+
+/**
+ * Reads the allocations and calls of each method in a class file.
+ * <p>
+ * The reader reports the instructions that allocate: <code>new</code>,
+ * <code>newarray</code>, <code>anewarray</code>, <code>multianewarray</code>,
+ * calls to the boxing <code>valueOf</code> methods, and
+ * <code>invokedynamic</code> sites that create a capturing lambda or
+ * concatenate strings. Unless the reader is strict, allocations and calls on
+ * paths that always end in <code>athrow</code> are ignored, matching the
+ * convention of the bundled JDK model that building an exception is not a
+ * steady-state allocation.
+ *
+ * @author Todd Schiller
+ */
+public final class ClassFileReader {
+
+    private static final String NO_ALLOC = "L" + NoAlloc.class.getName().replace('.', '/') + ";";
+    private static final String MAY_ALLOC = "L" + MayAlloc.class.getName().replace('.', '/') + ";";
+    private static final String NO_ALLOC_AFTER_WARMUP = "L" + NoAllocAfterWarmup.class.getName().replace('.', '/')
+            + ";";
+    private static final String NO_HEAP_ALLOC = "L" + NoHeapAlloc.class.getName().replace('.', '/') + ";";
+
+    private final boolean strict;
+
+    /**
+     * @param strict whether to report allocations on paths that end in a
+     *            <code>throw</code>
+     */
+    public ClassFileReader(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * Parses the class file {@code bytes}.
+     *
+     * @throws IllegalArgumentException if {@code bytes} is not a valid class file
+     */
+    public ClassInfo read(byte[] bytes) {
+        if (bytes.length < 10 || Bytecode.readInt(bytes, 0) != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+
+        ConstantPool cp = new ConstantPool(bytes);
+        int offset = cp.end();
+
+        String name = cp.className(Bytecode.readUnsignedShort(bytes, offset + 2));
+        int superIndex = Bytecode.readUnsignedShort(bytes, offset + 4);
+        String superName = superIndex == 0 ? null : cp.className(superIndex);
+
+        int interfaceCount = Bytecode.readUnsignedShort(bytes, offset + 6);
+        offset += 8;
+        List<String> interfaces = new ArrayList<String>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(cp.className(Bytecode.readUnsignedShort(bytes, offset)));
+            offset += 2;
+        }
+
+        // Skip the fields
+        int fieldCount = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+        for (int i = 0; i < fieldCount; i++) {
+            offset = skipAttributes(bytes, offset + 6);
+        }
+
+        // Find the code of each method; the bootstrap methods needed to classify
+        // invokedynamic instructions come after the methods
+        int methodCount = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+        int[] methodOffsets = new int[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            methodOffsets[i] = offset;
+            offset = skipAttributes(bytes, offset + 6);
+        }
+
+        int[] bootstrapMethods = readBootstrapMethods(bytes, cp, offset);
+
+        // Calls through the same constant pool entry share a call site
+        CallSite[] callSites = new CallSite[cp.count()];
+        int[] lastCaller = new int[cp.count()];
+
+        List<MethodInfo> methods = new ArrayList<MethodInfo>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            methods.add(readMethod(bytes, cp, name, methodOffsets[i], bootstrapMethods, new CallSites(callSites,
+                    lastCaller, i + 1)));
+        }
+
+        return new ClassInfo(name, superName, interfaces, methods);
+    }
+
+    private MethodInfo readMethod(byte[] bytes, ConstantPool cp, String owner, int offset, int[] bootstrapMethods,
+            CallSites callSites) {
+        int access = Bytecode.readUnsignedShort(bytes, offset);
+        String name = cp.utf8(Bytecode.readUnsignedShort(bytes, offset + 2));
+        String descriptor = cp.utf8(Bytecode.readUnsignedShort(bytes, offset + 4));
+
+        String declaredEffect = null;
+        String allocation = null;
+        List<CallSite> calls = new ArrayList<CallSite>();
+
+        int attributeCount = Bytecode.readUnsignedShort(bytes, offset + 6);
+        offset += 8;
+        for (int i = 0; i < attributeCount; i++) {
+            String attribute = cp.utf8(Bytecode.readUnsignedShort(bytes, offset));
+            int length = Bytecode.readInt(bytes, offset + 2);
+            int start = offset + 6;
+
+            if (attribute.equals("Code")) {
+                allocation = readCode(bytes, cp, start, bootstrapMethods, callSites, calls);
+            } else if (attribute.equals("RuntimeVisibleAnnotations") || attribute.equals("RuntimeInvisibleAnnotations")) {
+                String effect = readEffectAnnotation(bytes, cp, start);
+                if (effect != null) {
+                    declaredEffect = effect;
+                }
+            }
+            offset = start + length;
+        }
+
+        return new MethodInfo(owner, name, descriptor, access, declaredEffect, allocation, calls);
+    }
+
+    /**
+     * Records the calls of the <code>Code</code> attribute at {@code offset} in
+     * {@code calls} and returns a description of its first allocation, or
+     * <code>null</code> if it does not allocate.
+     */
+    private String readCode(byte[] bytes, ConstantPool cp, int offset, int[] bootstrapMethods, CallSites callSites,
+            List<CallSite> calls) {
+        int codeLength = Bytecode.readInt(bytes, offset + 4);
+        int codeStart = offset + 8;
+        byte[] code = new byte[codeLength];
+        System.arraycopy(bytes, codeStart, code, 0, codeLength);
+
+        int handlerCount = Bytecode.readUnsignedShort(bytes, codeStart + codeLength);
+        int[] handlers = new int[handlerCount * 3];
+        for (int i = 0; i < handlerCount; i++) {
+            int entry = codeStart + codeLength + 2 + 8 * i;
+            handlers[3 * i] = Bytecode.readUnsignedShort(bytes, entry);
+            handlers[3 * i + 1] = Bytecode.readUnsignedShort(bytes, entry + 2);
+            handlers[3 * i + 2] = Bytecode.readUnsignedShort(bytes, entry + 4);
+        }
+
+        boolean[] cold = strict ? new boolean[codeLength] : findColdInstructions(code, handlers);
+
+        String allocation = null;
+        for (int pc = 0; pc < codeLength; pc += Bytecode.length(code, pc)) {
+            if (cold[pc]) {
+                continue;
+            }
+
+            String found = null;
+            int opcode = code[pc] & 0xFF;
+            switch (opcode) {
+            case Bytecode.NEW:
+                found = "new " + cp.className(Bytecode.readUnsignedShort(code, pc + 1));
+                break;
+            case Bytecode.NEWARRAY:
+            case Bytecode.ANEWARRAY:
+            case Bytecode.MULTIANEWARRAY:
+                found = "array creation";
+                break;
+            case Bytecode.INVOKEVIRTUAL:
+            case Bytecode.INVOKESPECIAL:
+            case Bytecode.INVOKESTATIC:
+            case Bytecode.INVOKEINTERFACE: {
+                int ref = Bytecode.readUnsignedShort(code, pc + 1);
+                CallSite call = callSites.get(cp, ref, opcode);
+                if (isBoxing(call)) {
+                    found = "boxing by " + call;
+                } else if (callSites.firstUse(ref)) {
+                    calls.add(call);
+                }
+                break;
+            }
+            case Bytecode.INVOKEDYNAMIC: {
+                int ref = Bytecode.readUnsignedShort(code, pc + 1);
+                String bootstrapOwner = cp.memberOwner(cp.methodHandleReference(bootstrapMethods[cp.operand(ref, 0)]));
+                String descriptor = cp.memberDescriptor(ref);
+                boolean capturing = !descriptor.startsWith("()");
+                if (!bootstrapOwner.equals("java/lang/invoke/LambdaMetafactory") || capturing) {
+                    found = "invokedynamic " + cp.memberName(ref) + descriptor + " bootstrapped by " + bootstrapOwner;
+                }
+                break;
+            }
+            default:
+                break;
+            }
+
+            if (allocation == null && found != null) {
+                allocation = found + " at bytecode offset " + pc;
+            }
+        }
+        return allocation;
+    }
+
+    /**
+     * The call sites of a class, shared between its methods, and the calls already
+     * recorded for the method being read.
+     */
+    private static final class CallSites {
+        private final CallSite[] sites;
+        private final int[] lastCaller;
+        private final int caller;
+
+        CallSites(CallSite[] sites, int[] lastCaller, int caller) {
+            this.sites = sites;
+            this.lastCaller = lastCaller;
+            this.caller = caller;
+        }
+
+        CallSite get(ConstantPool cp, int ref, int opcode) {
+            CallSite site = sites[ref];
+            if (site == null || site.opcode != opcode) {
+                site = new CallSite(opcode, cp.memberOwner(ref), cp.memberName(ref), cp.memberDescriptor(ref));
+                sites[ref] = site;
+            }
+            return site;
+        }
+
+        /**
+         * Returns <code>true</code> the first time the method being read calls
+         * through the constant pool entry {@code ref}.
+         */
+        boolean firstUse(int ref) {
+            if (lastCaller[ref] == caller) {
+                return false;
+            }
+            lastCaller[ref] = caller;
+            return true;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if {@code call} is a <code>valueOf</code> method
+     * of a box class that may allocate. {@link Boolean#valueOf(boolean)} and
+     * {@link Byte#valueOf(byte)} always return cached instances.
+     */
+    private static boolean isBoxing(CallSite call) {
+        if (call.opcode != Bytecode.INVOKESTATIC || !call.name.equals("valueOf") || call.descriptor.length() != 4
+                || !call.owner.startsWith("java/lang/")) {
+            return false;
+        }
+        char primitive = call.descriptor.charAt(1);
+        return primitive != 'Z' && primitive != 'B' && call.descriptor.charAt(2) == ')';
+    }
+
+    /**
+     * Returns which instructions of {@code code} start a path that always ends in
+     * <code>athrow</code>, indexed by offset. An instruction is cold if it is an
+     * <code>athrow</code>, or if it cannot return and all of its successors are
+     * cold. An instruction in the range of an exception handler also has the
+     * handler as a successor, because the handler may recover.
+     *
+     * @param handlers the exception table, as (start, end, handler) triples
+     */
+    static boolean[] findColdInstructions(byte[] code, int[] handlers) {
+        List<Integer> pcs = new ArrayList<Integer>();
+        for (int pc = 0; pc < code.length; pc += Bytecode.length(code, pc)) {
+            pcs.add(pc);
+        }
+
+        boolean[] cold = new boolean[code.length];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            // Successors usually follow their predecessors, so iterate backwards
+            for (int i = pcs.size() - 1; i >= 0; i--) {
+                int pc = pcs.get(i);
+                if (!cold[pc] && isCold(code, pc, cold, handlers)) {
+                    cold[pc] = true;
+                    changed = true;
+                }
+            }
+        }
+        return cold;
+    }
+
+    private static boolean isCold(byte[] code, int pc, boolean[] cold, int[] handlers) {
+        int opcode = code[pc] & 0xFF;
+        if (opcode == Bytecode.ATHROW) {
+            return true;
+        }
+
+        for (int i = 0; i < handlers.length; i += 3) {
+            if (pc >= handlers[i] && pc < handlers[i + 1] && !cold[handlers[i + 2]]) {
+                return false;
+            }
+        }
+
+        int next = pc + Bytecode.length(code, pc);
+        if (Bytecode.isConditionalBranch(opcode)) {
+            return cold[pc + Bytecode.readShort(code, pc + 1)] && next < code.length && cold[next];
+        }
+
+        switch (opcode) {
+        case Bytecode.GOTO:
+            return cold[pc + Bytecode.readShort(code, pc + 1)];
+        case Bytecode.GOTO_W:
+            return cold[pc + Bytecode.readInt(code, pc + 1)];
+        case Bytecode.TABLESWITCH: {
+            int operands = Bytecode.switchOperands(pc);
+            if (!cold[pc + Bytecode.readInt(code, operands)]) {
+                return false;
+            }
+            int low = Bytecode.readInt(code, operands + 4);
+            int high = Bytecode.readInt(code, operands + 8);
+            for (int j = 0; j < high - low + 1; j++) {
+                if (!cold[pc + Bytecode.readInt(code, operands + 12 + 4 * j)]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        case Bytecode.LOOKUPSWITCH: {
+            int operands = Bytecode.switchOperands(pc);
+            if (!cold[pc + Bytecode.readInt(code, operands)]) {
+                return false;
+            }
+            int pairs = Bytecode.readInt(code, operands + 4);
+            for (int j = 0; j < pairs; j++) {
+                if (!cold[pc + Bytecode.readInt(code, operands + 12 + 8 * j)]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        case Bytecode.JSR:
+        case Bytecode.JSR_W:
+        case Bytecode.RET:
+            // Subroutines are rare in modern class files; treat them as returning
+            return false;
+        default:
+            if (Bytecode.isReturn(opcode)) {
+                return false;
+            }
+            return next < code.length && cold[next];
+        }
+    }
+
+    /**
+     * Returns the simple name of the allocation effect annotation in the
+     * annotations attribute at {@code offset}, or <code>null</code> if there is
+     * none.
+     */
+    private static String readEffectAnnotation(byte[] bytes, ConstantPool cp, int offset) {
+        String effect = null;
+        int count = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            String type = cp.utf8(Bytecode.readUnsignedShort(bytes, offset));
+            if (type.equals(NO_ALLOC)) {
+                effect = NoAlloc.class.getSimpleName();
+            } else if (type.equals(MAY_ALLOC)) {
+                effect = MayAlloc.class.getSimpleName();
+            } else if (type.equals(NO_ALLOC_AFTER_WARMUP)) {
+                effect = NoAllocAfterWarmup.class.getSimpleName();
+            } else if (type.equals(NO_HEAP_ALLOC)) {
+                effect = NoHeapAlloc.class.getSimpleName();
+            }
+            offset = skipAnnotation(bytes, offset);
+        }
+        return effect;
+    }
+
+    /**
+     * Returns the offset of the first byte after the annotation structure
+     * (JVMS &sect;4.7.16) at {@code offset}.
+     */
+    public static int skipAnnotation(byte[] bytes, int offset) {
+        int pairs = Bytecode.readUnsignedShort(bytes, offset + 2);
+        offset += 4;
+        for (int i = 0; i < pairs; i++) {
+            offset = skipElementValue(bytes, offset + 2);
+        }
+        return offset;
+    }
+
+    private static int skipElementValue(byte[] bytes, int offset) {
+        char tag = (char) bytes[offset];
+        switch (tag) {
+        case 'e':
+            return offset + 5;
+        case '@':
+            return skipAnnotation(bytes, offset + 1);
+        case '[': {
+            int count = Bytecode.readUnsignedShort(bytes, offset + 1);
+            offset += 3;
+            for (int i = 0; i < count; i++) {
+                offset = skipElementValue(bytes, offset);
+            }
+            return offset;
+        }
+        default:
+            // constants and class literals
+            return offset + 3;
+        }
+    }
+
+    /**
+     * Returns the offset of the first byte after the attributes of the field or
+     * method whose attribute count is at {@code offset}.
+     */
+    private static int skipAttributes(byte[] bytes, int offset) {
+        int count = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset += 6 + Bytecode.readInt(bytes, offset + 2);
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the method handle index of each bootstrap method in the class
+     * attributes at {@code offset}.
+     */
+    private static int[] readBootstrapMethods(byte[] bytes, ConstantPool cp, int offset) {
+        int count = Bytecode.readUnsignedShort(bytes, offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            String attribute = cp.utf8(Bytecode.readUnsignedShort(bytes, offset));
+            int length = Bytecode.readInt(bytes, offset + 2);
+            if (attribute.equals("BootstrapMethods")) {
+                int methods = Bytecode.readUnsignedShort(bytes, offset + 6);
+                int[] result = new int[methods];
+                int entry = offset + 8;
+                for (int j = 0; j < methods; j++) {
+                    result[j] = Bytecode.readUnsignedShort(bytes, entry);
+                    entry += 4 + 2 * Bytecode.readUnsignedShort(bytes, entry + 2);
+                }
+                return result;
+            }
+            offset += 6 + length;
+        }
+        return new int[0];
+    }
+}
@@ -0,0 +1,52 @@
+package com.toddschiller.scanner;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a class file that the scanner needs: its place in the class
+ * hierarchy and the allocations and calls of its methods.
+ *
+ * @author Todd Schiller
+ */
+public final class ClassInfo {
+
+    /** The internal name, e.g., <code>java/lang/String</code>. */
+    public final String name;
+
+    /** The internal name of the superclass, or <code>null</code> for {@link Object}. */
+    public final String superName;
+
+    public final List<String> interfaces;
+
+    public final List<MethodInfo> methods;
+
+    /** The methods by name and descriptor. */
+    private final Map<String, MethodInfo> byName;
+
+    ClassInfo(String name, String superName, List<String> interfaces, List<MethodInfo> methods) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = Collections.unmodifiableList(interfaces);
+        this.methods = Collections.unmodifiableList(methods);
+        this.byName = new HashMap<String, MethodInfo>(methods.size() * 2);
+        for (MethodInfo m : methods) {
+            byName.put(m.name + m.descriptor, m);
+        }
+    }
+
+    /**
+     * Returns the method declared by this class with {@code name} and
+     * {@code descriptor}, or <code>null</code> if there is none.
+     */
+    public MethodInfo findMethod(String name, String descriptor) {
+        return byName.get(name + descriptor);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
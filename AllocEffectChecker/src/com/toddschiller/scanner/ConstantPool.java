@@ -0,0 +1,199 @@
+package com.toddschiller.scanner;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The constant pool of a class file (JVMS &sect;4.4), decoded lazily from the
+ * class file bytes.
+ *
+ * @author Todd Schiller
+ */
+public final class ConstantPool {
+
+    public static final int UTF8 = 1;
+    public static final int INTEGER = 3;
+    public static final int FLOAT = 4;
+    public static final int LONG = 5;
+    public static final int DOUBLE = 6;
+    public static final int CLASS = 7;
+    public static final int STRING = 8;
+    public static final int FIELDREF = 9;
+    public static final int METHODREF = 10;
+    public static final int INTERFACE_METHODREF = 11;
+    public static final int NAME_AND_TYPE = 12;
+    public static final int METHOD_HANDLE = 15;
+    public static final int METHOD_TYPE = 16;
+    public static final int DYNAMIC = 17;
+    public static final int INVOKE_DYNAMIC = 18;
+    public static final int MODULE = 19;
+    public static final int PACKAGE = 20;
+
+    private final byte[] bytes;
+
+    /** The offset of each entry's tag, indexed by constant pool index. */
+    private final int[] offsets;
+
+    private final String[] strings;
+
+    /** The offset of the first byte after the constant pool. */
+    private final int end;
+
+    /**
+     * Decodes the constant pool of the class file {@code bytes}, which starts
+     * after the magic number and version.
+     */
+    public ConstantPool(byte[] bytes) {
+        this.bytes = bytes;
+        int count = Bytecode.readUnsignedShort(bytes, 8);
+        offsets = new int[count];
+        strings = new String[count];
+
+        int offset = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offset;
+            int tag = bytes[offset] & 0xFF;
+            switch (tag) {
+            case UTF8:
+                offset += 3 + Bytecode.readUnsignedShort(bytes, offset + 1);
+                break;
+            case INTEGER:
+            case FLOAT:
+            case FIELDREF:
+            case METHODREF:
+            case INTERFACE_METHODREF:
+            case NAME_AND_TYPE:
+            case DYNAMIC:
+            case INVOKE_DYNAMIC:
+                offset += 5;
+                break;
+            case LONG:
+            case DOUBLE:
+                // eight-byte constants take two entries
+                offset += 9;
+                i++;
+                break;
+            case CLASS:
+            case STRING:
+            case METHOD_TYPE:
+            case MODULE:
+            case PACKAGE:
+                offset += 3;
+                break;
+            case METHOD_HANDLE:
+                offset += 4;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid constant pool tag " + tag + " at " + offset);
+            }
+        }
+        end = offset;
+    }
+
+    /**
+     * Returns the number of entries, as recorded in the class file.
+     */
+    public int count() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns the offset of the first byte after the constant pool.
+     */
+    public int end() {
+        return end;
+    }
+
+    public int tag(int index) {
+        return bytes[offsets[index]] & 0xFF;
+    }
+
+    /**
+     * Returns the two-byte operand {@code n} (zero-based) of the entry at {@code index}.
+     */
+    public int operand(int index, int n) {
+        return Bytecode.readUnsignedShort(bytes, offsets[index] + 1 + 2 * n);
+    }
+
+    public String utf8(int index) {
+        String s = strings[index];
+        if (s == null) {
+            int offset = offsets[index];
+            s = decodeModifiedUtf8(offset + 3, Bytecode.readUnsignedShort(bytes, offset + 1));
+            strings[index] = s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the internal name of the class entry at {@code index}, e.g.,
+     * <code>java/lang/String</code>.
+     */
+    public String className(int index) {
+        return utf8(operand(index, 0));
+    }
+
+    /**
+     * Returns the internal name of the class that declares the field or method
+     * referenced at {@code index}.
+     */
+    public String memberOwner(int index) {
+        return className(operand(index, 0));
+    }
+
+    /**
+     * Returns the name of the field or method referenced at {@code index}, which
+     * may also be an invokedynamic or dynamic constant entry.
+     */
+    public String memberName(int index) {
+        return utf8(operand(operand(index, 1), 0));
+    }
+
+    /**
+     * Returns the descriptor of the field or method referenced at {@code index},
+     * which may also be an invokedynamic or dynamic constant entry.
+     */
+    public String memberDescriptor(int index) {
+        return utf8(operand(operand(index, 1), 1));
+    }
+
+    /**
+     * Returns the index of the field or method reference of the method handle
+     * entry at {@code index}.
+     */
+    public int methodHandleReference(int index) {
+        return Bytecode.readUnsignedShort(bytes, offsets[index] + 2);
+    }
+
+    /**
+     * Decodes the modified UTF-8 (JVMS &sect;4.4.7) string of {@code length} bytes at
+     * {@code offset}.
+     */
+    private String decodeModifiedUtf8(int offset, int length) {
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] < 0 || bytes[offset + i] == 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            return new String(bytes, offset, length, StandardCharsets.US_ASCII);
+        }
+
+        char[] chars = new char[length];
+        int n = 0;
+        int i = offset;
+        int limit = offset + length;
+        while (i < limit) {
+            int b = bytes[i++] & 0xFF;
+            if (b < 0x80) {
+                chars[n++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[n++] = (char) (((b & 0x1F) << 6) | (bytes[i++] & 0x3F));
+            } else {
+                chars[n++] = (char) (((b & 0x0F) << 12) | ((bytes[i++] & 0x3F) << 6) | (bytes[i++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, n);
+    }
+}
@@ -0,0 +1,114 @@
+package com.toddschiller.scanner;
+
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.List;
+
+import com.toddschiller.checker.summary.MethodKey;
+
+/**
+ * A method of a scanned class: its allocations, the methods it calls, and its
+ * declared effect annotation, if any.
+ *
+ * @author Todd Schiller
+ */
+public final class MethodInfo {
+
+    public final String owner;
+    public final String name;
+    public final String descriptor;
+    public final int access;
+
+    /**
+     * The simple name of the effect annotation on the method, e.g.,
+     * <code>NoAlloc</code>, or <code>null</code> if it is not annotated.
+     */
+    public final String declaredEffect;
+
+    /**
+     * A description of the first allocation the method performs outside of a
+     * path that ends in a <code>throw</code>, or <code>null</code> if it performs
+     * none.
+     */
+    public final String allocation;
+
+    /** The methods called outside of paths that end in a <code>throw</code>. */
+    public final List<CallSite> calls;
+
+    /** The index of the method in the scanner's call graph. */
+    int id;
+
+    MethodInfo(String owner, String name, String descriptor, int access, String declaredEffect, String allocation,
+            List<CallSite> calls) {
+        this.owner = owner;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.access = access;
+        this.declaredEffect = declaredEffect;
+        this.allocation = allocation;
+        this.calls = Collections.unmodifiableList(calls);
+    }
+
+    public boolean isAbstract() {
+        return Modifier.isAbstract(access);
+    }
+
+    public boolean isNative() {
+        return Modifier.isNative(access);
+    }
+
+    public boolean isStatic() {
+        return Modifier.isStatic(access);
+    }
+
+    public boolean isPrivate() {
+        return Modifier.isPrivate(access);
+    }
+
+    /**
+     * Returns the {@link MethodKey} of the method.
+     */
+    public String key() {
+        return MethodKey.fromDescriptor(owner, name, descriptor);
+    }
+
+    @Override
+    public String toString() {
+        return owner + "." + name + descriptor;
+    }
+
+    /**
+     * A call instruction.
+     */
+    public static final class CallSite {
+        /** The invoke opcode, e.g., {@link Bytecode#INVOKEVIRTUAL}. */
+        public final int opcode;
+        public final String owner;
+        public final String name;
+        public final String descriptor;
+
+        /** Identifies the target and the kind of dispatch, e.g., for caching resolutions. */
+        final String key;
+
+        CallSite(int opcode, String owner, String name, String descriptor) {
+            this.opcode = opcode;
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.key = (isVirtual() ? "v " : "s ") + owner + "." + name + descriptor;
+        }
+
+        /**
+         * Returns <code>true</code> if the target is selected by the class of the
+         * receiver at runtime.
+         */
+        public boolean isVirtual() {
+            return opcode == Bytecode.INVOKEVIRTUAL || opcode == Bytecode.INVOKEINTERFACE;
+        }
+
+        @Override
+        public String toString() {
+            return owner + "." + name + descriptor;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import com.toddschiller.checker.qual.NoAlloc;
+
+class Dispatch {
+
+    interface Sizer {
+        @NoAlloc
+        int size(Object x);
+    }
+
+    static class Base {
+        public int size(Object x) {
+            return x.toString().length();
+        }
+    }
+
+    static class StringSizer extends Base implements Sizer {
+    }
+
+    static class LengthSizer implements Sizer {
+        @NoAlloc
+        public int size(Object x) {
+            return 0;
+        }
+    }
+
+    // Reported on the method once all compilation units have been visited,
+    // even though the error below has been reported
+    @NoAlloc
+    //:: error: (dispatch.invalid.alloc)
+    int measure(Sizer sizer, Object x) {
+        return sizer.size(x);
+    }
+
+    @NoAlloc
+    String describe(Object x) {
+        //:: error: (call.invalid.alloc)
+        return x.toString();
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.List;
+
+import com.toddschiller.checker.qual.NoAlloc;
+
+class Implicit {
+
+    @NoAlloc
+    int cachedBoxes() {
+        // Integer.valueOf returns a cached instance for values from -128 to 127
+        Integer i = 5;
+        Long l = -128L;
+        return i.intValue() + (int) l.longValue();
+    }
+
+    @NoAlloc
+    long uncachedBox() {
+        //:: error: (boxing.invalid.alloc)
+        Long l = 200L;
+        return l.longValue();
+    }
+
+    @NoAlloc
+    int concatenates(String s, int x) {
+        //:: error: (string.concat.invalid.alloc)
+        String t = s + x;
+        return t.length();
+    }
+
+    @NoAlloc
+    static int count(int... values) {
+        return values.length;
+    }
+
+    @NoAlloc
+    int passesVarargs() {
+        //:: error: (varargs.invalid.alloc)
+        return count(1, 2);
+    }
+
+    @NoAlloc
+    int passesArray(int[] values) {
+        return count(values);
+    }
+
+    @NoAlloc
+    int sumsList(List<Integer> values) {
+        int sum = 0;
+        //:: error: (iterator.invalid.alloc)
+        for (Integer value : values) {
+            sum += value.intValue();
+        }
+        return sum;
+    }
+
+    @NoAlloc
+    int sumsArray(int[] values) {
+        int sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
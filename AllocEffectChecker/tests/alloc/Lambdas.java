@@ -0,0 +1,51 @@
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+import com.toddschiller.checker.qual.NoAlloc;
+
+class Lambdas {
+
+    static int negate(int x) {
+        return -x;
+    }
+
+    @NoAlloc
+    IntUnaryOperator capturing(int offset) {
+        //:: error: (lambda.invalid.alloc)
+        return x -> x + offset;
+    }
+
+    @NoAlloc
+    IntUnaryOperator nonCapturing() {
+        // A lambda that captures nothing evaluates to the same instance each time
+        return x -> x + 1;
+    }
+
+    @NoAlloc
+    IntSupplier boundReference(String s) {
+        //:: error: (member.reference.invalid.alloc)
+        return s::length;
+    }
+
+    @NoAlloc
+    IntUnaryOperator staticReference() {
+        return Lambdas::negate;
+    }
+
+    @NoAlloc
+    ToIntFunction<String> unboundReference() {
+        return String::length;
+    }
+
+    @NoAlloc
+    IntUnaryOperator anonymousClass() {
+        //:: error: (anonymous.class.invalid.alloc)
+        return new IntUnaryOperator() {
+            @Override
+            public int applyAsInt(int x) {
+                return x;
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+import java.nio.ByteBuffer;
+
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoHeapAlloc;
+import com.toddschiller.checker.qual.OffHeapAllocator;
+
+class OffHeap {
+
+    @OffHeapAllocator
+    static ByteBuffer allocateFrame(int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    @NoHeapAlloc
+    int offHeap(int size) {
+        return allocateFrame(size).capacity();
+    }
+
+    @NoHeapAlloc
+    int onHeap(int size) {
+        //:: error: (call.invalid.alloc)
+        return new byte[size].length;
+    }
+
+    @NoAlloc
+    int noAllocOffHeap(int size) {
+        //:: error: (call.invalid.alloc)
+        return allocateFrame(size).capacity();
+    }
+
+    @NoAllocAfterWarmup
+    int warmupOffHeap(int size) {
+        //:: error: (call.invalid.alloc)
+        return allocateFrame(size).capacity();
+    }
+
+    // NoHeapAlloc and NoAllocAfterWarmup are unrelated, so neither may call the
+    // other, and both may call NoAlloc methods
+    @NoAllocAfterWarmup
+    int warmup() {
+        return 0;
+    }
+
+    @NoAlloc
+    int none() {
+        return 0;
+    }
+
+    @NoHeapAlloc
+    int heapCallsWarmup() {
+        //:: error: (call.invalid.alloc)
+        return warmup() + none();
+    }
+
+    @NoAllocAfterWarmup
+    int warmupCallsHeap(int size) {
+        //:: error: (call.invalid.alloc)
+        return offHeap(size) + none();
+    }
+
+    @MayAlloc
+    int mayAllocCallsBoth(int size) {
+        return offHeap(size) + warmup();
+    }
+
+    interface HeapFree {
+        @NoHeapAlloc
+        int run();
+    }
+
+    interface WarmedUp {
+        @NoAllocAfterWarmup
+        int run();
+    }
+
+    static class Both implements HeapFree, WarmedUp {
+        // An override of both may only have their greatest lower bound, NoAlloc
+        @NoHeapAlloc
+        //:: error: (override.effect.invalid) :: warning: (override.effect.warning.inheritance)
+        public int run() {
+            return 0;
+        }
+    }
+}
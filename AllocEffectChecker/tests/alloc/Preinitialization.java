@@ -0,0 +1,35 @@
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.Preinitialized;
+import com.toddschiller.checker.qual.Startup;
+
+class Preinitialization {
+
+    @Preinitialized
+    static class InitializedTables {
+        static final int[] SQUARES = new int[256];
+    }
+
+    @Preinitialized
+    //:: error: (preinitialized.not.initialized)
+    static class ForgottenTables {
+        static final int[] CUBES = new int[256];
+    }
+
+    @Startup
+    static void initialize() {
+        InitializedTables.SQUARES[0] = 0;
+    }
+
+    @NoAlloc
+    int square(int x) {
+        return InitializedTables.SQUARES[x & 0xff];
+    }
+
+    // An error here must not hide the error for ForgottenTables, which is only
+    // reported once all classes have been processed
+    @NoAlloc
+    int[] allocates() {
+        //:: error: (call.invalid.alloc)
+        return new int[1];
+    }
+}
@@ -0,0 +1,31 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+import com.toddschiller.checker.qual.NoAlloc;
+
+class Reflection {
+
+    static MethodHandle scale;
+    static MethodHandle length;
+    static Method method;
+
+    @NoAlloc
+    int invokesExactly(int x, String s) throws Throwable {
+        // The arguments are passed as is, without a varargs array or boxing
+        int scaled = (int) scale.invokeExact(x);
+        int counted = (int) length.invokeExact(s);
+        return scaled + counted;
+    }
+
+    @NoAlloc
+    int invokes(int x) throws Throwable {
+        //:: error: (reflection.invalid.alloc)
+        return (int) scale.invoke(x);
+    }
+
+    @NoAlloc
+    Object invokesMethod(Object receiver) throws Exception {
+        //:: error: (reflection.invalid.alloc)
+        return method.invoke(receiver);
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.function.IntConsumer;
+
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.PolyAlloc;
+
+class VoidLambdas {
+
+    interface IntBoxer {
+        @NoAlloc
+        Integer box(int x);
+    }
+
+    static int sum;
+
+    @PolyAlloc
+    static void forEach(int[] values, IntConsumer action) {
+        for (int i = 0; i < values.length; i++) {
+            action.accept(values[i]);
+        }
+    }
+
+    @NoAlloc
+    void discardsValue(int[] values) {
+        // The value of the assignment is discarded, not boxed
+        forEach(values, x -> sum += x);
+        forEach(values, x -> sum++);
+    }
+
+    @NoAlloc
+    int boxesValue() {
+        //:: error: (boxing.invalid.alloc)
+        IntBoxer boxer = x -> x + 1000;
+        return boxer == null ? 0 : 1;
+    }
+}
@@ -0,0 +1,81 @@
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.PoolAcquire;
+
+class Warmup {
+
+    private static int[] table;
+
+    private int[] buffer;
+
+    private Warmup other;
+
+    @NoAllocAfterWarmup
+    int[] lazyBuffer() {
+        if (buffer == null) {
+            buffer = new int[64];
+        }
+        return buffer;
+    }
+
+    @NoAllocAfterWarmup
+    int[] lazyThisBuffer() {
+        if (this.buffer == null && other != null) {
+            this.buffer = new int[64];
+        }
+        return this.buffer;
+    }
+
+    @NoAllocAfterWarmup
+    static int[] lazyTable() {
+        if (Warmup.table == null) {
+            table = new int[256];
+        }
+        return table;
+    }
+
+    // The guard checks the field of another object, so the allocation is not
+    // limited to the warmup of this one
+    @NoAllocAfterWarmup
+    void otherGuard() {
+        if (other.buffer == null) {
+            //:: error: (call.invalid.alloc)
+            buffer = new int[64];
+        }
+    }
+
+    @NoAllocAfterWarmup
+    void otherAssigned() {
+        if (buffer == null) {
+            //:: error: (call.invalid.alloc)
+            other.buffer = new int[64];
+        }
+    }
+
+    @NoAlloc
+    int[] lazyNoAlloc() {
+        if (buffer == null) {
+            //:: error: (call.invalid.alloc)
+            buffer = new int[64];
+        }
+        return buffer;
+    }
+
+    @PoolAcquire
+    @MayAlloc
+    int[] acquire() {
+        return new int[64];
+    }
+
+    @NoAllocAfterWarmup
+    int pooled() {
+        return acquire().length;
+    }
+
+    @NoAlloc
+    int pooledNoAlloc() {
+        //:: error: (call.invalid.alloc)
+        return acquire().length;
+    }
+}
@@ -0,0 +1,63 @@
+import com.toddschiller.checker.qual.ColdPath;
+import com.toddschiller.checker.qual.NoAlloc;
+
+// Checked with -Alint=coldPath
+class ColdPaths {
+
+    private int failures;
+
+    @ColdPath
+    static void log(String message) {
+    }
+
+    @NoAlloc
+    int thrown(int x) {
+        if (x < 0) {
+            throw new IllegalArgumentException("negative: " + x);
+        }
+        return x;
+    }
+
+    @NoAlloc
+    int caughtLocally(int x) {
+        try {
+            if (x < 0) {
+                //:: error: (call.invalid.alloc) :: error: (string.concat.invalid.alloc)
+                throw new IllegalArgumentException("negative: " + x);
+            }
+            return x;
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    @NoAlloc
+    int beforeBranch(int x) {
+        //:: error: (call.invalid.alloc)
+        int[] digits = new int[3];
+        if (x < 0) {
+            throw new IllegalArgumentException("negative: " + x);
+        }
+        return digits.length + x;
+    }
+
+    @NoAlloc
+    int throughFinally(int x) {
+        try {
+            if (x < 0) {
+                throw new IllegalArgumentException("negative: " + x);
+            }
+            return x;
+        } finally {
+            failures++;
+        }
+    }
+
+    @NoAlloc
+    int coldArguments(int x) {
+        if (x < 0) {
+            log("negative: " + x);
+        }
+        return x;
+    }
+}
@@ -0,0 +1,19 @@
+import com.toddschiller.checker.qual.NoAlloc;
+
+class Export {
+
+    @NoAlloc
+    int twice(int x) {
+        return x * 2;
+    }
+
+    Object allocates() {
+        return new Object();
+    }
+
+    @NoAlloc
+    int[] reported() {
+        //:: error: (call.invalid.alloc)
+        return new int[1];
+    }
+}
@@ -0,0 +1,14 @@
+import java.util.Objects;
+
+import com.toddschiller.checker.qual.NoAlloc;
+
+class Fixes {
+
+    @NoAlloc
+    int digits(int id, long time) {
+        //:: error: (call.invalid.alloc)
+        int[] digits = new int[3];
+        //:: error: (call.invalid.alloc) :: error: (boxing.invalid.alloc) :: error: (boxing.invalid.alloc)
+        return digits.length + Objects.hash(id, time);
+    }
+}
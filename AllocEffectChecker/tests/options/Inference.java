@@ -0,0 +1,18 @@
+class Inference {
+
+    int twice(int x) {
+        return x * 2;
+    }
+
+    int callsTwice(int x) {
+        return twice(x) + 1;
+    }
+
+    Object allocates() {
+        return new Object();
+    }
+
+    int callsAllocates() {
+        return allocates().hashCode();
+    }
+}
@@ -0,0 +1,16 @@
+import com.toddschiller.checker.qual.NoAlloc;
+
+class JdkModel {
+
+    @NoAlloc
+    int modeled(String s, int x) {
+        // Math.max and String.length are allocation-free in the bundled JDK model
+        return Math.max(s.length(), x);
+    }
+
+    @NoAlloc
+    boolean unmodeled(char c) {
+        //:: error: (call.invalid.alloc)
+        return Character.isSpaceChar(c);
+    }
+}
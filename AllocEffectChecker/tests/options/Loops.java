@@ -0,0 +1,30 @@
+import com.toddschiller.checker.qual.NoAlloc;
+
+class Loops {
+
+    int lengths(int[][] rows) {
+        int total = 0;
+        for (int[] row : rows) {
+            for (int x : row) {
+                total += String.valueOf(x).length();
+            }
+        }
+        return total;
+    }
+
+    int sum(int n) {
+        int total = 0;
+        int i = 0;
+        while (i < n) {
+            total += new int[] { i }.length;
+            i++;
+        }
+        return total;
+    }
+
+    @NoAlloc
+    int outsideLoop() {
+        //:: error: (call.invalid.alloc)
+        return new int[1].length;
+    }
+}
@@ -0,0 +1,17 @@
+import com.toddschiller.checker.qual.NoAlloc;
+
+// Checked with a project summary that lists Math.max(int,int) as @MayAlloc and
+// Character.isSpaceChar(char) as @NoAlloc
+class ProjectSummaries {
+
+    @NoAlloc
+    int overridden(String s, int x) {
+        //:: error: (call.invalid.alloc)
+        return Math.max(s.length(), x);
+    }
+
+    @NoAlloc
+    boolean added(char c) {
+        return Character.isSpaceChar(c);
+    }
+}
@@ -0,0 +1,39 @@
+import com.toddschiller.checker.qual.NoAllocRoot;
+
+class Reachability {
+
+    interface Handler {
+        int handle(int x);
+    }
+
+    static class SummingHandler implements Handler {
+        @Override
+        public int handle(int x) {
+            return x + 1;
+        }
+    }
+
+    static class LoggingHandler implements Handler {
+        @Override
+        public int handle(int x) {
+            return ("handled " + x).length();
+        }
+    }
+
+    private Handler handler = new SummingHandler();
+
+    private int dispatch(int x) {
+        return handler.handle(x);
+    }
+
+    @NoAllocRoot
+    //:: error: (root.invalid.alloc)
+    public int onMessage(int x) {
+        return dispatch(x);
+    }
+
+    @NoAllocRoot
+    public int onTick(int x) {
+        return x * 2;
+    }
+}
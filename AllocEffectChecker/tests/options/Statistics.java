@@ -0,0 +1,20 @@
+import com.toddschiller.checker.qual.NoAlloc;
+
+class Statistics {
+
+    Object allocates() {
+        return new Object();
+    }
+
+    @NoAlloc
+    int reported() {
+        //:: error: (call.invalid.alloc)
+        return allocates() == null ? 0 : 1;
+    }
+
+    @NoAlloc
+    @SuppressWarnings("alloceffect")
+    int suppressed() {
+        return allocates() == null ? 0 : 1;
+    }
+}
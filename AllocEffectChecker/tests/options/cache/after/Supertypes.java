@@ -0,0 +1,25 @@
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+
+// Checked after cache/before/Supertypes.java with the same effect cache: only
+// the effect of Base.run() changed, and Sub.run() must not keep its cached effect
+class Supertypes {
+
+    static class Base {
+        @MayAlloc
+        void run() {
+        }
+    }
+
+    static class Sub extends Base {
+        @Override
+        void run() {
+        }
+    }
+
+    @NoAlloc
+    void call(Sub s) {
+        //:: error: (call.invalid.alloc)
+        s.run();
+    }
+}
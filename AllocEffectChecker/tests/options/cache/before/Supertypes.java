@@ -0,0 +1,22 @@
+import com.toddschiller.checker.qual.NoAlloc;
+
+// Checked with an empty effect cache, which then holds the effects of Sub
+class Supertypes {
+
+    static class Base {
+        @NoAlloc
+        void run() {
+        }
+    }
+
+    static class Sub extends Base {
+        @Override
+        void run() {
+        }
+    }
+
+    @NoAlloc
+    void call(Sub s) {
+        s.run();
+    }
+}
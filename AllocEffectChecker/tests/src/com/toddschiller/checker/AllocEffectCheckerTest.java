@@ -0,0 +1,26 @@
+package com.toddschiller.checker;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.checkerframework.framework.test.ParameterizedCheckerTest;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the checker on each file in <code>tests/alloc</code> and compares the
+ * diagnostics with those the file expects in <code>//::</code> comments, e.g.,
+ * <code>//:: error: (call.invalid.alloc)</code> on the line before the call.
+ * 
+ * @author Todd Schiller
+ */
+public class AllocEffectCheckerTest extends ParameterizedCheckerTest {
+
+    public AllocEffectCheckerTest(File testFile) {
+        super(testFile, AllocEffectChecker.class, "alloc", "-Anomsgtext");
+    }
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return testFiles("alloc");
+    }
+}
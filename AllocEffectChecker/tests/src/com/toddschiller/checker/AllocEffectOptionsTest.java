@@ -0,0 +1,197 @@
+package com.toddschiller.checker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.checkerframework.framework.test.CheckerTest;
+import org.checkerframework.framework.test.TestInput;
+import org.checkerframework.framework.test.TestRun;
+import org.checkerframework.framework.test.TestUtilities;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.toddschiller.checker.summary.EffectSummaryWriter;
+import com.toddschiller.checker.summary.SummaryCompiler;
+
+/**
+ * Runs the checker on the files in <code>tests/options</code> with the options
+ * that make it write files or report at the end of the compilation, and checks
+ * both the diagnostics each file expects and the files written.
+ * 
+ * @author Todd Schiller
+ */
+public class AllocEffectOptionsTest extends CheckerTest {
+
+    @Rule
+    public TemporaryFolder output = new TemporaryFolder();
+
+    public AllocEffectOptionsTest() {
+        super(AllocEffectChecker.class, "options", "-Anomsgtext");
+    }
+
+    @Test
+    public void testInfer() throws IOException {
+        File summary = new File(output.getRoot(), "inferred.summary");
+        check("Inference.java", "-A" + AllocEffectChecker.INFER_OPTION + "=" + summary);
+
+        assertEquals(Arrays.asList("@NoAlloc", "Inference", "    callsTwice(int)", "    twice(int)"),
+                lines(new File(summary + ".txt")));
+    }
+
+    @Test
+    public void testReachability() {
+        check("Reachability.java", "-Alint=reachability");
+    }
+
+    @Test
+    public void testColdPath() {
+        check("ColdPaths.java", "-Alint=coldPath");
+    }
+
+    @Test
+    public void testLoopAlloc() throws IOException {
+        File report = new File(output.getRoot(), "loops.txt");
+        check("Loops.java", "-Alint=loopAlloc", "-A" + AllocEffectChecker.LOOP_REPORT_OPTION + "=" + report);
+
+        assertEquals(Arrays.asList("2 allocations in loops in 2 methods, deepest first",
+                "  2  Loops.java:9  Loops.lengths(int[][]): String.valueOf(x) requires MayAlloc (call.invalid.alloc)",
+                "  1  Loops.java:19  Loops.sum(int): new int[]{i} requires MayAlloc (call.invalid.alloc)"),
+                lines(report));
+    }
+
+    @Test
+    public void testFixes() throws IOException {
+        File patch = new File(output.getRoot(), "fixes.patch");
+        check("Fixes.java", "-A" + AllocEffectChecker.FIXES_OPTION + "=" + patch);
+
+        // The patch is written although the allocations are reported as errors
+        List<String> lines = lines(patch);
+        assertEquals(Arrays.asList("@@ -4,11 +4,13 @@",
+                " ",
+                " class Fixes {",
+                " ",
+                "+    private final int[] digitsScratch = new int[3];",
+                "+",
+                "     @NoAlloc",
+                "     int digits(int id, long time) {",
+                "         //:: error: (call.invalid.alloc)",
+                "-        int[] digits = new int[3];",
+                "+        int[] digits = digitsScratch;",
+                "         //:: error: (call.invalid.alloc) :: error: (boxing.invalid.alloc) :: error: (boxing.invalid.alloc)",
+                "-        return digits.length + Objects.hash(id, time);",
+                "+        return digits.length + (31 * (31 + Integer.hashCode(id)) + Long.hashCode(time));",
+                "     }",
+                " }"), lines.subList(2, lines.size()));
+    }
+
+    @Test
+    public void testExport() throws IOException {
+        File effects = new File(output.getRoot(), "effects.txt");
+        check("Export.java", "-A" + AllocEffectChecker.EXPORT_OPTION + "=" + effects);
+
+        assertEquals(Arrays.asList("@MayAlloc", "Export", "    <init>()", "    allocates()", "@NoAlloc", "Export",
+                "    reported()", "    twice(int)"), lines(effects));
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        File stats = new File(output.getRoot(), "stats.json");
+        check("Statistics.java", "-A" + AllocEffectChecker.STATS_OPTION + "=" + stats);
+
+        // The suppressed violation is not counted
+        String json = new String(Files.readAllBytes(stats.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"violationsByKey\": {\"call.invalid.alloc\": 1}"));
+        assertTrue(json, json.contains("\"violationsByPackage\": {\"(default package)\": 1}"));
+    }
+
+    @Test
+    public void testJdkModel() {
+        check("JdkModel.java");
+    }
+
+    @Test
+    public void testProjectSummaries() throws IOException {
+        File summary = new File(output.getRoot(), "project.summary");
+        writeSummary(summary, "@MayAlloc", "java.lang.Math", "    max(int,int)", "@NoAlloc", "java.lang.Character",
+                "    isSpaceChar(char)");
+        check("ProjectSummaries.java", "-A" + AllocEffectChecker.SUMMARIES_OPTION + "=" + summary);
+    }
+
+    @Test
+    public void testCacheSupertypeChange() {
+        String cache = "-A" + AllocEffectChecker.CACHE_OPTION + "=" + new File(output.getRoot(), "cache");
+        check("cache/before/Supertypes.java", cache);
+        assertTrue(new File(output.getRoot(), "cache/Supertypes$Sub.effects").isFile());
+
+        // The effect of Sub.run() is inherited from Base.run(), so its entry is stale
+        check("cache/after/Supertypes.java", cache);
+    }
+
+    @Test
+    public void testCacheSummaryChange() throws IOException {
+        String cache = "-A" + AllocEffectChecker.CACHE_OPTION + "=" + new File(output.getRoot(), "cache");
+        check("JdkModel.java", cache);
+        assertTrue(new File(output.getRoot(), "cache/java.lang.Math.effects").isFile());
+
+        // The project summary changes the fingerprint, so the JDK entries are stale
+        File summary = new File(output.getRoot(), "project.summary");
+        writeSummary(summary, "@MayAlloc", "java.lang.Math", "    max(int,int)", "@NoAlloc", "java.lang.Character",
+                "    isSpaceChar(char)");
+        check("ProjectSummaries.java", cache, "-A" + AllocEffectChecker.SUMMARIES_OPTION + "=" + summary);
+    }
+
+    /**
+     * Runs the checker on {@code file} with the additional {@code options}, and
+     * checks the diagnostics the file expects, ignoring the notes about the files
+     * written.
+     */
+    private void check(String file, String... options) {
+        List<String> allOptions = new ArrayList<String>(checkerOptions);
+        allOptions.addAll(Arrays.asList(options));
+
+        File javaFile = new File(checkerDir, file);
+        StandardJavaFileManager fileManager = ToolProvider.getSystemJavaCompiler().getStandardFileManager(null,
+                null, null);
+        TestRun run = TestInput.compileAndCheck(checkerDir, fileManager.getJavaFileObjects(javaFile), checkerName,
+                allOptions);
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        for (Diagnostic<? extends JavaFileObject> d : run.getDiagnostics()) {
+            if (d.getKind() != Diagnostic.Kind.NOTE) {
+                diagnostics.add(d);
+            }
+        }
+        assertDiagnostics("", diagnostics, TestUtilities.expectedDiagnostics(javaFile), javaFile.getPath(),
+                allOptions);
+    }
+
+    /**
+     * Compiles the textual summary {@code lines} into the summary file
+     * {@code file}.
+     */
+    private static void writeSummary(File file, String... lines) throws IOException {
+        EffectSummaryWriter writer = new EffectSummaryWriter();
+        SummaryCompiler.parse(new BufferedReader(new StringReader(String.join("\n", lines))), file.getName(), writer);
+        writer.write(file.toPath());
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,57 @@
+package com.toddschiller.checker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.toddschiller.checker.qual.MayAlloc;
+import com.toddschiller.checker.qual.NoAlloc;
+import com.toddschiller.checker.qual.NoAllocAfterWarmup;
+import com.toddschiller.checker.qual.NoHeapAlloc;
+
+/**
+ * Checks the diamond that the allocation effects form, in particular that
+ * {@link NoAllocAfterWarmup} and {@link NoHeapAlloc} are unrelated.
+ * 
+ * @author Todd Schiller
+ */
+public class EffectTest {
+
+    private static final Effect NO_ALLOC = new Effect(NoAlloc.class);
+    private static final Effect WARMUP = new Effect(NoAllocAfterWarmup.class);
+    private static final Effect NO_HEAP = new Effect(NoHeapAlloc.class);
+    private static final Effect MAY_ALLOC = new Effect(MayAlloc.class);
+
+    @Test
+    public void testSubeffects() {
+        for (Effect effect : new Effect[] { NO_ALLOC, WARMUP, NO_HEAP, MAY_ALLOC }) {
+            assertTrue(effect.isSubeffectOf(effect));
+            assertTrue(NO_ALLOC.isSubeffectOf(effect));
+            assertTrue(effect.isSubeffectOf(MAY_ALLOC));
+        }
+        assertFalse(WARMUP.isSubeffectOf(NO_HEAP));
+        assertFalse(NO_HEAP.isSubeffectOf(WARMUP));
+        assertFalse(WARMUP.isSubeffectOf(NO_ALLOC));
+        assertFalse(MAY_ALLOC.isSubeffectOf(NO_HEAP));
+    }
+
+    @Test
+    public void testMax() {
+        assertEquals(MAY_ALLOC, Effect.max(NO_HEAP, WARMUP));
+        assertEquals(MAY_ALLOC, Effect.max(WARMUP, NO_HEAP));
+        assertEquals(WARMUP, Effect.max(NO_ALLOC, WARMUP));
+        assertEquals(NO_HEAP, Effect.max(NO_HEAP, NO_ALLOC));
+        assertEquals(MAY_ALLOC, Effect.max(NO_HEAP, MAY_ALLOC));
+    }
+
+    @Test
+    public void testMin() {
+        assertEquals(NO_ALLOC, Effect.min(NO_HEAP, WARMUP));
+        assertEquals(NO_ALLOC, Effect.min(WARMUP, NO_HEAP));
+        assertEquals(WARMUP, Effect.min(MAY_ALLOC, WARMUP));
+        assertEquals(NO_HEAP, Effect.min(NO_HEAP, MAY_ALLOC));
+        assertEquals(NO_ALLOC, Effect.min(NO_HEAP, NO_ALLOC));
+    }
+}